@@ -14,6 +14,7 @@ plugins {
     id("com.github.hierynomus.license")
     id("org.owasp.dependencycheck")
     id("com.github.ben-manes.versions")
+    id("me.champeau.jmh")
 
     /* Code Quality Plugins */
     id("jacoco")
@@ -205,6 +206,13 @@ tasks.test {
 }
 
 
+/* ******************** jmh ******************** */
+
+jmh {
+    jmhVersion.set("${property("jmh.version")}")
+}
+
+
 /* ******************** distribution ******************** */
 
 tasks.jar {
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.subscribe.Topic;
+import com.hivemq.mqtt.topic.SubscriptionFlag;
+
+/**
+ * The topic shapes of the topic tree benchmarks. All shapes subscribe to the publish topics of
+ * {@link #publishTopic(int, int)}, which are six levels deep.
+ */
+public enum BenchmarkTopicShape {
+
+    /**
+     * Exact subscriptions to deep topics.
+     */
+    DEEP {
+        @Override
+        @NotNull BenchmarkSubscription subscription(
+                final @NotNull String client, final int device, final int firstLevelSegments) {
+
+            return new BenchmarkSubscription(client, publishTopic(device, firstLevelSegments), null);
+        }
+    },
+
+    /**
+     * Mostly subscriptions with '+' and '#' wildcards on different levels, every fourth subscription is exact.
+     */
+    WILDCARD {
+        @Override
+        @NotNull BenchmarkSubscription subscription(
+                final @NotNull String client, final int device, final int firstLevelSegments) {
+
+            final String firstLevel = firstLevel(device, firstLevelSegments);
+            final String topicFilter;
+            switch (device % 4) {
+                case 0:
+                    topicFilter = firstLevel + "/+/site" + (device % SITES) + "/+/sensor/#";
+                    break;
+                case 1:
+                    topicFilter = firstLevel + "/region" + (device % REGIONS) + "/#";
+                    break;
+                case 2:
+                    topicFilter = firstLevel + "/+/+/device" + device + "/+/temperature";
+                    break;
+                default:
+                    topicFilter = publishTopic(device, firstLevelSegments);
+            }
+            return new BenchmarkSubscription(client, topicFilter, null);
+        }
+    },
+
+    /**
+     * Shared subscriptions in a few share groups, half of them to a site wide topic filter.
+     */
+    SHARED {
+        @Override
+        @NotNull BenchmarkSubscription subscription(
+                final @NotNull String client, final int device, final int firstLevelSegments) {
+
+            final String topicFilter = device % 2 == 0 ?
+                    firstLevel(device, firstLevelSegments) + "/region" + (device % REGIONS) + "/site" +
+                            (device % SITES) + "/#" :
+                    publishTopic(device, firstLevelSegments);
+            return new BenchmarkSubscription(client, topicFilter, "group" + (device % SHARE_GROUPS));
+        }
+    };
+
+    private static final int REGIONS = 10;
+    private static final int SITES = 100;
+    private static final int SHARE_GROUPS = 16;
+
+    /**
+     * @param client             the client identifier of the subscription
+     * @param device             the device the subscription is for
+     * @param firstLevelSegments the amount of different first topic levels
+     * @return the subscription of this shape
+     */
+    abstract @NotNull BenchmarkSubscription subscription(
+            @NotNull String client, int device, int firstLevelSegments);
+
+    static @NotNull String publishTopic(final int device, final int firstLevelSegments) {
+        return firstLevel(device, firstLevelSegments) + "/region" + (device % REGIONS) + "/site" + (device % SITES) +
+                "/device" + device + "/sensor/temperature";
+    }
+
+    private static @NotNull String firstLevel(final int device, final int firstLevelSegments) {
+        return "segment" + (device % firstLevelSegments);
+    }
+
+    static class BenchmarkSubscription {
+
+        private final @NotNull String client;
+        private final @NotNull Topic topic;
+        private final byte flags;
+        private final @Nullable String sharedName;
+
+        BenchmarkSubscription(
+                final @NotNull String client, final @NotNull String topicFilter, final @Nullable String sharedName) {
+            this.client = client;
+            this.topic = new Topic(topicFilter, QoS.AT_LEAST_ONCE);
+            this.flags = SubscriptionFlag.getDefaultFlags(sharedName != null, false, false);
+            this.sharedName = sharedName;
+        }
+
+        boolean add(final @NotNull LocalTopicTree topicTree) {
+            return topicTree.addTopic(client, topic, flags, sharedName);
+        }
+
+        void remove(final @NotNull LocalTopicTree topicTree) {
+            topicTree.removeSubscriber(client, topic.getTopic(), sharedName);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.ImmutableIntArray;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the hash based de-duplication of {@link LocalTopicTree#createDistinctSubscribers(ImmutableList)} with the
+ * previous implementation that sorted all matched subscriptions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DistinctSubscribersBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int subscriberCount;
+
+    /**
+     * The share of matched subscriptions that belong to a client which has another matching subscription, for example
+     * via an exact and a wildcard subscription.
+     */
+    @Param({"0", "0.25"})
+    public double duplicateRatio;
+
+    private @NotNull ImmutableList<SubscriberWithQoS> subscribers = ImmutableList.of();
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        final ImmutableList.Builder<SubscriberWithQoS> builder = ImmutableList.builder();
+        final int distinctClients = Math.max(1, (int) (subscriberCount * (1 - duplicateRatio)));
+        for (int i = 0; i < subscriberCount; i++) {
+            final int client = i < distinctClients ? i : random.nextInt(distinctClients);
+            final Integer subscriptionId = random.nextBoolean() ? i + 1 : null;
+            builder.add(new SubscriberWithQoS("client-" + client, random.nextInt(3), (byte) 0, subscriptionId));
+        }
+        subscribers = builder.build();
+    }
+
+    @Benchmark
+    public @NotNull ImmutableSet<SubscriberWithIdentifiers> hashBased() {
+        return LocalTopicTree.createDistinctSubscribers(subscribers);
+    }
+
+    @Benchmark
+    public @NotNull ImmutableSet<SubscriberWithIdentifiers> sortBased() {
+        return sortBasedDistinctSubscribers(subscribers);
+    }
+
+    /**
+     * The previous implementation of {@link LocalTopicTree#createDistinctSubscribers(ImmutableList)}.
+     */
+    private static @NotNull ImmutableSet<SubscriberWithIdentifiers> sortBasedDistinctSubscribers(
+            final @NotNull ImmutableList<SubscriberWithQoS> subscribers) {
+
+        final ImmutableSet.Builder<SubscriberWithIdentifiers> newSet = ImmutableSet.builder();
+
+        final ImmutableList<SubscriberWithQoS> subscriberWithQoS =
+                ImmutableList.sortedCopyOf(Comparator.naturalOrder(), subscribers);
+
+        final Iterator<SubscriberWithQoS> iterator = subscriberWithQoS.iterator();
+
+        SubscriberWithIdentifiers last = null;
+
+        while (iterator.hasNext()) {
+            final SubscriberWithQoS current = iterator.next();
+
+            if (last != null) {
+
+                if (!current.getSubscriber().equals(last.getSubscriber()) ||
+                        !Objects.equals(current.getTopicFilter(), last.getTopicFilter()) ||
+                        !Objects.equals(current.getSharedName(), last.getSharedName())) {
+                    newSet.add(last);
+                    last = new SubscriberWithIdentifiers(current);
+                } else {
+                    last.setQos(current.getQos());
+                    if (current.getSubscriptionIdentifier() != null) {
+                        final ImmutableIntArray subscriptionIds = last.getSubscriptionIdentifier();
+                        final Integer subscriptionId = current.getSubscriptionIdentifier();
+                        final ImmutableIntArray mergedSubscriptionIds =
+                                ImmutableIntArray.builder(subscriptionIds.length() + 1)
+                                        .addAll(subscriptionIds)
+                                        .add(subscriptionId)
+                                        .build();
+                        last.setSubscriptionIdentifiers(mergedSubscriptionIds);
+                    }
+                }
+            } else {
+                last = new SubscriberWithIdentifiers(current);
+            }
+
+            if (!iterator.hasNext()) {
+                newSet.add(last);
+            }
+        }
+
+        return newSet.build();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Measures matching of publish topics against a populated {@link LocalTopicTree}, alone and while another thread
+ * subscribes and unsubscribes concurrently. Run with more threads (-t) to measure contended reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocalTopicTreeBenchmark {
+
+    private static final int PUBLISH_TOPICS = 1024;
+    private static final @NotNull Predicate<SubscriberWithQoS> ALL_SUBSCRIPTIONS = subscription -> true;
+
+    @Param({"1000", "100000"})
+    public int subscriberCount;
+
+    @Param({"DEEP", "WILDCARD", "SHARED"})
+    public @NotNull BenchmarkTopicShape topicShape = BenchmarkTopicShape.DEEP;
+
+    /**
+     * The amount of different first topic levels. The first level is the key of the segment locks, so with a single
+     * first level all threads contend for the same lock.
+     */
+    @Param({"1", "64"})
+    public int firstLevelSegments;
+
+    private @NotNull LocalTopicTree topicTree = new LocalTopicTree(new MetricsHolder(new MetricRegistry()));
+    private @NotNull String @NotNull [] publishTopics = new String[0];
+
+    @Setup
+    public void setUp() {
+        topicTree = new LocalTopicTree(new MetricsHolder(new MetricRegistry()));
+        for (int i = 0; i < subscriberCount; i++) {
+            topicShape.subscription("client-" + i, i, firstLevelSegments).add(topicTree);
+        }
+
+        final Random random = new Random(42);
+        publishTopics = new String[PUBLISH_TOPICS];
+        for (int i = 0; i < PUBLISH_TOPICS; i++) {
+            publishTopics[i] = BenchmarkTopicShape.publishTopic(random.nextInt(subscriberCount), firstLevelSegments);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        private final @NotNull Random random = new Random();
+        private int index;
+
+        int nextIndex() {
+            index = (index + 1) & (PUBLISH_TOPICS - 1);
+            return index;
+        }
+    }
+
+    @Benchmark
+    public @NotNull TopicSubscribers findTopicSubscribers(final @NotNull ThreadState state) {
+        return topicTree.findTopicSubscribers(publishTopics[state.nextIndex()]);
+    }
+
+    @Benchmark
+    public @NotNull ImmutableSet<String> getSubscribersForTopic(final @NotNull ThreadState state) {
+        return topicTree.getSubscribersForTopic(publishTopics[state.nextIndex()], ALL_SUBSCRIPTIONS, false);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public @NotNull TopicSubscribers contendedFindTopicSubscribers(final @NotNull ThreadState state) {
+        return topicTree.findTopicSubscribers(publishTopics[state.nextIndex()]);
+    }
+
+    /**
+     * Subscribes and unsubscribes again, so that the size of the topic tree stays the same.
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public boolean contendedSubscribeAndUnsubscribe(final @NotNull ThreadState state) {
+        final int device = state.random.nextInt(subscriberCount);
+        final BenchmarkTopicShape.BenchmarkSubscription subscription =
+                topicShape.subscription("resubscriber-" + device, device, firstLevelSegments);
+        final boolean replaced = subscription.add(topicTree);
+        subscription.remove(topicTree);
+        return replaced;
+    }
+}
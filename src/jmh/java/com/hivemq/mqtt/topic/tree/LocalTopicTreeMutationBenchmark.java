@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.MetricsHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures adding new subscriptions to and removing existing subscriptions from a populated {@link LocalTopicTree}.
+ * Each iteration starts with a freshly populated topic tree and adds or removes {@link #BATCH_SIZE} subscriptions per
+ * thread. Run with more threads (-t) to measure contended writes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = LocalTopicTreeMutationBenchmark.BATCH_SIZE)
+@Measurement(iterations = 10, batchSize = LocalTopicTreeMutationBenchmark.BATCH_SIZE)
+@Fork(1)
+public class LocalTopicTreeMutationBenchmark {
+
+    static final int BATCH_SIZE = 10_000;
+
+    @Param({"1000", "100000"})
+    public int subscriberCount;
+
+    @Param({"DEEP", "WILDCARD", "SHARED"})
+    public @NotNull BenchmarkTopicShape topicShape = BenchmarkTopicShape.DEEP;
+
+    /**
+     * The amount of different first topic levels. The first level is the key of the segment locks, so with a single
+     * first level all threads contend for the same lock.
+     */
+    @Param({"1", "64"})
+    public int firstLevelSegments;
+
+    private @NotNull LocalTopicTree topicTree = new LocalTopicTree(new MetricsHolder(new MetricRegistry()));
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        topicTree = new LocalTopicTree(new MetricsHolder(new MetricRegistry()));
+        for (int i = 0; i < subscriberCount; i++) {
+            topicShape.subscription("client-" + i, i, firstLevelSegments).add(topicTree);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        private static final @NotNull AtomicInteger THREADS = new AtomicInteger();
+
+        private final int thread = THREADS.getAndIncrement();
+        private final @NotNull Random random = new Random(thread);
+        private @NotNull BenchmarkTopicShape.BenchmarkSubscription @NotNull [] additions =
+                new BenchmarkTopicShape.BenchmarkSubscription[0];
+        private @NotNull BenchmarkTopicShape.BenchmarkSubscription @NotNull [] removals =
+                new BenchmarkTopicShape.BenchmarkSubscription[0];
+        private int index;
+
+        /**
+         * Runs after the topic tree of the iteration is populated, as it depends on the benchmark state.
+         */
+        @Setup(Level.Iteration)
+        public void setUp(final @NotNull LocalTopicTreeMutationBenchmark benchmark) {
+            additions = subscriptions(benchmark, "added-" + thread + "-");
+            removals = subscriptions(benchmark, "removed-" + thread + "-");
+            for (final BenchmarkTopicShape.BenchmarkSubscription removal : removals) {
+                removal.add(benchmark.topicTree);
+            }
+            index = 0;
+        }
+
+        private @NotNull BenchmarkTopicShape.BenchmarkSubscription @NotNull [] subscriptions(
+                final @NotNull LocalTopicTreeMutationBenchmark benchmark, final @NotNull String clientPrefix) {
+
+            final BenchmarkTopicShape.BenchmarkSubscription[] subscriptions =
+                    new BenchmarkTopicShape.BenchmarkSubscription[BATCH_SIZE];
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                final int device = random.nextInt(benchmark.subscriberCount);
+                subscriptions[i] =
+                        benchmark.topicShape.subscription(clientPrefix + i, device, benchmark.firstLevelSegments);
+            }
+            return subscriptions;
+        }
+    }
+
+    @Benchmark
+    public boolean addTopic(final @NotNull ThreadState state) {
+        return state.additions[state.index++].add(topicTree);
+    }
+
+    @Benchmark
+    public void removeSubscriber(final @NotNull ThreadState state) {
+        state.removals[state.index++].remove(topicTree);
+    }
+}
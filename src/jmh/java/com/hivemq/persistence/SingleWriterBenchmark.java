@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the task throughput and the latency of a single task of the {@link SingleWriterServiceImpl} with the
+ * {@link ThreadAffineSingleWriter}.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class SingleWriterBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"default", "thread-affine"})
+    public @NotNull String engine = "default";
+
+    /**
+     * The amount of work every task does, in JMH tokens.
+     */
+    @Param({"0", "100"})
+    public long taskWork;
+
+    private @NotNull SingleWriterService singleWriter;
+    private @NotNull ProducerQueues queues;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InternalConfigurations.PERSISTENCE_BUCKET_COUNT.set(64);
+        if ("thread-affine".equals(engine)) {
+            singleWriter = new ThreadAffineSingleWriter();
+        } else {
+            final SingleWriterServiceImpl singleWriterService = new SingleWriterServiceImpl();
+            singleWriterService.postConstruct();
+            singleWriter = singleWriterService;
+        }
+        queues = singleWriter.getClientSessionQueue();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        singleWriter.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+
+        private int bucket;
+
+        int nextBucket(final int bucketCount) {
+            bucket = (bucket + 1) % bucketCount;
+            return bucket;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public @NotNull List<Long> throughput(final @NotNull Producer producer)
+            throws ExecutionException, InterruptedException {
+        final List<ListenableFuture<Long>> futures = new ArrayList<>(BATCH_SIZE);
+        final int bucketCount = singleWriter.getPersistenceBucketCount();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            futures.add(queues.submit(producer.nextBucket(bucketCount), this::doTask));
+        }
+        return Futures.allAsList(futures).get();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long latency(final @NotNull Producer producer) throws ExecutionException, InterruptedException {
+        return queues.submit(producer.nextBucket(singleWriter.getPersistenceBucketCount()), this::doTask).get();
+    }
+
+    private @NotNull Long doTask(final int bucketIndex) {
+        Blackhole.consumeCPU(taskWork);
+        return (long) bucketIndex;
+    }
+}
@@ -22,6 +22,7 @@ import com.hivemq.codec.encoder.MQTTMessageEncoder;
 import com.hivemq.common.shutdown.ShutdownHooks;
 import com.hivemq.configuration.service.FullConfigurationService;
 import com.hivemq.configuration.service.RestrictionsConfigurationService;
+import com.hivemq.configuration.service.entity.Listener;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extensions.handler.ClientLifecycleEventHandler;
 import com.hivemq.extensions.handler.IncomingPublishHandler;
@@ -287,8 +288,8 @@ public class ChannelDependencies {
     }
 
     @NotNull
-    public PublishFlushHandler createPublishFlushHandler() {
-        return new PublishFlushHandler(metricsHolder);
+    public PublishFlushHandler createPublishFlushHandler(final @NotNull Listener listener) {
+        return new PublishFlushHandler(metricsHolder, listener.getName());
     }
 
     @NotNull
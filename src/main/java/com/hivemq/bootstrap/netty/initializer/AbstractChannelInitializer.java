@@ -72,7 +72,7 @@ public abstract class AbstractChannelInitializer extends ChannelInitializer<Chan
             return;
         }
 
-        final PublishFlushHandler publishFlushHandler = channelDependencies.createPublishFlushHandler();
+        final PublishFlushHandler publishFlushHandler = channelDependencies.createPublishFlushHandler(listener);
         final UndefinedClientConnection clientContext =
                 new UndefinedClientConnection(ch, publishFlushHandler, listener);
         ch.attr(ClientConnectionContext.CHANNEL_ATTRIBUTE_NAME).set(clientContext);
@@ -19,10 +19,13 @@ import com.google.common.base.Utf8;
 import com.hivemq.bootstrap.ClientConnectionContext;
 import com.hivemq.codec.encoder.mqtt5.Mqtt5PayloadFormatIndicator;
 import com.hivemq.configuration.service.FullConfigurationService;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.configuration.service.PersistenceConfigurationService.PersistenceMode;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.mqtt.handler.disconnect.MqttServerDisconnector;
 import com.hivemq.mqtt.message.Message;
+import com.hivemq.mqtt.message.publish.PublishPayloadBuffer;
 import com.hivemq.mqtt.message.reason.Mqtt5DisconnectReasonCode;
 import com.hivemq.util.Bytes;
 import com.hivemq.util.ReasonStrings;
@@ -36,10 +39,16 @@ public abstract class AbstractMqttPublishDecoder<T extends Message> extends Abst
 
     private static final byte @NotNull [] EMPTY_PAYLOAD = new byte[0];
 
+    private final boolean payloadBufferEnabled;
+    private final int payloadBufferMinSize;
+
     protected AbstractMqttPublishDecoder(
             final @NotNull MqttServerDisconnector disconnector,
             final @NotNull FullConfigurationService configurationService) {
         super(disconnector, configurationService);
+        payloadBufferEnabled = InternalConfigurations.PUBLISH_PAYLOAD_BUFFER_ENABLED.get() &&
+                configurationService.persistenceConfigurationService().getMode() == PersistenceMode.IN_MEMORY;
+        payloadBufferMinSize = InternalConfigurations.PUBLISH_PAYLOAD_BUFFER_MIN_SIZE_BYTES.get();
     }
 
     /**
@@ -191,4 +200,31 @@ public abstract class AbstractMqttPublishDecoder<T extends Message> extends Abst
         }
         return payload;
     }
+
+    /**
+     * Decodes a publish payload as a slice of the inbound buffer if off-heap payloads are enabled and the payload is
+     * large enough.
+     *
+     * @param buf                    the encoded ByteBuf of the message
+     * @param payloadLength          the length of the payload
+     * @param payloadFormatIndicator the nullable {@link Mqtt5PayloadFormatIndicator}
+     * @param validatePayloadFormat  the configured boolean for payload validation (default false)
+     * @return the payload as a {@link PublishPayloadBuffer} or {@code null} if the payload must be decoded with
+     *         {@link #decodePayload}.
+     */
+    protected @Nullable PublishPayloadBuffer decodePayloadBuffer(
+            final @NotNull ByteBuf buf,
+            final int payloadLength,
+            final @Nullable Mqtt5PayloadFormatIndicator payloadFormatIndicator,
+            final boolean validatePayloadFormat) {
+
+        if (!payloadBufferEnabled || payloadLength < payloadBufferMinSize || !buf.isDirect()) {
+            return null;
+        }
+        if (validatePayloadFormat && payloadFormatIndicator == Mqtt5PayloadFormatIndicator.UTF_8) {
+            // The validation needs the payload on the heap anyway
+            return null;
+        }
+        return new PublishPayloadBuffer(buf.readRetainedSlice(payloadLength));
+    }
 }
@@ -28,6 +28,7 @@ import com.hivemq.mqtt.message.MessageType;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.publish.Mqtt3PUBLISH;
 import com.hivemq.mqtt.message.publish.PUBLISHFactory;
+import com.hivemq.mqtt.message.publish.PublishPayloadBuffer;
 import com.hivemq.util.Strings;
 import io.netty.buffer.ByteBuf;
 
@@ -100,8 +101,14 @@ public class Mqtt3PublishDecoder extends AbstractMqttPublishDecoder<Mqtt3PUBLISH
             packetIdentifier = 0;
         }
 
-        final byte[] payload = new byte[buf.readableBytes()];
-        buf.readBytes(payload);
+        final PublishPayloadBuffer payloadBuffer = decodePayloadBuffer(buf, buf.readableBytes(), null, false);
+        final byte[] payload;
+        if (payloadBuffer == null) {
+            payload = new byte[buf.readableBytes()];
+            buf.readBytes(payload);
+        } else {
+            payload = null;
+        }
 
         return new PUBLISHFactory.Mqtt3Builder().withHivemqId(hivemqId.get())
                 .withMessageExpiryInterval(maxMessageExpiryInterval)
@@ -112,6 +119,7 @@ public class Mqtt3PublishDecoder extends AbstractMqttPublishDecoder<Mqtt3PUBLISH
                 .withPacketIdentifier(packetIdentifier)
                 .withRetain(retain)
                 .withPayload(payload)
+                .withPayloadBuffer(payloadBuffer)
                 .build();
     }
 }
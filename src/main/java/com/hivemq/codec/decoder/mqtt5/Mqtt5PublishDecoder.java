@@ -34,6 +34,7 @@ import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
 import com.hivemq.mqtt.message.mqtt5.MqttUserProperty;
 import com.hivemq.mqtt.message.publish.Mqtt5PUBLISH;
 import com.hivemq.mqtt.message.publish.PUBLISHFactory.Mqtt5Builder;
+import com.hivemq.mqtt.message.publish.PublishPayloadBuffer;
 import com.hivemq.mqtt.message.reason.Mqtt5DisconnectReasonCode;
 import com.hivemq.util.ReasonStrings;
 import io.netty.buffer.ByteBuf;
@@ -253,18 +254,28 @@ public class Mqtt5PublishDecoder extends AbstractMqttPublishDecoder<Mqtt5PUBLISH
         }
 
 
-        final byte[] payload = decodePayload(clientConnectionContext,
-                buf,
-                buf.readableBytes(),
-                payloadFormatIndicator,
-                validatePayloadFormat);
-        //return null if something failed. Client already disconnected.
-        if (payload == null) {
-            return null;
+        final PublishPayloadBuffer payloadBuffer =
+                decodePayloadBuffer(buf, buf.readableBytes(), payloadFormatIndicator, validatePayloadFormat);
+        final byte[] payload;
+        if (payloadBuffer == null) {
+            payload = decodePayload(clientConnectionContext,
+                    buf,
+                    buf.readableBytes(),
+                    payloadFormatIndicator,
+                    validatePayloadFormat);
+            //return null if something failed. Client already disconnected.
+            if (payload == null) {
+                return null;
+            }
+        } else {
+            payload = null;
         }
 
         final Mqtt5UserProperties userProperties = Mqtt5UserProperties.build(userPropertiesBuilder);
         if (invalidUserPropertiesLength(clientConnectionContext, MessageType.PUBLISH, userProperties)) {
+            if (payloadBuffer != null) {
+                payloadBuffer.release();
+            }
             return null;
         }
 
@@ -278,7 +289,8 @@ public class Mqtt5PublishDecoder extends AbstractMqttPublishDecoder<Mqtt5PUBLISH
                 .withResponseTopic(responseTopic)
                 .withCorrelationData(correlationData)
                 .withUserProperties(userProperties)
-                .withPayload(payload);
+                .withPayload(payload)
+                .withPayloadBuffer(payloadBuffer);
     }
 
     private @Nullable Mqtt5Builder readTopicFromAliasMapping(
@@ -15,6 +15,7 @@
  */
 package com.hivemq.codec.encoder;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.inject.Inject;
 import com.hivemq.bootstrap.ClientConnectionContext;
 import com.hivemq.codec.encoder.mqtt3.Mqtt3ConnackEncoder;
@@ -50,16 +51,24 @@ import com.hivemq.mqtt.message.dropping.MessageDroppedService;
 import com.hivemq.mqtt.message.puback.PUBACK;
 import com.hivemq.mqtt.message.pubcomp.PUBCOMP;
 import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.mqtt.message.publish.PublishPayloadBuffer;
 import com.hivemq.mqtt.message.pubrec.PUBREC;
 import com.hivemq.mqtt.message.pubrel.PUBREL;
 import com.hivemq.mqtt.message.suback.SUBACK;
 import com.hivemq.mqtt.message.unsuback.UNSUBACK;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelPromise;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Singleton;
 
+import static com.hivemq.configuration.service.InternalConfigurations.PUBLISH_ENCODING_CACHE_ENABLED;
+import static com.hivemq.configuration.service.InternalConfigurations.PUBLISH_ENCODING_CACHE_MAX_SIZE_BYTES;
+import static com.hivemq.configuration.service.InternalConfigurations.PUBLISH_ENCODING_CACHE_MIN_PAYLOAD_SIZE_BYTES;
+import static com.hivemq.configuration.service.InternalConfigurations.PUBLISH_ENCODING_CACHE_TIME_TO_LIVE_MSEC;
+
 /**
  * This factory is used to create encoders and encode messages.
  *
@@ -73,6 +82,7 @@ public class EncoderFactory {
 
     private final @NotNull Mqtt5EncoderFactory mqtt5Instance;
     private final @NotNull Mqtt3EncoderFactory mqtt3Instance;
+    private final @NotNull PublishEncodingCache publishEncodingCache;
 
     @Inject
     public EncoderFactory(
@@ -81,6 +91,8 @@ public class EncoderFactory {
             final @NotNull MqttServerDisconnector mqttServerDisconnector) {
         mqtt5Instance = new Mqtt5EncoderFactory(messageDroppedService, securityConfigurationService);
         mqtt3Instance = new Mqtt3EncoderFactory(mqttServerDisconnector);
+        publishEncodingCache = new PublishEncodingCache(PUBLISH_ENCODING_CACHE_MAX_SIZE_BYTES.get(),
+                PUBLISH_ENCODING_CACHE_TIME_TO_LIVE_MSEC.get());
     }
 
     /**
@@ -103,6 +115,135 @@ public class EncoderFactory {
         }
     }
 
+    /**
+     * Checks cheaply whether the {@link PUBLISH} may be encoded by {@link #encodeWithSharedBody}, so the write promise
+     * only has to be prepared for the encoding cache if a shared body may be used.
+     *
+     * @param publish the {@link PUBLISH} to encode
+     * @return false if the PUBLISH is never encoded with a shared body
+     */
+    public boolean mayEncodeWithSharedBody(final @NotNull PUBLISH publish) {
+        if (!PUBLISH_ENCODING_CACHE_ENABLED.get() || publish.getPayloadBuffer() != null) {
+            return false;
+        }
+        return publish.getPayloadLength() >= PUBLISH_ENCODING_CACHE_MIN_PAYLOAD_SIZE_BYTES.get();
+    }
+
+    /**
+     * Encodes the {@link PUBLISH} as a composite of a header for the client and a body that is encoded only once and
+     * shared by all subscribers of the PUBLISH, see {@link SharedPublishEncoder}.
+     * <p>
+     * The PUBLISH is not encoded if the encoding cache is disabled, the payload is too small, the PUBLISH exceeds the
+     * maximum packet size of the client or the cached body was encoded from a PUBLISH that was modified by an
+     * extension. In these cases it must be encoded by {@link #encode}.
+     *
+     * @param clientConnectionContext the {@link ClientConnectionContext} of the client
+     * @param publish                 the {@link PUBLISH} to encode
+     * @param allocator               the allocator for the header and the body
+     * @param promise                 the promise of the write of the encoded PUBLISH, the shared body is kept in the
+     *                                cache until the writes of all subscribers completed
+     * @return the encoded PUBLISH, or null if the PUBLISH was not encoded
+     */
+    public @Nullable ByteBuf encodeWithSharedBody(
+            final @NotNull ClientConnectionContext clientConnectionContext,
+            final @NotNull PUBLISH publish,
+            final @NotNull ByteBufAllocator allocator,
+            final @NotNull ChannelPromise promise) {
+
+        if (!mayEncodeWithSharedBody(publish)) {
+            return null;
+        }
+        final MqttEncoder encoder = getEncoder(publish, clientConnectionContext);
+        if (!(encoder instanceof SharedPublishEncoder)) {
+            return null;
+        }
+        final byte[] payload = publish.getPayload();
+        if (payload == null) {
+            return null;
+        }
+
+        final SharedPublishEncoder sharedPublishEncoder = (SharedPublishEncoder) encoder;
+        sharedPublishEncoder.bufferSize(clientConnectionContext, publish);
+        if (publish.getOmittedProperties() > 0) {
+            // The PUBLISH exceeds the maximum packet size, it is dropped by the encoder
+            return null;
+        }
+
+        final boolean mqtt5 = clientConnectionContext.getProtocolVersion() == ProtocolVersion.MQTTv5;
+        final ByteBuf body =
+                publishEncodingCache.retainedBody(publish, payload, mqtt5, sharedPublishEncoder, allocator, promise);
+        if (body == null) {
+            return null;
+        }
+
+        final int headerLength = publish.getEncodedLength() - body.readableBytes();
+        final ByteBuf header = allocator.ioBuffer(headerLength, headerLength);
+        try {
+            sharedPublishEncoder.encodeHeader(publish, header);
+        } catch (final Throwable t) {
+            header.release();
+            body.release();
+            throw t;
+        }
+        return allocator.compositeDirectBuffer(2).addComponents(true, header, body);
+    }
+
+    /**
+     * Encodes a {@link PUBLISH} with an off-heap payload as a composite of a header for the client and the payload
+     * buffer, so the payload is not copied, see {@link PublishPayloadBuffer}.
+     * <p>
+     * The PUBLISH is not encoded if it has no off-heap payload, it exceeds the maximum packet size of the client or the
+     * payload buffer was already released. In these cases it must be encoded by {@link #encode}.
+     *
+     * @param clientConnectionContext the {@link ClientConnectionContext} of the client
+     * @param publish                 the {@link PUBLISH} to encode
+     * @param allocator               the allocator for the header
+     * @return the encoded PUBLISH, or null if the PUBLISH was not encoded
+     */
+    public @Nullable ByteBuf encodeWithPayloadBuffer(
+            final @NotNull ClientConnectionContext clientConnectionContext,
+            final @NotNull PUBLISH publish,
+            final @NotNull ByteBufAllocator allocator) {
+
+        final PublishPayloadBuffer payloadBuffer = publish.getPayloadBuffer();
+        if (payloadBuffer == null) {
+            return null;
+        }
+        final MqttEncoder encoder = getEncoder(publish, clientConnectionContext);
+        if (!(encoder instanceof SharedPublishEncoder)) {
+            return null;
+        }
+
+        final SharedPublishEncoder sharedPublishEncoder = (SharedPublishEncoder) encoder;
+        sharedPublishEncoder.bufferSize(clientConnectionContext, publish);
+        if (publish.getOmittedProperties() > 0) {
+            // The PUBLISH exceeds the maximum packet size, it is dropped by the encoder
+            return null;
+        }
+
+        final ByteBuf payload = payloadBuffer.retainedSlice();
+        if (payload == null) {
+            return null;
+        }
+
+        final int headerLength = publish.getEncodedLength() - payload.readableBytes();
+        final ByteBuf header = allocator.ioBuffer(headerLength, headerLength);
+        try {
+            sharedPublishEncoder.encodeHeader(publish, header);
+            sharedPublishEncoder.encodeSharedBodyWithoutPayload(publish, header);
+        } catch (final Throwable t) {
+            header.release();
+            payload.release();
+            throw t;
+        }
+        return allocator.compositeDirectBuffer(2).addComponents(true, header, payload);
+    }
+
+    @VisibleForTesting
+    @NotNull PublishEncodingCache getPublishEncodingCache() {
+        return publishEncodingCache;
+    }
+
     /**
      * This method finds the Mqtt encoder depending on the message and the protocol version.
      *
@@ -21,9 +21,13 @@ import com.hivemq.bootstrap.ClientConnectionContext;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.metrics.handler.GlobalMQTTMessageCounter;
 import com.hivemq.mqtt.message.Message;
+import com.hivemq.mqtt.message.MessageRecycling;
+import com.hivemq.mqtt.message.publish.PUBLISH;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToByteEncoder;
 
 /**
@@ -43,6 +47,54 @@ public class MQTTMessageEncoder extends MessageToByteEncoder<Message> {
         this.globalMQTTMessageCounter = globalMQTTMessageCounter;
     }
 
+    @Override
+    public void write(
+            final @NotNull ChannelHandlerContext ctx,
+            final @NotNull Object msg,
+            final @NotNull ChannelPromise promise) throws Exception {
+
+        if (!(msg instanceof PUBLISH)) {
+            try {
+                super.write(ctx, msg, promise);
+            } finally {
+                // The channel owns a recycled message after it was written, it is no longer needed after encoding
+                MessageRecycling.release(msg);
+            }
+            return;
+        }
+        final PUBLISH publish = (PUBLISH) msg;
+        ChannelPromise writePromise = promise;
+        try {
+            ByteBuf buf;
+            try {
+                final ClientConnectionContext clientConnectionContext = ClientConnectionContext.of(ctx.channel());
+                buf = encoderFactory.encodeWithPayloadBuffer(clientConnectionContext, publish, ctx.alloc());
+                if (buf == null && encoderFactory.mayEncodeWithSharedBody(publish)) {
+                    // The encoding cache is notified when the write completes, not possible with a void promise
+                    writePromise = promise.unvoid();
+                    buf = encoderFactory.encodeWithSharedBody(clientConnectionContext,
+                            publish,
+                            ctx.alloc(),
+                            writePromise);
+                }
+            } catch (final EncoderException e) {
+                throw e;
+            } catch (final Throwable t) {
+                throw new EncoderException(t);
+            }
+            if (buf != null) {
+                globalMQTTMessageCounter.countOutbound(publish);
+                globalMQTTMessageCounter.countOutboundTraffic(buf.readableBytes());
+                ctx.write(buf, writePromise);
+                return;
+            }
+            super.write(ctx, msg, writePromise);
+        } finally {
+            // The PUBLISH was polled for this write, the encoded PUBLISH keeps its own reference to the payload
+            publish.releasePayload();
+        }
+    }
+
     @Override
     protected void encode(
             final @NotNull ChannelHandlerContext ctx, final @NotNull Message msg, final @NotNull ByteBuf out) {
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.codec.encoder;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5PayloadFormatIndicator;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.IllegalReferenceCountException;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A cache for the encoded bodies of outgoing PUBLISH messages that are shared by all subscribers of a PUBLISH, see
+ * {@link SharedPublishEncoder}.
+ * <p>
+ * The bodies are cached by the publish id of the PUBLISH and the encoding (MQTT 5 or MQTT 3). The copies of a PUBLISH
+ * that are sent to the subscribers keep the publish id, but extensions are able to modify the payload and the
+ * properties of a copy, so a cached body is only used if the payload and the properties of the PUBLISH are the same.
+ * <p>
+ * The cache holds one reference of every body. Every caller receives its own retained duplicate of the body and the
+ * cache counts the writes of the body that did not complete yet. When the last pending write completes, the body is
+ * removed from the cache and the reference of the cache is released, so the body is not kept in memory after the
+ * PUBLISH was written to all subscribers. The size limit and the time to live only apply to bodies with writes that
+ * never complete.
+ */
+class PublishEncodingCache {
+
+    private final @NotNull Cache<Key, SharedBody> bodies;
+
+    PublishEncodingCache(final long maxSizeBytes, final long timeToLiveMillis) {
+        bodies = CacheBuilder.newBuilder()
+                .maximumWeight(maxSizeBytes)
+                .weigher((Weigher<Key, SharedBody>) (key, body) -> body.buffer.readableBytes())
+                .expireAfterWrite(timeToLiveMillis, TimeUnit.MILLISECONDS)
+                .removalListener((RemovalListener<Key, SharedBody>) notification -> {
+                    final SharedBody body = notification.getValue();
+                    if (body != null) {
+                        body.buffer.release();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Returns the shared body of the PUBLISH from the cache or encodes and caches it.
+     *
+     * @param publish   the PUBLISH
+     * @param payload   the payload of the PUBLISH
+     * @param mqtt5     whether the body is encoded for MQTT 5
+     * @param encoder   the encoder for the body
+     * @param allocator the allocator for the body if it is not cached
+     * @param promise   the promise of the write of the body, the write is pending until it is completed
+     * @return a retained duplicate of the shared body that must be released by the caller, or null if the cached body
+     *         can not be used for the PUBLISH
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable ByteBuf retainedBody(
+            final @NotNull PUBLISH publish,
+            final byte @NotNull [] payload,
+            final boolean mqtt5,
+            final @NotNull SharedPublishEncoder encoder,
+            final @NotNull ByteBufAllocator allocator,
+            final @NotNull ChannelPromise promise) {
+
+        final Key key = new Key(publish.getPublishId(), mqtt5);
+        final SharedBody cached = bodies.getIfPresent(key);
+        if (cached != null) {
+            if (!cached.matches(publish, payload)) {
+                return null;
+            }
+            final ByteBuf retained;
+            try {
+                retained = cached.buffer.retainedDuplicate();
+            } catch (final IllegalReferenceCountException e) {
+                // The body was removed from the cache and released concurrently
+                return null;
+            }
+            addPendingWrite(key, cached, promise);
+            return retained;
+        }
+
+        final int length = encoder.sharedBodyLength(publish, payload);
+        final ByteBuf buffer = allocator.ioBuffer(length, length);
+        encoder.encodeSharedBody(publish, payload, buffer);
+        final ByteBuf retained = buffer.retainedDuplicate();
+        final SharedBody body = new SharedBody(publish, payload, buffer);
+        body.pendingWrites.incrementAndGet();
+        if (bodies.asMap().putIfAbsent(key, body) != null) {
+            // Another subscriber encoded the same body concurrently, this body is only used for this write
+            buffer.release();
+            return retained;
+        }
+        promise.addListener((ChannelFutureListener) future -> writeCompleted(key, body));
+        return retained;
+    }
+
+    private void addPendingWrite(
+            final @NotNull Key key, final @NotNull SharedBody body, final @NotNull ChannelPromise promise) {
+        body.pendingWrites.incrementAndGet();
+        promise.addListener((ChannelFutureListener) future -> writeCompleted(key, body));
+    }
+
+    private void writeCompleted(final @NotNull Key key, final @NotNull SharedBody body) {
+        if (body.pendingWrites.decrementAndGet() == 0) {
+            // A write that starts concurrently keeps its own reference, it only misses the cache for later writes
+            bodies.asMap().remove(key, body);
+        }
+    }
+
+    @VisibleForTesting
+    void invalidateAll() {
+        bodies.invalidateAll();
+    }
+
+    @VisibleForTesting
+    long size() {
+        return bodies.size();
+    }
+
+    private static class Key {
+
+        private final long publishId;
+        private final boolean mqtt5;
+
+        Key(final long publishId, final boolean mqtt5) {
+            this.publishId = publishId;
+            this.mqtt5 = mqtt5;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key that = (Key) o;
+            return publishId == that.publishId && mqtt5 == that.mqtt5;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(publishId) + (mqtt5 ? 1 : 0);
+        }
+    }
+
+    private static class SharedBody {
+
+        private final byte @NotNull [] payload;
+        private final @Nullable Mqtt5PayloadFormatIndicator payloadFormatIndicator;
+        private final @Nullable String contentType;
+        private final @Nullable String responseTopic;
+        private final byte @Nullable [] correlationData;
+        private final @NotNull Mqtt5UserProperties userProperties;
+        private final @NotNull ByteBuf buffer;
+        private final @NotNull AtomicInteger pendingWrites = new AtomicInteger();
+
+        SharedBody(final @NotNull PUBLISH publish, final byte @NotNull [] payload, final @NotNull ByteBuf buffer) {
+            this.payload = payload;
+            this.payloadFormatIndicator = publish.getPayloadFormatIndicator();
+            this.contentType = publish.getContentType();
+            this.responseTopic = publish.getResponseTopic();
+            this.correlationData = publish.getCorrelationData();
+            this.userProperties = publish.getUserProperties();
+            this.buffer = buffer;
+        }
+
+        boolean matches(final @NotNull PUBLISH publish, final byte @NotNull [] payload) {
+            // The payload is most likely the same instance, so the arrays are only compared if it is not
+            return (this.payload == payload || Arrays.equals(this.payload, payload)) &&
+                    payloadFormatIndicator == publish.getPayloadFormatIndicator() &&
+                    Objects.equals(contentType, publish.getContentType()) &&
+                    Objects.equals(responseTopic, publish.getResponseTopic()) &&
+                    Arrays.equals(correlationData, publish.getCorrelationData()) &&
+                    userProperties.equals(publish.getUserProperties());
+        }
+    }
+}
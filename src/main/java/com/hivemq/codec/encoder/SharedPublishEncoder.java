@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.codec.encoder;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.mqtt.message.Message;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A PUBLISH encoder that is able to encode a PUBLISH in two parts: a header that is encoded for every subscriber and a
+ * body that is the same for all subscribers of the PUBLISH and therefore is encoded only once.
+ * <p>
+ * The header must be encoded after {@link MqttEncoder#bufferSize} was called for the PUBLISH, as the header contains
+ * the remaining length and the property length.
+ */
+public interface SharedPublishEncoder<T extends Message> extends MqttEncoder<T> {
+
+    /**
+     * @param msg     the PUBLISH
+     * @param payload the payload of the PUBLISH
+     * @return the encoded length of the body that is shared by all subscribers
+     */
+    int sharedBodyLength(@NotNull T msg, byte @NotNull [] payload);
+
+    /**
+     * Encodes the body that is shared by all subscribers of the PUBLISH.
+     *
+     * @param msg     the PUBLISH
+     * @param payload the payload of the PUBLISH
+     * @param out     the {@link ByteBuf} into which the body will be written
+     */
+    void encodeSharedBody(@NotNull T msg, byte @NotNull [] payload, @NotNull ByteBuf out);
+
+    /**
+     * Encodes the body that is shared by all subscribers of the PUBLISH without the payload, for a PUBLISH whose
+     * payload is written from its own buffer.
+     *
+     * @param msg the PUBLISH
+     * @param out the {@link ByteBuf} into which the body without the payload will be written
+     */
+    void encodeSharedBodyWithoutPayload(@NotNull T msg, @NotNull ByteBuf out);
+
+    /**
+     * Encodes the header of the PUBLISH for a single subscriber. The header contains the fixed header, the topic, the
+     * packet identifier and the properties that are specific to the subscriber.
+     *
+     * @param msg the PUBLISH
+     * @param out the {@link ByteBuf} into which the header will be written
+     */
+    void encodeHeader(@NotNull T msg, @NotNull ByteBuf out);
+}
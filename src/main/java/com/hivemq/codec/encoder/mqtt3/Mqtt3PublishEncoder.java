@@ -16,6 +16,7 @@
 package com.hivemq.codec.encoder.mqtt3;
 
 import com.hivemq.bootstrap.ClientConnectionContext;
+import com.hivemq.codec.encoder.SharedPublishEncoder;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.mqtt.message.publish.Mqtt3PUBLISH;
 import com.hivemq.util.Strings;
@@ -25,7 +26,8 @@ import io.netty.buffer.ByteBuf;
 /**
  * @author Dominik Obermaier
  */
-public class Mqtt3PublishEncoder extends AbstractVariableHeaderLengthEncoder<Mqtt3PUBLISH> {
+public class Mqtt3PublishEncoder extends AbstractVariableHeaderLengthEncoder<Mqtt3PUBLISH>
+        implements SharedPublishEncoder<Mqtt3PUBLISH> {
 
     private static final byte PUBLISH_FIXED_HEADER = 0b0011_0000;
 
@@ -35,6 +37,29 @@ public class Mqtt3PublishEncoder extends AbstractVariableHeaderLengthEncoder<Mqt
             final @NotNull Mqtt3PUBLISH msg,
             final @NotNull ByteBuf out) {
 
+        encodeHeader(msg, out);
+        out.writeBytes(msg.getPayload());
+    }
+
+    @Override
+    public int sharedBodyLength(final @NotNull Mqtt3PUBLISH msg, final byte @NotNull [] payload) {
+        return payload.length;
+    }
+
+    @Override
+    public void encodeSharedBody(
+            final @NotNull Mqtt3PUBLISH msg, final byte @NotNull [] payload, final @NotNull ByteBuf out) {
+        out.writeBytes(payload);
+    }
+
+    @Override
+    public void encodeSharedBodyWithoutPayload(final @NotNull Mqtt3PUBLISH msg, final @NotNull ByteBuf out) {
+        // MQTT 3 PUBLISH messages have no properties, the shared body is only the payload
+    }
+
+    @Override
+    public void encodeHeader(final @NotNull Mqtt3PUBLISH msg, final @NotNull ByteBuf out) {
+
         byte header = PUBLISH_FIXED_HEADER;
         final int qos = msg.getQoS().getQosNumber();
         if (msg.isDuplicateDelivery()) {
@@ -53,13 +78,12 @@ public class Mqtt3PublishEncoder extends AbstractVariableHeaderLengthEncoder<Mqt
         if (qos > 0) {
             out.writeShort(msg.getPacketIdentifier());
         }
-        out.writeBytes(msg.getPayload());
     }
 
     protected int remainingLength(final @NotNull Mqtt3PUBLISH msg) {
         int length = 0;
         length += Utf8Utils.encodedLength(msg.getTopic());
-        length += msg.getPayload().length;
+        length += msg.getPayloadLength();
         length += 2; // Topic length
         if (msg.getQoS().getQosNumber() > 0) {
             length += 2; // message ID
@@ -16,6 +16,7 @@
 package com.hivemq.codec.encoder.mqtt5;
 
 import com.google.common.primitives.ImmutableIntArray;
+import com.hivemq.codec.encoder.SharedPublishEncoder;
 import com.hivemq.configuration.service.SecurityConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.mqtt.message.MessageType;
@@ -46,7 +47,8 @@ import static com.hivemq.mqtt.message.mqtt5.MessageProperties.SUBSCRIPTION_IDENT
  * @author Florian Limpöck
  */
 @Singleton
-public class Mqtt5PublishEncoder extends Mqtt5MessageWithUserPropertiesEncoder<PUBLISH> {
+public class Mqtt5PublishEncoder extends Mqtt5MessageWithUserPropertiesEncoder<PUBLISH>
+        implements SharedPublishEncoder<PUBLISH> {
 
     private static final int FIXED_HEADER = MessageType.PUBLISH.ordinal() << 4;
 
@@ -63,6 +65,48 @@ public class Mqtt5PublishEncoder extends Mqtt5MessageWithUserPropertiesEncoder<P
         encodePayload(publish, out);
     }
 
+    /**
+     * The shared body contains all properties except the Message Expiry Interval and the Subscription Identifiers,
+     * which are specific to the subscriber, and the payload. PUBLISH messages must not omit properties, so the User
+     * Properties are always part of the shared body.
+     */
+    @Override
+    public int sharedBodyLength(final @NotNull PUBLISH publish, final byte @NotNull [] payload) {
+        return sharedPropertyLength(publish) + publish.getUserProperties().encodedLength() + payload.length;
+    }
+
+    @Override
+    public void encodeSharedBody(
+            final @NotNull PUBLISH publish, final byte @NotNull [] payload, final @NotNull ByteBuf out) {
+        encodeSharedBodyWithoutPayload(publish, out);
+        out.writeBytes(payload);
+    }
+
+    @Override
+    public void encodeSharedBodyWithoutPayload(final @NotNull PUBLISH publish, final @NotNull ByteBuf out) {
+        encodeSharedProperties(publish, out);
+        publish.getUserProperties().encode(out);
+    }
+
+    @Override
+    public void encodeHeader(final @NotNull PUBLISH publish, final @NotNull ByteBuf out) {
+        encodeFixedHeader(publish, out);
+
+        MqttBinaryData.encode(publish.getTopic(), out);
+
+        if (publish.getQoS() != QoS.AT_MOST_ONCE) {
+            out.writeShort(publish.getPacketIdentifier());
+        }
+
+        // The order of the properties is not specified, so the properties of the subscriber come first.
+        MqttVariableByteInteger.encode(publish.getPropertyLength(), out);
+        encodeIntProperty(MESSAGE_EXPIRY_INTERVAL,
+                publish.getMessageExpiryInterval(),
+                MAX_EXPIRY_INTERVAL_DEFAULT,
+                out);
+        encodeSubscriptionIdentifiers(publish, out);
+    }
+
     @Override
     int calculateRemainingLengthWithoutProperties(final @NotNull PUBLISH publish) {
 
@@ -75,10 +119,7 @@ public class Mqtt5PublishEncoder extends Mqtt5MessageWithUserPropertiesEncoder<P
             remainingLength += 2;
         }
 
-        final byte[] payload = publish.getPayload();
-        if (payload != null) {
-            remainingLength += payload.length;
-        }
+        remainingLength += publish.getPayloadLength();
 
         return remainingLength;
     }
@@ -107,9 +148,13 @@ public class Mqtt5PublishEncoder extends Mqtt5MessageWithUserPropertiesEncoder<P
     }
 
     private static int fixedPropertyLength(final @NotNull PUBLISH publish) {
+        return intPropertyEncodedLength(publish.getMessageExpiryInterval(), MAX_EXPIRY_INTERVAL_DEFAULT) +
+                sharedPropertyLength(publish);
+    }
+
+    private static int sharedPropertyLength(final @NotNull PUBLISH publish) {
         int propertyLength = 0;
 
-        propertyLength += intPropertyEncodedLength(publish.getMessageExpiryInterval(), MAX_EXPIRY_INTERVAL_DEFAULT);
         propertyLength += nullablePropertyEncodedLength(publish.getPayloadFormatIndicator());
         propertyLength += nullablePropertyEncodedLength(publish.getContentType());
         propertyLength += nullablePropertyEncodedLength(publish.getResponseTopic());
@@ -150,7 +195,10 @@ public class Mqtt5PublishEncoder extends Mqtt5MessageWithUserPropertiesEncoder<P
         MqttVariableByteInteger.encode(publish.getPropertyLength(), out);
         encodeFixedProperties(publish, out);
         encodeOmissibleProperties(publish, out);
+        encodeSubscriptionIdentifiers(publish, out);
+    }
 
+    private static void encodeSubscriptionIdentifiers(final @NotNull PUBLISH publish, final @NotNull ByteBuf out) {
         final ImmutableIntArray subscriptionIdentifiers = publish.getSubscriptionIdentifiers();
         if (subscriptionIdentifiers != null) {
             for (int i = 0; i < subscriptionIdentifiers.length(); i++) {
@@ -164,6 +212,10 @@ public class Mqtt5PublishEncoder extends Mqtt5MessageWithUserPropertiesEncoder<P
                 publish.getMessageExpiryInterval(),
                 MAX_EXPIRY_INTERVAL_DEFAULT,
                 out);
+        encodeSharedProperties(publish, out);
+    }
+
+    private static void encodeSharedProperties(final @NotNull PUBLISH publish, final @NotNull ByteBuf out) {
         encodeNullableProperty(PAYLOAD_FORMAT_INDICATOR, publish.getPayloadFormatIndicator(), out);
         encodeNullableProperty(CONTENT_TYPE, publish.getContentType(), out);
         encodeNullableProperty(RESPONSE_TOPIC, publish.getResponseTopic(), out);
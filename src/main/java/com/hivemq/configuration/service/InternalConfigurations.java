@@ -46,6 +46,13 @@ public class InternalConfigurations {
      */
     public static final AtomicBoolean IN_MEMORY_SINGLE_WRITER = new AtomicBoolean(true);
 
+    /**
+     * Activates the thread-affine SingleWriter, in which every bucket group is owned by one writer thread that parks
+     * while its queue is empty. It is used unless the SingleWriter for in-memory persistence or group commits are
+     * active.
+     */
+    public static final AtomicBoolean SINGLE_WRITER_THREAD_AFFINE = new AtomicBoolean(false);
+
 
     /* ***************
      *  Persistences *
@@ -77,6 +84,19 @@ public class InternalConfigurations {
     public static final AtomicInteger SINGLE_WRITER_THREAD_POOL_SIZE =
             new AtomicInteger(AVAILABLE_PROCESSORS_TIMES_TWO);
     public static final AtomicInteger SINGLE_WRITER_CREDITS_PER_EXECUTION = new AtomicInteger(65);
+
+    /**
+     * Lets the client session and client queue tasks of one single writer execution share their Xodus transactions,
+     * so one transaction is committed per bucket instead of one per task.
+     */
+    public static final AtomicBoolean SINGLE_WRITER_GROUP_COMMIT_ENABLED = new AtomicBoolean(false);
+
+    /**
+     * One in how many single writer tasks the wait and execution time is measured. A value of 1 measures every task,
+     * a value of 0 disables the measurement.
+     */
+    public static final AtomicInteger SINGLE_WRITER_LATENCY_SAMPLE_RATE = new AtomicInteger(64);
+
     public static final AtomicInteger SINGLE_WRITER_INTERVAL_TO_CHECK_PENDING_TASKS_AND_SCHEDULE_MSEC =
             new AtomicInteger(500);
 
@@ -103,6 +123,47 @@ public class InternalConfigurations {
      */
     public static final AtomicInteger TOPIC_TREE_MAP_CREATION_THRESHOLD = new AtomicInteger(16);
 
+    /**
+     * Enables the copy-on-write mode of the topic tree. Matching topics does not take the segment locks then, instead
+     * writers publish modified copies of the node structures. Intended for workloads with a lot more publishes than
+     * subscription changes, as every subscription change copies the structures of the affected node.
+     */
+    public static final AtomicBoolean TOPIC_TREE_COPY_ON_WRITE_ENABLED = new AtomicBoolean(false);
+
+    /**
+     * Enables the cache for the subscribers of publish topics in front of the topic tree.
+     */
+    public static final AtomicBoolean TOPIC_TREE_MATCH_CACHE_ENABLED = new AtomicBoolean(false);
+
+    /**
+     * The maximum weight of the topic tree match cache. Each cached topic weighs one plus the amount of its subscribers
+     * and shared subscriptions.
+     */
+    public static final AtomicLong TOPIC_TREE_MATCH_CACHE_MAX_WEIGHT = new AtomicLong(1_000_000);
+
+    /**
+     * Enables the compact mode of the topic tree. The topic segments of all nodes are interned in a dictionary that
+     * assigns them int ids, and the children of large nodes are stored in open addressing maps keyed by these ids.
+     */
+    public static final AtomicBoolean TOPIC_TREE_COMPACT_MODE_ENABLED = new AtomicBoolean(false);
+
+    /**
+     * Stores the subscriptions of large topic tree nodes in packed primitive columns instead of maps of subscription
+     * objects. Shared subscription groups are packed as well.
+     */
+    public static final AtomicBoolean TOPIC_TREE_PACKED_SUBSCRIPTIONS_ENABLED = new AtomicBoolean(false);
+
+    /**
+     * The amount of threads that add the persisted subscriptions to the topic tree on startup. With 1 the
+     * subscriptions are added by the starting thread.
+     */
+    public static final AtomicInteger TOPIC_TREE_STARTUP_PARALLELISM = new AtomicInteger(AVAILABLE_PROCESSORS);
+
+    /**
+     * The amount of persisted subscriptions that are read before they are added to the topic tree on startup.
+     */
+    public static final AtomicInteger TOPIC_TREE_STARTUP_BATCH_SIZE = new AtomicInteger(100_000);
+
     /**
      * The configuration for qos 0 memory hard limit divisor, must be greater than 0.
      */
@@ -119,6 +180,68 @@ public class InternalConfigurations {
     public static final AtomicInteger SHARED_SUBSCRIPTION_WITHOUT_PACKET_ID_CACHE_MAX_SIZE_ENTRIES =
             new AtomicInteger(10000);
 
+    /**
+     * The configuration if rocks db ({@link PersistenceType#FILE_NATIVE}) is used instead of xodus
+     * ({@link PersistenceType#FILE}) for queued messages.
+     * <p>
+     * Like the type of the retained message and the payload persistence, this is an internal configuration and not
+     * part of the persistence section of the config file, which only selects the persistence mode. A changed type is
+     * migrated on startup by the client queue type migration. Xodus stays the default until the rocks db persistence
+     * has proven itself in production.
+     */
+    public static final AtomicReference<PersistenceType> CLIENT_QUEUE_PERSISTENCE_TYPE =
+            new AtomicReference<>(PersistenceType.FILE);
+
+    /**
+     * The memory that is used for rocksdb memtable as a portion of the RAM for the client queue persistence. (size =
+     * RAM/configValue)
+     */
+    public static final int CLIENT_QUEUE_MEMTABLE_SIZE_PORTION = 32;
+
+    /**
+     * The memory that is used for rocksdb block-cache as a portion of the RAM for the client queue persistence. (size
+     * = RAM/configValue)
+     */
+    public static final int CLIENT_QUEUE_BLOCK_CACHE_SIZE_PORTION = 64;
+
+    /**
+     * The block size used by rocksdb for the client queue persistence
+     */
+    public static final int CLIENT_QUEUE_BLOCK_SIZE_BYTES = 32 * 1024;
+
+    /**
+     * The configuration if rocks db ({@link PersistenceType#FILE_NATIVE}) is used instead of xodus
+     * ({@link PersistenceType#FILE}) for client sessions and their subscriptions.
+     * <p>
+     * Like {@link #CLIENT_QUEUE_PERSISTENCE_TYPE}, this is an internal configuration. A changed type is migrated on
+     * startup by the client session type migration, and xodus stays the default for now.
+     */
+    public static final AtomicReference<PersistenceType> CLIENT_SESSION_PERSISTENCE_TYPE =
+            new AtomicReference<>(PersistenceType.FILE);
+
+    /**
+     * The memory that is used for rocksdb memtable as a portion of the RAM for the client session and the client
+     * session subscription persistence each. (size = RAM/configValue)
+     */
+    public static final int CLIENT_SESSION_MEMTABLE_SIZE_PORTION = 64;
+
+    /**
+     * The memory that is used for rocksdb block-cache as a portion of the RAM for the client session and the client
+     * session subscription persistence each. (size = RAM/configValue)
+     */
+    public static final int CLIENT_SESSION_BLOCK_CACHE_SIZE_PORTION = 64;
+
+    /**
+     * The block size used by rocksdb for the client session and the client session subscription persistence
+     */
+    public static final int CLIENT_SESSION_BLOCK_SIZE_BYTES = 16 * 1024;
+
+    /**
+     * The bits per key of the rocksdb bloom filters of the client session and the client session subscription
+     * persistence, which are keyed by the client id.
+     */
+    public static final int CLIENT_SESSION_BLOOM_FILTER_BITS_PER_KEY = 10;
+
     /**
      * The amount of qos 0 messages that are queued if the channel is not writable
      */
@@ -195,6 +318,13 @@ public class InternalConfigurations {
      */
     public static final AtomicInteger RETAINED_MESSAGE_QUEUE_SIZE = new AtomicInteger(100_000);
 
+    /**
+     * The maximum amount of pending retained message writes of a bucket that are committed together. Writes to the
+     * same topic that are pending at the same time are collapsed to the last one. A value of 1 or less disables the
+     * batching and every write is submitted to the single writer on its own.
+     */
+    public static final AtomicInteger RETAINED_MESSAGE_WRITE_BATCH_SIZE = new AtomicInteger(1000);
+
     /**
      * The configuration if rocks db is used instead of xodus for retained messages.
      */
@@ -386,18 +516,6 @@ public class InternalConfigurations {
      *     Misc     *
      *******************/
 
-    /**
-     * The concurrency level of the shared subscription cache
-     */
-    public static final AtomicInteger SHARED_SUBSCRIPTION_CACHE_CONCURRENCY_LEVEL =
-            new AtomicInteger(AVAILABLE_PROCESSORS);
-
-    /**
-     * The concurrency level of the shared subscriber service cache
-     */
-    public static final AtomicInteger SHARED_SUBSCRIBER_CACHE_CONCURRENCY_LEVEL =
-            new AtomicInteger(AVAILABLE_PROCESSORS);
-
     public static final AtomicInteger INTERVAL_BETWEEN_CLEANUP_JOBS_SEC = new AtomicInteger(4);
 
     public static final AtomicBoolean MQTT_ALLOW_DOLLAR_TOPICS = new AtomicBoolean(false);
@@ -412,10 +530,6 @@ public class InternalConfigurations {
 
     public static final boolean XODUS_LOG_CACHE_USE_NIO = false;
 
-    public static final long SHARED_SUBSCRIPTION_CACHE_TIME_TO_LIVE_MSEC = 1000;
-
-    public static final int SHARED_SUBSCRIPTION_CACHE_MAX_SIZE_SUBSCRIPTIONS = 10000;
-
     /**
      * The period with which stats are written to the LOG file. Periodic writes are disabled when set to '0'.
      */
@@ -438,9 +552,126 @@ public class InternalConfigurations {
 
     public static final AtomicInteger COUNT_OF_PUBLISHES_WRITTEN_TO_CHANNEL_TO_TRIGGER_FLUSH = new AtomicInteger(128);
 
-    public static final long SHARED_SUBSCRIBER_CACHE_TIME_TO_LIVE_MSEC = 1000;
+    /**
+     * The maximum amount of bytes of PUBLISH messages that are written to a channel before it is flushed. The threshold
+     * of a channel is lowered each time the channel becomes unwritable and grows back up to this value with every flush
+     * while the channel is writable.
+     */
+    public static final AtomicInteger PUBLISH_FLUSH_THRESHOLD_BYTES = new AtomicInteger(64 * 1024);
+
+    /**
+     * The maximum time in microseconds a written PUBLISH message waits for more messages before the channel is flushed,
+     * if neither the count nor the byte threshold for a flush is reached. A value of 0 flushes the channel as soon as
+     * no more messages are waiting to be written.
+     */
+    public static final AtomicInteger PUBLISH_FLUSH_MAX_DELAY_MICROS = new AtomicInteger(0);
+
+    /**
+     * Enables the encoding cache for outgoing PUBLISH messages. If enabled, the payload and the properties that are the
+     * same for all subscribers are encoded once per PUBLISH and shared by all subscribers, so only a small header is
+     * encoded per subscriber.
+     */
+    public static final AtomicBoolean PUBLISH_ENCODING_CACHE_ENABLED = new AtomicBoolean(true);
+
+    /**
+     * The minimum payload size of a PUBLISH to use the encoding cache. For smaller payloads encoding into a single
+     * buffer is cheaper than composing the shared and the per subscriber part.
+     */
+    public static final AtomicInteger PUBLISH_ENCODING_CACHE_MIN_PAYLOAD_SIZE_BYTES = new AtomicInteger(1024);
+
+    /**
+     * The maximum size of all encoded PUBLISH messages in the encoding cache.
+     */
+    public static final AtomicLong PUBLISH_ENCODING_CACHE_MAX_SIZE_BYTES = new AtomicLong(64 * 1024 * 1024); // 64MB
+
+    /**
+     * The time after which an encoded PUBLISH is removed from the encoding cache, even if writes of the PUBLISH are
+     * still pending. An encoded PUBLISH is usually removed earlier, as soon as the last pending write completed.
+     * Subscribers that are still writing the PUBLISH keep the encoded PUBLISH until their write completes.
+     */
+    public static final AtomicInteger PUBLISH_ENCODING_CACHE_TIME_TO_LIVE_MSEC = new AtomicInteger(1000);
+
+    /**
+     * Keeps the payload of incoming PUBLISH messages off-heap as a reference counted slice of the inbound buffer
+     * instead of copying it to a byte[]. The payload is written to the subscribers without copying it again.
+     * <p>
+     * Only takes effect with the in-memory persistence, as the file persistence stores the payload on the heap anyway.
+     */
+    public static final AtomicBoolean PUBLISH_PAYLOAD_BUFFER_ENABLED = new AtomicBoolean(false);
+
+    /**
+     * The minimum payload size of a PUBLISH to keep the payload off-heap. A slice keeps the whole inbound buffer alive,
+     * so only large payloads should be kept off-heap.
+     */
+    public static final AtomicInteger PUBLISH_PAYLOAD_BUFFER_MIN_SIZE_BYTES = new AtomicInteger(16 * 1024);
 
-    public static final int SHARED_SUBSCRIBER_CACHE_MAX_SIZE_SUBSCRIBERS = 10000;
+    /**
+     * The minimum number of non-shared subscribers of a PUBLISH from which on the PUBLISH is distributed in batches:
+     * one single writer task per persistence bucket adds the PUBLISH to the queues of all subscribers in the bucket.
+     * <p>
+     * A value of 0 disables the batched distribution.
+     */
+    public static final AtomicInteger PUBLISH_DISTRIBUTION_BATCH_MIN_SUBSCRIBERS = new AtomicInteger(64);
+
+    /**
+     * Writes QoS 0 PUBLISH messages for connected subscribers directly to the channel instead of adding them to the
+     * client queue, if the channel is writable and no messages of the client are in-flight. Otherwise the PUBLISH is
+     * queued as usual.
+     */
+    public static final AtomicBoolean QOS_0_DIRECT_WRITE_ENABLED = new AtomicBoolean(false);
+
+    /**
+     * One in how many PUBLISH messages the latency of each stage of the publish path is measured for the publish
+     * stage timers. A value of 1 measures every PUBLISH, a value of 0 disables the measurement.
+     */
+    public static final AtomicInteger PUBLISH_LATENCY_SAMPLE_RATE = new AtomicInteger(64);
+
+    /**
+     * Enables the back-pressure for publishers: while the client queues are under pressure, the channel of a publisher
+     * stops reading after one of its PUBLISH messages was queued for subscribers, until the pressure has dropped
+     * again.
+     */
+    public static final AtomicBoolean PUBLISH_BACK_PRESSURE_ENABLED = new AtomicBoolean(false);
+
+    /**
+     * The fill level of a client queue in percent of its limit from which on the queue counts as congested.
+     */
+    public static final AtomicInteger PUBLISH_BACK_PRESSURE_QUEUE_FILL_PERCENT = new AtomicInteger(80);
+
+    /**
+     * The amount of congested client queues from which on the client queues are under pressure.
+     */
+    public static final AtomicInteger PUBLISH_BACK_PRESSURE_CONGESTED_QUEUES = new AtomicInteger(1000);
+
+    /**
+     * The memory usage of the queued messages in bytes from which on the client queues are under pressure, if the
+     * memory persistence is used.
+     */
+    public static final AtomicLong PUBLISH_BACK_PRESSURE_QUEUED_BYTES = new AtomicLong(256 * 1024 * 1024);
+
+    /**
+     * The percentage of the above thresholds to which a client queue and the client queues in total have to drop
+     * before they no longer count as congested or under pressure.
+     */
+    public static final AtomicInteger PUBLISH_BACK_PRESSURE_RESUME_PERCENT = new AtomicInteger(50);
+
+    /**
+     * The interval in milliseconds in which a paused publisher checks whether it can resume reading.
+     */
+    public static final AtomicInteger PUBLISH_BACK_PRESSURE_CHECK_INTERVAL_MSEC = new AtomicInteger(100);
+
+    /**
+     * Enables the recycling of the PUBACK, PUBREC, PUBREL and PUBCOMP messages that the broker sends on its own.
+     *
+     * @see com.hivemq.mqtt.message.RecyclableMessage
+     */
+    public static final AtomicBoolean MESSAGE_RECYCLING_ENABLED = new AtomicBoolean(false);
+
+    /**
+     * Tracks every recycled message that was taken but not released yet, including the stack trace where it was
+     * taken. Only meant for tests, as the tracking is expensive.
+     */
+    public static final AtomicBoolean MESSAGE_RECYCLING_LEAK_DETECTION_ENABLED = new AtomicBoolean(false);
 
     public static final int CLEANUP_JOB_PARALLELISM = 1;
 
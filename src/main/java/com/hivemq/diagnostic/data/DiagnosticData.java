@@ -39,6 +39,7 @@ public class DiagnosticData {
     private final HiveMQInformation hiveMQInformation;
     private final HiveMQSystemInformation systemInformation;
     private final NetworkInterfaceInformation networkInterfaceInformation;
+    private final TopicTreeInformation topicTreeInformation;
 
 
     @Inject
@@ -46,11 +47,13 @@ public class DiagnosticData {
             final SystemPropertyInformation systemPropertyInformation,
             final HiveMQInformation hiveMQInformation,
             final HiveMQSystemInformation systemInformation,
-            final NetworkInterfaceInformation networkInterfaceInformation) {
+            final NetworkInterfaceInformation networkInterfaceInformation,
+            final TopicTreeInformation topicTreeInformation) {
         this.systemPropertyInformation = systemPropertyInformation;
         this.hiveMQInformation = hiveMQInformation;
         this.systemInformation = systemInformation;
         this.networkInterfaceInformation = networkInterfaceInformation;
+        this.topicTreeInformation = topicTreeInformation;
     }
 
     public String get() {
@@ -76,6 +79,9 @@ public class DiagnosticData {
         diagnosticWriter.append(createHeadline("Network Interfaces"));
         diagnosticWriter.append(networkInterfaceInformation.getNetworkInterfaceInformation());
 
+        diagnosticWriter.append(createHeadline("Topic Tree"));
+        diagnosticWriter.append(topicTreeInformation.getTopicTreeInformation());
+
         return diagnosticWriter.toString();
     }
 
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.diagnostic.data;
+
+import com.hivemq.mqtt.topic.tree.LocalTopicTree;
+
+import javax.inject.Inject;
+
+/**
+ * The shape of the topic tree and the contention on its segment locks.
+ */
+class TopicTreeInformation extends AbstractInformation {
+
+    private final LocalTopicTree topicTree;
+
+    @Inject
+    public TopicTreeInformation(final LocalTopicTree topicTree) {
+        this.topicTree = topicTree;
+    }
+
+    public String getTopicTreeInformation() {
+        try {
+            return topicTree.collectStatistics().dump();
+        } catch (final Exception e) {
+            return "Could not collect topic tree information";
+        }
+    }
+}
@@ -227,6 +227,8 @@ public class IncomingPublishHandler {
                 final PUBLISH finalPublish = PUBLISHFactory.merge(inputHolder.get().getPublishPacket(), publish);
                 authorizerService.authorizePublish(ctx, finalPublish);
             }
+            // The payload was copied for the extensions, the merged PUBLISH does not use an off-heap payload
+            publish.releasePayload();
         }
 
         private void dropMessage(final @NotNull PublishInboundOutputImpl output) {
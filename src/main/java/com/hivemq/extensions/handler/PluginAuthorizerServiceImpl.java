@@ -46,6 +46,8 @@ import com.hivemq.extensions.handler.tasks.SubscriptionAuthorizerTask;
 import com.hivemq.extensions.handler.tasks.WillPublishAuthorizationProcessedTask;
 import com.hivemq.extensions.packets.general.UserPropertiesImpl;
 import com.hivemq.extensions.services.auth.Authorizers;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.metrics.SampledTimer;
 import com.hivemq.mqtt.handler.disconnect.MqttServerDisconnector;
 import com.hivemq.mqtt.handler.publish.IncomingPublishService;
 import com.hivemq.mqtt.handler.subscribe.IncomingSubscribeService;
@@ -80,6 +82,7 @@ public class PluginAuthorizerServiceImpl implements PluginAuthorizerService {
     private final @NotNull ExtensionPriorityComparator extensionPriorityComparator;
     private final @NotNull IncomingPublishService incomingPublishService;
     private final @NotNull IncomingSubscribeService incomingSubscribeService;
+    private final @NotNull SampledTimer authorizationTimer;
 
     private final boolean allowDollarTopics;
 
@@ -92,7 +95,8 @@ public class PluginAuthorizerServiceImpl implements PluginAuthorizerService {
             final @NotNull HiveMQExtensions hiveMQExtensions,
             final @NotNull MqttServerDisconnector mqttServerDisconnector,
             final @NotNull IncomingPublishService incomingPublishService,
-            final @NotNull IncomingSubscribeService incomingSubscribeService) {
+            final @NotNull IncomingSubscribeService incomingSubscribeService,
+            final @NotNull MetricsHolder metricsHolder) {
 
         this.authorizers = authorizers;
         this.asyncer = asyncer;
@@ -102,6 +106,7 @@ public class PluginAuthorizerServiceImpl implements PluginAuthorizerService {
         this.mqttServerDisconnector = mqttServerDisconnector;
         this.extensionPriorityComparator = new ExtensionPriorityComparator(hiveMQExtensions);
         this.incomingSubscribeService = incomingSubscribeService;
+        this.authorizationTimer = metricsHolder.getPublishAuthorizationTimer();
         this.allowDollarTopics = MQTT_ALLOW_DOLLAR_TOPICS.get();
     }
 
@@ -148,6 +153,7 @@ public class PluginAuthorizerServiceImpl implements PluginAuthorizerService {
         final PublishAuthorizerInputImpl input = new PublishAuthorizerInputImpl(msg, ctx.channel(), clientId);
         final PublishAuthorizerOutputImpl output = new PublishAuthorizerOutputImpl(asyncer);
 
+        final long start = authorizationTimer.start();
         final SettableFuture<PublishAuthorizerOutputImpl> publishProcessedFuture = executePublishAuthorizer(clientId,
                 providerMap,
                 clientAuthorizers,
@@ -155,6 +161,9 @@ public class PluginAuthorizerServiceImpl implements PluginAuthorizerService {
                 input,
                 output,
                 ctx);
+        if (start != SampledTimer.NOT_SAMPLED) {
+            publishProcessedFuture.addListener(() -> authorizationTimer.stop(start), MoreExecutors.directExecutor());
+        }
 
         Futures.addCallback(publishProcessedFuture,
                 new PublishAuthorizationProcessedTask(msg, ctx, mqttServerDisconnector, incomingPublishService),
@@ -135,6 +135,7 @@ public class PubackInterceptorHandler {
         final ClientConnection clientConnection = ClientConnection.of(channel);
         final String clientId = clientConnection.getClientId();
         if (clientId == null) {
+            puback.recycle();
             return;
         }
 
@@ -153,6 +154,8 @@ public class PubackInterceptorHandler {
         final ConnectionInformation connectionInfo = ExtensionInformationUtil.getAndSetConnectionInformation(channel);
 
         final PubackPacketImpl packet = new PubackPacketImpl(puback);
+        // the interceptors work on a copy and a new PUBACK is written afterwards
+        puback.recycle();
         final PubackOutboundInputImpl input = new PubackOutboundInputImpl(clientInfo, connectionInfo, packet);
         final ExtensionParameterHolder<PubackOutboundInputImpl> inputHolder = new ExtensionParameterHolder<>(input);
 
@@ -135,6 +135,7 @@ public class PubcompInterceptorHandler {
         final ClientConnection clientConnection = ClientConnection.of(channel);
         final String clientId = clientConnection.getClientId();
         if (clientId == null) {
+            pubcomp.recycle();
             return;
         }
 
@@ -153,6 +154,8 @@ public class PubcompInterceptorHandler {
         final ConnectionInformation connectionInfo = ExtensionInformationUtil.getAndSetConnectionInformation(channel);
 
         final PubcompPacketImpl packet = new PubcompPacketImpl(pubcomp);
+        // the interceptors work on a copy and a new PUBCOMP is written afterwards
+        pubcomp.recycle();
         final PubcompOutboundInputImpl input = new PubcompOutboundInputImpl(clientInfo, connectionInfo, packet);
         final ExtensionParameterHolder<PubcompOutboundInputImpl> inputHolder = new ExtensionParameterHolder<>(input);
 
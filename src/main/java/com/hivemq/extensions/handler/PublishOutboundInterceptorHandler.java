@@ -90,6 +90,7 @@ public class PublishOutboundInterceptorHandler {
         final ClientConnection clientConnection = ClientConnection.of(channel);
         final String clientId = clientConnection.getClientId();
         if (clientId == null) {
+            publish.releasePayload();
             return;
         }
 
@@ -210,6 +211,8 @@ public class PublishOutboundInterceptorHandler {
                 final PUBLISH mergedPublish = PUBLISHFactory.merge(inputHolder.get().getPublishPacket(), publish);
                 ctx.writeAndFlush(mergedPublish, promise);
             }
+            // The payload was copied for the extensions, the merged PUBLISH does not use an off-heap payload
+            publish.releasePayload();
         }
     }
 
@@ -134,6 +134,7 @@ public class PubrecInterceptorHandler {
         final ClientConnection clientConnection = ClientConnection.of(channel);
         final String clientId = clientConnection.getClientId();
         if (clientId == null) {
+            pubrec.recycle();
             return;
         }
 
@@ -152,6 +153,8 @@ public class PubrecInterceptorHandler {
         final ConnectionInformation connectionInfo = ExtensionInformationUtil.getAndSetConnectionInformation(channel);
 
         final PubrecPacketImpl packet = new PubrecPacketImpl(pubrec);
+        // the interceptors work on a copy and a new PUBREC is written afterwards
+        pubrec.recycle();
         final PubrecOutboundInputImpl input = new PubrecOutboundInputImpl(clientInfo, connectionInfo, packet);
         final ExtensionParameterHolder<PubrecOutboundInputImpl> inputHolder = new ExtensionParameterHolder<>(input);
 
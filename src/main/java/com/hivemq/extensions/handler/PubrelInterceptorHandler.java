@@ -134,6 +134,7 @@ public class PubrelInterceptorHandler {
         final ClientConnection clientConnection = ClientConnection.of(channel);
         final String clientId = clientConnection.getClientId();
         if (clientId == null) {
+            pubrel.recycle();
             return;
         }
 
@@ -152,6 +153,8 @@ public class PubrelInterceptorHandler {
         final ConnectionInformation connectionInfo = ExtensionInformationUtil.getAndSetConnectionInformation(channel);
 
         final PubrelPacketImpl packet = new PubrelPacketImpl(pubrel);
+        // the interceptors work on a copy and a new PUBREL is written afterwards
+        pubrel.recycle();
         final PubrelOutboundInputImpl input = new PubrelOutboundInputImpl(clientInfo, connectionInfo, packet);
         final ExtensionParameterHolder<PubrelOutboundInputImpl> inputHolder = new ExtensionParameterHolder<>(input);
 
@@ -17,6 +17,9 @@ package com.hivemq.metrics;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
 
 /**
  * This class holds a constant {@link HiveMQMetric} for every metric which is provided by HiveMQ
@@ -157,6 +160,19 @@ public class HiveMQMetrics {
     public static final HiveMQMetric<Gauge<Number>> QUEUED_MESSAGES_MEMORY_PERSISTENCE_TOTAL_SIZE =
             HiveMQMetric.gaugeValue("com.hivemq.persistence.queued-messages.in-memory.total-size");
 
+    /**
+     * represents a {@link Gauge}, which holds the amount of client queues that are currently congested, if the
+     * back-pressure for publishers is enabled
+     */
+    public static final HiveMQMetric<Gauge<Number>> QUEUED_MESSAGES_CONGESTED_QUEUES_CURRENT =
+            HiveMQMetric.gaugeValue("com.hivemq.persistence.queued-messages.congested-queues.current");
+
+    /**
+     * represents a {@link Counter}, which counts how often publishers stopped reading because of the back-pressure
+     */
+    public static final HiveMQMetric<Counter> PUBLISH_BACK_PRESSURE_PAUSED_COUNT =
+            HiveMQMetric.valueOf("com.hivemq.publish.back-pressure.paused.count", Counter.class);
+
     /**
      * represents a {@link Counter} for the number of MQTT client channels which are currently not writable.
      */
@@ -180,5 +196,168 @@ public class HiveMQMetrics {
     public static final HiveMQMetric<Counter> WILL_MESSAGE_PUBLISHED_COUNT_TOTAL =
             HiveMQMetric.valueOf("com.hivemq.messages.will.published.count.total", Counter.class);
 
-}
+    /**
+     * represents a {@link Counter}, which counts the publish topics whose subscribers were found in the topic tree
+     * match cache
+     */
+    public static final HiveMQMetric<Counter> TOPIC_TREE_MATCH_CACHE_HIT_COUNT =
+            HiveMQMetric.valueOf("com.hivemq.topic-tree.match-cache.hit.count", Counter.class);
+
+    /**
+     * represents a {@link Counter}, which counts the publish topics whose subscribers were not found in the topic tree
+     * match cache
+     */
+    public static final HiveMQMetric<Counter> TOPIC_TREE_MATCH_CACHE_MISS_COUNT =
+            HiveMQMetric.valueOf("com.hivemq.topic-tree.match-cache.miss.count", Counter.class);
+
+    /**
+     * represents a {@link Counter}, which counts the entries that were evicted from the topic tree match cache because
+     * of its size limit
+     */
+    public static final HiveMQMetric<Counter> TOPIC_TREE_MATCH_CACHE_EVICTION_COUNT =
+            HiveMQMetric.valueOf("com.hivemq.topic-tree.match-cache.eviction.count", Counter.class);
+
+    /**
+     * represents a {@link Gauge}, which measures the approximate memory usage of the topic tree per subscription in
+     * bytes
+     */
+    public static final HiveMQMetric<Gauge<Number>> TOPIC_TREE_BYTES_PER_SUBSCRIPTION =
+            HiveMQMetric.gaugeValue("com.hivemq.topic-tree.bytes-per-subscription");
+
+    /**
+     * represents a {@link Gauge}, which holds the amount of nodes in the topic tree
+     */
+    public static final HiveMQMetric<Gauge<Number>> TOPIC_TREE_NODES_CURRENT =
+            HiveMQMetric.gaugeValue("com.hivemq.topic-tree.nodes.current");
+
+    /**
+     * represents a {@link Gauge}, which holds the depth of the deepest node in the topic tree
+     */
+    public static final HiveMQMetric<Gauge<Number>> TOPIC_TREE_DEPTH_MAX =
+            HiveMQMetric.gaugeValue("com.hivemq.topic-tree.depth.max");
+
+    /**
+     * represents a {@link Gauge}, which holds the highest amount of children of a node in the topic tree
+     */
+    public static final HiveMQMetric<Gauge<Number>> TOPIC_TREE_FAN_OUT_MAX =
+            HiveMQMetric.gaugeValue("com.hivemq.topic-tree.fan-out.max");
+
+    /**
+     * represents a {@link Gauge}, which holds the amount of topic tree nodes that store their children in a map
+     */
+    public static final HiveMQMetric<Gauge<Number>> TOPIC_TREE_CHILDREN_MAP_NODES_CURRENT =
+            HiveMQMetric.gaugeValue("com.hivemq.topic-tree.map-mode.children.nodes.current");
+
+    /**
+     * represents a {@link Gauge}, which holds the amount of topic tree nodes that store their subscriptions in a map
+     */
+    public static final HiveMQMetric<Gauge<Number>> TOPIC_TREE_SUBSCRIPTIONS_MAP_NODES_CURRENT =
+            HiveMQMetric.gaugeValue("com.hivemq.topic-tree.map-mode.subscriptions.nodes.current");
+
+    /**
+     * represents a {@link Gauge}, which holds the amount of subscriptions to the root wildcard '#'
+     */
+    public static final HiveMQMetric<Gauge<Number>> TOPIC_TREE_ROOT_WILDCARD_SUBSCRIPTIONS_CURRENT =
+            HiveMQMetric.gaugeValue("com.hivemq.topic-tree.root-wildcard.subscriptions.current");
+
+    /**
+     * represents a {@link Counter}, which counts the acquisitions of topic tree segment locks that had to wait
+     */
+    public static final HiveMQMetric<Counter> TOPIC_TREE_SEGMENT_LOCK_CONTENDED_COUNT =
+            HiveMQMetric.valueOf("com.hivemq.topic-tree.segment-lock.contended.count", Counter.class);
+
+    /**
+     * represents a {@link Counter}, which sums up the time in nanoseconds spent waiting for topic tree segment locks
+     */
+    public static final HiveMQMetric<Counter> TOPIC_TREE_SEGMENT_LOCK_WAIT_TIME_NANOS =
+            HiveMQMetric.valueOf("com.hivemq.topic-tree.segment-lock.wait-time-nanos.total", Counter.class);
+
+    /**
+     * represents a {@link Gauge}, which holds the time in milliseconds it took to read the persisted subscriptions
+     * for the topic tree on startup
+     */
+    public static final HiveMQMetric<Gauge<Number>> TOPIC_TREE_STARTUP_READ_TIME_MILLIS =
+            HiveMQMetric.gaugeValue("com.hivemq.topic-tree.startup.read.time-millis");
 
+    /**
+     * represents a {@link Gauge}, which holds the time in milliseconds it took to add the persisted subscriptions to
+     * the topic tree on startup
+     */
+    public static final HiveMQMetric<Gauge<Number>> TOPIC_TREE_STARTUP_BUILD_TIME_MILLIS =
+            HiveMQMetric.gaugeValue("com.hivemq.topic-tree.startup.build.time-millis");
+
+    /**
+     * represents a {@link Gauge}, which holds the amount of persisted subscriptions that were added to the topic tree
+     * on startup
+     */
+    public static final HiveMQMetric<Gauge<Number>> TOPIC_TREE_STARTUP_SUBSCRIPTIONS =
+            HiveMQMetric.gaugeValue("com.hivemq.topic-tree.startup.subscriptions");
+
+    /**
+     * represents a {@link Timer}, which measures the time from the authorization result of an incoming PUBLISH until
+     * it is acknowledged, for a sample of the PUBLISH messages
+     */
+    public static final HiveMQMetric<Timer> PUBLISH_STAGE_INCOMING_TIME =
+            HiveMQMetric.valueOf("com.hivemq.publish.stage.incoming.time", Timer.class);
+
+    /**
+     * represents a {@link Timer}, which measures the time the authorizers of the extensions take to authorize an
+     * incoming PUBLISH, for a sample of the PUBLISH messages
+     */
+    public static final HiveMQMetric<Timer> PUBLISH_STAGE_AUTHORIZATION_TIME =
+            HiveMQMetric.valueOf("com.hivemq.publish.stage.authorization.time", Timer.class);
+
+    /**
+     * represents a {@link Timer}, which measures the time it takes to find the subscribers of a PUBLISH in the topic
+     * tree, for a sample of the PUBLISH messages
+     */
+    public static final HiveMQMetric<Timer> PUBLISH_STAGE_TOPIC_MATCHING_TIME =
+            HiveMQMetric.valueOf("com.hivemq.publish.stage.topic-matching.time", Timer.class);
+
+    /**
+     * represents a {@link Timer}, which measures the time it takes to hand a PUBLISH over to the queues of all its
+     * subscribers, for a sample of the PUBLISH messages
+     */
+    public static final HiveMQMetric<Timer> PUBLISH_STAGE_DISTRIBUTION_TIME =
+            HiveMQMetric.valueOf("com.hivemq.publish.stage.distribution.time", Timer.class);
+
+    /**
+     * represents a {@link Timer}, which measures the time it takes to add a PUBLISH to a client queue including the
+     * wait for the single writer, for a sample of the queue additions
+     */
+    public static final HiveMQMetric<Timer> PUBLISH_STAGE_QUEUE_TIME =
+            HiveMQMetric.valueOf("com.hivemq.publish.stage.queue.time", Timer.class);
+
+    /**
+     * represents a {@link Timer}, which measures the time from polling a client queue until the polled PUBLISH
+     * messages are handed over to the channel, for a sample of the polls
+     */
+    public static final HiveMQMetric<Timer> PUBLISH_STAGE_POLL_TIME =
+            HiveMQMetric.valueOf("com.hivemq.publish.stage.poll.time", Timer.class);
+
+    /**
+     * represents a {@link Timer}, which measures the time from handing PUBLISH messages over to the channel until
+     * they are written and flushed, for a sample of the handed over batches
+     */
+    public static final HiveMQMetric<Timer> PUBLISH_STAGE_FLUSH_TIME =
+            HiveMQMetric.valueOf("com.hivemq.publish.stage.flush.time", Timer.class);
+
+    /**
+     * represents a {@link Meter}, which measures the rate of single writer tasks that are committed in a group commit
+     */
+    public static final HiveMQMetric<Meter> SINGLE_WRITER_GROUP_COMMIT_TASKS =
+            HiveMQMetric.valueOf("com.hivemq.persistence.single-writer.group-commit.tasks", Meter.class);
+
+    /**
+     * represents a {@link Histogram}, which holds the amount of single writer tasks per group commit
+     */
+    public static final HiveMQMetric<Histogram> SINGLE_WRITER_GROUP_COMMIT_SIZE =
+            HiveMQMetric.valueOf("com.hivemq.persistence.single-writer.group-commit.size", Histogram.class);
+
+    /**
+     * represents a {@link Timer}, which measures the time it takes to execute and commit the tasks of a group commit
+     */
+    public static final HiveMQMetric<Timer> SINGLE_WRITER_GROUP_COMMIT_TIME =
+            HiveMQMetric.valueOf("com.hivemq.persistence.single-writer.group-commit.time", Timer.class);
+
+}
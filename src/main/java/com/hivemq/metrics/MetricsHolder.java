@@ -17,9 +17,11 @@ package com.hivemq.metrics;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.MetricRegistry;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 
 import javax.inject.Singleton;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.hivemq.metrics.HiveMQMetrics.CONNECTIONS_CLOSED_COUNT;
 import static com.hivemq.metrics.HiveMQMetrics.DROPPED_MESSAGE_COUNT;
@@ -29,7 +31,19 @@ import static com.hivemq.metrics.HiveMQMetrics.INCOMING_PUBLISH_COUNT;
 import static com.hivemq.metrics.HiveMQMetrics.MQTT_CONNECTION_NOT_WRITABLE_CURRENT;
 import static com.hivemq.metrics.HiveMQMetrics.OUTGOING_MESSAGE_COUNT;
 import static com.hivemq.metrics.HiveMQMetrics.OUTGOING_PUBLISH_COUNT;
+import static com.hivemq.metrics.HiveMQMetrics.PUBLISH_STAGE_AUTHORIZATION_TIME;
+import static com.hivemq.metrics.HiveMQMetrics.PUBLISH_STAGE_DISTRIBUTION_TIME;
+import static com.hivemq.metrics.HiveMQMetrics.PUBLISH_STAGE_FLUSH_TIME;
+import static com.hivemq.metrics.HiveMQMetrics.PUBLISH_STAGE_INCOMING_TIME;
+import static com.hivemq.metrics.HiveMQMetrics.PUBLISH_STAGE_POLL_TIME;
+import static com.hivemq.metrics.HiveMQMetrics.PUBLISH_STAGE_QUEUE_TIME;
+import static com.hivemq.metrics.HiveMQMetrics.PUBLISH_STAGE_TOPIC_MATCHING_TIME;
 import static com.hivemq.metrics.HiveMQMetrics.SUBSCRIPTIONS_CURRENT;
+import static com.hivemq.metrics.HiveMQMetrics.TOPIC_TREE_MATCH_CACHE_EVICTION_COUNT;
+import static com.hivemq.metrics.HiveMQMetrics.TOPIC_TREE_MATCH_CACHE_HIT_COUNT;
+import static com.hivemq.metrics.HiveMQMetrics.TOPIC_TREE_MATCH_CACHE_MISS_COUNT;
+import static com.hivemq.metrics.HiveMQMetrics.TOPIC_TREE_SEGMENT_LOCK_CONTENDED_COUNT;
+import static com.hivemq.metrics.HiveMQMetrics.TOPIC_TREE_SEGMENT_LOCK_WAIT_TIME_NANOS;
 import static com.hivemq.metrics.HiveMQMetrics.WILL_MESSAGE_COUNT;
 import static com.hivemq.metrics.HiveMQMetrics.WILL_MESSAGE_PUBLISHED_COUNT_TOTAL;
 
@@ -60,6 +74,26 @@ public class MetricsHolder {
     private final @NotNull Counter storedWillMessagesCount;
     private final @NotNull Counter publishedWillMessagesCount;
 
+    private final @NotNull Counter topicTreeMatchCacheHitCounter;
+    private final @NotNull Counter topicTreeMatchCacheMissCounter;
+    private final @NotNull Counter topicTreeMatchCacheEvictionCounter;
+
+    private final @NotNull Counter topicTreeSegmentLockContendedCounter;
+    private final @NotNull Counter topicTreeSegmentLockWaitTimeCounter;
+
+    private final @NotNull SampledTimer publishIncomingTimer;
+    private final @NotNull SampledTimer publishAuthorizationTimer;
+    private final @NotNull SampledTimer publishTopicMatchingTimer;
+    private final @NotNull SampledTimer publishDistributionTimer;
+    private final @NotNull SampledTimer publishQueueTimer;
+    private final @NotNull SampledTimer publishPollTimer;
+    private final @NotNull SampledTimer publishFlushTimer;
+
+    private final @NotNull ConcurrentHashMap<String, PublishFlushMetrics> publishFlushMetrics =
+            new ConcurrentHashMap<>();
+    private final @NotNull ConcurrentHashMap<String, SingleWriterMetrics> singleWriterMetrics =
+            new ConcurrentHashMap<>();
+
     public MetricsHolder(final @NotNull MetricRegistry metricRegistry) {
 
         this.metricRegistry = metricRegistry;
@@ -82,6 +116,25 @@ public class MetricsHolder {
 
         storedWillMessagesCount = metricRegistry.counter(WILL_MESSAGE_COUNT.name());
         publishedWillMessagesCount = metricRegistry.counter(WILL_MESSAGE_PUBLISHED_COUNT_TOTAL.name());
+
+        topicTreeMatchCacheHitCounter = metricRegistry.counter(TOPIC_TREE_MATCH_CACHE_HIT_COUNT.name());
+        topicTreeMatchCacheMissCounter = metricRegistry.counter(TOPIC_TREE_MATCH_CACHE_MISS_COUNT.name());
+        topicTreeMatchCacheEvictionCounter = metricRegistry.counter(TOPIC_TREE_MATCH_CACHE_EVICTION_COUNT.name());
+
+        topicTreeSegmentLockContendedCounter = metricRegistry.counter(TOPIC_TREE_SEGMENT_LOCK_CONTENDED_COUNT.name());
+        topicTreeSegmentLockWaitTimeCounter = metricRegistry.counter(TOPIC_TREE_SEGMENT_LOCK_WAIT_TIME_NANOS.name());
+
+        final int sampleRate = InternalConfigurations.PUBLISH_LATENCY_SAMPLE_RATE.get();
+        publishIncomingTimer = new SampledTimer(metricRegistry.timer(PUBLISH_STAGE_INCOMING_TIME.name()), sampleRate);
+        publishAuthorizationTimer =
+                new SampledTimer(metricRegistry.timer(PUBLISH_STAGE_AUTHORIZATION_TIME.name()), sampleRate);
+        publishTopicMatchingTimer =
+                new SampledTimer(metricRegistry.timer(PUBLISH_STAGE_TOPIC_MATCHING_TIME.name()), sampleRate);
+        publishDistributionTimer =
+                new SampledTimer(metricRegistry.timer(PUBLISH_STAGE_DISTRIBUTION_TIME.name()), sampleRate);
+        publishQueueTimer = new SampledTimer(metricRegistry.timer(PUBLISH_STAGE_QUEUE_TIME.name()), sampleRate);
+        publishPollTimer = new SampledTimer(metricRegistry.timer(PUBLISH_STAGE_POLL_TIME.name()), sampleRate);
+        publishFlushTimer = new SampledTimer(metricRegistry.timer(PUBLISH_STAGE_FLUSH_TIME.name()), sampleRate);
     }
 
     public @NotNull MetricRegistry getMetricRegistry() {
@@ -131,4 +184,72 @@ public class MetricsHolder {
     public @NotNull Counter getPublishedWillMessagesCount() {
         return publishedWillMessagesCount;
     }
+
+    public @NotNull Counter getTopicTreeMatchCacheHitCounter() {
+        return topicTreeMatchCacheHitCounter;
+    }
+
+    public @NotNull Counter getTopicTreeMatchCacheMissCounter() {
+        return topicTreeMatchCacheMissCounter;
+    }
+
+    public @NotNull Counter getTopicTreeMatchCacheEvictionCounter() {
+        return topicTreeMatchCacheEvictionCounter;
+    }
+
+    public @NotNull Counter getTopicTreeSegmentLockContendedCounter() {
+        return topicTreeSegmentLockContendedCounter;
+    }
+
+    public @NotNull Counter getTopicTreeSegmentLockWaitTimeCounter() {
+        return topicTreeSegmentLockWaitTimeCounter;
+    }
+
+    public @NotNull SampledTimer getPublishIncomingTimer() {
+        return publishIncomingTimer;
+    }
+
+    public @NotNull SampledTimer getPublishAuthorizationTimer() {
+        return publishAuthorizationTimer;
+    }
+
+    public @NotNull SampledTimer getPublishTopicMatchingTimer() {
+        return publishTopicMatchingTimer;
+    }
+
+    public @NotNull SampledTimer getPublishDistributionTimer() {
+        return publishDistributionTimer;
+    }
+
+    public @NotNull SampledTimer getPublishQueueTimer() {
+        return publishQueueTimer;
+    }
+
+    public @NotNull SampledTimer getPublishPollTimer() {
+        return publishPollTimer;
+    }
+
+    public @NotNull SampledTimer getPublishFlushTimer() {
+        return publishFlushTimer;
+    }
+
+    /**
+     * @param listenerName the name of the listener
+     * @return the metrics of the PUBLISH flushes of the connections of the listener
+     */
+    public @NotNull PublishFlushMetrics getPublishFlushMetrics(final @NotNull String listenerName) {
+        return publishFlushMetrics.computeIfAbsent(listenerName,
+                name -> new PublishFlushMetrics(metricRegistry, name));
+    }
+
+    /**
+     * @param producerName the name of the producer of the single writer, for example <code>client-sessions</code>
+     * @return the metrics of the tasks the producer submits to the single writer
+     */
+    public @NotNull SingleWriterMetrics getSingleWriterMetrics(final @NotNull String producerName) {
+        return singleWriterMetrics.computeIfAbsent(producerName,
+                name -> new SingleWriterMetrics(metricRegistry,
+                        name,
+                        InternalConfigurations.SINGLE_WRITER_LATENCY_SAMPLE_RATE.get()));
+    }
 }
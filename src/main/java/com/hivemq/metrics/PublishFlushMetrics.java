@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.metrics;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metrics of the flushes of outgoing PUBLISH messages of all connections of a listener.
+ */
+public class PublishFlushMetrics {
+
+    private final @NotNull Histogram flushSize;
+    private final @NotNull Timer flushLatency;
+
+    PublishFlushMetrics(final @NotNull MetricRegistry metricRegistry, final @NotNull String listenerName) {
+        final String prefix = "com.hivemq.networking." + listenerName + ".publish-flush";
+        flushSize = metricRegistry.histogram(prefix + ".size-bytes");
+        flushLatency = metricRegistry.timer(prefix + ".latency");
+    }
+
+    /**
+     * Records a flush.
+     *
+     * @param bytes        the approximate amount of bytes that were flushed
+     * @param latencyNanos the time in nanoseconds between the first write of the flush and the flush
+     */
+    public void flushed(final long bytes, final long latencyNanos) {
+        flushSize.update(bytes);
+        flushLatency.update(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public @NotNull Histogram getFlushSize() {
+        return flushSize;
+    }
+
+    public @NotNull Timer getFlushLatency() {
+        return flushLatency;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.metrics;
+
+import com.codahale.metrics.Timer;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Timer} that only measures a random sample of the operations, so it can be used on hot paths.
+ * <p>
+ * {@link #start()} decides if an operation is sampled and returns its start time, {@link #stop(long)} records the
+ * duration of sampled operations and does nothing for the others.
+ */
+public class SampledTimer {
+
+    /**
+     * The start time returned by {@link #start()} for operations which are not sampled.
+     */
+    public static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private final @NotNull Timer timer;
+    private final int sampleRate;
+
+    /**
+     * @param timer      the timer the durations of the sampled operations are recorded in
+     * @param sampleRate one in how many operations are sampled, 0 or less disables the sampling
+     */
+    public SampledTimer(final @NotNull Timer timer, final int sampleRate) {
+        this.timer = timer;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * @return the start time of the operation in nanoseconds or {@link #NOT_SAMPLED}
+     */
+    public long start() {
+        if (sampleRate <= 0 || (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0)) {
+            return NOT_SAMPLED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the duration of the operation if it was sampled.
+     *
+     * @param start the start time returned by {@link #start()}
+     */
+    public void stop(final long start) {
+        if (start != NOT_SAMPLED) {
+            timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public @NotNull Timer getTimer() {
+        return timer;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of the tasks one producer (for example the client session persistence) submits to the single writer.
+ * <p>
+ * All metrics are registered with the prefix <code>com.hivemq.persistence.single-writer.&lt;producer&gt;</code>:
+ * <ul>
+ *     <li><code>queue-depth</code>: the amount of pending tasks of the producer</li>
+ *     <li><code>bucket.&lt;index&gt;.queue-depth</code>: the amount of pending tasks of the producer for a bucket</li>
+ *     <li><code>task.wait-time</code>: the time from the submission of a task until it is started, for a sample of
+ *     the tasks</li>
+ *     <li><code>task.execution-time</code>: the time it takes to execute a task, for the same sample</li>
+ *     <li><code>credits-exhausted.count</code>: how often a single writer thread left a queue with pending tasks
+ *     because it used up its credits</li>
+ * </ul>
+ */
+public class SingleWriterMetrics {
+
+    private final @NotNull MetricRegistry metricRegistry;
+    private final @NotNull String prefix;
+    private final @NotNull SampledTimer waitTimer;
+    private final @NotNull SampledTimer executionTimer;
+    private final @NotNull Counter creditsExhaustedCounter;
+
+    SingleWriterMetrics(
+            final @NotNull MetricRegistry metricRegistry, final @NotNull String producerName, final int sampleRate) {
+        this.metricRegistry = metricRegistry;
+        prefix = "com.hivemq.persistence.single-writer." + producerName;
+        waitTimer = new SampledTimer(metricRegistry.timer(prefix + ".task.wait-time"), sampleRate);
+        executionTimer = new SampledTimer(metricRegistry.timer(prefix + ".task.execution-time"), sampleRate);
+        creditsExhaustedCounter = metricRegistry.counter(prefix + ".credits-exhausted.count");
+    }
+
+    /**
+     * Registers the queue depth gauges of the producer.
+     *
+     * @param queueDepth   the amount of pending tasks of the producer
+     * @param bucketDepths the amount of pending tasks of the producer per bucket
+     */
+    public void registerQueueDepths(
+            final @NotNull LongSupplier queueDepth, final @NotNull AtomicIntegerArray bucketDepths) {
+        metricRegistry.gauge(prefix + ".queue-depth", () -> (Gauge<Long>) queueDepth::getAsLong);
+        for (int i = 0; i < bucketDepths.length(); i++) {
+            final int bucketIndex = i;
+            metricRegistry.gauge(prefix + ".bucket." + bucketIndex + ".queue-depth",
+                    () -> (Gauge<Integer>) () -> bucketDepths.get(bucketIndex));
+        }
+    }
+
+    /**
+     * @return the enqueue time of the task in nanoseconds or {@link SampledTimer#NOT_SAMPLED}
+     */
+    public long taskSubmitted() {
+        return waitTimer.start();
+    }
+
+    /**
+     * Records the wait time of the task if it was sampled.
+     *
+     * @param enqueueTime the enqueue time returned by {@link #taskSubmitted()}
+     * @return the start time of the task in nanoseconds or {@link SampledTimer#NOT_SAMPLED}
+     */
+    public long taskStarted(final long enqueueTime) {
+        if (enqueueTime == SampledTimer.NOT_SAMPLED) {
+            return SampledTimer.NOT_SAMPLED;
+        }
+        final long startTime = System.nanoTime();
+        waitTimer.getTimer().update(startTime - enqueueTime, TimeUnit.NANOSECONDS);
+        return startTime;
+    }
+
+    /**
+     * Records the execution time of the task if it was sampled.
+     *
+     * @param startTime the start time returned by {@link #taskStarted(long)}
+     */
+    public void taskExecuted(final long startTime) {
+        executionTimer.stop(startTime);
+    }
+
+    public void creditsExhausted() {
+        creditsExhaustedCounter.inc();
+    }
+
+    public @NotNull SampledTimer getWaitTimer() {
+        return waitTimer;
+    }
+
+    public @NotNull SampledTimer getExecutionTimer() {
+        return executionTimer;
+    }
+
+    public @NotNull Counter getCreditsExhaustedCounter() {
+        return creditsExhaustedCounter;
+    }
+}
@@ -21,9 +21,12 @@ import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.migration.meta.MetaFileService;
 import com.hivemq.migration.meta.MetaInformation;
 import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.persistence.clientqueue.ClientQueueRocksDBLocalPersistence;
 import com.hivemq.persistence.clientqueue.ClientQueueXodusLocalPersistence;
 import com.hivemq.persistence.local.xodus.RetainedMessageRocksDBLocalPersistence;
 import com.hivemq.persistence.local.xodus.RetainedMessageXodusLocalPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionRocksDBLocalPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionRocksDBLocalPersistence;
 import com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionXodusLocalPersistence;
 import com.hivemq.persistence.local.xodus.clientsession.ClientSessionXodusLocalPersistence;
 import com.hivemq.persistence.payload.PublishPayloadRocksDBLocalPersistence;
@@ -38,11 +41,15 @@ class MigrationFinisher {
     private final @NotNull SystemInformation systemInformation;
     private final @NotNull PersistenceType retainedType;
     private final @NotNull PersistenceType payloadType;
+    private final @NotNull PersistenceType queuedType;
+    private final @NotNull PersistenceType clientSessionType;
 
     public MigrationFinisher(final @NotNull SystemInformation systemInformation) {
         this.systemInformation = systemInformation;
         this.retainedType = InternalConfigurations.RETAINED_MESSAGE_PERSISTENCE_TYPE.get();
         this.payloadType = InternalConfigurations.PAYLOAD_PERSISTENCE_TYPE.get();
+        this.queuedType = InternalConfigurations.CLIENT_QUEUE_PERSISTENCE_TYPE.get();
+        this.clientSessionType = InternalConfigurations.CLIENT_SESSION_PERSISTENCE_TYPE.get();
     }
 
     public void finishMigration() {
@@ -54,9 +61,15 @@ class MigrationFinisher {
         final MetaInformation metaFile = MetaFileService.readMetaFile(systemInformation);
         metaFile.setHivemqVersion(systemInformation.getHiveMQVersion());
 
-        metaFile.setClientSessionPersistenceVersion(ClientSessionXodusLocalPersistence.PERSISTENCE_VERSION);
-        metaFile.setQueuedMessagesPersistenceVersion(ClientQueueXodusLocalPersistence.PERSISTENCE_VERSION);
-        metaFile.setSubscriptionPersistenceVersion(ClientSessionSubscriptionXodusLocalPersistence.PERSISTENCE_VERSION);
+        metaFile.setClientSessionPersistenceVersion(clientSessionType == PersistenceType.FILE_NATIVE ?
+                ClientSessionRocksDBLocalPersistence.PERSISTENCE_VERSION :
+                ClientSessionXodusLocalPersistence.PERSISTENCE_VERSION);
+        metaFile.setQueuedMessagesPersistenceVersion(queuedType == PersistenceType.FILE_NATIVE ?
+                ClientQueueRocksDBLocalPersistence.PERSISTENCE_VERSION :
+                ClientQueueXodusLocalPersistence.PERSISTENCE_VERSION);
+        metaFile.setSubscriptionPersistenceVersion(clientSessionType == PersistenceType.FILE_NATIVE ?
+                ClientSessionSubscriptionRocksDBLocalPersistence.PERSISTENCE_VERSION :
+                ClientSessionSubscriptionXodusLocalPersistence.PERSISTENCE_VERSION);
         metaFile.setRetainedMessagesPersistenceVersion(retainedType == PersistenceType.FILE_NATIVE ?
                 RetainedMessageRocksDBLocalPersistence.PERSISTENCE_VERSION :
                 RetainedMessageXodusLocalPersistence.PERSISTENCE_VERSION);
@@ -65,6 +78,8 @@ class MigrationFinisher {
                 PublishPayloadXodusLocalPersistence.PERSISTENCE_VERSION);
         metaFile.setRetainedMessagesPersistenceType(retainedType);
         metaFile.setPublishPayloadPersistenceType(payloadType);
+        metaFile.setQueuedMessagesPersistenceType(queuedType);
+        metaFile.setClientSessionPersistenceType(clientSessionType);
 
         MetaFileService.writeMetaFile(systemInformation, metaFile);
     }
@@ -24,7 +24,10 @@ import com.hivemq.migration.meta.MetaFileService;
 import com.hivemq.migration.meta.MetaInformation;
 import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.migration.persistence.PersistenceMigrator;
+import com.hivemq.persistence.clientqueue.ClientQueueLocalPersistence;
+import com.hivemq.persistence.clientqueue.ClientQueueRocksDBLocalPersistence;
 import com.hivemq.persistence.clientqueue.ClientQueueXodusLocalPersistence;
+import com.hivemq.persistence.local.ClientSessionLocalPersistence;
 import com.hivemq.persistence.local.xodus.RetainedMessageRocksDBLocalPersistence;
 import com.hivemq.persistence.local.xodus.RetainedMessageXodusLocalPersistence;
 import com.hivemq.persistence.payload.PublishPayloadLocalPersistence;
@@ -79,24 +82,40 @@ public class Migrations {
 
         final PersistenceType previousRetainedType;
         final PersistenceType previousPayloadType;
+        final PersistenceType previousQueuedType;
+        final PersistenceType previousClientSessionType;
         if (!metaInformation.isMetaFilePresent()) {
             log.trace("No meta file present, assuming HiveMQ version 2019.1 => Migration needed.");
             MIGRATION_LOGGER.info("No meta file present, assuming HiveMQ version 2019.1 => Migration needed.");
             previousPayloadType = PersistenceType.FILE;
             previousRetainedType = PersistenceType.FILE;
+            previousQueuedType = PersistenceType.FILE;
+            previousClientSessionType = PersistenceType.FILE;
             final MetaInformation newMetaInformation = new MetaInformation();
             newMetaInformation.setPublishPayloadPersistenceType(previousPayloadType);
             newMetaInformation.setRetainedMessagesPersistenceType(previousRetainedType);
+            newMetaInformation.setQueuedMessagesPersistenceType(previousQueuedType);
+            newMetaInformation.setClientSessionPersistenceType(previousClientSessionType);
             MetaFileService.writeMetaFile(systemInformation, newMetaInformation);
         } else {
             Preconditions.checkNotNull(metaInformation.getRetainedMessagesPersistenceType());
             Preconditions.checkNotNull(metaInformation.getPublishPayloadPersistenceType());
             previousRetainedType = metaInformation.getRetainedMessagesPersistenceType();
             previousPayloadType = metaInformation.getPublishPayloadPersistenceType();
+            // the queued messages were always stored with xodus before the type was added to the meta file
+            previousQueuedType = metaInformation.getQueuedMessagesPersistenceType() != null ?
+                    metaInformation.getQueuedMessagesPersistenceType() :
+                    PersistenceType.FILE;
+            // the same applies to the client sessions and their subscriptions
+            previousClientSessionType = metaInformation.getClientSessionPersistenceType() != null ?
+                    metaInformation.getClientSessionPersistenceType() :
+                    PersistenceType.FILE;
         }
 
         final PersistenceType currentRetainedType = InternalConfigurations.RETAINED_MESSAGE_PERSISTENCE_TYPE.get();
         final PersistenceType currentPayloadType = InternalConfigurations.PAYLOAD_PERSISTENCE_TYPE.get();
+        final PersistenceType currentQueuedType = InternalConfigurations.CLIENT_QUEUE_PERSISTENCE_TYPE.get();
+        final PersistenceType currentClientSessionType = InternalConfigurations.CLIENT_SESSION_PERSISTENCE_TYPE.get();
 
         final Map<MigrationUnit, PersistenceType> neededMigrations = new EnumMap<>(MigrationUnit.class);
 
@@ -108,6 +127,14 @@ public class Migrations {
                 isPreviousPersistenceExistent(systemInformation, RetainedMessageLocalPersistence.PERSISTENCE_NAME)) {
             neededMigrations.put(MigrationUnit.FILE_PERSISTENCE_RETAINED_MESSAGES, currentRetainedType);
         }
+        if (!previousQueuedType.equals(currentQueuedType) &&
+                isPreviousPersistenceExistent(systemInformation, ClientQueueLocalPersistence.PERSISTENCE_NAME)) {
+            neededMigrations.put(MigrationUnit.FILE_PERSISTENCE_CLIENT_QUEUE, currentQueuedType);
+        }
+        if (!previousClientSessionType.equals(currentClientSessionType) &&
+                isPreviousPersistenceExistent(systemInformation, ClientSessionLocalPersistence.PERSISTENCE_NAME)) {
+            neededMigrations.put(MigrationUnit.FILE_PERSISTENCE_CLIENT_SESSION, currentClientSessionType);
+        }
 
         if (neededMigrations.isEmpty()) {
             MIGRATION_LOGGER.info("Nothing to migrate found.");
@@ -191,10 +218,10 @@ public class Migrations {
             previousQueuedVersion = metaInformation.getQueuedMessagesPersistenceVersion();
         }
 
-        final String currentQueuedVersion = ClientQueueXodusLocalPersistence.PERSISTENCE_VERSION;
-
-        return !previousQueuedVersion.equals(currentQueuedVersion) &&
-                isPreviousPersistenceExistent(systemInformation, ClientQueueXodusLocalPersistence.PERSISTENCE_NAME);
+        // the payload id migration is only needed for queues that were stored before either of the current versions
+        return !previousQueuedVersion.equals(ClientQueueXodusLocalPersistence.PERSISTENCE_VERSION) &&
+                !previousQueuedVersion.equals(ClientQueueRocksDBLocalPersistence.PERSISTENCE_VERSION) &&
+                isPreviousPersistenceExistent(systemInformation, ClientQueueLocalPersistence.PERSISTENCE_NAME);
     }
 
     private static boolean isPreviousPersistenceExistent(
@@ -33,6 +33,8 @@ public class MetaInformation {
 
     private @Nullable PersistenceType retainedMessagesPersistenceType = null;
     private @Nullable PersistenceType publishPayloadPersistenceType = null;
+    private @Nullable PersistenceType queuedMessagesPersistenceType = null;
+    private @Nullable PersistenceType clientSessionPersistenceType = null;
 
     private boolean dataFolderPresent = false;
     private boolean persistenceFolderPresent = false;
@@ -135,6 +137,24 @@ public class MetaInformation {
         this.publishPayloadPersistenceType = publishPayloadPersistenceType;
     }
 
+    @Nullable
+    public PersistenceType getQueuedMessagesPersistenceType() {
+        return queuedMessagesPersistenceType;
+    }
+
+    public void setQueuedMessagesPersistenceType(final @Nullable PersistenceType queuedMessagesPersistenceType) {
+        this.queuedMessagesPersistenceType = queuedMessagesPersistenceType;
+    }
+
+    @Nullable
+    public PersistenceType getClientSessionPersistenceType() {
+        return clientSessionPersistenceType;
+    }
+
+    public void setClientSessionPersistenceType(final @Nullable PersistenceType clientSessionPersistenceType) {
+        this.clientSessionPersistenceType = clientSessionPersistenceType;
+    }
+
     @Override
     public String toString() {
         return "MetaInformation{" +
@@ -162,6 +182,12 @@ public class MetaInformation {
                 ", publishPayloadPersistenceType='" +
                 publishPayloadPersistenceType +
                 '\'' +
+                ", queuedMessagesPersistenceType='" +
+                queuedMessagesPersistenceType +
+                '\'' +
+                ", clientSessionPersistenceType='" +
+                clientSessionPersistenceType +
+                '\'' +
                 '}';
     }
 }
@@ -57,6 +57,12 @@ public class MetaInformationSerializer {
         final byte publishPayloadPersistenceType = metaInformation.getPublishPayloadPersistenceType() != null ?
                 (byte) metaInformation.getPublishPayloadPersistenceType().ordinal() :
                 -1;
+        final byte queuedMessagesPersistenceType = metaInformation.getQueuedMessagesPersistenceType() != null ?
+                (byte) metaInformation.getQueuedMessagesPersistenceType().ordinal() :
+                -1;
+        final byte clientSessionPersistenceType = metaInformation.getClientSessionPersistenceType() != null ?
+                (byte) metaInformation.getClientSessionPersistenceType().ordinal() :
+                -1;
 
         final int bufferSize = 6 * 4 +
                 //6 * int(4 byte) for byte[] length.
@@ -66,7 +72,7 @@ public class MetaInformationSerializer {
                 subscriptionPersistenceVersion.length +
                 clientSessionPersistenceVersion.length +
                 queuedMessagesPersistenceVersion.length +
-                2; //types
+                4; //types
 
         final ByteBuffer byteBuffer = ByteBuffer.allocate(bufferSize);
 
@@ -79,6 +85,8 @@ public class MetaInformationSerializer {
 
         byteBuffer.put(retainedMessagesPersistenceType);
         byteBuffer.put(publishPayloadPersistenceType);
+        byteBuffer.put(queuedMessagesPersistenceType);
+        byteBuffer.put(clientSessionPersistenceType);
 
         return byteBuffer.array();
     }
@@ -106,6 +114,12 @@ public class MetaInformationSerializer {
 
         final PersistenceType retainedMessagePersistenceType = getTypeFromBuffer(metaFileAsByteBuffer);
         final PersistenceType publishPayloadPersistenceType = getTypeFromBuffer(metaFileAsByteBuffer);
+        // meta files written before the client queue persistence type was introduced end here
+        final PersistenceType queuedMessagesPersistenceType =
+                metaFileAsByteBuffer.hasRemaining() ? getTypeFromBuffer(metaFileAsByteBuffer) : null;
+        // meta files written before the client session persistence type was introduced end here
+        final PersistenceType clientSessionPersistenceType =
+                metaFileAsByteBuffer.hasRemaining() ? getTypeFromBuffer(metaFileAsByteBuffer) : null;
 
         final MetaInformation metaInformation = new MetaInformation();
 
@@ -118,6 +132,8 @@ public class MetaInformationSerializer {
 
         metaInformation.setRetainedMessagesPersistenceType(retainedMessagePersistenceType);
         metaInformation.setPublishPayloadPersistenceType(publishPayloadPersistenceType);
+        metaInformation.setQueuedMessagesPersistenceType(queuedMessagesPersistenceType);
+        metaInformation.setClientSessionPersistenceType(clientSessionPersistenceType);
 
         //always true at this point
         metaInformation.setMetaFilePresent(true);
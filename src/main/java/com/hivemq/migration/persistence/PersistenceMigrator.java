@@ -23,8 +23,10 @@ import com.hivemq.migration.Migrations;
 import com.hivemq.migration.TypeMigration;
 import com.hivemq.migration.ValueMigration;
 import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.migration.persistence.clientsession.ClientSessionTypeMigration;
 import com.hivemq.migration.persistence.payload.PublishPayloadTypeMigration;
 import com.hivemq.migration.persistence.queue.ClientQueuePayloadIDMigration;
+import com.hivemq.migration.persistence.queue.ClientQueueTypeMigration;
 import com.hivemq.migration.persistence.retained.RetainedMessagePayloadIDMigration;
 import com.hivemq.migration.persistence.retained.RetainedMessageTypeMigration;
 import org.slf4j.Logger;
@@ -47,6 +49,8 @@ public class PersistenceMigrator {
 
     private final @NotNull Provider<PublishPayloadTypeMigration> publishPayloadMigrationProvider;
     private final @NotNull Provider<RetainedMessageTypeMigration> retainedMessageMigrationProvider;
+    private final @NotNull Provider<ClientQueueTypeMigration> clientQueueMigrationProvider;
+    private final @NotNull Provider<ClientSessionTypeMigration> clientSessionMigrationProvider;
     private final @NotNull Provider<RetainedMessagePayloadIDMigration> retainedMessagePayloadIDMigrationProvider;
     private final @NotNull Provider<ClientQueuePayloadIDMigration> clientQueuePayloadIDMigrationProvider;
 
@@ -54,10 +58,14 @@ public class PersistenceMigrator {
     public PersistenceMigrator(
             final @NotNull Provider<PublishPayloadTypeMigration> publishPayloadMigrationProvider,
             final @NotNull Provider<RetainedMessageTypeMigration> retainedMessageMigrationProvider,
+            final @NotNull Provider<ClientQueueTypeMigration> clientQueueMigrationProvider,
+            final @NotNull Provider<ClientSessionTypeMigration> clientSessionMigrationProvider,
             final @NotNull Provider<RetainedMessagePayloadIDMigration> retainedMessagePayloadIDMigrationProvider,
             final @NotNull Provider<ClientQueuePayloadIDMigration> clientQueuePayloadIDMigrationProvider) {
         this.publishPayloadMigrationProvider = publishPayloadMigrationProvider;
         this.retainedMessageMigrationProvider = retainedMessageMigrationProvider;
+        this.clientQueueMigrationProvider = clientQueueMigrationProvider;
+        this.clientSessionMigrationProvider = clientSessionMigrationProvider;
         this.retainedMessagePayloadIDMigrationProvider = retainedMessagePayloadIDMigrationProvider;
         this.clientQueuePayloadIDMigrationProvider = clientQueuePayloadIDMigrationProvider;
     }
@@ -82,6 +90,12 @@ public class PersistenceMigrator {
                 case FILE_PERSISTENCE_RETAINED_MESSAGES:
                     migrator = retainedMessageMigrationProvider.get();
                     break;
+                case FILE_PERSISTENCE_CLIENT_QUEUE:
+                    migrator = clientQueueMigrationProvider.get();
+                    break;
+                case FILE_PERSISTENCE_CLIENT_SESSION:
+                    migrator = clientSessionMigrationProvider.get();
+                    break;
                 default:
                     continue;
             }
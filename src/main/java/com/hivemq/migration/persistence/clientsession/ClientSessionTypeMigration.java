@@ -0,0 +1,210 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.migration.persistence.clientsession;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.hivemq.configuration.info.SystemInformation;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extensions.iteration.BucketChunkResult;
+import com.hivemq.migration.Migrations;
+import com.hivemq.migration.TypeMigration;
+import com.hivemq.migration.meta.MetaFileService;
+import com.hivemq.migration.meta.MetaInformation;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.mqtt.message.subscribe.Topic;
+import com.hivemq.persistence.clientsession.ClientSession;
+import com.hivemq.persistence.local.ClientSessionLocalPersistence;
+import com.hivemq.persistence.local.ClientSessionSubscriptionLocalPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionRocksDBLocalPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionRocksDBLocalPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionXodusLocalPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionXodusLocalPersistence;
+import com.hivemq.util.LocalPersistenceFileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Migrates the client sessions and their subscriptions between the xodus and the rocks db persistences.
+ * <p>
+ * Both are migrated together, as they are configured by the same persistence type. The sessions keep their
+ * timestamps, the subscriptions get the time of the migration as timestamp.
+ */
+public class ClientSessionTypeMigration implements TypeMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientSessionTypeMigration.class);
+    private static final Logger migrationLog = LoggerFactory.getLogger(Migrations.MIGRATION_LOGGER_NAME);
+    private static final String FIRST_BUCKET_FOLDER = ClientSessionLocalPersistence.PERSISTENCE_NAME + "_0";
+    private static final int SUBSCRIPTIONS_CHUNK_SIZE = 10_000;
+
+    private final @NotNull Provider<ClientSessionXodusLocalPersistence> xodusSessionsProvider;
+    private final @NotNull Provider<ClientSessionSubscriptionXodusLocalPersistence> xodusSubscriptionsProvider;
+    private final @NotNull Provider<ClientSessionRocksDBLocalPersistence> rocksDBSessionsProvider;
+    private final @NotNull Provider<ClientSessionSubscriptionRocksDBLocalPersistence> rocksDBSubscriptionsProvider;
+    private final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil;
+    private final @NotNull SystemInformation systemInformation;
+
+    private final int bucketCount;
+
+    @Inject
+    public ClientSessionTypeMigration(
+            final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
+            final @NotNull Provider<ClientSessionXodusLocalPersistence> xodusSessionsProvider,
+            final @NotNull Provider<ClientSessionSubscriptionXodusLocalPersistence> xodusSubscriptionsProvider,
+            final @NotNull Provider<ClientSessionRocksDBLocalPersistence> rocksDBSessionsProvider,
+            final @NotNull Provider<ClientSessionSubscriptionRocksDBLocalPersistence> rocksDBSubscriptionsProvider,
+            final @NotNull SystemInformation systemInformation) {
+        this.localPersistenceFileUtil = localPersistenceFileUtil;
+        this.xodusSessionsProvider = xodusSessionsProvider;
+        this.xodusSubscriptionsProvider = xodusSubscriptionsProvider;
+        this.rocksDBSessionsProvider = rocksDBSessionsProvider;
+        this.rocksDBSubscriptionsProvider = rocksDBSubscriptionsProvider;
+        this.systemInformation = systemInformation;
+        this.bucketCount = InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get();
+    }
+
+    @Override
+    public void migrateToType(final @NotNull PersistenceType type) {
+        if (type.equals(PersistenceType.FILE_NATIVE)) {
+            migrateToRocksDB();
+        } else if (type.equals(PersistenceType.FILE)) {
+            migrateToXodus();
+        } else {
+            throw new IllegalArgumentException("Unknown persistence type " + type + " for client session migration");
+        }
+    }
+
+    private void migrateToXodus() {
+
+        final File persistenceFolder = localPersistenceFileUtil.getVersionedLocalPersistenceFolder(
+                ClientSessionLocalPersistence.PERSISTENCE_NAME,
+                ClientSessionRocksDBLocalPersistence.PERSISTENCE_VERSION);
+        if (oldFolderMissing(persistenceFolder)) {
+            return;
+        }
+
+        final ClientSessionRocksDBLocalPersistence rocksSessions = rocksDBSessionsProvider.get();
+        final ClientSessionSubscriptionRocksDBLocalPersistence rocksSubscriptions =
+                rocksDBSubscriptionsProvider.get();
+
+        migrate(rocksSessions,
+                rocksSubscriptions,
+                xodusSessionsProvider.get(),
+                xodusSubscriptionsProvider.get(),
+                bucketCount);
+
+        savePersistenceType(PersistenceType.FILE);
+
+        rocksSessions.stop();
+        rocksSubscriptions.stop();
+    }
+
+    private void migrateToRocksDB() {
+
+        final File persistenceFolder = localPersistenceFileUtil.getVersionedLocalPersistenceFolder(
+                ClientSessionLocalPersistence.PERSISTENCE_NAME,
+                ClientSessionXodusLocalPersistence.PERSISTENCE_VERSION);
+        if (oldFolderMissing(persistenceFolder)) {
+            return;
+        }
+
+        final ClientSessionXodusLocalPersistence xodusSessions = xodusSessionsProvider.get();
+        final ClientSessionSubscriptionXodusLocalPersistence xodusSubscriptions =
+                xodusSubscriptionsProvider.get();
+
+        migrate(xodusSessions,
+                xodusSubscriptions,
+                rocksDBSessionsProvider.get(),
+                rocksDBSubscriptionsProvider.get(),
+                bucketCount);
+
+        savePersistenceType(PersistenceType.FILE_NATIVE);
+
+        xodusSessions.stop();
+        xodusSubscriptions.stop();
+    }
+
+    /**
+     * Copies all sessions and subscriptions bucket by bucket. Both persistences use the same bucket count, so every
+     * client stays in its bucket.
+     */
+    @VisibleForTesting
+    static void migrate(
+            final @NotNull ClientSessionLocalPersistence fromSessions,
+            final @NotNull ClientSessionSubscriptionLocalPersistence fromSubscriptions,
+            final @NotNull ClientSessionLocalPersistence toSessions,
+            final @NotNull ClientSessionSubscriptionLocalPersistence toSubscriptions,
+            final int bucketCount) {
+
+        for (int bucketIndex = 0; bucketIndex < bucketCount; bucketIndex++) {
+            final Set<String> clients = fromSessions.getAllClients(bucketIndex);
+            for (final String clientId : clients) {
+                final ClientSession clientSession = fromSessions.getSession(clientId, bucketIndex, false);
+                final Long timestamp = fromSessions.getTimestamp(clientId, bucketIndex);
+                if (clientSession == null || timestamp == null) {
+                    continue;
+                }
+                toSessions.put(clientId, clientSession, timestamp, bucketIndex);
+            }
+
+            final long timestamp = System.currentTimeMillis();
+            String lastClientId = null;
+            BucketChunkResult<Map<String, ImmutableSet<Topic>>> chunk;
+            do {
+                chunk = fromSubscriptions.getAllSubscribersChunk(bucketIndex, lastClientId, SUBSCRIPTIONS_CHUNK_SIZE);
+                for (final Map.Entry<String, ImmutableSet<Topic>> subscriptions : chunk.getValue().entrySet()) {
+                    toSubscriptions.addSubscriptions(subscriptions.getKey(),
+                            subscriptions.getValue(),
+                            timestamp,
+                            bucketIndex);
+                }
+                lastClientId = chunk.getLastKey();
+            } while (!chunk.isFinished());
+        }
+    }
+
+    private boolean oldFolderMissing(final @NotNull File persistenceFolder) {
+        final File oldPersistenceFolder = new File(persistenceFolder, FIRST_BUCKET_FOLDER);
+        if (!oldPersistenceFolder.exists()) {
+            migrationLog.info("No (old) persistence folder (client_session_store) present, skipping migration.");
+            log.debug("No (old) persistence folder (client_session_store) present, skipping migration.");
+            return true;
+        }
+        return false;
+    }
+
+    private void savePersistenceType(final @NotNull PersistenceType persistenceType) {
+        final MetaInformation metaFile = MetaFileService.readMetaFile(systemInformation);
+        metaFile.setClientSessionPersistenceType(persistenceType);
+        if (persistenceType == PersistenceType.FILE_NATIVE) {
+            metaFile.setClientSessionPersistenceVersion(ClientSessionRocksDBLocalPersistence.PERSISTENCE_VERSION);
+            metaFile.setSubscriptionPersistenceVersion(
+                    ClientSessionSubscriptionRocksDBLocalPersistence.PERSISTENCE_VERSION);
+        } else {
+            metaFile.setClientSessionPersistenceVersion(ClientSessionXodusLocalPersistence.PERSISTENCE_VERSION);
+            metaFile.setSubscriptionPersistenceVersion(
+                    ClientSessionSubscriptionXodusLocalPersistence.PERSISTENCE_VERSION);
+        }
+        MetaFileService.writeMetaFile(systemInformation, metaFile);
+    }
+}
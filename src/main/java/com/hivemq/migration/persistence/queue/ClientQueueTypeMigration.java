@@ -0,0 +1,216 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.migration.persistence.queue;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.hivemq.configuration.info.SystemInformation;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.configuration.service.MqttConfigurationService;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.migration.Migrations;
+import com.hivemq.migration.TypeMigration;
+import com.hivemq.migration.logging.PayloadExceptionLogging;
+import com.hivemq.migration.meta.MetaFileService;
+import com.hivemq.migration.meta.MetaInformation;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.mqtt.message.MessageWithID;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.mqtt.message.pubrel.PUBREL;
+import com.hivemq.persistence.clientqueue.ClientQueueEntry;
+import com.hivemq.persistence.clientqueue.ClientQueueLocalPersistence;
+import com.hivemq.persistence.clientqueue.ClientQueueMigrationLocalPersistence;
+import com.hivemq.persistence.clientqueue.ClientQueuePersistenceImpl;
+import com.hivemq.persistence.clientqueue.ClientQueueRocksDBLocalPersistence;
+import com.hivemq.persistence.clientqueue.ClientQueueXodusLocalPersistence;
+import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
+import com.hivemq.persistence.payload.PayloadPersistenceException;
+import com.hivemq.persistence.payload.PublishPayloadLocalPersistence;
+import com.hivemq.persistence.payload.PublishPayloadLocalPersistenceProvider;
+import com.hivemq.util.Exceptions;
+import com.hivemq.util.LocalPersistenceFileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.io.File;
+
+/**
+ * Migrates the queued messages between the xodus and the rocks db client queue persistence.
+ * <p>
+ * The messages are added to the new persistence in the order in which they are stored, in-flight PUBLISHes are added
+ * as new messages and will be delivered again with a new packet id. In-flight PUBRELs are kept.
+ */
+public class ClientQueueTypeMigration implements TypeMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientQueueTypeMigration.class);
+    private static final Logger migrationLog = LoggerFactory.getLogger(Migrations.MIGRATION_LOGGER_NAME);
+    private static final String FIRST_BUCKET_FOLDER = ClientQueueLocalPersistence.PERSISTENCE_NAME + "_0";
+
+    private final @NotNull Provider<ClientQueueXodusLocalPersistence> xodusLocalPersistenceProvider;
+    private final @NotNull Provider<ClientQueueRocksDBLocalPersistence> rocksDBLocalPersistenceProvider;
+    private final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil;
+    private final @NotNull PublishPayloadLocalPersistenceProvider publishPayloadLocalPersistenceProvider;
+    private final @NotNull SystemInformation systemInformation;
+    private final @NotNull PayloadExceptionLogging payloadExceptionLogging;
+
+    private final int bucketCount;
+
+    @Inject
+    public ClientQueueTypeMigration(
+            final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
+            final @NotNull Provider<ClientQueueXodusLocalPersistence> xodusLocalPersistenceProvider,
+            final @NotNull Provider<ClientQueueRocksDBLocalPersistence> rocksDBLocalPersistenceProvider,
+            final @NotNull PublishPayloadLocalPersistenceProvider publishPayloadLocalPersistenceProvider,
+            final @NotNull SystemInformation systemInformation,
+            final @NotNull PayloadExceptionLogging payloadExceptionLogging) {
+        this.localPersistenceFileUtil = localPersistenceFileUtil;
+        this.xodusLocalPersistenceProvider = xodusLocalPersistenceProvider;
+        this.rocksDBLocalPersistenceProvider = rocksDBLocalPersistenceProvider;
+        this.publishPayloadLocalPersistenceProvider = publishPayloadLocalPersistenceProvider;
+        this.systemInformation = systemInformation;
+        this.payloadExceptionLogging = payloadExceptionLogging;
+        this.bucketCount = InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get();
+    }
+
+    @Override
+    public void migrateToType(final @NotNull PersistenceType type) {
+        if (type.equals(PersistenceType.FILE_NATIVE)) {
+            migrateToRocksDB();
+        } else if (type.equals(PersistenceType.FILE)) {
+            migrateToXodus();
+        } else {
+            throw new IllegalArgumentException("Unknown persistence type " + type + " for client queue migration");
+        }
+    }
+
+    private void migrateToXodus() {
+
+        final File persistenceFolder = localPersistenceFileUtil.getVersionedLocalPersistenceFolder(
+                ClientQueueLocalPersistence.PERSISTENCE_NAME,
+                ClientQueueRocksDBLocalPersistence.PERSISTENCE_VERSION);
+        if (oldFolderMissing(persistenceFolder)) {
+            return;
+        }
+
+        migrate(rocksDBLocalPersistenceProvider.get(), xodusLocalPersistenceProvider.get(), PersistenceType.FILE);
+    }
+
+    private void migrateToRocksDB() {
+
+        final File persistenceFolder = localPersistenceFileUtil.getVersionedLocalPersistenceFolder(
+                ClientQueueLocalPersistence.PERSISTENCE_NAME,
+                ClientQueueXodusLocalPersistence.PERSISTENCE_VERSION);
+        if (oldFolderMissing(persistenceFolder)) {
+            return;
+        }
+
+        migrate(xodusLocalPersistenceProvider.get(),
+                rocksDBLocalPersistenceProvider.get(),
+                PersistenceType.FILE_NATIVE);
+    }
+
+    private void migrate(
+            final @NotNull ClientQueueMigrationLocalPersistence from,
+            final @NotNull ClientQueueMigrationLocalPersistence to,
+            final @NotNull PersistenceType toType) {
+
+        from.iterate(new ClientQueuePersistenceTypeSwitchCallback(bucketCount,
+                publishPayloadLocalPersistenceProvider.get(),
+                to,
+                payloadExceptionLogging));
+
+        savePersistenceType(toType);
+
+        from.stop();
+    }
+
+    private boolean oldFolderMissing(final @NotNull File persistenceFolder) {
+        final File oldPersistenceFolder = new File(persistenceFolder, FIRST_BUCKET_FOLDER);
+        if (!oldPersistenceFolder.exists()) {
+            migrationLog.info("No (old) persistence folder (client_queue) present, skipping migration.");
+            log.debug("No (old) persistence folder (client_queue) present, skipping migration.");
+            return true;
+        }
+        return false;
+    }
+
+    private void savePersistenceType(final @NotNull PersistenceType persistenceType) {
+        final MetaInformation metaFile = MetaFileService.readMetaFile(systemInformation);
+        metaFile.setQueuedMessagesPersistenceType(persistenceType);
+        metaFile.setQueuedMessagesPersistenceVersion(persistenceType == PersistenceType.FILE_NATIVE ?
+                ClientQueueRocksDBLocalPersistence.PERSISTENCE_VERSION :
+                ClientQueueXodusLocalPersistence.PERSISTENCE_VERSION);
+        MetaFileService.writeMetaFile(systemInformation, metaFile);
+    }
+
+    @VisibleForTesting
+    static class ClientQueuePersistenceTypeSwitchCallback
+            implements ClientQueueMigrationLocalPersistence.QueueCallback {
+
+        private final int bucketCount;
+        private final @NotNull PublishPayloadLocalPersistence payloadLocalPersistence;
+        private final @NotNull ClientQueueLocalPersistence clientQueueLocalPersistence;
+        private final @NotNull PayloadExceptionLogging payloadExceptionLogging;
+
+        ClientQueuePersistenceTypeSwitchCallback(
+                final int bucketCount,
+                final @NotNull PublishPayloadLocalPersistence payloadLocalPersistence,
+                final @NotNull ClientQueueLocalPersistence clientQueueLocalPersistence,
+                final @NotNull PayloadExceptionLogging payloadExceptionLogging) {
+            this.bucketCount = bucketCount;
+            this.payloadLocalPersistence = payloadLocalPersistence;
+            this.clientQueueLocalPersistence = clientQueueLocalPersistence;
+            this.payloadExceptionLogging = payloadExceptionLogging;
+        }
+
+        @Override
+        public void onItem(
+                final @NotNull ClientQueuePersistenceImpl.Key key,
+                final @NotNull ImmutableList<ClientQueueEntry> messages) {
+            final int bucketIndex = BucketUtils.getBucket(key.getQueueId(), bucketCount);
+            for (final ClientQueueEntry queueEntry : messages) {
+                final MessageWithID message = queueEntry.getMessageWithID();
+                try {
+                    if (message instanceof PUBLISH) {
+                        final PUBLISH publish = (PUBLISH) message;
+                        if (payloadLocalPersistence.get(publish.getPublishId()) == null) {
+                            payloadExceptionLogging.addLogging(publish.getPublishId(), null, null);
+                            continue;
+                        }
+                        clientQueueLocalPersistence.add(key.getQueueId(),
+                                key.isShared(),
+                                publish,
+                                Long.MAX_VALUE,
+                                MqttConfigurationService.QueuedMessagesStrategy.DISCARD,
+                                queueEntry.isRetained(),
+                                bucketIndex);
+                    } else if (message instanceof PUBREL) {
+                        clientQueueLocalPersistence.replace(key.getQueueId(), (PUBREL) message, bucketIndex);
+                    }
+                } catch (final PayloadPersistenceException payloadException) {
+                    payloadExceptionLogging.addLogging(((PUBLISH) message).getPublishId(), null, null);
+                } catch (final Throwable throwable) {
+                    log.warn("Could not migrate queued messages for queue id {}, original exception: ",
+                            key.getQueueId(),
+                            throwable);
+                    Exceptions.rethrowError(throwable);
+                }
+            }
+        }
+    }
+}
@@ -58,7 +58,6 @@ import com.hivemq.mqtt.message.reason.Mqtt5ConnAckReasonCode;
 import com.hivemq.mqtt.message.reason.Mqtt5DisconnectReasonCode;
 import com.hivemq.mqtt.services.PublishPollService;
 import com.hivemq.persistence.clientsession.ClientSessionPersistence;
-import com.hivemq.persistence.clientsession.SharedSubscriptionService;
 import com.hivemq.persistence.connection.ConnectionPersistence;
 import com.hivemq.util.Bytes;
 import com.hivemq.util.Exceptions;
@@ -108,7 +107,6 @@ public class ConnectHandler extends SimpleChannelInboundHandler<CONNECT> {
     private final @NotNull MqttConnacker mqttConnacker;
     private final @NotNull TopicAliasLimiter topicAliasLimiter;
     private final @NotNull PublishPollService publishPollService;
-    private final @NotNull SharedSubscriptionService sharedSubscriptionService;
     private final @NotNull Authorizers authorizers;
     private final @NotNull PluginAuthenticatorService pluginAuthenticatorService;
     private final @NotNull PluginAuthorizerService pluginAuthorizerService;
@@ -132,7 +130,6 @@ public class ConnectHandler extends SimpleChannelInboundHandler<CONNECT> {
             final @NotNull MqttConnacker mqttConnacker,
             final @NotNull TopicAliasLimiter topicAliasLimiter,
             final @NotNull PublishPollService publishPollService,
-            final @NotNull SharedSubscriptionService sharedSubscriptionService,
             final @NotNull PluginAuthenticatorService pluginAuthenticatorService,
             final @NotNull Authorizers authorizers,
             final @NotNull PluginAuthorizerService pluginAuthorizerService,
@@ -147,7 +144,6 @@ public class ConnectHandler extends SimpleChannelInboundHandler<CONNECT> {
         this.mqttConnacker = mqttConnacker;
         this.topicAliasLimiter = topicAliasLimiter;
         this.publishPollService = publishPollService;
-        this.sharedSubscriptionService = sharedSubscriptionService;
         this.pluginAuthenticatorService = pluginAuthenticatorService;
         this.authorizers = authorizers;
         this.pluginAuthorizerService = pluginAuthorizerService;
@@ -566,10 +562,6 @@ public class ConnectHandler extends SimpleChannelInboundHandler<CONNECT> {
             final @NotNull CONNECT msg,
             final boolean sessionPresent) {
 
-        // In case the clients session expired while it was disconnected, the cache will be invalidated before the client connects.
-        // This is sufficient since messages for shared subscriptions are not queued for specific clients.
-        sharedSubscriptionService.invalidateSharedSubscriptionCache(msg.getClientIdentifier());
-
         addKeepAliveHandler(ctx, msg);
         sendConnackSuccess(ctx, clientConnection, msg, sessionPresent);
 
@@ -27,6 +27,7 @@ import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.mqtt.message.subscribe.Topic;
 import com.hivemq.mqtt.topic.InvalidTopicException;
 import com.hivemq.mqtt.topic.PermissionTopicMatcherUtils;
+import com.hivemq.mqtt.topic.TopicTokenizer;
 import com.hivemq.util.Topics;
 import org.apache.commons.lang3.StringUtils;
 
@@ -68,7 +69,7 @@ public final class DefaultPermissionsEvaluator {
             return permissions.getDefaultBehaviour() == DefaultAuthorizationBehaviour.ALLOW;
         }
 
-        final String[] splitTopic = StringUtils.splitPreserveAllTokens(topic, "/");
+        final TopicTokenizer topicTokens = TopicTokenizer.threadLocal(topic);
         final String stripedTopic;
         if (topic.length() > 1) {
             stripedTopic = StringUtils.stripEnd(topic, "/");
@@ -76,7 +77,12 @@ public final class DefaultPermissionsEvaluator {
             stripedTopic = topic;
         }
         for (final TopicPermission topicPermission : permissions.asList()) {
-            if (implied(topicPermission, stripedTopic, splitTopic, qos, TopicPermission.MqttActivity.PUBLISH, retain)) {
+            if (implied(topicPermission,
+                    stripedTopic,
+                    topicTokens,
+                    qos,
+                    TopicPermission.MqttActivity.PUBLISH,
+                    retain)) {
                 return topicPermission.getType() == TopicPermission.PermissionType.ALLOW;
             }
         }
@@ -115,7 +121,7 @@ public final class DefaultPermissionsEvaluator {
             isShared = false;
         }
 
-        final String[] splitTopic = StringUtils.splitPreserveAllTokens(topic, "/");
+        final TopicTokenizer topicTokens = TopicTokenizer.threadLocal(topic);
         final String stripedTopic;
         if (topic.length() > 1) {
             stripedTopic = StringUtils.stripEnd(topic, "/");
@@ -126,7 +132,7 @@ public final class DefaultPermissionsEvaluator {
 
             final boolean isImplied = implied(topicPermission,
                     stripedTopic,
-                    splitTopic,
+                    topicTokens,
                     subscription.getQoS(),
                     TopicPermission.MqttActivity.SUBSCRIBE,
                     isShared,
@@ -143,7 +149,7 @@ public final class DefaultPermissionsEvaluator {
     private static boolean implied(
             final @NotNull TopicPermission topicPermission,
             final @NotNull String stripedTopic,
-            final @NotNull String[] splitTopic,
+            final @NotNull TopicTokenizer topicTokens,
             final @NotNull QoS messageQoS,
             final @NotNull TopicPermission.MqttActivity activity,
             final boolean retain) {
@@ -158,13 +164,13 @@ public final class DefaultPermissionsEvaluator {
                 return false;
             }
         }
-        return implied(topicPermission, stripedTopic, splitTopic, messageQoS, activity);
+        return implied(topicPermission, stripedTopic, topicTokens, messageQoS, activity);
     }
 
     private static boolean implied(
             final @NotNull TopicPermission topicPermission,
             final @NotNull String stripedTopic,
-            final @NotNull String[] splitTopic,
+            final @NotNull TopicTokenizer topicTokens,
             final @NotNull QoS messageQoS,
             final @NotNull TopicPermission.MqttActivity activity,
             final boolean isShared,
@@ -184,13 +190,13 @@ public final class DefaultPermissionsEvaluator {
             return false;
         }
 
-        return implied(topicPermission, stripedTopic, splitTopic, messageQoS, activity);
+        return implied(topicPermission, stripedTopic, topicTokens, messageQoS, activity);
     }
 
     private static boolean implied(
             final @NotNull TopicPermission topicPermission,
             final @NotNull String stripedTopic,
-            final @NotNull String[] splitTopic,
+            final @NotNull TopicTokenizer topicTokens,
             final @NotNull QoS messageQoS,
             final @NotNull TopicPermission.MqttActivity activity) {
 
@@ -206,7 +212,7 @@ public final class DefaultPermissionsEvaluator {
         }
 
         //topic
-        return topicImplied(topicPermission, stripedTopic, splitTopic);
+        return topicImplied(topicPermission, stripedTopic, topicTokens);
     }
 
     private static boolean qosImplied(final @NotNull TopicPermission topicPermission, final @NotNull QoS qos) {
@@ -238,7 +244,7 @@ public final class DefaultPermissionsEvaluator {
     private static boolean topicImplied(
             final @NotNull TopicPermission topicPermission,
             final @NotNull String topic,
-            final @NotNull String[] splitTopic) {
+            final @NotNull TopicTokenizer topicTokens) {
 
         try {
             if (topicPermission instanceof InternalTopicPermission) {
@@ -249,7 +255,7 @@ public final class DefaultPermissionsEvaluator {
                         internalTopicPermission.endsWithWildcard(),
                         internalTopicPermission.isRootWildcard(),
                         topic,
-                        splitTopic);
+                        topicTokens);
             }
 
             //fallback, should never be needed
@@ -80,6 +80,8 @@ public class DropOutgoingPublishesHandler {
                             clientId,
                             publish.getTopic());
                     messageDroppedService.notWritable(clientId, publish.getTopic(), publish.getQoS().getQosNumber());
+                    // The PUBLISH was polled for this write, which never reaches the encoder that would release it
+                    publish.releasePayload();
                     promise.setSuccess();
                     return true;
                 }
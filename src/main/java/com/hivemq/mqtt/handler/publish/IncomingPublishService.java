@@ -18,7 +18,10 @@ package com.hivemq.mqtt.handler.publish;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.codahale.metrics.Counter;
 import com.hivemq.bootstrap.ClientConnection;
+import com.hivemq.bootstrap.netty.ChannelHandlerNames;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.configuration.service.MqttConfigurationService;
 import com.hivemq.configuration.service.RestrictionsConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
@@ -28,6 +31,9 @@ import com.hivemq.extension.sdk.api.packets.auth.ModifiableDefaultPermissions;
 import com.hivemq.extension.sdk.api.packets.publish.AckReasonCode;
 import com.hivemq.extensions.handler.tasks.PublishAuthorizerResult;
 import com.hivemq.extensions.packets.general.ModifiableDefaultPermissionsImpl;
+import com.hivemq.metrics.HiveMQMetrics;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.metrics.SampledTimer;
 import com.hivemq.mqtt.handler.disconnect.MqttServerDisconnector;
 import com.hivemq.mqtt.message.ProtocolVersion;
 import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
@@ -38,11 +44,14 @@ import com.hivemq.mqtt.message.reason.Mqtt5DisconnectReasonCode;
 import com.hivemq.mqtt.message.reason.Mqtt5PubAckReasonCode;
 import com.hivemq.mqtt.message.reason.Mqtt5PubRecReasonCode;
 import com.hivemq.mqtt.services.InternalPublishService;
+import com.hivemq.persistence.clientqueue.ClientQueuePressure;
 import com.hivemq.util.ReasonStrings;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -59,18 +68,29 @@ public class IncomingPublishService {
     private final @NotNull MqttConfigurationService mqttConfigurationService;
     private final @NotNull RestrictionsConfigurationService restrictionsConfigurationService;
     private final @NotNull MqttServerDisconnector mqttServerDisconnector;
+    private final @NotNull SampledTimer incomingTimer;
+    private final @NotNull ClientQueuePressure queuePressure;
+    private final @NotNull Counter backPressurePausedCounter;
+    private final long backPressureCheckIntervalMillis;
 
     @Inject
     IncomingPublishService(
             final @NotNull InternalPublishService publishService,
             final @NotNull MqttConfigurationService mqttConfigurationService,
             final @NotNull RestrictionsConfigurationService restrictionsConfigurationService,
-            final @NotNull MqttServerDisconnector mqttServerDisconnector) {
+            final @NotNull MqttServerDisconnector mqttServerDisconnector,
+            final @NotNull MetricsHolder metricsHolder,
+            final @NotNull ClientQueuePressure queuePressure) {
 
         this.publishService = publishService;
         this.mqttConfigurationService = mqttConfigurationService;
         this.restrictionsConfigurationService = restrictionsConfigurationService;
         this.mqttServerDisconnector = mqttServerDisconnector;
+        this.incomingTimer = metricsHolder.getPublishIncomingTimer();
+        this.queuePressure = queuePressure;
+        this.backPressurePausedCounter =
+                metricsHolder.getMetricRegistry().counter(HiveMQMetrics.PUBLISH_BACK_PRESSURE_PAUSED_COUNT.name());
+        this.backPressureCheckIntervalMillis = InternalConfigurations.PUBLISH_BACK_PRESSURE_CHECK_INTERVAL_MSEC.get();
     }
 
     public void processPublish(
@@ -124,7 +144,7 @@ public class IncomingPublishService {
                 final String logMessage = "Client '" +
                         clientId +
                         "' (IP: {}) sent a PUBLISH with " +
-                        publish.getPayload().length +
+                        publish.getPayloadLength() +
                         " bytes payload its max allowed size is " +
                         maxPublishSize +
                         " bytes. Disconnecting client.";
@@ -138,13 +158,14 @@ public class IncomingPublishService {
             }
         }
 
-        authorizePublish(ctx, publish, authorizerResult);
+        authorizePublish(ctx, publish, authorizerResult, incomingTimer.start());
     }
 
     private void authorizePublish(
             @NotNull final ChannelHandlerContext ctx,
             @NotNull final PUBLISH publish,
-            @Nullable final PublishAuthorizerResult authorizerResult) {
+            @Nullable final PublishAuthorizerResult authorizerResult,
+            final long start) {
 
         final ClientConnection clientConnection = ClientConnection.of(ctx.channel());
 
@@ -154,7 +175,7 @@ public class IncomingPublishService {
                 //reason string and reason code null, because client disconnected previously
                 finishUnauthorizedPublish(ctx, publish, null, null);
             } else if (authorizerResult.getAckReasonCode() == AckReasonCode.SUCCESS) {
-                publishMessage(ctx, publish);
+                publishMessage(ctx, publish, start);
             } else {
                 finishUnauthorizedPublish(ctx,
                         publish,
@@ -180,7 +201,7 @@ public class IncomingPublishService {
         }
 
         if (DefaultPermissionsEvaluator.checkPublish(permissions, publish)) {
-            publishMessage(ctx, publish);
+            publishMessage(ctx, publish, start);
         } else {
             finishUnauthorizedPublish(ctx, publish, null, null);
         }
@@ -270,23 +291,66 @@ public class IncomingPublishService {
                 reason);
     }
 
-    private void publishMessage(final ChannelHandlerContext ctx, @NotNull final PUBLISH publish) {
+    private void publishMessage(final ChannelHandlerContext ctx, @NotNull final PUBLISH publish, final long start) {
 
         final ClientConnection clientConnection = ClientConnection.of(ctx.channel());
         final String clientId = clientConnection.getClientId();
-        final ListenableFuture<PublishReturnCode> publishFinishedFuture =
-                publishService.publish(publish, ctx.channel().eventLoop(), clientId);
+        final Channel channel = ctx.channel();
+        final ListenableFuture<PublishReturnCode> publishFinishedFuture;
+        if (queuePressure.isEnabled()) {
+            publishFinishedFuture = publishService.publish(publish,
+                    channel.eventLoop(),
+                    clientId,
+                    () -> channel.eventLoop().execute(() -> applyBackPressure(channel)));
+        } else {
+            publishFinishedFuture = publishService.publish(publish, channel.eventLoop(), clientId);
+        }
         Futures.addCallback(publishFinishedFuture, new FutureCallback<>() {
             @Override
             public void onSuccess(@Nullable final PublishReturnCode result) {
+                // The queued copies of the PUBLISH own an off-heap payload from now on
+                publish.releasePayload();
+                incomingTimer.stop(start);
                 sendAck(ctx, publish, result);
             }
 
             @Override
             public void onFailure(@NotNull final Throwable t) {
+                publish.releasePayload();
+                incomingTimer.stop(start);
                 sendAck(ctx, publish, PublishReturnCode.FAILED);
             }
-        }, ctx.channel().eventLoop());
+        }, channel.eventLoop());
+    }
+
+    /**
+     * Stops reading from the channel of a publisher whose PUBLISH was added to a congested client queue, while the
+     * client queues are under pressure.
+     */
+    private void applyBackPressure(final @NotNull Channel channel) {
+        if (!queuePressure.isUnderPressure() || !channel.config().isAutoRead()) {
+            return;
+        }
+        channel.config().setAutoRead(false);
+        backPressurePausedCounter.inc();
+        scheduleResume(channel);
+    }
+
+    private void scheduleResume(final @NotNull Channel channel) {
+        channel.eventLoop().schedule(() -> {
+            if (!channel.isActive() || channel.config().isAutoRead()) {
+                return;
+            }
+            if (channel.pipeline().get(ChannelHandlerNames.MQTT_SUBSCRIBE_MESSAGE_BARRIER) != null) {
+                // the barrier resumes reading when the subscription is done
+                return;
+            }
+            if (queuePressure.isUnderPressure()) {
+                scheduleResume(channel);
+                return;
+            }
+            channel.config().setAutoRead(true);
+        }, backPressureCheckIntervalMillis, TimeUnit.MILLISECONDS);
     }
 
     private void sendAck(
@@ -306,7 +370,7 @@ public class IncomingPublishService {
                                     null,
                                     Mqtt5UserProperties.NO_USER_PROPERTIES));
                 } else {
-                    ctx.pipeline().writeAndFlush(new PUBACK(publish.getPacketIdentifier()));
+                    ctx.pipeline().writeAndFlush(PUBACK.newInstance(publish.getPacketIdentifier()));
                 }
                 break;
             case EXACTLY_ONCE:
@@ -317,14 +381,14 @@ public class IncomingPublishService {
                                     null,
                                     Mqtt5UserProperties.NO_USER_PROPERTIES));
                 } else {
-                    ctx.pipeline().writeAndFlush(new PUBREC(publish.getPacketIdentifier()));
+                    ctx.pipeline().writeAndFlush(PUBREC.newInstance(publish.getPacketIdentifier()));
                 }
                 break;
         }
     }
 
     private boolean isMessageSizeAllowed(final @Nullable Long maxPublishSize, @NotNull final PUBLISH publish) {
-        return maxPublishSize == null || publish.getPayload() == null || maxPublishSize >= publish.getPayload().length;
+        return maxPublishSize == null || maxPublishSize >= publish.getPayloadLength();
     }
 
 
@@ -56,6 +56,7 @@ public class MessageExpiryHandler extends ChannelOutboundHandlerAdapter {
             final boolean isInflight = (publish.getQoS() == QoS.EXACTLY_ONCE) && publish.isDuplicateDelivery();
             final boolean drop = (publish.getMessageExpiryInterval() == 0) && (!isInflight || expireInflight);
             if (drop) {
+                publish.releasePayload();
                 ctx.fireUserEventTriggered(new PublishDroppedEvent(publish));
                 return;
             }
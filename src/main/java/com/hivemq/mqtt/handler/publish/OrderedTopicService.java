@@ -144,6 +144,7 @@ public class OrderedTopicService {
 
         //do not store in OrderedTopicService if channelInactive has been called already
         if (closedAlready.get()) {
+            publish.releasePayload();
             promise.setFailure(CLOSED_CHANNEL_EXCEPTION);
             return true;
         }
@@ -166,6 +167,7 @@ public class OrderedTopicService {
         for (final QueuedMessage queuedMessage : queue) {
             if (queuedMessage != null) {
                 if (!queuedMessage.getPromise().isDone()) {
+                    queuedMessage.getPublish().releasePayload();
                     queuedMessage.getPromise().setFailure(CLOSED_CHANNEL_EXCEPTION);
                 }
             }
@@ -119,6 +119,8 @@ public class PublishFlowHandler extends ChannelDuplexHandler {
             final PUBACK puback = (PUBACK) msg;
             final String client = ClientConnection.of(ctx.channel()).getClientId();
             final int messageId = puback.getPacketIdentifier();
+            // the PUBACK may be recycled after it was written, the persistence only uses it as a marker that the
+            // PUBLISH flow for the packet identifier is no longer in progress
             persistence.addOrReplace(client, messageId, puback);
             promise.addListener(new PUBLISHFlowCompleteListener(messageId,
                     client,
@@ -280,7 +282,7 @@ public class PublishFlowHandler extends ChannelDuplexHandler {
             log.trace("Client {}: Received PUBREC remove message id:[{}]", clientId, msg.getPacketIdentifier());
         }
         //We send it with channel instead of context because otherwise we can't intercept the write in this handler
-        ctx.channel().writeAndFlush(new PUBREL(msg.getPacketIdentifier()));
+        ctx.channel().writeAndFlush(PUBREL.newInstance(msg.getPacketIdentifier()));
     }
 
     private void handlePubrel(final ChannelHandlerContext ctx, final PUBREL pubrel) {
@@ -290,7 +292,7 @@ public class PublishFlowHandler extends ChannelDuplexHandler {
         final int messageId = pubrel.getPacketIdentifier();
 
         persistence.addOrReplace(client, messageId, pubrel);
-        ctx.writeAndFlush(new PUBCOMP(messageId))
+        ctx.writeAndFlush(PUBCOMP.newInstance(messageId))
                 .addListener(new PUBLISHFlowCompleteListener(messageId, client, qos1And2AlreadySentMap, persistence));
     }
 
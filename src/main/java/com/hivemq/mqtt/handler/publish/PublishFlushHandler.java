@@ -20,6 +20,8 @@ import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.metrics.PublishFlushMetrics;
+import com.hivemq.metrics.SampledTimer;
 import com.hivemq.mqtt.message.publish.PublishWithFuture;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
@@ -27,21 +29,50 @@ import io.netty.channel.ChannelInboundHandlerAdapter;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Writes the PUBLISH messages of a client to its channel while the channel is writable.
+ * <p>
+ * The channel is flushed adaptively: after a maximum count of writes, after a byte threshold or when no more messages
+ * are waiting. If a maximum flush delay is configured, the last flush of a burst is delayed so that messages arriving
+ * shortly after are coalesced into the same flush. The byte threshold shrinks each time the channel becomes unwritable
+ * and grows back with every flush while it is writable.
+ *
  * @author Daniel Krüger
  */
 public class PublishFlushHandler extends ChannelInboundHandlerAdapter implements Runnable {
 
+    private static final int MIN_FLUSH_THRESHOLD_BYTES = 1024;
+
     private @Nullable ChannelHandlerContext ctx;
     private final @NotNull LinkedList<PublishWithFuture> messagesToWrite = new LinkedList<>();
     private final @NotNull Counter channelNotWritable;
+    private final @NotNull SampledTimer flushTimer;
+    private final @NotNull PublishFlushMetrics flushMetrics;
     private final int maxWritesBeforeFlush;
-    private boolean wasWritable = true; // will only ever be updated in the channel's eventloop
-
-    public PublishFlushHandler(final @NotNull MetricsHolder metricsHolder) {
+    private final int maxFlushThresholdBytes;
+    private final long maxFlushDelayNanos;
+    private final @NotNull Runnable delayedFlush = this::delayedFlush;
+
+    // the following fields will only ever be updated in the channel's eventloop
+    private boolean wasWritable = true;
+    private int flushThresholdBytes;
+    private int unflushedWrites;
+    private long unflushedBytes;
+    private long firstUnflushedWriteNanos;
+    private boolean flushScheduled;
+
+    public PublishFlushHandler(final @NotNull MetricsHolder metricsHolder, final @NotNull String listenerName) {
         channelNotWritable = metricsHolder.getChannelNotWritableCounter();
+        flushTimer = metricsHolder.getPublishFlushTimer();
+        flushMetrics = metricsHolder.getPublishFlushMetrics(listenerName);
         maxWritesBeforeFlush = InternalConfigurations.COUNT_OF_PUBLISHES_WRITTEN_TO_CHANNEL_TO_TRIGGER_FLUSH.get();
+        maxFlushThresholdBytes =
+                Math.max(MIN_FLUSH_THRESHOLD_BYTES, InternalConfigurations.PUBLISH_FLUSH_THRESHOLD_BYTES.get());
+        maxFlushDelayNanos =
+                TimeUnit.MICROSECONDS.toNanos(InternalConfigurations.PUBLISH_FLUSH_MAX_DELAY_MICROS.get());
+        flushThresholdBytes = maxFlushThresholdBytes;
     }
 
     @Override
@@ -52,11 +83,21 @@ public class PublishFlushHandler extends ChannelInboundHandlerAdapter implements
     @Override
     public void channelWritabilityChanged(final @NotNull ChannelHandlerContext ctx) {
         final Channel channel = ctx.channel();
-        if (channel.isWritable() && !wasWritable) {
-            wasWritable = true;
-            channelNotWritable.dec();
+        if (channel.isWritable()) {
+            if (!wasWritable) {
+                wasWritable = true;
+                channelNotWritable.dec();
 
-            channel.eventLoop().execute(this);
+                channel.eventLoop().execute(this);
+            }
+        } else {
+            if (wasWritable) {
+                notWritable();
+            }
+            // the buffered messages have to be flushed so that the channel can become writable again
+            if (unflushedWrites > 0) {
+                flush();
+            }
         }
         ctx.fireChannelWritabilityChanged();
     }
@@ -69,18 +110,25 @@ public class PublishFlushHandler extends ChannelInboundHandlerAdapter implements
 
     private void handleChannelInactiveState() {
         while (!messagesToWrite.isEmpty()) {
-            messagesToWrite.poll().getFuture().set(PublishStatus.NOT_CONNECTED);
+            final PublishWithFuture publish = messagesToWrite.poll();
+            publish.releasePayload();
+            publish.getFuture().set(PublishStatus.NOT_CONNECTED);
         }
     }
 
     public void sendPublishes(final @NotNull List<PublishWithFuture> publishes) {
         assert ctx != null : "ctx can not be null because sendPublishes is called after handlerAdded";
+        final long start = flushTimer.start();
         ctx.channel().eventLoop().execute(() -> {
-            messagesToWrite.addAll(publishes);
-            if (ctx.channel().isActive()) {
-                consumeQueue();
-            } else {
-                handleChannelInactiveState();
+            try {
+                messagesToWrite.addAll(publishes);
+                if (ctx.channel().isActive()) {
+                    consumeQueue();
+                } else {
+                    handleChannelInactiveState();
+                }
+            } finally {
+                flushTimer.stop(start);
             }
         });
     }
@@ -92,29 +140,77 @@ public class PublishFlushHandler extends ChannelInboundHandlerAdapter implements
 
     private void consumeQueue() {
         assert ctx != null : "ctx can not be null because consumeQueue is called after handlerAdded";
-        int written = 0;
         while (!messagesToWrite.isEmpty()) {
 
             if (!ctx.channel().isWritable()) {
                 if (wasWritable) {
-                    wasWritable = false;
-                    channelNotWritable.inc();
+                    notWritable();
                 }
                 break;
             }
 
-            final PublishWithFuture publish = messagesToWrite.poll();
-
-            ctx.write(publish).addListener(new PublishWriteFailedListener(publish.getFuture()));
-            written++;
-            if (written >= maxWritesBeforeFlush) {
-                ctx.flush();
-                written = 0;
+            write(messagesToWrite.poll());
+            if (unflushedWrites >= maxWritesBeforeFlush || unflushedBytes >= flushThresholdBytes) {
+                flush();
             }
         }
-        if (written > 0) {
-            ctx.flush();
+        if (unflushedWrites > 0) {
+            if (maxFlushDelayNanos > 0 && ctx.channel().isWritable()) {
+                scheduleFlush();
+            } else {
+                flush();
+            }
         }
     }
 
+    private void write(final @NotNull PublishWithFuture publish) {
+        assert ctx != null;
+        if (unflushedWrites == 0) {
+            firstUnflushedWriteNanos = System.nanoTime();
+        }
+        final int estimatedLength = publish.getPayloadLength() + publish.getTopic().length();
+        ctx.write(publish).addListener(new PublishWriteFailedListener(publish.getFuture()));
+        // the encoded length is only known if the PUBLISH was encoded synchronously
+        final int encodedLength = publish.getEncodedLength();
+        unflushedWrites++;
+        unflushedBytes += encodedLength > 0 ? encodedLength : estimatedLength;
+    }
+
+    private void flush() {
+        assert ctx != null;
+        ctx.flush();
+        flushMetrics.flushed(unflushedBytes, System.nanoTime() - firstUnflushedWriteNanos);
+        unflushedWrites = 0;
+        unflushedBytes = 0;
+        if (wasWritable && flushThresholdBytes < maxFlushThresholdBytes) {
+            flushThresholdBytes = Math.min(maxFlushThresholdBytes, flushThresholdBytes + maxFlushThresholdBytes / 8);
+        }
+    }
+
+    private void scheduleFlush() {
+        assert ctx != null;
+        if (flushScheduled) {
+            return;
+        }
+        final long delayNanos = maxFlushDelayNanos - (System.nanoTime() - firstUnflushedWriteNanos);
+        if (delayNanos <= 0) {
+            flush();
+            return;
+        }
+        flushScheduled = true;
+        ctx.executor().schedule(delayedFlush, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void delayedFlush() {
+        flushScheduled = false;
+        if (unflushedWrites > 0) {
+            flush();
+        }
+    }
+
+    private void notWritable() {
+        wasWritable = false;
+        channelNotWritable.inc();
+        flushThresholdBytes = Math.max(MIN_FLUSH_THRESHOLD_BYTES, flushThresholdBytes / 2);
+    }
 }
@@ -29,7 +29,6 @@ import com.hivemq.mqtt.message.reason.Mqtt5UnsubAckReasonCode;
 import com.hivemq.mqtt.message.unsuback.UNSUBACK;
 import com.hivemq.mqtt.message.unsubscribe.UNSUBSCRIBE;
 import com.hivemq.persistence.clientsession.ClientSessionSubscriptionPersistence;
-import com.hivemq.persistence.clientsession.SharedSubscriptionService;
 import com.hivemq.util.Exceptions;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -50,14 +49,11 @@ public class UnsubscribeHandler extends SimpleChannelInboundHandler<UNSUBSCRIBE>
     private static final Logger log = LoggerFactory.getLogger(UnsubscribeHandler.class);
 
     private final @NotNull ClientSessionSubscriptionPersistence clientSessionSubscriptionPersistence;
-    private final @NotNull SharedSubscriptionService sharedSubscriptionService;
 
     @Inject
     public UnsubscribeHandler(
-            final @NotNull ClientSessionSubscriptionPersistence clientSessionSubscriptionPersistence,
-            final @NotNull SharedSubscriptionService sharedSubscriptionService) {
+            final @NotNull ClientSessionSubscriptionPersistence clientSessionSubscriptionPersistence) {
         this.clientSessionSubscriptionPersistence = clientSessionSubscriptionPersistence;
-        this.sharedSubscriptionService = sharedSubscriptionService;
     }
 
     @Override
@@ -70,7 +66,6 @@ public class UnsubscribeHandler extends SimpleChannelInboundHandler<UNSUBSCRIBE>
 
         final UnsubscribeOperationCompletionCallback unsubscribeOperationCompletionCallback =
                 new UnsubscribeOperationCompletionCallback(ctx,
-                        sharedSubscriptionService,
                         clientConnection.getProtocolVersion(),
                         clientId,
                         msg.getTopics(),
@@ -115,7 +110,6 @@ public class UnsubscribeHandler extends SimpleChannelInboundHandler<UNSUBSCRIBE>
     private static class UnsubscribeOperationCompletionCallback implements FutureCallback<Void> {
 
         private final @NotNull ChannelHandlerContext ctx;
-        private final @NotNull SharedSubscriptionService sharedSubscriptionService;
         private final @NotNull ProtocolVersion protocolVersion;
         private final @NotNull String clientId;
         private final @NotNull ImmutableList<String> topicFilters;
@@ -123,13 +117,11 @@ public class UnsubscribeHandler extends SimpleChannelInboundHandler<UNSUBSCRIBE>
 
         UnsubscribeOperationCompletionCallback(
                 final @NotNull ChannelHandlerContext ctx,
-                final @NotNull SharedSubscriptionService sharedSubscriptionService,
                 final @NotNull ProtocolVersion protocolVersion,
                 final @NotNull String clientId,
                 final @NotNull ImmutableList<String> topicFilters,
                 final int packetIdentifier) {
             this.ctx = ctx;
-            this.sharedSubscriptionService = sharedSubscriptionService;
             this.protocolVersion = protocolVersion;
             this.clientId = clientId;
             this.topicFilters = topicFilters;
@@ -138,19 +130,6 @@ public class UnsubscribeHandler extends SimpleChannelInboundHandler<UNSUBSCRIBE>
 
         @Override
         public void onSuccess(final @NotNull Void aVoid) {
-            // We only need to invalidate the caches for the node at which the client is connected,
-            // since this node decides which client will receive messages for the shared subscriptions
-            for (final String topicFilter : topicFilters) {
-                final SharedSubscriptionService.SharedSubscription sharedSubscription =
-                        SharedSubscriptionService.checkForSharedSubscription(topicFilter);
-                if (sharedSubscription != null) {
-                    sharedSubscriptionService.invalidateSharedSubscriberCache(sharedSubscription.getShareName() +
-                            "/" +
-                            sharedSubscription.getTopicFilter());
-                    sharedSubscriptionService.invalidateSharedSubscriptionCache(clientId);
-                }
-            }
-
             if (ProtocolVersion.MQTTv5 == protocolVersion) {
                 final Mqtt5UnsubAckReasonCode[] reasonCodes = new Mqtt5UnsubAckReasonCode[topicFilters.size()];
                 Arrays.fill(reasonCodes, Mqtt5UnsubAckReasonCode.SUCCESS);
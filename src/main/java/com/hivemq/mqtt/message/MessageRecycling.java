@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.message;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Tracks the recycled messages if the leak detection is enabled.
+ *
+ * @see RecyclableMessage
+ */
+public final class MessageRecycling {
+
+    private static final @NotNull Map<RecyclableMessage, Throwable> outstanding =
+            Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private MessageRecycling() {
+    }
+
+    /**
+     * @return whether messages have to be taken from the recyclers
+     */
+    public static boolean isEnabled() {
+        return InternalConfigurations.MESSAGE_RECYCLING_ENABLED.get();
+    }
+
+    /**
+     * Releases the message if it is a {@link RecyclableMessage}.
+     */
+    public static void release(final @NotNull Object message) {
+        if (message instanceof RecyclableMessage) {
+            ((RecyclableMessage) message).recycle();
+        }
+    }
+
+    public static void taken(final @NotNull RecyclableMessage message) {
+        if (InternalConfigurations.MESSAGE_RECYCLING_LEAK_DETECTION_ENABLED.get()) {
+            outstanding.put(message, new Throwable("Recycled " + message.getType() + " was taken here"));
+        }
+    }
+
+    public static void released(final @NotNull RecyclableMessage message) {
+        if (InternalConfigurations.MESSAGE_RECYCLING_LEAK_DETECTION_ENABLED.get() &&
+                outstanding.remove(message) == null) {
+            throw new IllegalStateException("Recycled " + message.getType() + " was released twice");
+        }
+    }
+
+    /**
+     * @return the amount of recycled messages that were taken but not released yet, only counted if the leak
+     *         detection is enabled
+     */
+    @VisibleForTesting
+    public static int getOutstandingCount() {
+        return outstanding.size();
+    }
+
+    /**
+     * @throws IllegalStateException if recycled messages were taken but not released, the cause contains the stack
+     *                               trace where one of the messages was taken
+     */
+    @VisibleForTesting
+    public static void assertNoLeaks() {
+        synchronized (outstanding) {
+            if (!outstanding.isEmpty()) {
+                throw new IllegalStateException(outstanding.size() + " recycled messages were not released",
+                        outstanding.values().iterator().next());
+            }
+        }
+    }
+
+    @VisibleForTesting
+    public static void resetLeakDetection() {
+        outstanding.clear();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.message;
+
+/**
+ * A message that may be taken from a recycler instead of being allocated.
+ * <p>
+ * Ownership contract:
+ * <ul>
+ *     <li>The code that takes a recycled message owns it and may modify it until it passes it on.</li>
+ *     <li>Writing the message to a channel passes the ownership to the channel. The message encoder releases the
+ *     message after it was encoded, so nobody must access the message after it was written.</li>
+ *     <li>A message that is not written must be released with {@link #recycle()} by its owner.</li>
+ *     <li>A message that is never released is not a problem apart from being garbage collected instead of reused,
+ *     but releasing a message twice is an error.</li>
+ * </ul>
+ * Messages that were allocated with a constructor are never recycled, {@link #recycle()} does nothing for them.
+ *
+ * @see MessageRecycling
+ */
+public interface RecyclableMessage extends Message {
+
+    /**
+     * Returns this message to its recycler, if it was taken from one.
+     */
+    void recycle();
+}
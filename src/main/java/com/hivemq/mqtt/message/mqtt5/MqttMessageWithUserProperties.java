@@ -53,6 +53,16 @@ public abstract class MqttMessageWithUserProperties extends MessageWithID {
     }
 
 
+    /**
+     * Resets the lengths that were calculated when the message was encoded.
+     */
+    protected void resetEncodedLengths() {
+        bufferSize = -1;
+        remainingLength = -1;
+        propertyLength = -1;
+        omittedProperties = -1;
+    }
+
     @Override
     public void setEncodedLength(final int bufferSize) {
         this.bufferSize = bufferSize;
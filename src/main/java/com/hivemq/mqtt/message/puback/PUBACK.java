@@ -18,10 +18,13 @@ package com.hivemq.mqtt.message.puback;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extensions.packets.puback.PubackPacketImpl;
+import com.hivemq.mqtt.message.MessageRecycling;
 import com.hivemq.mqtt.message.MessageType;
+import com.hivemq.mqtt.message.RecyclableMessage;
 import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
 import com.hivemq.mqtt.message.mqtt5.MqttMessageWithUserProperties;
 import com.hivemq.mqtt.message.reason.Mqtt5PubAckReasonCode;
+import io.netty.util.Recycler;
 
 /**
  * The MQTT PUBACK message
@@ -31,13 +34,27 @@ import com.hivemq.mqtt.message.reason.Mqtt5PubAckReasonCode;
  * @since 1.4
  */
 public class PUBACK extends MqttMessageWithUserProperties.MqttMessageWithIdAndReasonCode<Mqtt5PubAckReasonCode>
-        implements Mqtt3PUBACK, Mqtt5PUBACK {
+        implements Mqtt3PUBACK, Mqtt5PUBACK, RecyclableMessage {
+
+    private static final @NotNull Recycler<PUBACK> RECYCLER = new Recycler<PUBACK>() {
+        @Override
+        protected @NotNull PUBACK newObject(final @NotNull Handle<PUBACK> handle) {
+            return new PUBACK(handle);
+        }
+    };
+
+    private transient @Nullable Recycler.Handle<PUBACK> recyclerHandle;
 
     //MQTT 3
     public PUBACK(final int packetIdentifier) {
         super(packetIdentifier, Mqtt5PubAckReasonCode.SUCCESS, null, Mqtt5UserProperties.NO_USER_PROPERTIES);
     }
 
+    private PUBACK(final @NotNull Recycler.Handle<PUBACK> recyclerHandle) {
+        this(0);
+        this.recyclerHandle = recyclerHandle;
+    }
+
     //MQTT 5
     public PUBACK(
             final int packetIdentifier,
@@ -53,6 +70,34 @@ public class PUBACK extends MqttMessageWithUserProperties.MqttMessageWithIdAndRe
         return MessageType.PUBACK;
     }
 
+    /**
+     * Creates a PUBACK with the reason code SUCCESS, which is taken from the recycler if the message recycling is
+     * enabled.
+     *
+     * @param packetIdentifier the packet identifier of the PUBACK
+     * @return the PUBACK, which is owned by the caller
+     * @see RecyclableMessage
+     */
+    public static @NotNull PUBACK newInstance(final int packetIdentifier) {
+        if (!MessageRecycling.isEnabled()) {
+            return new PUBACK(packetIdentifier);
+        }
+        final PUBACK puback = RECYCLER.get();
+        puback.setPacketIdentifier(packetIdentifier);
+        MessageRecycling.taken(puback);
+        return puback;
+    }
+
+    @Override
+    public void recycle() {
+        if (recyclerHandle != null) {
+            MessageRecycling.released(this);
+            setUserProperties(Mqtt5UserProperties.NO_USER_PROPERTIES);
+            resetEncodedLengths();
+            recyclerHandle.recycle(this);
+        }
+    }
+
     public static @NotNull PUBACK from(final @NotNull PubackPacketImpl packet) {
         return new PUBACK(packet.getPacketIdentifier(),
                 Mqtt5PubAckReasonCode.from(packet.getReasonCode()),
@@ -18,10 +18,13 @@ package com.hivemq.mqtt.message.pubcomp;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extensions.packets.pubcomp.PubcompPacketImpl;
+import com.hivemq.mqtt.message.MessageRecycling;
 import com.hivemq.mqtt.message.MessageType;
+import com.hivemq.mqtt.message.RecyclableMessage;
 import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
 import com.hivemq.mqtt.message.mqtt5.MqttMessageWithUserProperties;
 import com.hivemq.mqtt.message.reason.Mqtt5PubCompReasonCode;
+import io.netty.util.Recycler;
 
 /**
  * The MQTT PUBCOMP message
@@ -31,13 +34,27 @@ import com.hivemq.mqtt.message.reason.Mqtt5PubCompReasonCode;
  * @since 1.4
  */
 public class PUBCOMP extends MqttMessageWithUserProperties.MqttMessageWithIdAndReasonCode<Mqtt5PubCompReasonCode>
-        implements Mqtt3PUBCOMP, Mqtt5PUBCOMP {
+        implements Mqtt3PUBCOMP, Mqtt5PUBCOMP, RecyclableMessage {
+
+    private static final @NotNull Recycler<PUBCOMP> RECYCLER = new Recycler<PUBCOMP>() {
+        @Override
+        protected @NotNull PUBCOMP newObject(final @NotNull Handle<PUBCOMP> handle) {
+            return new PUBCOMP(handle);
+        }
+    };
+
+    private transient @Nullable Recycler.Handle<PUBCOMP> recyclerHandle;
 
     //MQTT 3
     public PUBCOMP(final int packetIdentifier) {
         super(packetIdentifier, Mqtt5PubCompReasonCode.SUCCESS, null, Mqtt5UserProperties.NO_USER_PROPERTIES);
     }
 
+    private PUBCOMP(final @NotNull Recycler.Handle<PUBCOMP> recyclerHandle) {
+        this(0);
+        this.recyclerHandle = recyclerHandle;
+    }
+
     //MQTT 5
     public PUBCOMP(
             final int packetIdentifier,
@@ -53,6 +70,34 @@ public class PUBCOMP extends MqttMessageWithUserProperties.MqttMessageWithIdAndR
         return MessageType.PUBCOMP;
     }
 
+    /**
+     * Creates a PUBCOMP with the reason code SUCCESS, which is taken from the recycler if the message recycling is
+     * enabled.
+     *
+     * @param packetIdentifier the packet identifier of the PUBCOMP
+     * @return the PUBCOMP, which is owned by the caller
+     * @see RecyclableMessage
+     */
+    public static @NotNull PUBCOMP newInstance(final int packetIdentifier) {
+        if (!MessageRecycling.isEnabled()) {
+            return new PUBCOMP(packetIdentifier);
+        }
+        final PUBCOMP pubcomp = RECYCLER.get();
+        pubcomp.setPacketIdentifier(packetIdentifier);
+        MessageRecycling.taken(pubcomp);
+        return pubcomp;
+    }
+
+    @Override
+    public void recycle() {
+        if (recyclerHandle != null) {
+            MessageRecycling.released(this);
+            setUserProperties(Mqtt5UserProperties.NO_USER_PROPERTIES);
+            resetEncodedLengths();
+            recyclerHandle.recycle(this);
+        }
+    }
+
     public static @NotNull PUBCOMP from(final @NotNull PubcompPacketImpl packet) {
         return new PUBCOMP(packet.getPacketIdentifier(),
                 Mqtt5PubCompReasonCode.from(packet.getReasonCode()),
@@ -44,6 +44,11 @@ public interface Mqtt3PUBLISH extends Message {
      */
     byte[] getPayload();
 
+    /**
+     * @return the length of the payload of the publish message
+     */
+    int getPayloadLength();
+
     /**
      * @return the topic of the publish message
      */
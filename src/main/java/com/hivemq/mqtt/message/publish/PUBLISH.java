@@ -53,7 +53,9 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
     public static final AtomicLong PUBLISH_COUNTER = new AtomicLong(1);
     protected long timestamp;
 
-    private @Nullable byte[] payload;
+    // Assigned lazily by the threads that read an off-heap payload, e.g. encoders, the single writer and extensions
+    private volatile @Nullable byte[] payload;
+    private final @Nullable PublishPayloadBuffer payloadBuffer;
     private boolean duplicateDelivery;
     private final @NotNull String topic;
     private final boolean retain;
@@ -81,6 +83,7 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
             final @NotNull String hivemqId,
             final @NotNull String topic,
             final @Nullable byte[] payload,
+            final @Nullable PublishPayloadBuffer payloadBuffer,
             final @NotNull QoS qos,
             final @NotNull QoS onwardQos,
             final boolean isRetain,
@@ -106,6 +109,7 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
 
         this.topic = topic;
         this.payload = payload;
+        this.payloadBuffer = payloadBuffer;
         this.qoS = qos;
         this.onwardQos = onwardQos;
         this.retain = isRetain;
@@ -142,6 +146,7 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
             final @NotNull String hivemqId,
             final @NotNull String topic,
             final @Nullable byte[] payload,
+            final @Nullable PublishPayloadBuffer payloadBuffer,
             final @NotNull QoS qos,
             final @NotNull QoS onwardQos,
             final boolean isRetain,
@@ -161,6 +166,7 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
         this.hivemqId = hivemqId;
         this.topic = topic;
         this.payload = payload;
+        this.payloadBuffer = payloadBuffer;
         this.qoS = qos;
         this.onwardQos = onwardQos;
         this.retain = isRetain;
@@ -197,7 +203,8 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
 
         this(publish.getHivemqId(),
                 publish.getTopic(),
-                publish.getPayload(),
+                publish.payloadBuffer == null ? publish.getPayload() : publish.payload,
+                publish.payloadBuffer,
                 publish.getQoS(),
                 publish.getOnwardQoS(),
                 publish.isRetain(),
@@ -267,9 +274,53 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
         if (payload != null) {
             return payload;
         }
+        if (payloadBuffer != null) {
+            // The payload is copied to the heap only once, for the extensions and the retained messages
+            final byte[] bytes = payloadBuffer.toByteArray();
+            this.payload = bytes;
+            return bytes;
+        }
         return persistence.get(publishId);
     }
 
+    /**
+     * @return the off-heap payload of this PUBLISH or {@code null} if the payload is kept on the heap
+     */
+    public @Nullable PublishPayloadBuffer getPayloadBuffer() {
+        return payloadBuffer;
+    }
+
+    @Override
+    public int getPayloadLength() {
+        if (payloadBuffer != null) {
+            return payloadBuffer.length();
+        }
+        final byte[] payload = getPayload();
+        return payload == null ? 0 : payload.length;
+    }
+
+    /**
+     * Makes the caller an owner of the off-heap payload of this PUBLISH, if it has one.
+     *
+     * @see PublishPayloadBuffer
+     */
+    public void retainPayload() {
+        if (payloadBuffer != null) {
+            payloadBuffer.retain();
+        }
+    }
+
+    /**
+     * Releases the ownership of the off-heap payload of this PUBLISH, if it has one.
+     *
+     * @see PublishPayloadBuffer
+     */
+    public void releasePayload() {
+        if (payloadBuffer != null) {
+            payloadBuffer.release();
+        }
+    }
+
     @Override
     public @NotNull String getTopic() {
         return topic;
@@ -424,7 +475,11 @@ public class PUBLISH extends MqttMessageWithUserProperties implements Mqtt3PUBLI
         size += ObjectMemoryEstimation.intSize(); // sizeInMemory
         size += ObjectMemoryEstimation.longSize(); // timestamp
         size += ObjectMemoryEstimation.stringSize(topic);
-        size += ObjectMemoryEstimation.byteArraySize(payload);
+        if (payloadBuffer != null) {
+            size += payloadBuffer.length();
+        } else {
+            size += ObjectMemoryEstimation.byteArraySize(payload);
+        }
         size += ObjectMemoryEstimation.byteArraySize(correlationData);
         size += ObjectMemoryEstimation.stringSize(responseTopic);
         size += ObjectMemoryEstimation.stringSize(uniqueId);
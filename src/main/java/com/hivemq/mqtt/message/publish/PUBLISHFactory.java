@@ -46,6 +46,7 @@ public class PUBLISHFactory {
 
         private long timestamp = System.currentTimeMillis();
         private @Nullable byte[] payload;
+        private @Nullable PublishPayloadBuffer payloadBuffer;
         private @Nullable String topic;
         private boolean duplicateDelivery;
         private boolean retain;
@@ -69,7 +70,9 @@ public class PUBLISHFactory {
             this.topic = publish.getTopic();
             this.qoS = publish.getQoS();
             this.onwardQos = publish.getOnwardQoS();
-            this.payload = publish.getPayload();
+            this.payloadBuffer = publish.getPayloadBuffer();
+            // An off-heap payload is not copied to the heap
+            this.payload = payloadBuffer == null ? publish.getPayload() : null;
             this.retain = publish.isRetain();
             this.messageExpiryInterval = publish.getMessageExpiryInterval();
             this.duplicateDelivery = publish.isDuplicateDelivery();
@@ -95,6 +98,7 @@ public class PUBLISHFactory {
             return new PUBLISH(hivemqId,
                     topic,
                     payload,
+                    payloadBuffer,
                     qoS,
                     onwardQos,
                     retain,
@@ -120,6 +124,12 @@ public class PUBLISHFactory {
 
         public @NotNull Mqtt5Builder withPayload(final @Nullable byte[] payload) {
             this.payload = payload;
+            this.payloadBuffer = null;
+            return this;
+        }
+
+        public @NotNull Mqtt5Builder withPayloadBuffer(final @Nullable PublishPayloadBuffer payloadBuffer) {
+            this.payloadBuffer = payloadBuffer;
             return this;
         }
 
@@ -218,6 +228,7 @@ public class PUBLISHFactory {
         private @NotNull QoS qoS;
         private @NotNull QoS onwardQos;
         private @Nullable byte[] payload;
+        private @Nullable PublishPayloadBuffer payloadBuffer;
         private boolean retain;
 
         private long messageExpiryInterval = MESSAGE_EXPIRY_INTERVAL_NOT_SET;
@@ -234,7 +245,9 @@ public class PUBLISHFactory {
             this.topic = publish.getTopic();
             this.qoS = publish.getQoS();
             this.onwardQos = publish.getOnwardQoS();
-            this.payload = publish.getPayload();
+            this.payloadBuffer = publish.getPayloadBuffer();
+            // An off-heap payload is not copied to the heap
+            this.payload = payloadBuffer == null ? publish.getPayload() : null;
             this.retain = publish.isRetain();
             this.messageExpiryInterval = publish.getMessageExpiryInterval();
             this.duplicateDelivery = publish.isDuplicateDelivery();
@@ -253,6 +266,7 @@ public class PUBLISHFactory {
             return new PUBLISH(hivemqId,
                     topic,
                     payload,
+                    payloadBuffer,
                     qoS,
                     onwardQos,
                     retain,
@@ -296,6 +310,12 @@ public class PUBLISHFactory {
 
         public @NotNull Mqtt3Builder withPayload(final @Nullable byte[] payload) {
             this.payload = payload;
+            this.payloadBuffer = null;
+            return this;
+        }
+
+        public @NotNull Mqtt3Builder withPayloadBuffer(final @Nullable PublishPayloadBuffer payloadBuffer) {
+            this.payloadBuffer = payloadBuffer;
             return this;
         }
 
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.message.publish;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.IllegalReferenceCountException;
+
+/**
+ * The off-heap payload of a PUBLISH: a slice of the inbound buffer the PUBLISH was decoded from.
+ * <p>
+ * The payload buffer is shared by all copies of the PUBLISH. Its reference count counts the owners of the slice:
+ * <ul>
+ * <li>the incoming PUBLISH, until it was distributed to the subscribers</li>
+ * <li>every copy of the PUBLISH in a client queue</li>
+ * <li>every copy of the PUBLISH that is written to a subscriber</li>
+ * </ul>
+ * The slice is released when the last owner released the payload buffer. Every owner must release it explicitly, also
+ * when it drops or replaces the PUBLISH. A copy that is no owner can not read the payload after that,
+ * {@link #retainedSlice()} returns {@code null} then. An owner that never releases leaks the slice, this is reported
+ * by the resource leak detection of Netty.
+ * <p>
+ * As long as the payload is a slice of the inbound buffer, it keeps the whole inbound buffer alive. Before the PUBLISH
+ * is queued, the payload is therefore detached into a buffer of its own, see {@link #detach()}.
+ */
+public class PublishPayloadBuffer extends AbstractReferenceCounted {
+
+    private final int length;
+    private @NotNull ByteBuf slice;
+    private boolean detached;
+
+    /**
+     * @param slice the slice of the inbound buffer, the payload buffer takes over the reference to it
+     */
+    public PublishPayloadBuffer(final @NotNull ByteBuf slice) {
+        this.slice = slice;
+        this.length = slice.readableBytes();
+    }
+
+    /**
+     * @return the length of the payload
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return a retained duplicate of the slice that must be released by the caller, or {@code null} if all owners
+     *         already released the payload buffer
+     */
+    public synchronized @Nullable ByteBuf retainedSlice() {
+        if (refCnt() == 0) {
+            return null;
+        }
+        return slice.retainedDuplicate();
+    }
+
+    /**
+     * @return a copy of the payload on the heap
+     * @throws IllegalReferenceCountException if all owners already released the payload buffer
+     */
+    public synchronized byte @NotNull [] toByteArray() {
+        if (refCnt() == 0) {
+            throw new IllegalReferenceCountException(0);
+        }
+        return ByteBufUtil.getBytes(slice);
+    }
+
+    /**
+     * Copies the payload into a pooled buffer of its own and releases the slice of the inbound buffer, so a queued
+     * PUBLISH only keeps as much memory alive as its payload needs. Retained slices that were handed out before stay
+     * valid. Does nothing if the payload was already detached or all owners already released the payload buffer.
+     */
+    public synchronized void detach() {
+        if (detached || refCnt() == 0) {
+            return;
+        }
+        final ByteBuf copy = PooledByteBufAllocator.DEFAULT.directBuffer(length, length);
+        copy.writeBytes(slice, slice.readerIndex(), length);
+        slice.release();
+        slice = copy;
+        detached = true;
+    }
+
+    @Override
+    protected synchronized void deallocate() {
+        slice.release();
+    }
+
+    @Override
+    public synchronized @NotNull PublishPayloadBuffer touch(final @Nullable Object hint) {
+        slice.touch(hint);
+        return this;
+    }
+}
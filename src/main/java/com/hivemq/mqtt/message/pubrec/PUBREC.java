@@ -18,10 +18,13 @@ package com.hivemq.mqtt.message.pubrec;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extensions.packets.pubrec.PubrecPacketImpl;
+import com.hivemq.mqtt.message.MessageRecycling;
 import com.hivemq.mqtt.message.MessageType;
+import com.hivemq.mqtt.message.RecyclableMessage;
 import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
 import com.hivemq.mqtt.message.mqtt5.MqttMessageWithUserProperties;
 import com.hivemq.mqtt.message.reason.Mqtt5PubRecReasonCode;
+import io.netty.util.Recycler;
 
 /**
  * The MQTT pubrec message
@@ -31,13 +34,27 @@ import com.hivemq.mqtt.message.reason.Mqtt5PubRecReasonCode;
  * @since 1.4
  */
 public class PUBREC extends MqttMessageWithUserProperties.MqttMessageWithIdAndReasonCode<Mqtt5PubRecReasonCode>
-        implements Mqtt3PUBREC, Mqtt5PUBREC {
+        implements Mqtt3PUBREC, Mqtt5PUBREC, RecyclableMessage {
+
+    private static final @NotNull Recycler<PUBREC> RECYCLER = new Recycler<PUBREC>() {
+        @Override
+        protected @NotNull PUBREC newObject(final @NotNull Handle<PUBREC> handle) {
+            return new PUBREC(handle);
+        }
+    };
+
+    private transient @Nullable Recycler.Handle<PUBREC> recyclerHandle;
 
     //MQTT 3
     public PUBREC(final int packetIdentifier) {
         super(packetIdentifier, Mqtt5PubRecReasonCode.SUCCESS, null, Mqtt5UserProperties.NO_USER_PROPERTIES);
     }
 
+    private PUBREC(final @NotNull Recycler.Handle<PUBREC> recyclerHandle) {
+        this(0);
+        this.recyclerHandle = recyclerHandle;
+    }
+
     //MQTT 5
     public PUBREC(
             final int packetIdentifier,
@@ -53,6 +70,34 @@ public class PUBREC extends MqttMessageWithUserProperties.MqttMessageWithIdAndRe
         return MessageType.PUBREC;
     }
 
+    /**
+     * Creates a PUBREC with the reason code SUCCESS, which is taken from the recycler if the message recycling is
+     * enabled.
+     *
+     * @param packetIdentifier the packet identifier of the PUBREC
+     * @return the PUBREC, which is owned by the caller
+     * @see RecyclableMessage
+     */
+    public static @NotNull PUBREC newInstance(final int packetIdentifier) {
+        if (!MessageRecycling.isEnabled()) {
+            return new PUBREC(packetIdentifier);
+        }
+        final PUBREC pubrec = RECYCLER.get();
+        pubrec.setPacketIdentifier(packetIdentifier);
+        MessageRecycling.taken(pubrec);
+        return pubrec;
+    }
+
+    @Override
+    public void recycle() {
+        if (recyclerHandle != null) {
+            MessageRecycling.released(this);
+            setUserProperties(Mqtt5UserProperties.NO_USER_PROPERTIES);
+            resetEncodedLengths();
+            recyclerHandle.recycle(this);
+        }
+    }
+
     public static @NotNull PUBREC from(final @NotNull PubrecPacketImpl packet) {
         return new PUBREC(packet.getPacketIdentifier(),
                 Mqtt5PubRecReasonCode.from(packet.getReasonCode()),
@@ -19,19 +19,29 @@ import com.hivemq.configuration.entity.mqtt.MqttConfigurationDefaults;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extensions.packets.pubrel.PubrelPacketImpl;
+import com.hivemq.mqtt.message.MessageRecycling;
 import com.hivemq.mqtt.message.MessageType;
+import com.hivemq.mqtt.message.RecyclableMessage;
 import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
 import com.hivemq.mqtt.message.mqtt5.MqttMessageWithUserProperties;
 import com.hivemq.mqtt.message.mqtt5.MqttUserProperty;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.mqtt.message.reason.Mqtt5PubRelReasonCode;
 import com.hivemq.util.ObjectMemoryEstimation;
+import io.netty.util.Recycler;
 
 /**
  * @since 1.4
  */
 public class PUBREL extends MqttMessageWithUserProperties.MqttMessageWithIdAndReasonCode<Mqtt5PubRelReasonCode>
-        implements Mqtt3PUBREL, Mqtt5PUBREL {
+        implements Mqtt3PUBREL, Mqtt5PUBREL, RecyclableMessage {
+
+    private static final @NotNull Recycler<PUBREL> RECYCLER = new Recycler<PUBREL>() {
+        @Override
+        protected @NotNull PUBREL newObject(final @NotNull Handle<PUBREL> handle) {
+            return new PUBREL(handle);
+        }
+    };
 
     private static final int SIZE_NOT_CALCULATED = -1;
 
@@ -40,11 +50,18 @@ public class PUBREL extends MqttMessageWithUserProperties.MqttMessageWithIdAndRe
 
     private int sizeInMemory = SIZE_NOT_CALCULATED;
 
+    private transient @Nullable Recycler.Handle<PUBREL> recyclerHandle;
+
     //MQTT 3
     public PUBREL(final int packetIdentifier) {
         super(packetIdentifier, Mqtt5PubRelReasonCode.SUCCESS, null, Mqtt5UserProperties.NO_USER_PROPERTIES);
     }
 
+    private PUBREL(final @NotNull Recycler.Handle<PUBREL> recyclerHandle) {
+        this(0);
+        this.recyclerHandle = recyclerHandle;
+    }
+
     public PUBREL(
             final int packetIdentifier,
             final @Nullable Long publishTimestamp,
@@ -82,6 +99,37 @@ public class PUBREL extends MqttMessageWithUserProperties.MqttMessageWithIdAndRe
         return MessageType.PUBREL;
     }
 
+    /**
+     * Creates a PUBREL with the reason code SUCCESS, which is taken from the recycler if the message recycling is
+     * enabled.
+     *
+     * @param packetIdentifier the packet identifier of the PUBREL
+     * @return the PUBREL, which is owned by the caller
+     * @see RecyclableMessage
+     */
+    public static @NotNull PUBREL newInstance(final int packetIdentifier) {
+        if (!MessageRecycling.isEnabled()) {
+            return new PUBREL(packetIdentifier);
+        }
+        final PUBREL pubrel = RECYCLER.get();
+        pubrel.setPacketIdentifier(packetIdentifier);
+        MessageRecycling.taken(pubrel);
+        return pubrel;
+    }
+
+    @Override
+    public void recycle() {
+        if (recyclerHandle != null) {
+            MessageRecycling.released(this);
+            setUserProperties(Mqtt5UserProperties.NO_USER_PROPERTIES);
+            resetEncodedLengths();
+            publishTimestamp = null;
+            messageExpiryInterval = null;
+            sizeInMemory = SIZE_NOT_CALCULATED;
+            recyclerHandle.recycle(this);
+        }
+    }
+
     public @Nullable Long getMessageExpiryInterval() {
         return messageExpiryInterval;
     }
@@ -40,4 +40,20 @@ public interface InternalPublishService {
             @NotNull final ExecutorService executorService,
             @Nullable final String sender);
 
+    /**
+     * Send a message to all clients and shared subscription groups which have an active subscription and report
+     * whether it was added to a congested client queue.
+     *
+     * @param publish           the message to send
+     * @param executorService   the executor service in which all callbacks are executed
+     * @param sender            client identifier of the client which sent the message
+     * @param congestedCallback is run after the message was added to all client queues if any of them is congested,
+     *                          in the thread that added the message to the last queue
+     */
+    @NotNull ListenableFuture<PublishReturnCode> publish(
+            @NotNull final PUBLISH publish,
+            @NotNull final ExecutorService executorService,
+            @Nullable final String sender,
+            @NotNull final Runnable congestedCallback);
+
 }
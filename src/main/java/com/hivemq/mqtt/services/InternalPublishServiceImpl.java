@@ -20,6 +20,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
@@ -31,13 +32,13 @@ import com.hivemq.mqtt.topic.tree.LocalTopicTree;
 import com.hivemq.mqtt.topic.tree.TopicSubscribers;
 import com.hivemq.persistence.RetainedMessage;
 import com.hivemq.persistence.retained.RetainedMessagePersistence;
+import com.hivemq.persistence.util.CompletionCounter;
 import com.hivemq.util.Exceptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -76,6 +77,15 @@ public class InternalPublishServiceImpl implements InternalPublishService {
             final @NotNull PUBLISH publish,
             final @NotNull ExecutorService executorService,
             final @Nullable String sender) {
+        return publish(publish, executorService, sender, null);
+    }
+
+    @NotNull
+    public ListenableFuture<PublishReturnCode> publish(
+            final @NotNull PUBLISH publish,
+            final @NotNull ExecutorService executorService,
+            final @Nullable String sender,
+            final @Nullable Runnable congestedCallback) {
 
         Preconditions.checkNotNull(publish, "PUBLISH can not be null");
         Preconditions.checkNotNull(executorService, "executorService can not be null");
@@ -83,23 +93,28 @@ public class InternalPublishServiceImpl implements InternalPublishService {
         //reset dup-flag
         publish.setDuplicateDelivery(false);
 
-        final ListenableFuture<Void> persistFuture = persistRetainedMessage(publish, executorService);
-        final ListenableFuture<PublishReturnCode> publishReturnCodeFuture =
-                handlePublish(publish, executorService, sender);
+        // The whole publish is tracked by a single counter, the future is only the adapter for the callers
+        final SettableFuture<PublishReturnCode> returnCodeFuture = SettableFuture.create();
+        final PublishCompletion publishCompletion =
+                new PublishCompletion(publish, returnCodeFuture, congestedCallback);
+        final CompletionCounter completion = publishCompletion.completion;
 
-        return Futures.whenAllComplete(publishReturnCodeFuture, persistFuture)
-                .call(() -> publishReturnCodeFuture.get(), executorService);
+        persistRetainedMessage(publish, completion);
+        publishCompletion.returnCode = handlePublish(publish, sender, completion);
+        if (!acknowledgeAfterPersist) {
+            returnCodeFuture.set(publishCompletion.returnCode);
+        }
+        completion.seal();
+        return returnCodeFuture;
     }
 
-    private ListenableFuture<Void> persistRetainedMessage(
-            final PUBLISH publish, final ExecutorService executorService) {
+    private void persistRetainedMessage(final @NotNull PUBLISH publish, final @NotNull CompletionCounter completion) {
 
         //Retained messages need to be persisted and thus we need to make that non-blocking
         if (publish.isRetain()) {
 
-            final SettableFuture<Void> persistSettableFuture = SettableFuture.create();
             final ListenableFuture<Void> persistFuture;
-            if (publish.getPayload().length > 0) {
+            if (publish.getPayloadLength() > 0) {
                 //pass payloadId null here, because we don't know yet if the message must be stored in the payload persistence
                 final RetainedMessage retainedMessage =
                         new RetainedMessage(publish, publish.getMessageExpiryInterval());
@@ -111,14 +126,12 @@ public class InternalPublishServiceImpl implements InternalPublishService {
                 persistFuture = retainedMessagePersistence.remove(publish.getTopic());
             }
 
-            if (!acknowledgeAfterPersist) {
-                persistSettableFuture.set(null);
-            } else {
-
+            if (acknowledgeAfterPersist) {
+                completion.expect();
                 Futures.addCallback(persistFuture, new FutureCallback<>() {
                     @Override
                     public void onSuccess(final @Nullable Void aVoid) {
-                        persistSettableFuture.set(null);
+                        completion.complete();
                     }
 
                     @Override
@@ -128,23 +141,19 @@ public class InternalPublishServiceImpl implements InternalPublishService {
                                 " with message id " +
                                 publish.getUniqueId() +
                                 ".", throwable);
-                        persistSettableFuture.set(null);
+                        completion.complete();
                     }
 
-                }, executorService);
+                }, MoreExecutors.directExecutor());
             }
-
-            return persistSettableFuture;
         }
-
-        return Futures.immediateFuture(null);
     }
 
     @NotNull
-    private ListenableFuture<PublishReturnCode> handlePublish(
+    private PublishReturnCode handlePublish(
             final @NotNull PUBLISH publish,
-            final @NotNull ExecutorService executorService,
-            final @Nullable String sender) {
+            final @Nullable String sender,
+            final @NotNull CompletionCounter completion) {
 
         final TopicSubscribers topicSubscribers = topicTree.findTopicSubscribers(publish.getTopic());
         final ImmutableSet<SubscriberWithIdentifiers> subscribers = topicSubscribers.getSubscribers();
@@ -156,26 +165,18 @@ public class InternalPublishServiceImpl implements InternalPublishService {
                 log.trace("No matching normal/shared subscriber found for PUBLISH with topic '{}'", publish.getTopic());
             }
 
-            return Futures.immediateFuture(PublishReturnCode.NO_MATCHING_SUBSCRIBERS);
-        }
-
-
-        if (!acknowledgeAfterPersist) {
-            deliverPublish(topicSubscribers, sender, publish, executorService, null);
-            return Futures.immediateFuture(PublishReturnCode.DELIVERED);
+            return PublishReturnCode.NO_MATCHING_SUBSCRIBERS;
         }
 
-        final SettableFuture<PublishReturnCode> returnCodeFuture = SettableFuture.create();
-        deliverPublish(topicSubscribers, sender, publish, executorService, returnCodeFuture);
-        return returnCodeFuture;
+        deliverPublish(topicSubscribers, sender, publish, completion);
+        return PublishReturnCode.DELIVERED;
     }
 
     private void deliverPublish(
             final @NotNull TopicSubscribers topicSubscribers,
             final @Nullable String sender,
             final @NotNull PUBLISH publish,
-            final @NotNull ExecutorService executorService,
-            final @Nullable SettableFuture<PublishReturnCode> returnCodeFuture) {
+            final @NotNull CompletionCounter completion) {
         final Set<String> sharedSubscriptions = topicSubscribers.getSharedSubscriptions();
         final Map<String, SubscriberWithIdentifiers> notSharedSubscribers =
                 new HashMap<>(topicSubscribers.getSubscribers().size());
@@ -193,39 +194,47 @@ public class InternalPublishServiceImpl implements InternalPublishService {
         }
 
         //Send out the messages to the channel of the subscribers
-        final ListenableFuture<Void> publishFinishedFutureNonShared =
-                publishDistributor.distributeToNonSharedSubscribers(notSharedSubscribers, publish, executorService);
+        publishDistributor.distributeToNonSharedSubscribers(notSharedSubscribers, publish, completion);
 
-        final ListenableFuture<Void> publishFinishedFutureShared;
         //Shared subscriptions are currently not batched, since it is unlikely that there are many groups of shared subscribers for the same topic.
         if (sharedSubscriptions != null) {
-            publishFinishedFutureShared =
-                    publishDistributor.distributeToSharedSubscribers(sharedSubscriptions, publish, executorService);
-        } else {
-            publishFinishedFutureShared = Futures.immediateFuture(null);
+            publishDistributor.distributeToSharedSubscribers(sharedSubscriptions, publish, completion);
         }
+    }
 
-        Futures.addCallback(Futures.allAsList(publishFinishedFutureNonShared, publishFinishedFutureShared),
-                new FutureCallback<>() {
-                    @Override
-                    public void onSuccess(final @Nullable List<Void> result) {
-                        if (returnCodeFuture != null) {
-                            returnCodeFuture.set(PublishReturnCode.DELIVERED);
-                        }
-                    }
+    private static class PublishCompletion implements CompletionCounter.Callback {
+
+        private final @NotNull PUBLISH publish;
+        private final @NotNull SettableFuture<PublishReturnCode> returnCodeFuture;
+        private final @Nullable Runnable congestedCallback;
+        private final @NotNull CompletionCounter completion;
+        private @NotNull PublishReturnCode returnCode = PublishReturnCode.DELIVERED;
+
+        PublishCompletion(
+                final @NotNull PUBLISH publish,
+                final @NotNull SettableFuture<PublishReturnCode> returnCodeFuture,
+                final @Nullable Runnable congestedCallback) {
+            this.publish = publish;
+            this.returnCodeFuture = returnCodeFuture;
+            this.congestedCallback = congestedCallback;
+            this.completion = new CompletionCounter(this);
+        }
 
-                    @Override
-                    public void onFailure(final @NotNull Throwable throwable) {
-                        Exceptions.rethrowError("Unable to publish message for topic " +
-                                publish.getTopic() +
-                                " with message id" +
-                                publish.getUniqueId() +
-                                ".", throwable);
-                        if (returnCodeFuture != null) {
-                            returnCodeFuture.set(PublishReturnCode.FAILED);
-                        }
-                    }
-                },
-                executorService);
+        @Override
+        public void onComplete(final @Nullable Throwable failure) {
+            if (congestedCallback != null && completion.isCongested()) {
+                congestedCallback.run();
+            }
+            if (failure == null) {
+                returnCodeFuture.set(returnCode);
+                return;
+            }
+            Exceptions.rethrowError("Unable to publish message for topic " +
+                    publish.getTopic() +
+                    " with message id" +
+                    publish.getUniqueId() +
+                    ".", failure);
+            returnCodeFuture.set(PublishReturnCode.FAILED);
+        }
     }
 }
@@ -22,10 +22,10 @@ import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.mqtt.handler.publish.PublishStatus;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
+import com.hivemq.persistence.util.CompletionCounter;
 
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
 
 /**
  * @author Christoph Schäbel
@@ -35,14 +35,14 @@ public interface PublishDistributor {
     /**
      * Sends a message to the specified non-shared subscribers
      *
-     * @param subscribers     map with all subscribers, key is client identifier, value is the subscription information
-     * @param publish         the message to send
-     * @param executorService the executor service in which all callbacks are executed
+     * @param subscribers map with all subscribers, key is client identifier, value is the subscription information
+     * @param publish     the message to send
+     * @param completion  the counter every queue operation for the subscribers is registered with
      */
-    @NotNull ListenableFuture<Void> distributeToNonSharedSubscribers(
+    void distributeToNonSharedSubscribers(
             @NotNull Map<String, SubscriberWithIdentifiers> subscribers,
             @NotNull PUBLISH publish,
-            @NotNull ExecutorService executorService);
+            @NotNull CompletionCounter completion);
 
     /**
      * Sends a message to the specified shared subscribers
@@ -50,12 +50,12 @@ public interface PublishDistributor {
      * @param sharedSubscriptions is a set of all shared subscriptions (group + '/'+ topic-filter) that have matching
      *                            subscriptions for this topic
      * @param publish             the message to send
-     * @param executorService     the executor service in which all callbacks are executed
+     * @param completion          the counter every queue operation for the subscribers is registered with
      */
-    @NotNull ListenableFuture<Void> distributeToSharedSubscribers(
+    void distributeToSharedSubscribers(
             @NotNull Set<String> sharedSubscriptions,
             @NotNull PUBLISH publish,
-            @NotNull ExecutorService executorService);
+            @NotNull CompletionCounter completion);
 
     /**
      * Sends a message to a discrete subscriber
@@ -15,33 +15,45 @@
  */
 package com.hivemq.mqtt.services;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.primitives.ImmutableIntArray;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import com.hivemq.bootstrap.ClientConnection;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.configuration.service.MqttConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.metrics.SampledTimer;
 import com.hivemq.mqtt.handler.publish.PublishStatus;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.mqtt.message.publish.PUBLISHFactory;
+import com.hivemq.mqtt.message.publish.PublishPayloadBuffer;
+import com.hivemq.mqtt.message.publish.PublishWithFuture;
 import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
+import com.hivemq.persistence.ProducerQueues;
 import com.hivemq.persistence.SingleWriterService;
+import com.hivemq.persistence.clientqueue.ClientQueueBatchEntry;
 import com.hivemq.persistence.clientqueue.ClientQueuePersistence;
 import com.hivemq.persistence.clientsession.ClientSession;
 import com.hivemq.persistence.clientsession.ClientSessionPersistence;
+import com.hivemq.persistence.connection.ConnectionPersistence;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
-import com.hivemq.persistence.util.FutureUtils;
+import com.hivemq.persistence.util.CompletionCounter;
+import io.netty.channel.Channel;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.hivemq.mqtt.handler.publish.PublishStatus.DELIVERED;
 import static com.hivemq.mqtt.handler.publish.PublishStatus.FAILED;
@@ -64,6 +76,10 @@ public class PublishDistributorImpl implements PublishDistributor {
     private final SingleWriterService singleWriterService;
     @NotNull
     private final MqttConfigurationService mqttConfigurationService;
+    @NotNull
+    private final ConnectionPersistence connectionPersistence;
+    @NotNull
+    private final SampledTimer distributionTimer;
 
     @Inject
     public PublishDistributorImpl(
@@ -71,67 +87,137 @@ public class PublishDistributorImpl implements PublishDistributor {
             @NotNull final ClientQueuePersistence clientQueuePersistence,
             @NotNull final ClientSessionPersistence clientSessionPersistence,
             @NotNull final SingleWriterService singleWriterService,
-            @NotNull final MqttConfigurationService mqttConfigurationService) {
+            @NotNull final MqttConfigurationService mqttConfigurationService,
+            @NotNull final ConnectionPersistence connectionPersistence,
+            @NotNull final MetricsHolder metricsHolder) {
         this.payloadPersistence = payloadPersistence;
         this.clientQueuePersistence = clientQueuePersistence;
         this.clientSessionPersistence = clientSessionPersistence;
         this.singleWriterService = singleWriterService;
         this.mqttConfigurationService = mqttConfigurationService;
+        this.connectionPersistence = connectionPersistence;
+        this.distributionTimer = metricsHolder.getPublishDistributionTimer();
     }
 
-    @NotNull
     @Override
-    public ListenableFuture<Void> distributeToNonSharedSubscribers(
+    public void distributeToNonSharedSubscribers(
+            @NotNull final Map<String, SubscriberWithIdentifiers> subscribers,
+            @NotNull final PUBLISH publish,
+            @NotNull final CompletionCounter completion) {
+
+        final long start = distributionTimer.start();
+        try {
+            final int batchMinSubscribers = InternalConfigurations.PUBLISH_DISTRIBUTION_BATCH_MIN_SUBSCRIBERS.get();
+            if (batchMinSubscribers > 0 && subscribers.size() >= batchMinSubscribers) {
+                distributeToNonSharedSubscribersInBatches(subscribers, publish, completion);
+                return;
+            }
+
+            for (final Map.Entry<String, SubscriberWithIdentifiers> entry : subscribers.entrySet()) {
+                final String client = entry.getKey();
+                final SubscriberWithIdentifiers subscriber = entry.getValue();
+
+                final ClientSession clientSession = sessionToQueue(client, publish, subscriber);
+                if (clientSession == null) {
+                    continue;
+                }
+                clientQueuePersistence.add(client,
+                        false,
+                        createPublish(publish,
+                                subscriber.getQos(),
+                                subscriber.isRetainAsPublished(),
+                                subscriber.getSubscriptionIdentifier()),
+                        false,
+                        queueLimit(clientSession),
+                        completion);
+            }
+        } finally {
+            distributionTimer.stop(start);
+        }
+    }
+
+    /**
+     * Groups the subscribers by the persistence bucket of their queues and adds the PUBLISH to all queues of a bucket
+     * in a single task, instead of submitting a task for every subscriber.
+     */
+    private void distributeToNonSharedSubscribersInBatches(
             @NotNull final Map<String, SubscriberWithIdentifiers> subscribers,
             @NotNull final PUBLISH publish,
-            @NotNull final ExecutorService executorService) {
+            @NotNull final CompletionCounter completion) {
 
-        final ImmutableList.Builder<ListenableFuture<Void>> publishResultFutureBuilder = ImmutableList.builder();
+        final ProducerQueues queuedMessagesQueue = singleWriterService.getQueuedMessagesQueue();
+        final Map<Integer, List<ClientQueueBatchEntry>> buckets = new HashMap<>();
 
         for (final Map.Entry<String, SubscriberWithIdentifiers> entry : subscribers.entrySet()) {
+            final String client = entry.getKey();
             final SubscriberWithIdentifiers subscriber = entry.getValue();
 
-            final ListenableFuture<PublishStatus> publishFuture = sendMessageToSubscriber(publish,
-                    entry.getKey(),
+            final ClientSession clientSession = sessionToQueue(client, publish, subscriber);
+            if (clientSession == null) {
+                continue;
+            }
+            final PUBLISH clientPublish = createPublish(publish,
                     subscriber.getQos(),
-                    false,
                     subscriber.isRetainAsPublished(),
                     subscriber.getSubscriptionIdentifier());
+            buckets.computeIfAbsent(queuedMessagesQueue.getBucket(client), bucketIndex -> new ArrayList<>())
+                    .add(new ClientQueueBatchEntry(client, clientPublish, queueLimit(clientSession)));
+        }
 
-            final SettableFuture<Void> publishFinishedFuture = SettableFuture.create();
-            publishResultFutureBuilder.add(publishFinishedFuture);
-            Futures.addCallback(publishFuture,
-                    new StandardPublishCallback(entry.getKey(), publish, publishFinishedFuture),
-                    executorService);
+        for (final Map.Entry<Integer, List<ClientQueueBatchEntry>> bucket : buckets.entrySet()) {
+            clientQueuePersistence.addToBucket(bucket.getKey(), bucket.getValue(), completion);
         }
+    }
+
+    /**
+     * @return the session of the subscriber if the PUBLISH must be queued for it, {@code null} if the subscriber has
+     *         no session, is offline for a QoS 0 PUBLISH or the PUBLISH was written to it directly
+     */
+    @Nullable
+    private ClientSession sessionToQueue(
+            @NotNull final String client,
+            @NotNull final PUBLISH publish,
+            @NotNull final SubscriberWithIdentifiers subscriber) {
 
-        return FutureUtils.voidFutureFromList(publishResultFutureBuilder.build());
+        final ClientSession clientSession = clientSessionPersistence.getSession(client, false);
+        //no session present or session already expired
+        if (clientSession == null) {
+            return null;
+        }
+        final boolean qos0Message = Math.min(subscriber.getQos(), publish.getQoS().getQosNumber()) == 0;
+        if (qos0Message) {
+            if (!clientSession.isConnected() ||
+                    writeDirectly(client,
+                            publish,
+                            subscriber.isRetainAsPublished(),
+                            subscriber.getSubscriptionIdentifier()) != null) {
+                return null;
+            }
+        }
+        return clientSession;
+    }
+
+    private long queueLimit(@NotNull final ClientSession clientSession) {
+        return Objects.requireNonNullElseGet(clientSession.getQueueLimit(),
+                mqttConfigurationService::maxQueuedMessages);
     }
 
-    @NotNull
     @Override
-    public ListenableFuture<Void> distributeToSharedSubscribers(
+    public void distributeToSharedSubscribers(
             @NotNull final Set<String> sharedSubscribers,
             @NotNull final PUBLISH publish,
-            @NotNull final ExecutorService executorService) {
-
-        final ImmutableList.Builder<ListenableFuture<Void>> publishResultFutureBuilder = ImmutableList.builder();
+            @NotNull final CompletionCounter completion) {
 
+        final long start = distributionTimer.start();
         for (final String sharedSubscriber : sharedSubscribers) {
-            final SettableFuture<Void> publishFinishedFuture = SettableFuture.create();
-            final ListenableFuture<PublishStatus> future = sendMessageToSubscriber(publish,
-                    sharedSubscriber,
-                    publish.getQoS().getQosNumber(),
-                    true,
+            clientQueuePersistence.add(sharedSubscriber,
                     true,
-                    null);
-            publishResultFutureBuilder.add(publishFinishedFuture);
-            Futures.addCallback(future,
-                    new StandardPublishCallback(sharedSubscriber, publish, publishFinishedFuture),
-                    executorService);
+                    createPublish(publish, publish.getQoS().getQosNumber(), true, null),
+                    false,
+                    mqttConfigurationService.maxQueuedMessages(),
+                    completion);
         }
-
-        return FutureUtils.voidFutureFromList(publishResultFutureBuilder.build());
+        distributionTimer.stop(start);
     }
 
     @NotNull
@@ -184,6 +270,14 @@ public class PublishDistributorImpl implements PublishDistributor {
             return Futures.immediateFuture(NOT_CONNECTED);
         }
 
+        if (qos0Message) {
+            final ListenableFuture<PublishStatus> directWriteFuture =
+                    writeDirectly(client, publish, retainAsPublished, subscriptionIdentifier);
+            if (directWriteFuture != null) {
+                return directWriteFuture;
+            }
+        }
+
         return queuePublish(client,
                 publish,
                 subscriptionQos,
@@ -193,6 +287,59 @@ public class PublishDistributorImpl implements PublishDistributor {
                 clientSession.getQueueLimit());
     }
 
+    /**
+     * Writes a QoS 0 PUBLISH directly to the channel of a connected client, bypassing the client queue. This is only
+     * done if the channel is writable, the queue of the client is known to be empty and no polled messages of the
+     * client are in-flight, so the PUBLISH does not overtake queued messages and does not pile up in the channel under
+     * back-pressure.
+     *
+     * @return the status future of the written PUBLISH or {@code null} if the PUBLISH must be queued
+     */
+    @Nullable
+    private ListenableFuture<PublishStatus> writeDirectly(
+            @NotNull final String client,
+            @NotNull final PUBLISH publish,
+            final boolean retainAsPublished,
+            @Nullable final ImmutableIntArray subscriptionIdentifier) {
+
+        if (!InternalConfigurations.QOS_0_DIRECT_WRITE_ENABLED.get()) {
+            return null;
+        }
+        final ClientConnection clientConnection = connectionPersistence.get(client);
+        if (clientConnection == null ||
+                clientConnection.getClientState().disconnectingOrDisconnected() ||
+                !clientConnection.isInFlightMessagesSent()) {
+            return null;
+        }
+        final Channel channel = clientConnection.getChannel();
+        if (!channel.isActive() || !channel.isWritable()) {
+            return null;
+        }
+        final AtomicInteger inFlightMessageCount = clientConnection.getInFlightMessageCount();
+        if (inFlightMessageCount != null && inFlightMessageCount.get() > 0) {
+            return null;
+        }
+        // The in-flight count only covers polled messages, messages that are still queued must be sent first
+        if (!clientQueuePersistence.isQueueEmpty(client)) {
+            return null;
+        }
+
+        // The written PUBLISH owns a reference to an off-heap payload until it is encoded
+        publish.retainPayload();
+        final PUBLISH directPublish = new PUBLISHFactory.Mqtt5Builder().fromPublish(publish)
+                .withRetain(publish.isRetain() && retainAsPublished)
+                .withSubscriptionIdentifiers(subscriptionIdentifier == null ? ImmutableIntArray.of() :
+                        subscriptionIdentifier)
+                .withQoS(QoS.AT_MOST_ONCE)
+                .withPacketIdentifier(0)
+                .build();
+
+        final SettableFuture<PublishStatus> statusFuture = SettableFuture.create();
+        clientConnection.getPublishFlushHandler()
+                .sendPublishes(List.of(new PublishWithFuture(directPublish, statusFuture, false)));
+        return statusFuture;
+    }
+
     @NotNull
     private SettableFuture<PublishStatus> queuePublish(
             @NotNull final String client,
@@ -231,7 +378,15 @@ public class PublishDistributorImpl implements PublishDistributor {
             final int subscriptionQos,
             final boolean retainAsPublished,
             @Nullable final ImmutableIntArray subscriptionIdentifier) {
-        final boolean removePayload = payloadPersistence.add(publish.getPayload(), 1, publish.getPublishId());
+        // Off-heap payloads are only decoded with the in-memory persistence, they are kept by the queued PUBLISH
+        final PublishPayloadBuffer payloadBuffer = publish.getPayloadBuffer();
+        final boolean removePayload = payloadBuffer == null &&
+                payloadPersistence.add(publish.getPayload(), 1, publish.getPublishId());
+        if (payloadBuffer != null) {
+            // A queued PUBLISH must not keep the inbound buffer alive, it can stay in the queue for a long time
+            payloadBuffer.detach();
+        }
+        publish.retainPayload();
         final ImmutableIntArray identifiers;
         if (subscriptionIdentifier == null) {
             identifiers = ImmutableIntArray.of();
@@ -240,9 +395,6 @@ public class PublishDistributorImpl implements PublishDistributor {
         }
 
         final PUBLISHFactory.Mqtt5Builder builder = new PUBLISHFactory.Mqtt5Builder().fromPublish(publish)
-                //in file: the payload is not needed anymore as we just put it in the payload persistence.
-                //in-memory: we must set the payload, as the payload persistence is NOOP
-                .withPayload(removePayload ? null : publish.getPayload())
                 .withPersistence(payloadPersistence)
                 .withRetain(publish.isRetain() && retainAsPublished)
                 .withSubscriptionIdentifiers(identifiers);
@@ -253,6 +405,11 @@ public class PublishDistributorImpl implements PublishDistributor {
         if (qos == 0) {
             builder.withPacketIdentifier(0);
         }
+        //in file: the payload is not needed anymore as we just put it in the payload persistence.
+        //in-memory: we must keep the payload, as the payload persistence is NOOP
+        if (removePayload) {
+            builder.withPayload(null);
+        }
 
         return builder.build();
     }
@@ -29,6 +29,8 @@ import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.metrics.SampledTimer;
 import com.hivemq.mqtt.callback.PublishStatusFutureCallback;
 import com.hivemq.mqtt.handler.publish.PublishStatus;
 import com.hivemq.mqtt.message.MessageWithID;
@@ -45,7 +47,6 @@ import com.hivemq.mqtt.message.subscribe.Topic;
 import com.hivemq.mqtt.topic.SubscriberWithQoS;
 import com.hivemq.persistence.SingleWriterService;
 import com.hivemq.persistence.clientqueue.ClientQueuePersistence;
-import com.hivemq.persistence.clientsession.ClientSessionSubscriptionPersistence;
 import com.hivemq.persistence.clientsession.SharedSubscriptionService;
 import com.hivemq.persistence.connection.ConnectionPersistence;
 import com.hivemq.persistence.payload.PayloadPersistenceException;
@@ -59,7 +60,6 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -78,7 +78,7 @@ public class PublishPollServiceImpl implements PublishPollService {
     private final @NotNull MessageDroppedService messageDroppedService;
     private final @NotNull SharedSubscriptionService sharedSubscriptionService;
     private final @NotNull SingleWriterService singleWriterService;
-    private final @NotNull ClientSessionSubscriptionPersistence clientSessionSubscriptionPersistence;
+    private final @NotNull SampledTimer pollTimer;
 
     @Inject
     public PublishPollServiceImpl(
@@ -88,14 +88,14 @@ public class PublishPollServiceImpl implements PublishPollService {
             final @NotNull MessageDroppedService messageDroppedService,
             final @NotNull SharedSubscriptionService sharedSubscriptionService,
             final @NotNull SingleWriterService singleWriterService,
-            final @NotNull ClientSessionSubscriptionPersistence clientSessionSubscriptionPersistence) {
+            final @NotNull MetricsHolder metricsHolder) {
         this.clientQueuePersistence = clientQueuePersistence;
         this.connectionPersistence = connectionPersistence;
         this.payloadPersistence = payloadPersistence;
         this.messageDroppedService = messageDroppedService;
         this.sharedSubscriptionService = sharedSubscriptionService;
         this.singleWriterService = singleWriterService;
-        this.clientSessionSubscriptionPersistence = clientSessionSubscriptionPersistence;
+        this.pollTimer = metricsHolder.getPublishPollTimer();
     }
 
     @Override
@@ -111,24 +111,19 @@ public class PublishPollServiceImpl implements PublishPollService {
             if (noSharedSubscriptions) {
                 return;
             }
-            try {
-                final ImmutableSet<Topic> topics = sharedSubscriptionService.getSharedSubscriptions(client,
-                        () -> clientSessionSubscriptionPersistence.getSharedSubscriptions(client));
-                if (topics.isEmpty()) {
-                    clientConnection.setNoSharedSubscription(true);
-                    return;
-                }
-                for (final Topic topic : topics) {
-                    final String sharedSubscriptions = sharedSubscriptionService.removePrefix(topic.getTopic());
-                    pollSharedPublishesForClient(client,
-                            sharedSubscriptions,
-                            topic.getQoS().getQosNumber(),
-                            topic.isRetainAsPublished(),
-                            topic.getSubscriptionIdentifier(),
-                            channel);
-                }
-            } catch (final ExecutionException e) {
-                log.error("Exception while reading shared subscriptions for client {}", client, e);
+            final ImmutableSet<Topic> topics = sharedSubscriptionService.getSharedSubscriptions(client);
+            if (topics.isEmpty()) {
+                clientConnection.setNoSharedSubscription(true);
+                return;
+            }
+            for (final Topic topic : topics) {
+                final String sharedSubscriptions = sharedSubscriptionService.removePrefix(topic.getTopic());
+                pollSharedPublishesForClient(client,
+                        sharedSubscriptions,
+                        topic.getQoS().getQosNumber(),
+                        topic.isRetainAsPublished(),
+                        topic.getSubscriptionIdentifier(),
+                        channel);
             }
 
         } else {
@@ -159,6 +154,7 @@ public class PublishPollServiceImpl implements PublishPollService {
             return;
         }
 
+        final long start = pollTimer.start();
         final ListenableFuture<ImmutableList<PUBLISH>> future =
                 clientQueuePersistence.readNew(client, false, messageIds, PUBLISH_POLL_BATCH_SIZE_BYTES);
 
@@ -207,11 +203,13 @@ public class PublishPollServiceImpl implements PublishPollService {
                         messageDroppedService.failed(client, publish.getTopic(), publish.getQoS().getQosNumber());
                     }
                 }
+                pollTimer.stop(start);
                 ClientConnection.of(channel).getPublishFlushHandler().sendPublishes(publishesToSend);
             }
 
             @Override
             public void onFailure(final Throwable t) {
+                pollTimer.stop(start);
                 Exceptions.rethrowError("Exception in new messages handling", t);
                 channel.disconnect();
             }
@@ -353,6 +351,7 @@ public class PublishPollServiceImpl implements PublishPollService {
             return;
         }
 
+        final long start = pollTimer.start();
         final ListenableFuture<ImmutableList<PUBLISH>> future = clientQueuePersistence.readShared(sharedSubscription,
                 pollMessageLimit(channel),
                 PUBLISH_POLL_BATCH_SIZE_BYTES);
@@ -361,6 +360,7 @@ public class PublishPollServiceImpl implements PublishPollService {
             @Override
             public void onSuccess(final @NotNull ImmutableList<PUBLISH> publishes) {
                 if (publishes.isEmpty()) {
+                    pollTimer.stop(start);
                     return;
                 }
                 final MessageIDPool messageIDPool = clientConnection.getMessageIDPool();
@@ -404,6 +404,7 @@ public class PublishPollServiceImpl implements PublishPollService {
                                 publish.getTopic(),
                                 publish.getQoS().getQosNumber());
                         inFlightMessageCount.decrementAndGet();
+                        pollTimer.stop(start);
                         return;
                     }
                     try {
@@ -433,11 +434,13 @@ public class PublishPollServiceImpl implements PublishPollService {
                                 publishToSend.getQoS().getQosNumber());
                     }
                 }
+                pollTimer.stop(start);
                 clientConnection.getPublishFlushHandler().sendPublishes(publishesToSend);
             }
 
             @Override
             public void onFailure(final @NotNull Throwable t) {
+                pollTimer.stop(start);
                 Exceptions.rethrowError("Exception in shared publishes poll handling for client " +
                         client +
                         "for shared subscription " +
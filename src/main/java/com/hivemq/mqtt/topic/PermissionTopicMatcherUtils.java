@@ -17,13 +17,16 @@ package com.hivemq.mqtt.topic;
 
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 
-import static java.lang.Math.min;
-
 public final class PermissionTopicMatcherUtils {
 
     private PermissionTopicMatcherUtils() {
     }
 
+    /**
+     * Matches the actual topic against a permission topic. The levels of the actual topic are given by a
+     * {@link TopicTokenizer}, so the actual topic is tokenized once and matched against all permissions without
+     * allocating.
+     */
     public static boolean matches(
             final @NotNull String permissionTopic,
             final @NotNull String[] splitPermissionTopic,
@@ -31,54 +34,17 @@ public final class PermissionTopicMatcherUtils {
             final boolean endsWithWildCard,
             final boolean rootWildCard,
             final @NotNull String actualTopic,
-            final @NotNull String[] splitActualTopic) throws InvalidTopicException {
+            final @NotNull TopicTokenizer actualTopicTokens) throws InvalidTopicException {
 
         if (nonWildCard) {
             return permissionTopic.equals(actualTopic);
         }
-        return matchesWildcards(permissionTopic,
-                splitPermissionTopic,
-                endsWithWildCard,
-                rootWildCard,
-                splitActualTopic);
-    }
-
-    private static boolean matchesWildcards(
-            final @NotNull String permissionTopic,
-            final @NotNull String @NotNull [] splitPermissionTopic,
-            final boolean endsWithWildCard,
-            final boolean rootWildCard,
-            final @NotNull String @NotNull [] splitActualTopic) {
 
         if (rootWildCard) {
             if (!endsWithWildCard && permissionTopic.length() > 1) {
                 return false;
             }
         }
-
-        final int smallest = min(splitPermissionTopic.length, splitActualTopic.length);
-
-        for (int i = 0; i < smallest; i++) {
-            final String sub = splitPermissionTopic[i];
-            final String t = splitActualTopic[i];
-
-            if (!sub.equals(t)) {
-                switch (sub) {
-                    case "#":
-                        return true;
-                    case "+":
-                        //Matches Topic Level wildcard, so we can just ignore
-                        break;
-                    default:
-                        //Does not match a wildcard and is not equal to the topic token
-                        return false;
-                }
-            }
-        }
-        //If the length is equal or the subscription token with the number x+1 (where x is the topic length) is a wildcard,
-        //everything is alright.
-        return splitPermissionTopic.length == splitActualTopic.length ||
-                (splitPermissionTopic.length - splitActualTopic.length == 1 &&
-                        ("#".equals(splitPermissionTopic[splitPermissionTopic.length - 1])));
+        return actualTopicTokens.matchedBy(splitPermissionTopic);
     }
 }
@@ -18,10 +18,9 @@ package com.hivemq.mqtt.topic;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import org.apache.commons.lang3.StringUtils;
 
-import static java.lang.Math.min;
-
 /**
- * An implementation of a topic matcher which tokenizes topics to match wildcards.
+ * An implementation of a topic matcher which tokenizes topics to match wildcards. The levels are compared in place by
+ * the {@link TopicTokenizer}, so matching does not allocate.
  */
 public class TokenizedTopicMatcher implements TopicMatcher {
 
@@ -56,30 +55,10 @@ public class TokenizedTopicMatcher implements TopicMatcher {
             }
         }
 
-        final String[] subscription = StringUtils.splitPreserveAllTokens(topicSubscription, "/");
-        final String[] topic = StringUtils.splitPreserveAllTokens(actualTopic, "/");
-
-        final int smallest = min(subscription.length, topic.length);
-
-        for (int i = 0; i < smallest; i++) {
-            final String sub = subscription[i];
-            final String t = topic[i];
-
-            if (!sub.equals(t)) {
-                if ("#".equals(sub)) {
-                    return true;
-                } else if ("+".equals(sub)) {
-                    //Matches Topic Level wildcard, so we can just ignore
-
-                } else {
-                    //Does not match a wildcard and is not equal to the topic token
-                    return false;
-                }
-            }
+        //An empty topic has no levels, so only the multi level wildcard matches it
+        if (actualTopic.isEmpty()) {
+            return "#".equals(topicSubscription);
         }
-        //If the length is equal or the subscription token with the number x+1 (where x is the topic length) is a wildcard,
-        //everything is alright.
-        return subscription.length == topic.length ||
-                (subscription.length - topic.length == 1 && ("#".equals(subscription[subscription.length - 1])));
+        return TopicTokenizer.matches(topicSubscription, actualTopic);
     }
 }
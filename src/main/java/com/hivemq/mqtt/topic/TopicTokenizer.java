@@ -0,0 +1,225 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Splits a topic into its levels without allocating a String per level. The tokenizer only records the offsets of the
+ * levels in the original topic, so levels can be compared in place. A level is only copied into its own String if
+ * {@link #segment(int)} is called, e.g. for a lookup in a map.
+ * <p>
+ * The levels are the same as the ones of {@code StringUtils.splitPreserveAllTokens(topic, '/')}, i.e. empty levels are
+ * preserved and an empty topic has no levels.
+ * <p>
+ * Instances are not thread safe and are meant to be reused. {@link #threadLocal(String)} returns the instance of the
+ * current thread, which is only valid until the next call of this method on the same thread.
+ */
+public final class TopicTokenizer {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private static final @NotNull ThreadLocal<TopicTokenizer> THREAD_LOCAL =
+            ThreadLocal.withInitial(TopicTokenizer::new);
+
+    private @NotNull String topic = "";
+    private int @NotNull [] ends = new int[INITIAL_CAPACITY];
+    private @Nullable String @NotNull [] segments = new String[INITIAL_CAPACITY];
+    private int count;
+
+    /**
+     * Tokenizes the topic with the tokenizer of the current thread. The returned tokenizer must not be used after
+     * another call of this method on the same thread.
+     *
+     * @param topic the topic to tokenize
+     * @return the tokenizer of the current thread
+     */
+    public static @NotNull TopicTokenizer threadLocal(final @NotNull String topic) {
+        return THREAD_LOCAL.get().tokenize(topic);
+    }
+
+    /**
+     * Tokenizes the topic and discards the levels of the previously tokenized topic.
+     *
+     * @param topic the topic to tokenize
+     * @return this tokenizer
+     */
+    public @NotNull TopicTokenizer tokenize(final @NotNull String topic) {
+        Arrays.fill(segments, 0, count, null);
+        this.topic = topic;
+        count = 0;
+        if (topic.isEmpty()) {
+            return this;
+        }
+        int start = 0;
+        while (true) {
+            final int end = topic.indexOf('/', start);
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, count * 2);
+                segments = Arrays.copyOf(segments, count * 2);
+            }
+            if (end < 0) {
+                ends[count++] = topic.length();
+                return this;
+            }
+            ends[count++] = end;
+            start = end + 1;
+        }
+    }
+
+    public @NotNull String getTopic() {
+        return topic;
+    }
+
+    /**
+     * @return the amount of levels of the topic
+     */
+    public int count() {
+        return count;
+    }
+
+    public int start(final int index) {
+        return index == 0 ? 0 : ends[index - 1] + 1;
+    }
+
+    public int end(final int index) {
+        return ends[index];
+    }
+
+    public int length(final int index) {
+        return end(index) - start(index);
+    }
+
+    /**
+     * @return if the level at the index equals the given String, without copying the level
+     */
+    public boolean segmentEquals(final int index, final @NotNull String segment) {
+        final int start = start(index);
+        final int length = ends[index] - start;
+        return length == segment.length() && topic.regionMatches(start, segment, 0, length);
+    }
+
+    public boolean isSingleLevelWildcard(final int index) {
+        return isCharacter(index, '+');
+    }
+
+    public boolean isMultiLevelWildcard(final int index) {
+        return isCharacter(index, '#');
+    }
+
+    /**
+     * Returns the level at the index as String. The String is created on the first call and then reused until the next
+     * topic is tokenized. If the topic has only one level, the topic itself is returned.
+     *
+     * @param index the index of the level
+     * @return the level at the index
+     */
+    public @NotNull String segment(final int index) {
+        String segment = segments[index];
+        if (segment == null) {
+            segment = count == 1 ? topic : topic.substring(start(index), ends[index]);
+            segments[index] = segment;
+        }
+        return segment;
+    }
+
+    /**
+     * Matches the tokenized topic against a topic filter that is already split into its levels. A multi level wildcard
+     * at the end of the filter also matches the parent level.
+     *
+     * @param filterSegments the levels of the topic filter
+     * @return if the topic filter matches the tokenized topic
+     */
+    public boolean matchedBy(final @NotNull String @NotNull [] filterSegments) {
+        final int smallest = Math.min(filterSegments.length, count);
+
+        for (int i = 0; i < smallest; i++) {
+            final String filterSegment = filterSegments[i];
+            if (!segmentEquals(i, filterSegment)) {
+                if ("#".equals(filterSegment)) {
+                    return true;
+                } else if (!"+".equals(filterSegment)) {
+                    //Does not match a wildcard and is not equal to the topic level
+                    return false;
+                }
+            }
+        }
+        //If the length is equal or the filter level with the number x+1 (where x is the topic length) is a wildcard,
+        //everything is alright.
+        return filterSegments.length == count ||
+                (filterSegments.length - count == 1 && "#".equals(filterSegments[filterSegments.length - 1]));
+    }
+
+    /**
+     * Matches a topic against a topic filter without tokenizing or copying any of them. A multi level wildcard at the
+     * end of the filter also matches the parent level and topics starting with '$' are not treated special.
+     *
+     * @param topicFilter the topic filter, may contain wildcards
+     * @param topic       the topic
+     * @return if the topic filter matches the topic
+     */
+    public static boolean matches(final @NotNull String topicFilter, final @NotNull String topic) {
+        final int filterLength = topicFilter.length();
+        final int topicLength = topic.length();
+        int filterStart = 0;
+        int topicStart = 0;
+        while (true) {
+            int filterEnd = topicFilter.indexOf('/', filterStart);
+            if (filterEnd < 0) {
+                filterEnd = filterLength;
+            }
+            int topicEnd = topic.indexOf('/', topicStart);
+            if (topicEnd < 0) {
+                topicEnd = topicLength;
+            }
+
+            final int filterSegmentLength = filterEnd - filterStart;
+            if (filterSegmentLength == 1 && topicFilter.charAt(filterStart) == '#') {
+                return true;
+            }
+            if (filterSegmentLength != 1 || topicFilter.charAt(filterStart) != '+') {
+                if (filterSegmentLength != topicEnd - topicStart ||
+                        !topicFilter.regionMatches(filterStart, topic, topicStart, filterSegmentLength)) {
+                    return false;
+                }
+            }
+
+            final boolean lastFilterSegment = filterEnd == filterLength;
+            final boolean lastTopicSegment = topicEnd == topicLength;
+            if (lastTopicSegment) {
+                return lastFilterSegment || (filterLength - filterEnd == 2 && topicFilter.charAt(filterEnd + 1) == '#');
+            }
+            if (lastFilterSegment) {
+                return false;
+            }
+            filterStart = filterEnd + 1;
+            topicStart = topicEnd + 1;
+        }
+    }
+
+    private boolean isCharacter(final int index, final char character) {
+        final int start = start(index);
+        return ends[index] - start == 1 && topic.charAt(start) == character;
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return topic;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.util.ObjectMemoryEstimation;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The children index of a {@link TopicTreeNode} in the compact topic tree.
+ * <p>
+ * The children are stored in an open addressing map keyed by the id of their segment in the
+ * {@link TopicSegmentDictionary}, which avoids the entry object per child of a {@link java.util.HashMap}. The
+ * {@link java.util.Map} interface is implemented so the traversal code is the same for both tree modes.
+ * <p>
+ * Segment ids are reused after the last node with a segment is removed. A reader of the copy-on-write tree may still
+ * hold an outdated version of this map, so lookups verify that the segment of the found node matches.
+ */
+class CompactChildrenMap extends AbstractMap<String, TopicTreeNode> {
+
+    private final @NotNull TopicSegmentDictionary dictionary;
+    private final @NotNull IntObjectHashMap<TopicTreeNode> children;
+
+    CompactChildrenMap(final @NotNull TopicSegmentDictionary dictionary, final int initialCapacity) {
+        this.dictionary = dictionary;
+        this.children = new IntObjectHashMap<>(initialCapacity);
+    }
+
+    private CompactChildrenMap(
+            final @NotNull TopicSegmentDictionary dictionary, final @NotNull IntObjectHashMap<TopicTreeNode> children) {
+        this.dictionary = dictionary;
+        this.children = children;
+    }
+
+    @NotNull CompactChildrenMap copy() {
+        final IntObjectHashMap<TopicTreeNode> copy = new IntObjectHashMap<>(children.size() + 1);
+        copy.putAll(children);
+        return new CompactChildrenMap(dictionary, copy);
+    }
+
+    @Override
+    public @Nullable TopicTreeNode get(final @Nullable Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        final int id = dictionary.getId((String) key);
+        if (id == TopicSegmentDictionary.UNKNOWN_ID) {
+            return null;
+        }
+        final TopicTreeNode child = children.get(id);
+        if (child == null || !child.getTopicPart().equals(key)) {
+            return null;
+        }
+        return child;
+    }
+
+    @Override
+    public boolean containsKey(final @Nullable Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key  the segment of the child, must be acquired from the dictionary
+     * @param node the child node
+     */
+    @Override
+    public @Nullable TopicTreeNode put(final @NotNull String key, final @NotNull TopicTreeNode node) {
+        final int id = dictionary.getId(key);
+        if (id == TopicSegmentDictionary.UNKNOWN_ID) {
+            throw new IllegalStateException("Topic segment '" + key + "' is not part of the segment dictionary");
+        }
+        return children.put(id, node);
+    }
+
+    @Override
+    public @Nullable TopicTreeNode remove(final @Nullable Object key) {
+        final TopicTreeNode child = get(key);
+        if (child == null) {
+            return null;
+        }
+        return children.remove(dictionary.getId((String) key));
+    }
+
+    @Override
+    public int size() {
+        return children.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return children.isEmpty();
+    }
+
+    @Override
+    public @NotNull Collection<TopicTreeNode> values() {
+        return children.values();
+    }
+
+    /**
+     * @return a snapshot of the entries, the children are not stored as entries
+     */
+    @Override
+    public @NotNull Set<Entry<String, TopicTreeNode>> entrySet() {
+        final Set<Entry<String, TopicTreeNode>> entries = new HashSet<>(children.size());
+        children.forEachValue(child -> entries.add(new SimpleImmutableEntry<>(child.getTopicPart(), child)));
+        return entries;
+    }
+
+    /**
+     * @return the approximate heap usage of this map in bytes, the children are not included
+     */
+    long estimateSize() {
+        // the open addressing map keeps an int array for the keys and an object array for the values
+        final int capacity = Integer.highestOneBit(Math.max(1, children.size()) * 2) * 2;
+        return ObjectMemoryEstimation.objectShellSize() + 6L * ObjectMemoryEstimation.objectRefSize() +
+                2L * ObjectMemoryEstimation.ARRAY_OVERHEAD +
+                (long) capacity * (ObjectMemoryEstimation.intSize() + ObjectMemoryEstimation.objectRefSize());
+    }
+}
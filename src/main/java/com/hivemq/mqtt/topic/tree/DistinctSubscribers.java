@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.ImmutableIntArray;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Merges the subscriptions that match a topic into one entry per subscriber. The entry has the maximum QoS of the
+ * subscriptions and the subscription identifiers of all of them.
+ * <p>
+ * The subscriptions are merged in a single pass over a hash map keyed by the client id, so the cost is linear in the
+ * amount of matched subscriptions. Subscriptions stored in {@link PackedSubscriptions} are added from their primitive
+ * columns, without creating a {@link SubscriberWithQoS} first.
+ */
+final class DistinctSubscribers {
+
+    private final @NotNull Map<Object, SubscriberWithIdentifiers> subscribers;
+
+    DistinctSubscribers() {
+        subscribers = new HashMap<>();
+    }
+
+    DistinctSubscribers(final @NotNull Map<Object, SubscriberWithIdentifiers> subscribers) {
+        this.subscribers = subscribers;
+    }
+
+    void add(final @NotNull SubscriberWithQoS subscription) {
+        final Object key = subscriptionKey(subscription.getSubscriber(),
+                subscription.getTopicFilter(),
+                subscription.getSharedName());
+        final SubscriberWithIdentifiers existing = subscribers.get(key);
+        if (existing == null) {
+            subscribers.put(key, new SubscriberWithIdentifiers(subscription));
+            return;
+        }
+        final Integer subscriptionId = subscription.getSubscriptionIdentifier();
+        merge(existing, subscription.getQos(), subscriptionId != null, subscriptionId == null ? 0 : subscriptionId);
+    }
+
+    void addAll(final @NotNull PackedSubscriptions subscriptions) {
+        for (int slot = 0; slot < subscriptions.size(); slot++) {
+            final String client = subscriptions.client(slot);
+            final Object key = subscriptionKey(client, subscriptions.getTopicFilter(), subscriptions.getSharedName());
+            final SubscriberWithIdentifiers existing = subscribers.get(key);
+            if (existing == null) {
+                final SubscriberWithIdentifiers subscriber = new SubscriberWithIdentifiers(client,
+                        subscriptions.qos(slot),
+                        subscriptions.flags(slot),
+                        subscriptions.getSharedName());
+                if (subscriptions.hasSubscriptionIdentifier(slot)) {
+                    subscriber.setSubscriptionIdentifiers(
+                            ImmutableIntArray.of(subscriptions.subscriptionIdentifier(slot)));
+                }
+                subscribers.put(key, subscriber);
+            } else {
+                merge(existing,
+                        subscriptions.qos(slot),
+                        subscriptions.hasSubscriptionIdentifier(slot),
+                        subscriptions.subscriptionIdentifier(slot));
+            }
+        }
+    }
+
+    @NotNull ImmutableSet<SubscriberWithIdentifiers> build() {
+        return ImmutableSet.copyOf(subscribers.values());
+    }
+
+    private static void merge(
+            final @NotNull SubscriberWithIdentifiers existing,
+            final int qos,
+            final boolean hasSubscriptionId,
+            final int subscriptionId) {
+
+        if (qos > existing.getQos()) {
+            existing.setQos(qos);
+        }
+        if (hasSubscriptionId) {
+            final ImmutableIntArray subscriptionIds = existing.getSubscriptionIdentifier();
+            final ImmutableIntArray mergedSubscriptionIds = ImmutableIntArray.builder(subscriptionIds.length() + 1)
+                    .addAll(subscriptionIds)
+                    .add(subscriptionId)
+                    .build();
+            existing.setSubscriptionIdentifiers(mergedSubscriptionIds);
+        }
+    }
+
+    /**
+     * Subscriptions in the topic tree usually neither have a topic filter nor a shared name, so the client id alone
+     * is used as key in this case to avoid allocating a composite key.
+     */
+    private static @NotNull Object subscriptionKey(
+            final @NotNull String client, final @Nullable String topicFilter, final @Nullable String sharedName) {
+
+        if (topicFilter == null && sharedName == null) {
+            return client;
+        }
+        return Arrays.asList(client, topicFilter, sharedName);
+    }
+}
@@ -15,41 +15,61 @@
  */
 package com.hivemq.mqtt.topic.tree;
 
+import com.codahale.metrics.CachedGauge;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.primitives.ImmutableIntArray;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.Striped;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.metrics.HiveMQMetrics;
 import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.metrics.SampledTimer;
 import com.hivemq.mqtt.message.subscribe.Topic;
 import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
 import com.hivemq.mqtt.topic.SubscriberWithQoS;
-import org.apache.commons.lang3.StringUtils;
+import com.hivemq.mqtt.topic.TopicTokenizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import java.util.Comparator;
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.hivemq.configuration.service.InternalConfigurations.TOPIC_TREE_COMPACT_MODE_ENABLED;
+import static com.hivemq.configuration.service.InternalConfigurations.TOPIC_TREE_COPY_ON_WRITE_ENABLED;
 import static com.hivemq.configuration.service.InternalConfigurations.TOPIC_TREE_MAP_CREATION_THRESHOLD;
+import static com.hivemq.configuration.service.InternalConfigurations.TOPIC_TREE_MATCH_CACHE_ENABLED;
+import static com.hivemq.configuration.service.InternalConfigurations.TOPIC_TREE_MATCH_CACHE_MAX_WEIGHT;
+import static com.hivemq.configuration.service.InternalConfigurations.TOPIC_TREE_PACKED_SUBSCRIPTIONS_ENABLED;
 
 /**
  * A topic tree implementation which works with a standard read write lock with fairness guarantees. Either the whole
  * tree is locked or unlocked.
+ * <p>
+ * If the copy-on-write mode is enabled, only writers take the segment locks. Writers never modify the structures of a
+ * node in place but publish modified copies, so the matching of topics never blocks.
+ * <p>
+ * If the match cache is enabled, the subscribers of publish topics are cached in a {@link TopicSubscribersCache}.
+ * <p>
+ * If the compact mode is enabled, the topic segments are interned in a {@link TopicSegmentDictionary} and the children
+ * of large nodes are stored in a {@link CompactChildrenMap}.
  */
 @Singleton
 public class LocalTopicTree {
@@ -60,6 +80,10 @@ public class LocalTopicTree {
 
     private final @NotNull Striped<ReadWriteLock> segmentLocks;
 
+    private final @NotNull SegmentLockStatistics segmentLockStatistics;
+
+    private final @NotNull Supplier<TopicTreeStatistics> statistics;
+
     @VisibleForTesting
     final SubscriptionCounters counters;
 
@@ -68,13 +92,61 @@ public class LocalTopicTree {
 
     private final int mapCreationThreshold;
 
+    private final boolean copyOnWrite;
+
+    private final @NotNull SubscriptionStorageOptions subscriptionStorageOptions;
+
+    @VisibleForTesting
+    final @Nullable TopicSubscribersCache topicSubscribersCache;
+
+    @VisibleForTesting
+    final @Nullable TopicSegmentDictionary segmentDictionary;
+
+    private final @NotNull SharedSubscriptionIndex sharedSubscriptionIndex = new SharedSubscriptionIndex();
+
+    private final @NotNull SampledTimer topicMatchingTimer;
+
     @Inject
     public LocalTopicTree(final @NotNull MetricsHolder metricsHolder) {
 
         counters = new SubscriptionCounters(metricsHolder.getSubscriptionCounter());
         mapCreationThreshold = TOPIC_TREE_MAP_CREATION_THRESHOLD.get();
+        copyOnWrite = TOPIC_TREE_COPY_ON_WRITE_ENABLED.get();
+        subscriptionStorageOptions = new SubscriptionStorageOptions(mapCreationThreshold,
+                copyOnWrite,
+                TOPIC_TREE_PACKED_SUBSCRIPTIONS_ENABLED.get());
+        topicSubscribersCache = TOPIC_TREE_MATCH_CACHE_ENABLED.get() ?
+                new TopicSubscribersCache(TOPIC_TREE_MATCH_CACHE_MAX_WEIGHT.get(), metricsHolder) :
+                null;
+        segmentDictionary = TOPIC_TREE_COMPACT_MODE_ENABLED.get() ? new TopicSegmentDictionary() : null;
 
         segmentLocks = Striped.readWriteLock(64);
+        segmentLockStatistics = new SegmentLockStatistics(segmentLocks.size(),
+                metricsHolder.getTopicTreeSegmentLockWaitTimeCounter(),
+                metricsHolder.getTopicTreeSegmentLockContendedCounter());
+        statistics = Suppliers.memoizeWithExpiration(this::collectStatistics, 1, TimeUnit.MINUTES);
+        topicMatchingTimer = metricsHolder.getPublishTopicMatchingTimer();
+
+        final MetricRegistry metricRegistry = metricsHolder.getMetricRegistry();
+        metricRegistry.register(HiveMQMetrics.TOPIC_TREE_BYTES_PER_SUBSCRIPTION.name(),
+                new CachedGauge<Long>(1, TimeUnit.MINUTES) {
+                    @Override
+                    protected @NotNull Long loadValue() {
+                        return estimateBytesPerSubscription();
+                    }
+                });
+        metricRegistry.register(HiveMQMetrics.TOPIC_TREE_NODES_CURRENT.name(),
+                (Gauge<Long>) () -> statistics.get().getNodeCount());
+        metricRegistry.register(HiveMQMetrics.TOPIC_TREE_DEPTH_MAX.name(),
+                (Gauge<Integer>) () -> statistics.get().getMaxDepth());
+        metricRegistry.register(HiveMQMetrics.TOPIC_TREE_FAN_OUT_MAX.name(),
+                (Gauge<Integer>) () -> statistics.get().getMaxFanOut());
+        metricRegistry.register(HiveMQMetrics.TOPIC_TREE_CHILDREN_MAP_NODES_CURRENT.name(),
+                (Gauge<Long>) () -> statistics.get().getChildrenMapNodeCount());
+        metricRegistry.register(HiveMQMetrics.TOPIC_TREE_SUBSCRIPTIONS_MAP_NODES_CURRENT.name(),
+                (Gauge<Long>) () -> statistics.get().getSubscriptionsMapNodeCount());
+        metricRegistry.register(HiveMQMetrics.TOPIC_TREE_ROOT_WILDCARD_SUBSCRIPTIONS_CURRENT.name(),
+                (Gauge<Integer>) rootWildcardSubscribers::size);
     }
 
     public boolean addTopic(
@@ -86,17 +158,31 @@ public class LocalTopicTree {
         checkNotNull(subscriber, "Subscriber must not be null");
         checkNotNull(topic, "Topic must not be null");
 
-        final String[] contents = StringUtils.splitPreserveAllTokens(topic.getTopic(), '/');
+        final boolean replaced = addTopicToTree(subscriber, topic, flags, sharedName);
+        if (topicSubscribersCache != null) {
+            topicSubscribersCache.invalidate(topic.getTopic());
+        }
+        return replaced;
+    }
+
+    private boolean addTopicToTree(
+            final @NotNull String subscriber,
+            final @NotNull Topic topic,
+            final byte flags,
+            final @Nullable String sharedName) {
+
+        //The index and the nodes do not use the topic tokenizer, so the instance of this thread can be used
+        final TopicTokenizer contents = TopicTokenizer.threadLocal(topic.getTopic());
 
         //Do not store subscriptions with more than 1000 segments
-        if (contents.length > 1000) {
+        if (contents.count() > 1000) {
             log.warn("Subscription from {} on topic {} exceeds maximum segment count of 1000 segments, ignoring it",
                     subscriber,
                     topic);
             return false;
         }
 
-        if (contents.length == 0) {
+        if (contents.count() == 0) {
             log.debug("Tried to add an empty topic to the topic tree.");
             return false;
         }
@@ -108,36 +194,49 @@ public class LocalTopicTree {
                 topic.getSubscriptionIdentifier(),
                 null);
 
-        if (contents.length == 1 && "#".equals(contents[0])) {
-            if (!rootWildcardSubscribers.contains(entry)) {
-                //Remove the same subscription with different QoS
-                final boolean removed = removeRootWildcardSubscriber(subscriber, sharedName);
-                rootWildcardSubscribers.add(entry);
-                counters.getSubscriptionCounter().inc();
-
-                return removed;
-            }
-            return true;
-        }
-
-        final String segmentKey = contents[0];
+        final String segmentKey = contents.segment(0);
 
+        // The shared subscription index is updated while holding the same lock as the topic tree, so that concurrent
+        // changes of the same subscription are applied to the tree and to the index in the same order.
         final Lock lock = segmentLocks.get(segmentKey).writeLock();
 
-        lock.lock();
+        lock(lock, segmentKey);
         try {
 
+            if (contents.count() == 1 && contents.isMultiLevelWildcard(0)) {
+                if (!rootWildcardSubscribers.contains(entry)) {
+                    //Remove the same subscription with different QoS
+                    final boolean removed = removeRootWildcardSubscriber(subscriber, sharedName);
+                    rootWildcardSubscribers.add(entry);
+                    counters.getSubscriptionCounter().inc();
+                    if (sharedName != null) {
+                        sharedSubscriptionIndex.add(entry, sharedName, topic);
+                    }
+
+                    return removed;
+                }
+                return true;
+            }
+
             TopicTreeNode node = segments.get(segmentKey);
             if (node == null) {
-                node = new TopicTreeNode(segmentKey);
+                node = TopicTreeNode.newNode(segmentKey, segmentDictionary);
                 segments.put(segmentKey, node);
             }
 
-            if (contents.length == 1) {
-                return node.exactSubscriptions.addSubscriber(entry, topic.getTopic(), counters, mapCreationThreshold);
+            final boolean replaced;
+            if (contents.count() == 1) {
+                replaced = node.exactSubscriptions.addSubscriber(entry,
+                        topic.getTopic(),
+                        counters,
+                        subscriptionStorageOptions);
             } else {
-                return addNode(entry, topic.getTopic(), contents, node, 1);
+                replaced = addNode(entry, topic.getTopic(), contents, node, 1);
             }
+            if (sharedName != null) {
+                sharedSubscriptionIndex.add(entry, sharedName, topic);
+            }
+            return replaced;
         } finally {
             lock.unlock();
         }
@@ -146,20 +245,27 @@ public class LocalTopicTree {
     private boolean addNode(
             final @NotNull SubscriberWithQoS subscriber,
             final @NotNull String topicFilter,
-            final @NotNull String[] contents,
+            final @NotNull TopicTokenizer contents,
             final @NotNull TopicTreeNode node,
             final int i) {
 
-        final String content = contents[i];
-
-        if ("#".equals(content)) {
-            return node.wildcardSubscriptions.addSubscriber(subscriber, topicFilter, counters, mapCreationThreshold);
+        if (contents.isMultiLevelWildcard(i)) {
+            return node.wildcardSubscriptions.addSubscriber(subscriber,
+                    topicFilter,
+                    counters,
+                    subscriptionStorageOptions);
         }
 
-        final TopicTreeNode subNode = node.addChildNodeIfAbsent(content, mapCreationThreshold);
+        final TopicTreeNode subNode = node.addChildNodeIfAbsent(contents.segment(i),
+                mapCreationThreshold,
+                copyOnWrite,
+                segmentDictionary);
 
-        if (i + 1 == contents.length) {
-            return subNode.exactSubscriptions.addSubscriber(subscriber, topicFilter, counters, mapCreationThreshold);
+        if (i + 1 == contents.count()) {
+            return subNode.exactSubscriptions.addSubscriber(subscriber,
+                    topicFilter,
+                    counters,
+                    subscriptionStorageOptions);
         } else {
             return addNode(subscriber, topicFilter, contents, subNode, i + 1);
         }
@@ -178,7 +284,21 @@ public class LocalTopicTree {
     public @NotNull TopicSubscribers findTopicSubscribers(
             final @NotNull String topic, final boolean excludeRootLevelWildcard) {
 
-        final ImmutableList.Builder<SubscriberWithQoS> subscribers = ImmutableList.builder();
+        final long start = topicMatchingTimer.start();
+        try {
+            if (topicSubscribersCache != null && !excludeRootLevelWildcard) {
+                return topicSubscribersCache.get(topic, cachedTopic -> createTopicSubscribers(cachedTopic, false));
+            }
+            return createTopicSubscribers(topic, excludeRootLevelWildcard);
+        } finally {
+            topicMatchingTimer.stop(start);
+        }
+    }
+
+    private @NotNull TopicSubscribers createTopicSubscribers(
+            final @NotNull String topic, final boolean excludeRootLevelWildcard) {
+
+        final DistinctSubscribers subscribers = new DistinctSubscribers();
         final ImmutableSet.Builder<String> sharedSubscriptions = ImmutableSet.builder();
 
         final ClientQueueDispatchingSubscriptionInfoFinder subscriberConsumer =
@@ -186,10 +306,7 @@ public class LocalTopicTree {
 
         findSubscribers(topic, excludeRootLevelWildcard, subscriberConsumer);
 
-        final ImmutableSet<SubscriberWithIdentifiers> distinctSubscribers =
-                createDistinctSubscribers(subscribers.build());
-
-        return new TopicSubscribers(distinctSubscribers, sharedSubscriptions.build());
+        return new TopicSubscribers(subscribers.build(), sharedSubscriptions.build());
     }
 
     private void findSubscribers(
@@ -209,16 +326,17 @@ public class LocalTopicTree {
             return;
         }
 
-        final String[] topicPart = StringUtils.splitPreserveAllTokens(topic, '/');
-        final String segmentKey = topicPart[0];
+        //The consumers do not use the topic tokenizer, so the instance of this thread can be used
+        final TopicTokenizer topicTokens = TopicTokenizer.threadLocal(topic);
+        final String segmentKey = topicTokens.segment(0);
 
-        final Lock lock = segmentLocks.get(segmentKey).readLock();
-        lock.lock();
+        final Lock lock = readLock(segmentKey);
+        lock(lock, segmentKey);
 
         try {
             final TopicTreeNode firstSegmentNode = segments.get(segmentKey);
             if (firstSegmentNode != null) {
-                traverseTree(firstSegmentNode, subscriberAndTopicConsumer, topicPart, 0);
+                traverseTree(firstSegmentNode, subscriberAndTopicConsumer, topicTokens, 0);
             }
         } finally {
             lock.unlock();
@@ -227,13 +345,13 @@ public class LocalTopicTree {
         //We now have to traverse the wildcard node if something matches here
         if (!excludeRootLevelWildcard) {
 
-            final Lock wildcardLock = segmentLocks.get("+").readLock();
-            wildcardLock.lock();
+            final Lock wildcardLock = readLock("+");
+            lock(wildcardLock, "+");
 
             try {
                 final TopicTreeNode firstSegmentNode = segments.get("+");
                 if (firstSegmentNode != null) {
-                    traverseTree(firstSegmentNode, subscriberAndTopicConsumer, topicPart, 0);
+                    traverseTree(firstSegmentNode, subscriberAndTopicConsumer, topicTokens, 0);
                 }
             } finally {
                 wildcardLock.unlock();
@@ -245,90 +363,45 @@ public class LocalTopicTree {
      * Returns a distinct immutable Set of SubscribersWithQoS. The set is guaranteed to only contain one entry per
      * subscriber string. This entry has the maximum QoS found in the topic tree and the subscription identifiers of all
      * subscriptions for the client.
+     * <p>
+     * The subscriptions are merged by {@link DistinctSubscribers}.
      *
      * @param subscribers a list of subscribers
      * @return a immutable Set of distinct Subscribers with the maximum QoS.
      */
-    private static @NotNull ImmutableSet<SubscriberWithIdentifiers> createDistinctSubscribers(
+    @VisibleForTesting
+    static @NotNull ImmutableSet<SubscriberWithIdentifiers> createDistinctSubscribers(
             final @NotNull ImmutableList<SubscriberWithQoS> subscribers) {
 
-        final ImmutableSet.Builder<SubscriberWithIdentifiers> newSet = ImmutableSet.builder();
-
-        final ImmutableList<SubscriberWithQoS> subscriberWithQoS =
-                ImmutableList.sortedCopyOf(Comparator.naturalOrder(), subscribers);
-
-        final Iterator<SubscriberWithQoS> iterator = subscriberWithQoS.iterator();
-
-        SubscriberWithIdentifiers last = null;
-
-        // Create a single entry per client id, with the highest QoS an all subscription identifiers
-        while (iterator.hasNext()) {
-            final SubscriberWithQoS current = iterator.next();
-
-            if (last != null) {
-
-                if (!equalSubscription(current, last)) {
-                    newSet.add(last);
-                    last = new SubscriberWithIdentifiers(current);
-                } else {
-                    last.setQos(current.getQos());
-                    if (current.getSubscriptionIdentifier() != null) {
-                        final ImmutableIntArray subscriptionIds = last.getSubscriptionIdentifier();
-                        final Integer subscriptionId = current.getSubscriptionIdentifier();
-                        final ImmutableIntArray mergedSubscriptionIds =
-                                ImmutableIntArray.builder(subscriptionIds.length() + 1)
-                                        .addAll(subscriptionIds)
-                                        .add(subscriptionId)
-                                        .build();
-                        last.setSubscriptionIdentifiers(mergedSubscriptionIds);
-                    }
-                }
-            } else {
-                last = new SubscriberWithIdentifiers(current);
-            }
-
-            if (!iterator.hasNext()) {
-                newSet.add(last);
-            }
+        final int size = subscribers.size();
+        if (size == 0) {
+            return ImmutableSet.of();
         }
-
-        return newSet.build();
-    }
-
-    private static boolean equalSubscription(
-            final @NotNull SubscriberWithQoS first, final @NotNull SubscriberWithIdentifiers second) {
-
-        return equalSubscription(first, second.getSubscriber(), second.getTopicFilter(), second.getSharedName());
-    }
-
-    private static boolean equalSubscription(
-            final @NotNull SubscriberWithQoS first,
-            final @NotNull String secondClient,
-            final @Nullable String secondTopicFilter,
-            final @Nullable String secondSharedName) {
-
-        if (!first.getSubscriber().equals(secondClient)) {
-            return false;
+        if (size == 1) {
+            return ImmutableSet.of(new SubscriberWithIdentifiers(subscribers.get(0)));
         }
-        if (!Objects.equals(first.getTopicFilter(), secondTopicFilter)) {
-            return false;
+
+        final DistinctSubscribers distinctSubscribers =
+                new DistinctSubscribers(Maps.newHashMapWithExpectedSize(size));
+        for (int i = 0; i < size; i++) {
+            distinctSubscribers.add(subscribers.get(i));
         }
-        return Objects.equals(first.getSharedName(), secondSharedName);
+        return distinctSubscribers.build();
     }
 
     private static void traverseTree(
             final @NotNull TopicTreeNode node,
             final @NotNull SubscriptionsConsumer subscriberAndTopicConsumer,
-            final String[] topicPart,
+            final @NotNull TopicTokenizer topicTokens,
             final int depth) {
 
-        if (!topicPart[depth].equals(node.getTopicPart()) && !"+".equals(node.getTopicPart())) {
+        if (!topicTokens.segmentEquals(depth, node.getTopicPart()) && !"+".equals(node.getTopicPart())) {
             return;
         }
 
         subscriberAndTopicConsumer.acceptNonRootState(node.wildcardSubscriptions);
 
-        final boolean end = topicPart.length - 1 == depth;
+        final boolean end = topicTokens.count() - 1 == depth;
         if (end) {
             subscriberAndTopicConsumer.acceptNonRootState(node.exactSubscriptions);
         } else {
@@ -338,48 +411,41 @@ public class LocalTopicTree {
 
             final int nextDepth = depth + 1;
 
+            //The array must be read before the map, see TopicTreeNode.children
+            final TopicTreeNode[] children = node.getChildren();
+            final Map<String, TopicTreeNode> childrenMap = node.getChildrenMap();
+
             //if the node has an index, we can just use the index instead of traversing the whole node set
-            if (node.getChildrenMap() != null) {
+            if (childrenMap != null) {
 
                 //Get the exact node by the index
-                final TopicTreeNode matchingChildNode = getIndexForChildNode(topicPart[nextDepth], node);
+                final TopicTreeNode matchingChildNode = childrenMap.get(topicTokens.segment(nextDepth));
                 if (matchingChildNode != null) {
-                    traverseTree(matchingChildNode, subscriberAndTopicConsumer, topicPart, depth + 1);
+                    traverseTree(matchingChildNode, subscriberAndTopicConsumer, topicTokens, depth + 1);
                 }
 
                 //We also need to check if there is a wildcard node
-                final TopicTreeNode matchingWildcardNode = getIndexForChildNode("+", node);
+                final TopicTreeNode matchingWildcardNode = childrenMap.get("+");
                 if (matchingWildcardNode != null) {
-                    traverseTree(matchingWildcardNode, subscriberAndTopicConsumer, topicPart, nextDepth);
+                    traverseTree(matchingWildcardNode, subscriberAndTopicConsumer, topicTokens, nextDepth);
                 }
                 //We can return without any further recursion because we found all matching nodes
                 return;
             }
 
             //The children are stored as array
-            final TopicTreeNode[] children = node.getChildren();
             if (children == null) {
                 return;
             }
 
             for (final TopicTreeNode childNode : children) {
                 if (childNode != null) {
-                    traverseTree(childNode, subscriberAndTopicConsumer, topicPart, nextDepth);
+                    traverseTree(childNode, subscriberAndTopicConsumer, topicTokens, nextDepth);
                 }
             }
         }
     }
 
-    private static @Nullable TopicTreeNode getIndexForChildNode(
-            final @NotNull String key, final @NotNull TopicTreeNode node) {
-
-        final Map<String, TopicTreeNode> childrenMap = node.getChildrenMap();
-        if (childrenMap == null) {
-            return null;
-        }
-        return childrenMap.get(key);
-    }
-
     /* ***************************************
         Subscriber Removal for all nodes
      ****************************************/
@@ -412,8 +478,25 @@ public class LocalTopicTree {
         checkNotNull(subscriber);
         checkNotNull(topic);
 
+        removeSubscriberFromTree(subscriber, topic, sharedName);
+        if (topicSubscribersCache != null) {
+            topicSubscribersCache.invalidate(topic);
+        }
+    }
+
+    private void removeSubscriberFromTree(
+            final @NotNull String subscriber, final @NotNull String topic, final @Nullable String sharedName) {
+
         if ("#".equals(topic)) {
-            removeRootWildcardSubscriber(subscriber, sharedName);
+            final Lock lock = segmentLocks.get(topic).writeLock();
+            lock(lock, topic);
+            try {
+                if (removeRootWildcardSubscriber(subscriber, sharedName) && sharedName != null) {
+                    sharedSubscriptionIndex.remove(subscriber, sharedName, topic);
+                }
+            } finally {
+                lock.unlock();
+            }
             return;
         }
         //We can shortcut here in case we don't have any segments
@@ -426,12 +509,13 @@ public class LocalTopicTree {
             return;
         }
 
-        final String[] topicPart = StringUtils.splitPreserveAllTokens(topic, "/");
+        //The index and the nodes do not use the topic tokenizer, so the instance of this thread can be used
+        final TopicTokenizer topicPart = TopicTokenizer.threadLocal(topic);
 
-        final TopicTreeNode[] nodes = new TopicTreeNode[topicPart.length];
-        final String segmentKey = topicPart[0];
+        final TopicTreeNode[] nodes = new TopicTreeNode[topicPart.count()];
+        final String segmentKey = topicPart.segment(0);
         final Lock lock = segmentLocks.get(segmentKey).writeLock();
-        lock.lock();
+        lock(lock, segmentKey);
         try {
             //The segment doesn't exist, we can abort
             final TopicTreeNode segmentNode = segments.get(segmentKey);
@@ -439,24 +523,41 @@ public class LocalTopicTree {
                 return;
             }
 
-            if (topicPart.length == 1) {
-                segmentNode.exactSubscriptions.removeSubscriber(subscriber, sharedName, topic, counters);
+            boolean removed = false;
+            if (topicPart.count() == 1) {
+                removed = segmentNode.exactSubscriptions.removeSubscriber(subscriber,
+                        sharedName,
+                        topic,
+                        counters,
+                        subscriptionStorageOptions);
             }
 
-            if (topicPart.length == 2 && "#".equals(topicPart[1])) {
-                segmentNode.wildcardSubscriptions.removeSubscriber(subscriber, sharedName, topic, counters);
+            if (topicPart.count() == 2 && topicPart.isMultiLevelWildcard(1)) {
+                removed |= segmentNode.wildcardSubscriptions.removeSubscriber(subscriber,
+                        sharedName,
+                        topic,
+                        counters,
+                        subscriptionStorageOptions);
             }
 
             iterateChildNodesForSubscriberRemoval(segmentNode, topicPart, nodes, 0);
 
             final TopicTreeNode lastFoundNode = getLastNode(nodes);
             if (lastFoundNode != null) {
-                final String lastTopicPart = topicPart[topicPart.length - 1];
-                if ("#".equals(lastTopicPart)) {
-                    lastFoundNode.wildcardSubscriptions.removeSubscriber(subscriber, sharedName, topic, counters);
-
-                } else if (lastTopicPart.equals(lastFoundNode.getTopicPart())) {
-                    lastFoundNode.exactSubscriptions.removeSubscriber(subscriber, sharedName, topic, counters);
+                final int lastIndex = topicPart.count() - 1;
+                if (topicPart.isMultiLevelWildcard(lastIndex)) {
+                    removed |= lastFoundNode.wildcardSubscriptions.removeSubscriber(subscriber,
+                            sharedName,
+                            topic,
+                            counters,
+                            subscriptionStorageOptions);
+
+                } else if (topicPart.segmentEquals(lastIndex, lastFoundNode.getTopicPart())) {
+                    removed |= lastFoundNode.exactSubscriptions.removeSubscriber(subscriber,
+                            sharedName,
+                            topic,
+                            counters,
+                            subscriptionStorageOptions);
                 }
             }
 
@@ -471,19 +572,7 @@ public class LocalTopicTree {
                         if (parent == null) {
                             parent = segmentNode;
                         }
-                        final TopicTreeNode[] childrenOfParent = parent.getChildren();
-                        if (childrenOfParent != null) {
-                            for (int j = 0; j < childrenOfParent.length; j++) {
-                                if (childrenOfParent[j] == node) {
-                                    childrenOfParent[j] = null;
-                                }
-                            }
-                        } else if (parent.getChildrenMap() != null) {
-                            final TopicTreeNode childOfParent = parent.getChildrenMap().get(node.getTopicPart());
-                            if (childOfParent == node) {
-                                parent.getChildrenMap().remove(childOfParent.getTopicPart());
-                            }
-                        }
+                        parent.removeChildNode(node, copyOnWrite, segmentDictionary);
                     }
                 }
             }
@@ -493,6 +582,13 @@ public class LocalTopicTree {
                     segmentNode.exactSubscriptions.getSubscriberCount() == 0 &&
                     segmentNode.wildcardSubscriptions.getSubscriberCount() == 0) {
                 segments.remove(segmentNode.getTopicPart());
+                if (segmentDictionary != null) {
+                    segmentDictionary.release(segmentNode.getTopicPart());
+                }
+            }
+
+            if (removed && sharedName != null) {
+                sharedSubscriptionIndex.remove(subscriber, sharedName, topic);
             }
 
         } finally {
@@ -519,13 +615,13 @@ public class LocalTopicTree {
      * Please
      *
      * @param node       the node to iterate children for
-     * @param topicParts the complete topic array
+     * @param topicParts the levels of the complete topic
      * @param results    the result array
      * @param depth      the current topic level depth
      */
     private static void iterateChildNodesForSubscriberRemoval(
             final @NotNull TopicTreeNode node,
-            final @NotNull String[] topicParts,
+            final @NotNull TopicTokenizer topicParts,
             final @NotNull TopicTreeNode[] results,
             final int depth) {
 
@@ -534,9 +630,9 @@ public class LocalTopicTree {
         TopicTreeNode foundNode = null;
 
         if (node.getChildrenMap() != null) {
-            if (topicParts.length > depth + 1) {
+            if (topicParts.count() > depth + 1) {
                 //We have an index available, so we can use it
-                final TopicTreeNode indexNode = node.getChildrenMap().get(topicParts[depth + 1]);
+                final TopicTreeNode indexNode = node.getChildrenMap().get(topicParts.segment(depth + 1));
                 if (indexNode == null) {
                     //No child topic found, we can abort
                     return;
@@ -550,9 +646,9 @@ public class LocalTopicTree {
 
             for (int i = 0; i < node.getChildren().length; i++) {
                 final TopicTreeNode child = node.getChildren()[i];
-                if (child != null && depth + 2 <= topicParts.length) {
+                if (child != null && depth + 2 <= topicParts.count()) {
 
-                    if (child.getTopicPart().equals(topicParts[depth + 1])) {
+                    if (topicParts.segmentEquals(depth + 1, child.getTopicPart())) {
                         foundNode = child;
                         break;
                     }
@@ -567,13 +663,24 @@ public class LocalTopicTree {
         }
     }
 
+    /**
+     * @param group       the share name
+     * @param topicFilter the topic filter of the shared subscription
+     * @return the subscribers of the shared subscription, looked up in the index of the shared subscriptions
+     */
     public @NotNull ImmutableSet<SubscriberWithQoS> getSharedSubscriber(
             final @NotNull String group, final @NotNull String topicFilter) {
 
-        return getSubscriptionsByTopicFilter(topicFilter,
-                subscriber -> subscriber.isSharedSubscription() &&
-                        subscriber.getSharedName() != null &&
-                        subscriber.getSharedName().equals(group));
+        return sharedSubscriptionIndex.getSubscribers(group + "/" + topicFilter);
+    }
+
+    /**
+     * @param client the client identifier
+     * @return the shared subscriptions of the client as topics with the '$share/' prefix, looked up in the index of
+     *         the shared subscriptions
+     */
+    public @NotNull ImmutableSet<Topic> getSharedSubscriptions(final @NotNull String client) {
+        return sharedSubscriptionIndex.getSubscriptions(client);
     }
 
     public @NotNull ImmutableSet<String> getSubscribersWithFilter(
@@ -603,16 +710,17 @@ public class LocalTopicTree {
             return subscribers.build();
         }
 
-        final String[] topicPart = StringUtils.splitPreserveAllTokens(topic, '/');
-        final String segmentKey = topicPart[0];
+        //The item filter might match topics itself, so the tokenizer of this thread must not be used
+        final TopicTokenizer topicTokens = new TopicTokenizer().tokenize(topic);
+        final String segmentKey = topicTokens.segment(0);
 
-        final Lock lock = segmentLocks.get(segmentKey).readLock();
-        lock.lock();
+        final Lock lock = readLock(segmentKey);
+        lock(lock, segmentKey);
 
         try {
             final TopicTreeNode firstSegmentNode = segments.get(segmentKey);
             if (firstSegmentNode != null) {
-                traverseTreeWithFilter(firstSegmentNode, subscribers, topicPart, 0, itemFilter);
+                traverseTreeWithFilter(firstSegmentNode, subscribers, topicTokens, 0, itemFilter);
             }
         } finally {
             lock.unlock();
@@ -621,13 +729,13 @@ public class LocalTopicTree {
         //We now have to traverse the wildcard node if something matches here
         if (!excludeRootLevelWildcard) {
 
-            final Lock wildcardLock = segmentLocks.get("+").readLock();
-            wildcardLock.lock();
+            final Lock wildcardLock = readLock("+");
+            lock(wildcardLock, "+");
 
             try {
                 final TopicTreeNode firstSegmentNode = segments.get("+");
                 if (firstSegmentNode != null) {
-                    traverseTreeWithFilter(firstSegmentNode, subscribers, topicPart, 0, itemFilter);
+                    traverseTreeWithFilter(firstSegmentNode, subscribers, topicTokens, 0, itemFilter);
                 }
             } finally {
                 wildcardLock.unlock();
@@ -640,17 +748,17 @@ public class LocalTopicTree {
     private static void traverseTreeWithFilter(
             final @NotNull TopicTreeNode node,
             final @NotNull ImmutableSet.Builder<String> subscribers,
-            final String[] topicPart,
+            final @NotNull TopicTokenizer topicTokens,
             final int depth,
             final @NotNull Predicate<SubscriberWithQoS> itemFilter) {
 
-        if (!topicPart[depth].equals(node.getTopicPart()) && !"+".equals(node.getTopicPart())) {
+        if (!topicTokens.segmentEquals(depth, node.getTopicPart()) && !"+".equals(node.getTopicPart())) {
             return;
         }
 
         node.wildcardSubscriptions.populateWithSubscriberNamesUsingFilter(itemFilter, subscribers);
 
-        final boolean end = topicPart.length - 1 == depth;
+        final boolean end = topicTokens.count() - 1 == depth;
         if (end) {
             node.exactSubscriptions.populateWithSubscriberNamesUsingFilter(itemFilter, subscribers);
         } else {
@@ -660,33 +768,36 @@ public class LocalTopicTree {
 
             final int nextDepth = depth + 1;
 
+            //The array must be read before the map, see TopicTreeNode.children
+            final TopicTreeNode[] children = node.getChildren();
+            final Map<String, TopicTreeNode> childrenMap = node.getChildrenMap();
+
             //if the node has an index, we can just use the index instead of traversing the whole node set
-            if (node.getChildrenMap() != null) {
+            if (childrenMap != null) {
 
                 //Get the exact node by the index
-                final TopicTreeNode matchingChildNode = getIndexForChildNode(topicPart[nextDepth], node);
+                final TopicTreeNode matchingChildNode = childrenMap.get(topicTokens.segment(nextDepth));
                 if (matchingChildNode != null) {
-                    traverseTreeWithFilter(matchingChildNode, subscribers, topicPart, nextDepth, itemFilter);
+                    traverseTreeWithFilter(matchingChildNode, subscribers, topicTokens, nextDepth, itemFilter);
                 }
 
                 //We also need to check if there is a wildcard node
-                final TopicTreeNode matchingWildcardNode = getIndexForChildNode("+", node);
+                final TopicTreeNode matchingWildcardNode = childrenMap.get("+");
                 if (matchingWildcardNode != null) {
-                    traverseTreeWithFilter(matchingWildcardNode, subscribers, topicPart, nextDepth, itemFilter);
+                    traverseTreeWithFilter(matchingWildcardNode, subscribers, topicTokens, nextDepth, itemFilter);
                 }
                 //We can return without any further recursion because we found all matching nodes
                 return;
             }
 
             //The children are stored as array
-            final TopicTreeNode[] children = node.getChildren();
             if (children == null) {
                 return;
             }
 
             for (final TopicTreeNode childNode : children) {
                 if (childNode != null) {
-                    traverseTreeWithFilter(childNode, subscribers, topicPart, nextDepth, itemFilter);
+                    traverseTreeWithFilter(childNode, subscribers, topicTokens, nextDepth, itemFilter);
                 }
             }
         }
@@ -714,10 +825,11 @@ public class LocalTopicTree {
             return subscribers.build();
         }
 
-        final String[] contents = StringUtils.splitPreserveAllTokens(topicFilter, '/');
-        final String firstSegment = contents[0];
-        final Lock lock = segmentLocks.get(firstSegment).readLock();
-        lock.lock();
+        //The item filter might match topics itself, so the tokenizer of this thread must not be used
+        final TopicTokenizer contents = new TopicTokenizer().tokenize(topicFilter);
+        final String firstSegment = contents.segment(0);
+        final Lock lock = readLock(firstSegment);
+        lock(lock, firstSegment);
         try {
             TopicTreeNode node = segments.get(firstSegment);
             if (node == null) {
@@ -725,29 +837,28 @@ public class LocalTopicTree {
             }
 
             contentLoop:
-            for (int i = 1; i < contents.length; i++) {
-                if ("#".equals(contents[i])) {
+            for (int i = 1; i < contents.count(); i++) {
+                if (contents.isMultiLevelWildcard(i)) {
                     break;
                 }
 
-                if (node.getChildren() == null && node.getChildrenMap() == null) {
+                //The array must be read before the map, see TopicTreeNode.children
+                final TopicTreeNode[] children = node.getChildren();
+                final Map<String, TopicTreeNode> childrenMap = node.getChildrenMap();
+                if (children == null && childrenMap == null) {
                     // No matching node in the topic tree
                     return subscribers.build();
                 }
 
-                final TopicTreeNode[] children = node.getChildren();
-                if (children != null) {
-                    for (final TopicTreeNode child : children) {
-                        if (child != null && child.getTopicPart().equals(contents[i])) {
-                            node = child;
-                            continue contentLoop;
-                        }
-                        // No matching node in the topic tree
+                if (childrenMap != null) {
+                    final TopicTreeNode child = childrenMap.get(contents.segment(i));
+                    if (child != null) {
+                        node = child;
+                        continue;
                     }
-                } else if (node.getChildrenMap() != null) {
-
-                    for (final TopicTreeNode child : node.getChildrenMap().values()) {
-                        if (child != null && child.getTopicPart().equals(contents[i])) {
+                } else {
+                    for (final TopicTreeNode child : children) {
+                        if (child != null && contents.segmentEquals(i, child.getTopicPart())) {
                             node = child;
                             continue contentLoop;
                         }
@@ -757,7 +868,7 @@ public class LocalTopicTree {
                 return subscribers.build();
             }
 
-            if ("#".equals(contents[contents.length - 1])) {
+            if (contents.isMultiLevelWildcard(contents.count() - 1)) {
                 node.wildcardSubscriptions.populateWithSubscribersUsingFilter(itemFilter, subscribers);
             } else {
                 node.exactSubscriptions.populateWithSubscribersUsingFilter(itemFilter, subscribers);
@@ -803,6 +914,133 @@ public class LocalTopicTree {
         return subscriberConsumer.getMatchingSubscriber();
     }
 
+    /**
+     * Estimates the heap usage of the topic tree. The tree is walked segment by segment under the read locks, so this
+     * must not be called on a hot path. The client identifiers are not included as they are shared with the client
+     * sessions.
+     *
+     * @return the approximate amount of bytes per subscription or 0 if there are no subscriptions
+     */
+    public long estimateBytesPerSubscription() {
+        final long subscriptionCount = counters.getSubscriptionCounter().getCount();
+        if (subscriptionCount <= 0) {
+            return 0;
+        }
+        return estimateMemoryUsage() / subscriptionCount;
+    }
+
+    @VisibleForTesting
+    long estimateMemoryUsage() {
+        final boolean compact = segmentDictionary != null;
+        long size = 0;
+        for (final SubscriberWithQoS subscription : rootWildcardSubscribers) {
+            size += MatchingNodeSubscriptions.estimateSubscriptionSize(subscription);
+        }
+        for (final TopicTreeNode segmentNode : segments.values()) {
+            final Lock lock = readLock(segmentNode.getTopicPart());
+            lock.lock();
+            try {
+                size += estimateSubtreeSize(segmentNode, !compact);
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (compact) {
+            size += segmentDictionary.estimateSize();
+        }
+        return size;
+    }
+
+    private static long estimateSubtreeSize(final @NotNull TopicTreeNode node, final boolean includeTopicParts) {
+        //The array must be read before the map, see TopicTreeNode.children
+        final TopicTreeNode[] children = node.getChildren();
+        final Map<String, TopicTreeNode> childrenMap = node.getChildrenMap();
+
+        long size = node.estimateSize(includeTopicParts);
+        if (children != null) {
+            for (final TopicTreeNode child : children) {
+                if (child != null) {
+                    size += estimateSubtreeSize(child, includeTopicParts);
+                }
+            }
+        } else if (childrenMap != null) {
+            for (final TopicTreeNode child : childrenMap.values()) {
+                size += estimateSubtreeSize(child, includeTopicParts);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Walks the whole topic tree, so it should not be called frequently. The metrics of the topic tree use a
+     * snapshot that is refreshed once a minute.
+     *
+     * @return a snapshot of the shape of the topic tree and of the contention on its segment locks
+     */
+    public @NotNull TopicTreeStatistics collectStatistics() {
+        final TopicTreeStatistics.Collector collector = new TopicTreeStatistics.Collector(
+                rootWildcardSubscribers.size(),
+                counters.getSubscriptionCounter().getCount());
+        for (final TopicTreeNode segmentNode : segments.values()) {
+            final String segmentKey = segmentNode.getTopicPart();
+            final Lock lock = readLock(segmentKey);
+            lock.lock();
+            try {
+                final long nodeCountBefore = collector.nodeCount();
+                collectSubtreeStatistics(segmentNode, 1, collector);
+                collector.addSegment(segmentKey, collector.nodeCount() - nodeCountBefore);
+            } finally {
+                lock.unlock();
+            }
+        }
+        for (int stripe = 0; stripe < segmentLockStatistics.stripes(); stripe++) {
+            final long contendedAcquisitions = segmentLockStatistics.contendedAcquisitions(stripe);
+            if (contendedAcquisitions > 0) {
+                final List<String> stripeSegments = new ArrayList<>();
+                for (final String segmentKey : segments.keySet()) {
+                    if (segmentLocks.indexFor(segmentKey) == stripe) {
+                        stripeSegments.add(segmentKey);
+                    }
+                }
+                collector.addLockStripe(stripe,
+                        contendedAcquisitions,
+                        segmentLockStatistics.waitNanos(stripe),
+                        stripeSegments);
+            }
+        }
+        return collector.build();
+    }
+
+    private static void collectSubtreeStatistics(
+            final @NotNull TopicTreeNode node,
+            final int depth,
+            final @NotNull TopicTreeStatistics.Collector collector) {
+
+        //The array must be read before the map, see TopicTreeNode.children
+        final TopicTreeNode[] children = node.getChildren();
+        final Map<String, TopicTreeNode> childrenMap = node.getChildrenMap();
+
+        final boolean subscriptionsMap = node.exactSubscriptions.nonSharedSubscribersMap != null ||
+                node.wildcardSubscriptions.nonSharedSubscribersMap != null;
+        if (children != null) {
+            int fanOut = 0;
+            for (final TopicTreeNode child : children) {
+                if (child != null) {
+                    fanOut++;
+                    collectSubtreeStatistics(child, depth + 1, collector);
+                }
+            }
+            collector.addNode(depth, fanOut, false, subscriptionsMap);
+        } else if (childrenMap != null) {
+            for (final TopicTreeNode child : childrenMap.values()) {
+                collectSubtreeStatistics(child, depth + 1, collector);
+            }
+            collector.addNode(depth, childrenMap.size(), true, subscriptionsMap);
+        } else {
+            collector.addNode(depth, 0, false, subscriptionsMap);
+        }
+    }
+
     /* *************
         Utilities
      **************/
@@ -816,13 +1054,15 @@ public class LocalTopicTree {
     public static int getChildrenCount(final @NotNull TopicTreeNode node) {
         checkNotNull(node, "Node must not be null");
 
+        //The array must be read before the map, see TopicTreeNode.children
+        final TopicTreeNode[] children = node.getChildren();
+        final Map<String, TopicTreeNode> childrenMap = node.getChildrenMap();
+
         //If the node has a children map instead of the array, we don't need to count
-        if (node.childrenMap != null) {
-            return node.childrenMap.size();
+        if (childrenMap != null) {
+            return childrenMap.size();
         }
 
-        final TopicTreeNode[] children = node.getChildren();
-
         if (children == null) {
             return 0;
         }
@@ -836,6 +1076,26 @@ public class LocalTopicTree {
         return count;
     }
 
+    private @NotNull Lock readLock(final @NotNull String segmentKey) {
+        if (copyOnWrite) {
+            return NoOpLock.INSTANCE;
+        }
+        return segmentLocks.get(segmentKey).readLock();
+    }
+
+    /**
+     * Acquires the lock of a segment. The time spent waiting is recorded only if the lock is not available
+     * immediately.
+     */
+    private void lock(final @NotNull Lock lock, final @NotNull String segmentKey) {
+        if (lock.tryLock()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        lock.lock();
+        segmentLockStatistics.recordWait(segmentLocks.indexFor(segmentKey), System.nanoTime() - start);
+    }
+
     interface SubscriptionsConsumer {
 
         /**
@@ -861,11 +1121,11 @@ public class LocalTopicTree {
      */
     static class ClientQueueDispatchingSubscriptionInfoFinder implements SubscriptionsConsumer {
 
-        private final @NotNull ImmutableList.Builder<SubscriberWithQoS> subscribersBuilder;
+        private final @NotNull DistinctSubscribers subscribersBuilder;
         private final @NotNull ImmutableSet.Builder<String> sharedSubscriptionsBuilder;
 
         ClientQueueDispatchingSubscriptionInfoFinder(
-                final @NotNull ImmutableList.Builder<SubscriberWithQoS> subscribersBuilder,
+                final @NotNull DistinctSubscribers subscribersBuilder,
                 final @NotNull ImmutableSet.Builder<String> sharedSubscriptionsBuilder) {
             this.subscribersBuilder = subscribersBuilder;
             this.sharedSubscriptionsBuilder = sharedSubscriptionsBuilder;
@@ -876,10 +1136,18 @@ public class LocalTopicTree {
 
             sharedSubscriptionsBuilder.addAll(matchingNodeSubscriptions.sharedSubscribersMap.keySet());
 
-            if (matchingNodeSubscriptions.nonSharedSubscribersMap != null) {
-                subscribersBuilder.addAll(matchingNodeSubscriptions.nonSharedSubscribersMap.values());
-            } else if (matchingNodeSubscriptions.nonSharedSubscribersArray != null) {
-                for (final SubscriberWithQoS exactSubscriber : matchingNodeSubscriptions.nonSharedSubscribersArray) {
+            //The array must be read before the map, see MatchingNodeSubscriptions.nonSharedSubscribersArray
+            final SubscriberWithQoS[] nonSharedSubscribersArray = matchingNodeSubscriptions.nonSharedSubscribersArray;
+            final Map<String, SubscriberWithQoS> nonSharedSubscribersMap =
+                    matchingNodeSubscriptions.nonSharedSubscribersMap;
+            if (nonSharedSubscribersMap instanceof PackedSubscriptions) {
+                subscribersBuilder.addAll((PackedSubscriptions) nonSharedSubscribersMap);
+            } else if (nonSharedSubscribersMap != null) {
+                for (final SubscriberWithQoS exactSubscriber : nonSharedSubscribersMap.values()) {
+                    subscribersBuilder.add(exactSubscriber);
+                }
+            } else if (nonSharedSubscribersArray != null) {
+                for (final SubscriberWithQoS exactSubscriber : nonSharedSubscribersArray) {
                     if (exactSubscriber != null) {
                         subscribersBuilder.add(exactSubscriber);
                     }
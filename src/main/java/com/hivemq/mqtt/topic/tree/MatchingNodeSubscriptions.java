@@ -21,6 +21,7 @@ import com.hivemq.annotations.ReadOnly;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.mqtt.topic.SubscriberWithQoS;
+import com.hivemq.util.ObjectMemoryEstimation;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -37,14 +38,17 @@ class MatchingNodeSubscriptions {
     /**
      * This array gets lazy initialized for memory saving purposes. May contain {@code null}
      * values. These null values are reassigned if possible before the array gets expanded.
+     * <p>
+     * When the map is created it is published before this array is set to null. Readers that do not hold the segment
+     * lock must therefore read this field before the nonSharedSubscribersMap.
      */
-    @Nullable SubscriberWithQoS @Nullable [] nonSharedSubscribersArray;
+    volatile @Nullable SubscriberWithQoS @Nullable [] nonSharedSubscribersArray;
 
     /**
      * An optional index for quick subscription info lookup. Gets initialized once the number of subscriptions
      * in the array gets to a certain threshold configured via parameter passed to the constructor of the topic tree.
      */
-    @Nullable Map<String, SubscriberWithQoS> nonSharedSubscribersMap;
+    volatile @Nullable Map<String, SubscriberWithQoS> nonSharedSubscribersMap;
 
     /**
      * An optional index for quick shared subscription info lookup. Shared subscriptions' information is grouped in
@@ -54,7 +58,7 @@ class MatchingNodeSubscriptions {
      * This grouping improves the retrieval for shared subscriptions' groups and topic filters
      * in case of massive subscriptions in the same group to the same topic filter.
      */
-    @NotNull Map<String, SubscriptionGroup> sharedSubscribersMap;
+    volatile @NotNull Map<String, SubscriptionGroup> sharedSubscribersMap;
 
     MatchingNodeSubscriptions() {
         sharedSubscribersMap = Map.of();
@@ -80,8 +84,30 @@ class MatchingNodeSubscriptions {
             final @NotNull SubscriptionCounters counters,
             final int subscriberMapCreationThreshold) {
 
-        final SubscriptionInfoPresenceStatus subscriptionInfoPresenceStatus =
-                storeSubscriberInStructures(subscriberToAdd, topicFilter, subscriberMapCreationThreshold);
+        return addSubscriber(subscriberToAdd,
+                topicFilter,
+                counters,
+                new SubscriptionStorageOptions(subscriberMapCreationThreshold, false, false));
+    }
+
+    /**
+     * Same as {@link #addSubscriber(SubscriberWithQoS, String, SubscriptionCounters, int)}, but with all options of
+     * how the subscriptions are stored.
+     *
+     * @param options how the subscriptions of this node are stored.
+     */
+    public boolean addSubscriber(
+            final @NotNull SubscriberWithQoS subscriberToAdd,
+            final @NotNull String topicFilter,
+            final @NotNull SubscriptionCounters counters,
+            final @NotNull SubscriptionStorageOptions options) {
+
+        final SubscriptionInfoPresenceStatus subscriptionInfoPresenceStatus = storeSubscriberInStructures(
+                subscriberToAdd,
+                topicFilter,
+                options.getMapCreationThreshold(),
+                options.isCopyOnWrite(),
+                options.isPacked());
 
         if (subscriptionInfoPresenceStatus == null) {
             counters.getSubscriptionCounter().inc();
@@ -99,19 +125,41 @@ class MatchingNodeSubscriptions {
      * @param sharedName  the name of the group that the shared subscriber belongs to (if set).
      * @param topicFilter topic filter for the to-be-removed subscription represented as a string.
      * @param counters    container with subscription counters that are updated upon subscription removal.
+     * @return whether subscription information was removed.
      */
-    public void removeSubscriber(
+    public boolean removeSubscriber(
             final @NotNull String subscriber,
             final @Nullable String sharedName,
             final @Nullable String topicFilter,
             final @NotNull SubscriptionCounters counters) {
 
+        return removeSubscriber(subscriber,
+                sharedName,
+                topicFilter,
+                counters,
+                new SubscriptionStorageOptions(0, false, false));
+    }
+
+    /**
+     * Same as {@link #removeSubscriber(String, String, String, SubscriptionCounters)}, but with all options of how
+     * the subscriptions are stored.
+     *
+     * @param options how the subscriptions of this node are stored.
+     */
+    public boolean removeSubscriber(
+            final @NotNull String subscriber,
+            final @Nullable String sharedName,
+            final @Nullable String topicFilter,
+            final @NotNull SubscriptionCounters counters,
+            final @NotNull SubscriptionStorageOptions options) {
+
         final SubscriptionInfoRemovalStatus subscriptionInfoRemovalStatus =
-                removeSubscriberFromStructures(subscriber, sharedName, topicFilter);
+                removeSubscriberFromStructures(subscriber, sharedName, topicFilter, options.isCopyOnWrite());
 
         if (subscriptionInfoRemovalStatus != null) {
             counters.getSubscriptionCounter().dec();
         }
+        return subscriptionInfoRemovalStatus != null;
     }
 
     public void populateWithSubscriberNamesUsingFilter(
@@ -146,6 +194,8 @@ class MatchingNodeSubscriptions {
 
     @ReadOnly
     public int getSubscriberCount() {
+        final SubscriberWithQoS[] nonSharedSubscribersArray = this.nonSharedSubscribersArray;
+        final Map<String, SubscriberWithQoS> nonSharedSubscribersMap = this.nonSharedSubscribersMap;
         final int nonSharedSubscribersCount = nonSharedSubscribersMap != null ?
                 nonSharedSubscribersMap.size() :
                 countArraySize(nonSharedSubscribersArray);
@@ -162,6 +212,8 @@ class MatchingNodeSubscriptions {
 
     @ReadOnly
     public @Nullable Stream<SubscriberWithQoS> getNonSharedSubscriptionsStream() {
+        final SubscriberWithQoS[] nonSharedSubscribersArray = this.nonSharedSubscribersArray;
+        final Map<String, SubscriberWithQoS> nonSharedSubscribersMap = this.nonSharedSubscribersMap;
         if (nonSharedSubscribersMap == null && nonSharedSubscribersArray == null) {
             return null;
         }
@@ -190,11 +242,75 @@ class MatchingNodeSubscriptions {
 
     @ReadOnly
     public boolean isEmpty() {
+        final SubscriberWithQoS[] nonSharedSubscribersArray = this.nonSharedSubscribersArray;
+        final Map<String, SubscriberWithQoS> nonSharedSubscribersMap = this.nonSharedSubscribersMap;
         return (nonSharedSubscribersMap == null || nonSharedSubscribersMap.isEmpty()) &&
                 (nonSharedSubscribersArray == null || isEmptyArray(nonSharedSubscribersArray)) &&
                 sharedSubscribersMap.isEmpty();
     }
 
+    /**
+     * @return the approximate heap usage of the stored subscriptions and the structures holding them in bytes. The
+     *         client identifiers are not included as they are shared with the client session.
+     */
+    long estimateSize() {
+        final SubscriberWithQoS[] nonSharedSubscribersArray = this.nonSharedSubscribersArray;
+        final Map<String, SubscriberWithQoS> nonSharedSubscribersMap = this.nonSharedSubscribersMap;
+        final Map<String, SubscriptionGroup> sharedSubscribersMap = this.sharedSubscribersMap;
+
+        long size = ObjectMemoryEstimation.objectShellSize() + 3L * ObjectMemoryEstimation.objectRefSize();
+        if (nonSharedSubscribersMap != null) {
+            size += estimateMapSize(nonSharedSubscribersMap);
+        } else if (nonSharedSubscribersArray != null) {
+            size += ObjectMemoryEstimation.ARRAY_OVERHEAD +
+                    (long) nonSharedSubscribersArray.length * ObjectMemoryEstimation.objectRefSize();
+            for (final SubscriberWithQoS subscription : nonSharedSubscribersArray) {
+                if (subscription != null) {
+                    size += estimateSubscriptionSize(subscription);
+                }
+            }
+        }
+        if (!sharedSubscribersMap.isEmpty()) {
+            size += estimateHashMapSize(sharedSubscribersMap.size());
+            for (final Map.Entry<String, SubscriptionGroup> entry : sharedSubscribersMap.entrySet()) {
+                size += ObjectMemoryEstimation.stringSize(entry.getKey());
+                size += entry.getValue().estimateSize();
+            }
+        }
+        return size;
+    }
+
+    private static long estimateMapSize(final @NotNull Map<String, SubscriberWithQoS> map) {
+        if (map instanceof PackedSubscriptions) {
+            return ((PackedSubscriptions) map).estimateSize();
+        }
+        long size = estimateHashMapSize(map.size());
+        for (final SubscriberWithQoS subscription : map.values()) {
+            size += estimateSubscriptionSize(subscription);
+        }
+        return size;
+    }
+
+    static long estimateSubscriptionSize(final @NotNull SubscriberWithQoS subscription) {
+        long size = ObjectMemoryEstimation.objectShellSize() + 4L * ObjectMemoryEstimation.objectRefSize() +
+                ObjectMemoryEstimation.intSize() + 1;
+        if (subscription.getSubscriptionIdentifier() != null) {
+            size += ObjectMemoryEstimation.intWrapperSize();
+        }
+        return size;
+    }
+
+    /**
+     * @return the approximate heap usage of a {@link HashMap} with the given size without its keys and values in bytes
+     */
+    static long estimateHashMapSize(final int size) {
+        final int capacity = Integer.highestOneBit(Math.max(1, (int) (size / 0.75f)) * 2);
+        return ObjectMemoryEstimation.objectShellSize() + 9L * ObjectMemoryEstimation.intSize() +
+                ObjectMemoryEstimation.ARRAY_OVERHEAD + (long) capacity * ObjectMemoryEstimation.objectRefSize() +
+                (long) size * ObjectMemoryEstimation.linkedListNodeOverhead() +
+                (long) size * ObjectMemoryEstimation.objectRefSize() * 2;
+    }
+
     ///////////////////////////////////////////////////////////////////////
     //                                                                   //
     //                  INTERNAL STRUCTURES MANAGEMENT                   //
@@ -215,9 +331,22 @@ class MatchingNodeSubscriptions {
      */
     private static class SubscriptionGroup {
 
-        private final @NotNull Map<String, SubscriberWithQoS> subscriptions = new HashMap<>();
+        private @NotNull Map<String, SubscriberWithQoS> subscriptions;
+
+        SubscriptionGroup(final @NotNull String sharedName, final boolean packed) {
+            subscriptions = packed ? new PackedSubscriptions(sharedName, null, 1) : new HashMap<>();
+        }
+
+        private SubscriptionGroup(final @NotNull Map<String, SubscriberWithQoS> subscriptions) {
+            this.subscriptions = subscriptions;
+        }
+
+        @NotNull SubscriptionGroup copy() {
+            return new SubscriptionGroup(copyMap(subscriptions));
+        }
 
         @Nullable SubscriberWithQoS put(final @NotNull SubscriberWithQoS subscription) {
+            subscriptions = mapThatFits(subscriptions, subscription);
             return subscriptions.put(subscription.getSubscriber(), subscription);
         }
 
@@ -232,6 +361,33 @@ class MatchingNodeSubscriptions {
         int size() {
             return subscriptions.size();
         }
+
+        long estimateSize() {
+            return ObjectMemoryEstimation.objectShellSize() + ObjectMemoryEstimation.objectRefSize() +
+                    estimateMapSize(subscriptions);
+        }
+    }
+
+    private static @NotNull Map<String, SubscriberWithQoS> copyMap(
+            final @NotNull Map<String, SubscriberWithQoS> map) {
+
+        if (map instanceof PackedSubscriptions) {
+            return ((PackedSubscriptions) map).copy();
+        }
+        return new HashMap<>(map);
+    }
+
+    /**
+     * Packed subscriptions share the shared name and the topic filter. In case a subscription does not fit, the
+     * subscriptions are moved to a regular map.
+     */
+    private static @NotNull Map<String, SubscriberWithQoS> mapThatFits(
+            final @NotNull Map<String, SubscriberWithQoS> map, final @NotNull SubscriberWithQoS subscription) {
+
+        if (map instanceof PackedSubscriptions && !((PackedSubscriptions) map).fits(subscription)) {
+            return new HashMap<>(map);
+        }
+        return map;
     }
 
     private static class SubscriptionInfoPresenceStatus {
@@ -246,45 +402,75 @@ class MatchingNodeSubscriptions {
     private @Nullable SubscriptionInfoPresenceStatus storeSubscriberInStructures(
             final @NotNull SubscriberWithQoS subscriberToAdd,
             final @NotNull String topicFilter,
-            final int subscriberMapCreationThreshold) {
+            final int subscriberMapCreationThreshold,
+            final boolean copyOnWrite,
+            final boolean packed) {
 
-        if (subscriberToAdd.isSharedSubscription() && subscriberToAdd.getSharedName() != null) {
-            if (sharedSubscribersMap.isEmpty()) {
-                sharedSubscribersMap = new HashMap<>(subscriberMapCreationThreshold);
+        final String sharedName = subscriberToAdd.getSharedName();
+        if (subscriberToAdd.isSharedSubscription() && sharedName != null) {
+            final String sharedSubscriptionKey = sharedSubscriptionKey(sharedName, topicFilter);
+            final SubscriberWithQoS prev;
+            if (copyOnWrite) {
+                final Map<String, SubscriptionGroup> newSharedSubscribersMap = new HashMap<>(sharedSubscribersMap);
+                final SubscriptionGroup group = newSharedSubscribersMap.get(sharedSubscriptionKey);
+                final SubscriptionGroup newGroup =
+                        group == null ? new SubscriptionGroup(sharedName, packed) : group.copy();
+                prev = newGroup.put(subscriberToAdd);
+                newSharedSubscribersMap.put(sharedSubscriptionKey, newGroup);
+                sharedSubscribersMap = newSharedSubscribersMap;
+            } else {
+                if (sharedSubscribersMap.isEmpty()) {
+                    sharedSubscribersMap = new HashMap<>(subscriberMapCreationThreshold);
+                }
+                prev = sharedSubscribersMap.computeIfAbsent(sharedSubscriptionKey,
+                        key -> new SubscriptionGroup(sharedName, packed)).put(subscriberToAdd);
             }
-            final SubscriberWithQoS prev =
-                    sharedSubscribersMap.computeIfAbsent(sharedSubscriptionKey(subscriberToAdd.getSharedName(),
-                            topicFilter), key -> new SubscriptionGroup()).put(subscriberToAdd);
 
             return prev == null ? null : new SubscriptionInfoPresenceStatus(prev.equals(subscriberToAdd));
         }
 
+        final SubscriberWithQoS[] nonSharedSubscribersArray = this.nonSharedSubscribersArray;
+        Map<String, SubscriberWithQoS> nonSharedSubscribersMap = this.nonSharedSubscribersMap;
+
         // Possible initialization of map and moving the data
         final int exactSubscribersCount = nonSharedSubscribersMap != null ?
                 nonSharedSubscribersMap.values().size() :
                 countArraySize(nonSharedSubscribersArray);
 
         if (nonSharedSubscribersMap == null && exactSubscribersCount > subscriberMapCreationThreshold) {
-            nonSharedSubscribersMap = new HashMap<>(subscriberMapCreationThreshold + 1);
+            nonSharedSubscribersMap = packed ?
+                    new PackedSubscriptions(null, null, subscriberMapCreationThreshold + 1) :
+                    new HashMap<>(subscriberMapCreationThreshold + 1);
             if (nonSharedSubscribersArray != null) {
                 for (final SubscriberWithQoS subscriber : nonSharedSubscribersArray) {
                     if (subscriber != null) {
+                        nonSharedSubscribersMap = mapThatFits(nonSharedSubscribersMap, subscriber);
                         nonSharedSubscribersMap.put(subscriber.getSubscriber(), subscriber);
                     }
                 }
-                //The array can be removed, because the map is used from now on.
-                nonSharedSubscribersArray = null;
             }
+            //The map must be visible before the array is removed, see the nonSharedSubscribersArray field
+            this.nonSharedSubscribersMap = nonSharedSubscribersMap;
+            //The array can be removed, because the map is used from now on.
+            this.nonSharedSubscribersArray = null;
         }
 
         if (nonSharedSubscribersMap != null) {
-            final SubscriberWithQoS prev =
-                    nonSharedSubscribersMap.put(subscriberToAdd.getSubscriber(), subscriberToAdd);
+            final SubscriberWithQoS prev;
+            final Map<String, SubscriberWithQoS> fittingMap = mapThatFits(nonSharedSubscribersMap, subscriberToAdd);
+            if (copyOnWrite && fittingMap == nonSharedSubscribersMap) {
+                final Map<String, SubscriberWithQoS> newNonSharedSubscribersMap = copyMap(nonSharedSubscribersMap);
+                prev = newNonSharedSubscribersMap.put(subscriberToAdd.getSubscriber(), subscriberToAdd);
+                this.nonSharedSubscribersMap = newNonSharedSubscribersMap;
+            } else {
+                prev = fittingMap.put(subscriberToAdd.getSubscriber(), subscriberToAdd);
+                this.nonSharedSubscribersMap = fittingMap;
+            }
             return prev == null ? null : new SubscriptionInfoPresenceStatus(prev.equals(subscriberToAdd));
         }
 
         if (nonSharedSubscribersArray == null) {
-            nonSharedSubscribersArray = new SubscriberWithQoS[]{subscriberToAdd};
+            this.nonSharedSubscribersArray = new SubscriberWithQoS[]{subscriberToAdd};
             return null;
         }
 
@@ -294,9 +480,9 @@ class MatchingNodeSubscriptions {
                     subscriberToAdd.getSubscriber().equals(nonSharedSubscribersArray[i].getSubscriber())) {
                 //This entry is already present in the array, we can override and abort
                 final SubscriptionInfoPresenceStatus subscriptionInfoPresenceStatus =
-                        new SubscriptionInfoPresenceStatus(this.nonSharedSubscribersArray[i].equals(subscriberToAdd));
+                        new SubscriptionInfoPresenceStatus(nonSharedSubscribersArray[i].equals(subscriberToAdd));
 
-                this.nonSharedSubscribersArray[i] = subscriberToAdd;
+                setArrayEntry(nonSharedSubscribersArray, i, subscriberToAdd, copyOnWrite);
                 return subscriptionInfoPresenceStatus;
             }
         }
@@ -304,17 +490,32 @@ class MatchingNodeSubscriptions {
         //Let's try to find an empty slot in the array
         final int emptySlotIndex = Arrays.asList(nonSharedSubscribersArray).indexOf(null);
         if (emptySlotIndex >= 0) {
-            nonSharedSubscribersArray[emptySlotIndex] = subscriberToAdd;
+            setArrayEntry(nonSharedSubscribersArray, emptySlotIndex, subscriberToAdd, copyOnWrite);
         } else { //or allocate a new array
             final SubscriberWithQoS[] newArray = new SubscriberWithQoS[nonSharedSubscribersArray.length + 1];
             System.arraycopy(nonSharedSubscribersArray, 0, newArray, 0, nonSharedSubscribersArray.length);
             newArray[nonSharedSubscribersArray.length] = subscriberToAdd;
-            nonSharedSubscribersArray = newArray;
+            this.nonSharedSubscribersArray = newArray;
         }
 
         return null;
     }
 
+    private void setArrayEntry(
+            final @Nullable SubscriberWithQoS @NotNull [] array,
+            final int index,
+            final @Nullable SubscriberWithQoS entry,
+            final boolean copyOnWrite) {
+
+        if (copyOnWrite) {
+            final SubscriberWithQoS[] newArray = array.clone();
+            newArray[index] = entry;
+            this.nonSharedSubscribersArray = newArray;
+        } else {
+            array[index] = entry;
+        }
+    }
+
     private static class SubscriptionInfoRemovalStatus {
 
         public final boolean wasSharedSubscription;
@@ -325,31 +526,59 @@ class MatchingNodeSubscriptions {
     }
 
     private @Nullable SubscriptionInfoRemovalStatus removeSubscriberFromStructures(
-            final @NotNull String subscriber, final @Nullable String sharedName, final @Nullable String topicFilter) {
+            final @NotNull String subscriber,
+            final @Nullable String sharedName,
+            final @Nullable String topicFilter,
+            final boolean copyOnWrite) {
 
         SubscriberWithQoS remove = null;
         if (sharedName != null && topicFilter != null) { // shared subscription removal
             final String sharedSubscriptionKey = sharedSubscriptionKey(sharedName, topicFilter);
+            final Map<String, SubscriptionGroup> sharedSubscribersMap = this.sharedSubscribersMap;
             final SubscriptionGroup group = sharedSubscribersMap.get(sharedSubscriptionKey);
             if (group != null) {
-                remove = group.remove(subscriber);
+                if (copyOnWrite) {
+                    final SubscriptionGroup newGroup = group.copy();
+                    remove = newGroup.remove(subscriber);
+                    if (remove != null) {
+                        final Map<String, SubscriptionGroup> newSharedSubscribersMap =
+                                new HashMap<>(sharedSubscribersMap);
+                        if (newGroup.size() == 0) {
+                            newSharedSubscribersMap.remove(sharedSubscriptionKey);
+                        } else {
+                            newSharedSubscribersMap.put(sharedSubscriptionKey, newGroup);
+                        }
+                        this.sharedSubscribersMap = newSharedSubscribersMap;
+                    }
+                } else {
+                    remove = group.remove(subscriber);
 
-                if (group.size() == 0) {
-                    sharedSubscribersMap.remove(sharedSubscriptionKey);
+                    if (group.size() == 0) {
+                        sharedSubscribersMap.remove(sharedSubscriptionKey);
+                    }
                 }
             }
         } else { // non-shared subscription removal
+            final SubscriberWithQoS[] nonSharedSubscribersArray = this.nonSharedSubscribersArray;
+            final Map<String, SubscriberWithQoS> nonSharedSubscribersMap = this.nonSharedSubscribersMap;
             if (nonSharedSubscribersMap != null) {
-                remove = nonSharedSubscribersMap.remove(subscriber);
+                if (copyOnWrite) {
+                    if (nonSharedSubscribersMap.containsKey(subscriber)) {
+                        final Map<String, SubscriberWithQoS> newNonSharedSubscribersMap =
+                                copyMap(nonSharedSubscribersMap);
+                        remove = newNonSharedSubscribersMap.remove(subscriber);
+                        this.nonSharedSubscribersMap = newNonSharedSubscribersMap;
+                    }
+                } else {
+                    remove = nonSharedSubscribersMap.remove(subscriber);
+                }
             } else if (nonSharedSubscribersArray != null) {
                 for (int i = 0; i < nonSharedSubscribersArray.length; i++) {
                     final SubscriberWithQoS arrayEntry = nonSharedSubscribersArray[i];
                     if (arrayEntry != null && subscriber.equals(arrayEntry.getSubscriber())) {
-                        if (subscriber.equals(arrayEntry.getSubscriber())) {
-                            nonSharedSubscribersArray[i] = null;
-                            remove = arrayEntry;
-                            break;
-                        }
+                        setArrayEntry(nonSharedSubscribersArray, i, null, copyOnWrite);
+                        remove = arrayEntry;
+                        break;
                     }
                 }
             }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A {@link Lock} that does not lock anything. Used by the {@link LocalTopicTree} in copy-on-write mode where readers
+ * do not need to take the segment locks.
+ */
+final class NoOpLock implements Lock {
+
+    static final @NotNull NoOpLock INSTANCE = new NoOpLock();
+
+    private NoOpLock() {
+    }
+
+    @Override
+    public void lock() {
+    }
+
+    @Override
+    public void lockInterruptibly() {
+    }
+
+    @Override
+    public boolean tryLock() {
+        return true;
+    }
+
+    @Override
+    public boolean tryLock(final long time, final @NotNull TimeUnit unit) {
+        return true;
+    }
+
+    @Override
+    public void unlock() {
+    }
+
+    @Override
+    public @NotNull Condition newCondition() {
+        throw new UnsupportedOperationException("Conditions are not supported by the no-op lock");
+    }
+}
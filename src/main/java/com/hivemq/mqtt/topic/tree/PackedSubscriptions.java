@@ -0,0 +1,261 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
+import com.hivemq.util.ObjectMemoryEstimation;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Stores the subscriptions of a large topic tree node in columns instead of one {@link SubscriberWithQoS} per
+ * subscription.
+ * <p>
+ * Each subscription occupies a slot that holds the client identifier and a long with the QoS, the flags and the
+ * subscription identifier packed into it. The slots are dense, a removed slot is filled with the last slot, so the
+ * subscriptions can be iterated by index without boxing or allocation. The slot of a client is found through an open
+ * addressing map. The shared name and the topic filter are the same for all subscriptions of a node or a shared
+ * subscription group and are therefore stored only once.
+ * <p>
+ * The {@link java.util.Map} interface is implemented so the structure can replace the map of
+ * {@link MatchingNodeSubscriptions}. Reading through it creates a {@link SubscriberWithQoS} per subscription, hot
+ * paths should use the index based accessors instead.
+ */
+class PackedSubscriptions extends AbstractMap<String, SubscriberWithQoS> {
+
+    private static final long SUBSCRIPTION_IDENTIFIER_MASK = 0xFFFF_FFFFL;
+    private static final long SUBSCRIPTION_IDENTIFIER_PRESENT = 1L << 32;
+    private static final int QOS_SHIFT = 33;
+    private static final int FLAGS_SHIFT = 40;
+
+    private final @Nullable String sharedName;
+    private final @Nullable String topicFilter;
+    private final @NotNull ObjectIntHashMap<String> slots;
+    private @Nullable String @NotNull [] clients;
+    private long @NotNull [] packed;
+    private int size;
+
+    PackedSubscriptions(
+            final @Nullable String sharedName, final @Nullable String topicFilter, final int initialCapacity) {
+
+        this.sharedName = sharedName;
+        this.topicFilter = topicFilter;
+        final int capacity = Math.max(1, initialCapacity);
+        slots = new ObjectIntHashMap<>(capacity);
+        clients = new String[capacity];
+        packed = new long[capacity];
+    }
+
+    private PackedSubscriptions(final @NotNull PackedSubscriptions original) {
+        sharedName = original.sharedName;
+        topicFilter = original.topicFilter;
+        slots = new ObjectIntHashMap<>(original.size + 1);
+        slots.putAll(original.slots);
+        clients = Arrays.copyOf(original.clients, original.size + 1);
+        packed = Arrays.copyOf(original.packed, original.size + 1);
+        size = original.size;
+    }
+
+    @NotNull PackedSubscriptions copy() {
+        return new PackedSubscriptions(this);
+    }
+
+    /**
+     * @return if the subscription has the shared name and the topic filter of the subscriptions stored here
+     */
+    boolean fits(final @NotNull SubscriberWithQoS subscription) {
+        return Objects.equals(sharedName, subscription.getSharedName()) &&
+                Objects.equals(topicFilter, subscription.getTopicFilter());
+    }
+
+    /* ***************************************
+        Index based access, no allocation
+     ****************************************/
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @NotNull String client(final int slot) {
+        return clients[slot];
+    }
+
+    int qos(final int slot) {
+        return (int) (packed[slot] >>> QOS_SHIFT) & 0b11;
+    }
+
+    byte flags(final int slot) {
+        return (byte) (packed[slot] >>> FLAGS_SHIFT);
+    }
+
+    boolean hasSubscriptionIdentifier(final int slot) {
+        return (packed[slot] & SUBSCRIPTION_IDENTIFIER_PRESENT) != 0;
+    }
+
+    int subscriptionIdentifier(final int slot) {
+        return (int) (packed[slot] & SUBSCRIPTION_IDENTIFIER_MASK);
+    }
+
+    @Nullable String getSharedName() {
+        return sharedName;
+    }
+
+    @Nullable String getTopicFilter() {
+        return topicFilter;
+    }
+
+    /* ***************************************
+        Map access
+     ****************************************/
+
+    @Override
+    public boolean containsKey(final @Nullable Object client) {
+        return slots.containsKey(client);
+    }
+
+    @Override
+    public @Nullable SubscriberWithQoS get(final @Nullable Object client) {
+        final int slot = slots.getIfAbsent(client, -1);
+        return slot < 0 ? null : subscription(slot);
+    }
+
+    /**
+     * @param client       the client identifier of the subscription
+     * @param subscription the subscription, must {@link #fits(SubscriberWithQoS) fit}
+     * @return the previous subscription of the client or null
+     */
+    @Override
+    public @Nullable SubscriberWithQoS put(
+            final @NotNull String client, final @NotNull SubscriberWithQoS subscription) {
+
+        if (!fits(subscription)) {
+            throw new IllegalArgumentException("Subscription does not have the shared name and topic filter of the " +
+                    "stored subscriptions");
+        }
+        final Integer subscriptionIdentifier = subscription.getSubscriptionIdentifier();
+        long value = ((long) subscription.getQos() << QOS_SHIFT) |
+                ((subscription.getFlags() & 0xFFL) << FLAGS_SHIFT);
+        if (subscriptionIdentifier != null) {
+            value |= SUBSCRIPTION_IDENTIFIER_PRESENT | (subscriptionIdentifier & SUBSCRIPTION_IDENTIFIER_MASK);
+        }
+
+        final int slot = slots.getIfAbsent(client, -1);
+        if (slot >= 0) {
+            final SubscriberWithQoS previous = subscription(slot);
+            packed[slot] = value;
+            return previous;
+        }
+        if (size == clients.length) {
+            final int capacity = size * 2;
+            clients = Arrays.copyOf(clients, capacity);
+            packed = Arrays.copyOf(packed, capacity);
+        }
+        clients[size] = client;
+        packed[size] = value;
+        slots.put(client, size);
+        size++;
+        return null;
+    }
+
+    @Override
+    public @Nullable SubscriberWithQoS remove(final @Nullable Object client) {
+        final int slot = slots.getIfAbsent(client, -1);
+        if (slot < 0) {
+            return null;
+        }
+        final SubscriberWithQoS previous = subscription(slot);
+        slots.remove(client);
+        final int last = size - 1;
+        if (slot != last) {
+            clients[slot] = clients[last];
+            packed[slot] = packed[last];
+            slots.put(clients[slot], slot);
+        }
+        clients[last] = null;
+        packed[last] = 0;
+        size = last;
+        return previous;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public @NotNull Set<Entry<String, SubscriberWithQoS>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public @NotNull Iterator<Entry<String, SubscriberWithQoS>> iterator() {
+                return new Iterator<>() {
+                    private int slot;
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < size;
+                    }
+
+                    @Override
+                    public @NotNull Entry<String, SubscriberWithQoS> next() {
+                        if (slot >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        final Entry<String, SubscriberWithQoS> entry =
+                                new SimpleImmutableEntry<>(clients[slot], subscription(slot));
+                        slot++;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private @NotNull SubscriberWithQoS subscription(final int slot) {
+        return new SubscriberWithQoS(clients[slot],
+                qos(slot),
+                flags(slot),
+                sharedName,
+                hasSubscriptionIdentifier(slot) ? subscriptionIdentifier(slot) : null,
+                topicFilter);
+    }
+
+    /**
+     * @return the approximate heap usage of this structure in bytes, the client identifiers are not included as they
+     *         are shared with the client session
+     */
+    long estimateSize() {
+        final int slotCapacity = Integer.highestOneBit(Math.max(1, size) * 2) * 2;
+        return ObjectMemoryEstimation.objectShellSize() + 6L * ObjectMemoryEstimation.objectRefSize() +
+                ObjectMemoryEstimation.intSize() + 3L * ObjectMemoryEstimation.ARRAY_OVERHEAD +
+                (long) clients.length * (ObjectMemoryEstimation.objectRefSize() + ObjectMemoryEstimation.longSize()) +
+                (long) slotCapacity * (ObjectMemoryEstimation.objectRefSize() + ObjectMemoryEstimation.intSize());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.codahale.metrics.Counter;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the contended acquisitions of the segment locks of the {@link LocalTopicTree} per lock stripe. Only
+ * acquisitions that could not take the lock immediately are recorded, so uncontended locking stays free of clock
+ * reads.
+ */
+class SegmentLockStatistics {
+
+    private final @NotNull AtomicLongArray waitNanos;
+    private final @NotNull AtomicLongArray contendedAcquisitions;
+    private final @NotNull Counter waitTimeCounter;
+    private final @NotNull Counter contendedCounter;
+
+    SegmentLockStatistics(
+            final int stripes, final @NotNull Counter waitTimeCounter, final @NotNull Counter contendedCounter) {
+        waitNanos = new AtomicLongArray(stripes);
+        contendedAcquisitions = new AtomicLongArray(stripes);
+        this.waitTimeCounter = waitTimeCounter;
+        this.contendedCounter = contendedCounter;
+    }
+
+    void recordWait(final int stripe, final long nanos) {
+        waitNanos.addAndGet(stripe, nanos);
+        contendedAcquisitions.incrementAndGet(stripe);
+        waitTimeCounter.inc(nanos);
+        contendedCounter.inc();
+    }
+
+    int stripes() {
+        return waitNanos.length();
+    }
+
+    long waitNanos(final int stripe) {
+        return waitNanos.get(stripe);
+    }
+
+    long contendedAcquisitions(final int stripe) {
+        return contendedAcquisitions.get(stripe);
+    }
+}
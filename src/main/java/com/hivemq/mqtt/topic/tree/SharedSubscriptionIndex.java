@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.google.common.collect.ImmutableSet;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.subscribe.Topic;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An index of the shared subscriptions in the {@link LocalTopicTree}, by shared subscription and by client. The index
+ * is updated whenever a shared subscription is added to or removed from the topic tree, so that lookups do not need
+ * to traverse the topic tree.
+ * <p>
+ * Every shared subscription and every client has its own concurrent map, so an update only touches a single entry.
+ * The immutable sets that are returned to readers are built lazily and reused until the next update.
+ */
+class SharedSubscriptionIndex {
+
+    private static final @NotNull String SHARED_SUBSCRIPTION_PREFIX = "$share/";
+
+    /**
+     * The subscribers by shared subscription, which is the share name and the topic filter separated by a '/'.
+     */
+    private final @NotNull ConcurrentHashMap<String, Entries<SubscriberWithQoS>> subscribers =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The shared subscriptions by client, as topics with the '$share/' prefix.
+     */
+    private final @NotNull ConcurrentHashMap<String, Entries<Topic>> subscriptions = new ConcurrentHashMap<>();
+
+    void add(
+            final @NotNull SubscriberWithQoS subscription,
+            final @NotNull String sharedName,
+            final @NotNull Topic topic) {
+        final String client = subscription.getSubscriber();
+        final String sharedSubscription = sharedName + "/" + topic.getTopic();
+        subscribers.compute(sharedSubscription, (key, current) -> {
+            final Entries<SubscriberWithQoS> entries = current == null ? new Entries<>() : current;
+            entries.put(client, subscription);
+            return entries;
+        });
+
+        final Topic sharedTopic = new Topic(SHARED_SUBSCRIPTION_PREFIX + sharedSubscription,
+                QoS.valueOf(subscription.getQos()),
+                subscription.isNoLocal(),
+                subscription.isRetainAsPublished(),
+                topic.getRetainHandling(),
+                topic.getSubscriptionIdentifier());
+        subscriptions.compute(client, (key, current) -> {
+            final Entries<Topic> entries = current == null ? new Entries<>() : current;
+            entries.put(sharedTopic.getTopic(), sharedTopic);
+            return entries;
+        });
+    }
+
+    void remove(final @NotNull String client, final @NotNull String sharedName, final @NotNull String topicFilter) {
+        final String sharedSubscription = sharedName + "/" + topicFilter;
+        subscribers.computeIfPresent(sharedSubscription, (key, current) -> current.remove(client) ? null : current);
+
+        final String sharedTopic = SHARED_SUBSCRIPTION_PREFIX + sharedSubscription;
+        subscriptions.computeIfPresent(client, (key, current) -> current.remove(sharedTopic) ? null : current);
+    }
+
+    /**
+     * @param sharedSubscription the share name and the topic filter separated by a '/'
+     * @return the subscribers of the shared subscription
+     */
+    @NotNull ImmutableSet<SubscriberWithQoS> getSubscribers(final @NotNull String sharedSubscription) {
+        final Entries<SubscriberWithQoS> sharedSubscribers = subscribers.get(sharedSubscription);
+        return sharedSubscribers == null ? ImmutableSet.of() : sharedSubscribers.snapshot();
+    }
+
+    /**
+     * @param client the client identifier
+     * @return the shared subscriptions of the client as topics with the '$share/' prefix
+     */
+    @NotNull ImmutableSet<Topic> getSubscriptions(final @NotNull String client) {
+        final Entries<Topic> sharedSubscriptions = subscriptions.get(client);
+        return sharedSubscriptions == null ? ImmutableSet.of() : sharedSubscriptions.snapshot();
+    }
+
+    /**
+     * The entries of a shared subscription or of a client. Updates increment the version after the map is changed,
+     * so a snapshot is only reused as long as no update completed after it was built.
+     */
+    private static class Entries<T> {
+
+        private final @NotNull ConcurrentHashMap<String, T> entries = new ConcurrentHashMap<>();
+        private final @NotNull AtomicLong version = new AtomicLong();
+        private volatile @Nullable Snapshot<T> snapshot;
+
+        void put(final @NotNull String key, final @NotNull T entry) {
+            entries.put(key, entry);
+            version.incrementAndGet();
+        }
+
+        /**
+         * @return true if no entries are left
+         */
+        boolean remove(final @NotNull String key) {
+            if (entries.remove(key) != null) {
+                version.incrementAndGet();
+            }
+            return entries.isEmpty();
+        }
+
+        @NotNull ImmutableSet<T> snapshot() {
+            final long currentVersion = version.get();
+            final Snapshot<T> currentSnapshot = snapshot;
+            if (currentSnapshot != null && currentSnapshot.version == currentVersion) {
+                return currentSnapshot.entries;
+            }
+            final ImmutableSet<T> copy = ImmutableSet.copyOf(entries.values());
+            snapshot = new Snapshot<>(currentVersion, copy);
+            return copy;
+        }
+    }
+
+    private static class Snapshot<T> {
+
+        private final long version;
+        private final @NotNull ImmutableSet<T> entries;
+
+        Snapshot(final long version, final @NotNull ImmutableSet<T> entries) {
+            this.version = version;
+            this.entries = entries;
+        }
+    }
+}
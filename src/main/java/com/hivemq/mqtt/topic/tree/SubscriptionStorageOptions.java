@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+/**
+ * Describes how {@link MatchingNodeSubscriptions} store the subscriptions of a node of the topic tree.
+ */
+public class SubscriptionStorageOptions {
+
+    private final int mapCreationThreshold;
+    private final boolean copyOnWrite;
+    private final boolean packed;
+
+    /**
+     * @param mapCreationThreshold a threshold to decide if a map should be initialized instead of an array for the
+     *                             subscriptions that are not shared.
+     * @param copyOnWrite          if set, the array and maps are copied, modified and published as a new version so
+     *                             that readers that do not hold the segment lock always see a consistent state.
+     * @param packed               if set, maps that are created for the subscriptions of a node or of a shared
+     *                             subscription group are {@link PackedSubscriptions}.
+     */
+    public SubscriptionStorageOptions(final int mapCreationThreshold, final boolean copyOnWrite, final boolean packed) {
+        this.mapCreationThreshold = mapCreationThreshold;
+        this.copyOnWrite = copyOnWrite;
+        this.packed = packed;
+    }
+
+    public int getMapCreationThreshold() {
+        return mapCreationThreshold;
+    }
+
+    public boolean isCopyOnWrite() {
+        return copyOnWrite;
+    }
+
+    public boolean isPacked() {
+        return packed;
+    }
+}
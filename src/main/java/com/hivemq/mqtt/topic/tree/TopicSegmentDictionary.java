@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.util.ObjectMemoryEstimation;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns the topic segments of the compact topic tree and assigns each distinct segment an int id.
+ * <p>
+ * All nodes of the tree that share a segment reference the same canonical String, and the children of large nodes are
+ * indexed by the id of their segment (see {@link CompactChildrenMap}). Segments are reference counted by the nodes
+ * that use them and are removed from the dictionary when the last node is removed, so their ids can be reused.
+ * <p>
+ * Lookups are lock free. Acquiring and releasing segments is synchronized, because writers of different topic tree
+ * segments share the dictionary.
+ */
+class TopicSegmentDictionary {
+
+    static final int UNKNOWN_ID = -1;
+
+    private final @NotNull ConcurrentHashMap<String, Segment> segments = new ConcurrentHashMap<>();
+    private final @NotNull IntArrayList freeIds = new IntArrayList();
+    private int nextId;
+
+    /**
+     * @param segment the topic segment
+     * @return the id of the segment or {@link #UNKNOWN_ID} if no node uses this segment
+     */
+    int getId(final @NotNull String segment) {
+        final Segment entry = segments.get(segment);
+        return entry == null ? UNKNOWN_ID : entry.id;
+    }
+
+    /**
+     * Registers a new node that uses the given segment.
+     *
+     * @param segment the topic segment of the node
+     * @return the canonical instance of the segment that the node must use
+     */
+    synchronized @NotNull String acquire(final @NotNull String segment) {
+        Segment entry = segments.get(segment);
+        if (entry == null) {
+            final int id = freeIds.isEmpty() ? nextId++ : freeIds.removeAtIndex(freeIds.size() - 1);
+            entry = new Segment(segment, id);
+            segments.put(segment, entry);
+        }
+        entry.references++;
+        return entry.value;
+    }
+
+    /**
+     * Unregisters a node that was removed from the tree.
+     *
+     * @param segment the topic segment of the removed node
+     */
+    synchronized void release(final @NotNull String segment) {
+        final Segment entry = segments.get(segment);
+        if (entry == null) {
+            return;
+        }
+        entry.references--;
+        if (entry.references <= 0) {
+            segments.remove(segment);
+            freeIds.add(entry.id);
+        }
+    }
+
+    int size() {
+        return segments.size();
+    }
+
+    /**
+     * @return the approximate heap usage of the dictionary including the interned segments in bytes
+     */
+    long estimateSize() {
+        long size = 0;
+        for (final Segment entry : segments.values()) {
+            // the entry of the concurrent map, the segment object and the interned string
+            size += ObjectMemoryEstimation.objectShellSize() + 4 * ObjectMemoryEstimation.objectRefSize();
+            size += ObjectMemoryEstimation.objectShellSize() + ObjectMemoryEstimation.objectRefSize() +
+                    2 * ObjectMemoryEstimation.intSize();
+            size += ObjectMemoryEstimation.stringSize(entry.value);
+        }
+        return size;
+    }
+
+    private static class Segment {
+
+        private final @NotNull String value;
+        private final int id;
+        private int references;
+
+        private Segment(final @NotNull String value, final int id) {
+            this.value = value;
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.codahale.metrics.Counter;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.mqtt.topic.TopicTokenizer;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A bounded cache for the {@link TopicSubscribers} of a publish topic that sits in front of the {@link LocalTopicTree}.
+ * <p>
+ * The size of an entry is weighted by the amount of subscribers and shared subscriptions it holds. On every change of
+ * a subscription only the cached topics that match the topic filter of the subscription are invalidated.
+ * <p>
+ * To find the affected topics without iterating the whole cache the cached topics are indexed by their first
+ * segment. The index is a superset of the cached topics, entries are never removed from it one by one because this
+ * could race with a concurrent load of the same topic. Instead the index is cleared together with the cache if it
+ * grows too large.
+ * <p>
+ * A subscription change can happen while the subscribers for a topic are collected. Every invalidation therefore
+ * increments a modification counter, and a load that overlapped with a modification removes its own result again.
+ */
+class TopicSubscribersCache {
+
+    private static final int MIN_INDEX_SIZE_BEFORE_RESET = 10_000;
+
+    private final @NotNull Cache<String, TopicSubscribers> cache;
+    private final @NotNull Map<String, Set<String>> topicsByFirstSegment = new ConcurrentHashMap<>();
+    private final @NotNull AtomicInteger indexSize = new AtomicInteger();
+    private final @NotNull AtomicBoolean resetInProgress = new AtomicBoolean();
+    private final @NotNull AtomicLong modifications = new AtomicLong();
+
+    private final @NotNull Counter hitCounter;
+    private final @NotNull Counter missCounter;
+    private final @NotNull Counter evictionCounter;
+
+    TopicSubscribersCache(final long maxWeight, final @NotNull MetricsHolder metricsHolder) {
+        hitCounter = metricsHolder.getTopicTreeMatchCacheHitCounter();
+        missCounter = metricsHolder.getTopicTreeMatchCacheMissCounter();
+        evictionCounter = metricsHolder.getTopicTreeMatchCacheEvictionCounter();
+
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((Weigher<String, TopicSubscribers>) (topic, topicSubscribers) -> weight(topicSubscribers))
+                .<String, TopicSubscribers>removalListener(notification -> {
+                    if (notification.wasEvicted()) {
+                        evictionCounter.inc();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Returns the cached subscribers for the topic or loads and caches them.
+     *
+     * @param topic  the publish topic
+     * @param loader collects the subscribers for the topic from the topic tree
+     * @return the subscribers of the topic
+     */
+    @NotNull TopicSubscribers get(
+            final @NotNull String topic, final @NotNull Function<String, TopicSubscribers> loader) {
+
+        final TopicSubscribers cached = cache.getIfPresent(topic);
+        if (cached != null) {
+            hitCounter.inc();
+            return cached;
+        }
+        missCounter.inc();
+
+        final long modificationsBeforeLoad = modifications.get();
+        final TopicSubscribers topicSubscribers = loader.apply(topic);
+
+        //The topic must be indexed before it is cached, otherwise an invalidation could miss it
+        if (topicsByFirstSegment.computeIfAbsent(firstSegment(topic), segment -> ConcurrentHashMap.newKeySet())
+                .add(topic)) {
+            indexSize.incrementAndGet();
+        }
+        cache.put(topic, topicSubscribers);
+
+        //A subscription changed while the subscribers were collected, the result may be outdated
+        if (modifications.get() != modificationsBeforeLoad) {
+            cache.invalidate(topic);
+        }
+
+        resetIfIndexTooLarge();
+        return topicSubscribers;
+    }
+
+    /**
+     * Invalidates all cached topics that match the given topic filter. Must be called after the subscription was added
+     * to or removed from the topic tree.
+     *
+     * @param topicFilter the topic filter of the added or removed subscription
+     */
+    void invalidate(final @NotNull String topicFilter) {
+        modifications.incrementAndGet();
+
+        if ("#".equals(topicFilter)) {
+            cache.invalidateAll();
+            return;
+        }
+        if (topicFilter.indexOf('+') < 0 && topicFilter.indexOf('#') < 0) {
+            cache.invalidate(topicFilter);
+            return;
+        }
+
+        final String firstSegment = firstSegment(topicFilter);
+        if ("+".equals(firstSegment)) {
+            for (final Set<String> topics : topicsByFirstSegment.values()) {
+                invalidateMatching(topicFilter, topics);
+            }
+        } else {
+            final Set<String> topics = topicsByFirstSegment.get(firstSegment);
+            if (topics != null) {
+                invalidateMatching(topicFilter, topics);
+            }
+        }
+    }
+
+    private void invalidateMatching(final @NotNull String topicFilter, final @NotNull Set<String> topics) {
+        for (final String topic : topics) {
+            if (TopicTokenizer.matches(topicFilter, topic)) {
+                cache.invalidate(topic);
+            }
+        }
+    }
+
+    private void resetIfIndexTooLarge() {
+        if (indexSize.get() <= Math.max(MIN_INDEX_SIZE_BEFORE_RESET, 2 * cache.size())) {
+            return;
+        }
+        if (!resetInProgress.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            //Order matters: loads that indexed their topic before the clear see the modification and remove their
+            //result, or their result is removed by the invalidation of the whole cache
+            topicsByFirstSegment.clear();
+            indexSize.set(0);
+            modifications.incrementAndGet();
+            cache.invalidateAll();
+        } finally {
+            resetInProgress.set(false);
+        }
+    }
+
+    @VisibleForTesting
+    long size() {
+        return cache.size();
+    }
+
+    private static int weight(final @NotNull TopicSubscribers topicSubscribers) {
+        return 1 + topicSubscribers.getSubscribers().size() + topicSubscribers.getSharedSubscriptions().size();
+    }
+
+    private static @NotNull String firstSegment(final @NotNull String topic) {
+        final int end = topic.indexOf('/');
+        return end < 0 ? topic : topic.substring(0, end);
+    }
+}
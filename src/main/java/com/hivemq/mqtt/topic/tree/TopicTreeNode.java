@@ -17,6 +17,7 @@ package com.hivemq.mqtt.topic.tree;
 
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.util.ObjectMemoryEstimation;
 
 import java.util.Arrays;
 import java.util.HashMap;
@@ -40,13 +41,16 @@ class TopicTreeNode {
     /**
      * The child nodes of this node. The children get initialized lazily for memory saving purposes. If a threshold is
      * exceeded this is null and the childrenMap contains all the children.
+     * <p>
+     * When the map is created it is published before this array is set to null. Readers that do not hold the segment
+     * lock must therefore read this field before the childrenMap.
      */
-    @Nullable TopicTreeNode @Nullable [] children;
+    volatile @Nullable TopicTreeNode @Nullable [] children;
 
     /**
      * An optional map for quick access to children (only exists if a threshold is exceeded)
      */
-    @Nullable Map<String, TopicTreeNode> childrenMap;
+    volatile @Nullable Map<String, TopicTreeNode> childrenMap;
 
     TopicTreeNode(final @NotNull String topicPart) {
         this.topicPart = topicPart;
@@ -57,28 +61,56 @@ class TopicTreeNode {
     public @NotNull TopicTreeNode addChildNodeIfAbsent(
             final @NotNull String childNodeTopicPart, final int indexMapCreationThreshold) {
 
+        return addChildNodeIfAbsent(childNodeTopicPart, indexMapCreationThreshold, false, null);
+    }
+
+    /**
+     * Returns the child node for the given topic part and creates it if it does not exist yet.
+     *
+     * @param childNodeTopicPart        the topic part of the child node
+     * @param indexMapCreationThreshold the amount of children after which the children are stored in a map
+     * @param copyOnWrite               if the children array or map that is currently published must not be modified
+     *                                  in place, a modified copy is published instead
+     * @param segmentDictionary         the dictionary of the compact tree mode or null if the tree is not compact
+     * @return the existing or newly created child node
+     */
+    public @NotNull TopicTreeNode addChildNodeIfAbsent(
+            final @NotNull String childNodeTopicPart,
+            final int indexMapCreationThreshold,
+            final boolean copyOnWrite,
+            final @Nullable TopicSegmentDictionary segmentDictionary) {
+
+        final TopicTreeNode[] children = this.children;
+        final Map<String, TopicTreeNode> childrenMap = this.childrenMap;
+
         if (children != null) {
 
             //Check if we need to create an index for large nodes
             if (children.length > indexMapCreationThreshold && childrenMap == null) {
-                childrenMap = new HashMap<>(children.length + 1);
+                final Map<String, TopicTreeNode> newChildrenMap = segmentDictionary != null ?
+                        new CompactChildrenMap(segmentDictionary, children.length + 1) :
+                        new HashMap<>(children.length + 1);
 
                 TopicTreeNode existingNode = null;
                 //Add all entries to the map
                 for (final TopicTreeNode child : children) {
                     if (child != null) {
-                        childrenMap.put(child.getTopicPart(), child);
+                        newChildrenMap.put(child.getTopicPart(), child);
                         if (child.getTopicPart().equals(childNodeTopicPart)) {
                             existingNode = child;
                         }
                     }
                 }
-                children = null;
+                final TopicTreeNode childNode;
                 if (existingNode != null) {
-                    return existingNode;
+                    childNode = existingNode;
+                } else {
+                    childNode = newNode(childNodeTopicPart, segmentDictionary);
+                    newChildrenMap.put(childNode.getTopicPart(), childNode);
                 }
-                final TopicTreeNode childNode = new TopicTreeNode(childNodeTopicPart);
-                childrenMap.put(childNode.getTopicPart(), childNode);
+                //The map must be visible before the array is removed, see the children field
+                this.childrenMap = newChildrenMap;
+                this.children = null;
                 return childNode;
             } else {
 
@@ -91,27 +123,142 @@ class TopicTreeNode {
                     }
                 }
 
-                final TopicTreeNode childNode = new TopicTreeNode(childNodeTopicPart);
+                final TopicTreeNode childNode = newNode(childNodeTopicPart, segmentDictionary);
                 final int emptySlotIndex = Arrays.asList(children).indexOf(null);
                 if (emptySlotIndex >= 0) {
-                    children[emptySlotIndex] = childNode;
+                    if (copyOnWrite) {
+                        final TopicTreeNode[] newChildren = children.clone();
+                        newChildren[emptySlotIndex] = childNode;
+                        this.children = newChildren;
+                    } else {
+                        children[emptySlotIndex] = childNode;
+                    }
                 } else {
                     final TopicTreeNode[] newChildren = new TopicTreeNode[children.length + 1];
                     System.arraycopy(children, 0, newChildren, 0, children.length);
                     newChildren[newChildren.length - 1] = childNode;
-                    children = newChildren;
+                    this.children = newChildren;
                 }
                 return childNode;
             }
         } else if (childrenMap != null) {
-            return childrenMap.computeIfAbsent(childNodeTopicPart, TopicTreeNode::new);
+            final TopicTreeNode existingNode = childrenMap.get(childNodeTopicPart);
+            if (existingNode != null) {
+                return existingNode;
+            }
+            final TopicTreeNode childNode = newNode(childNodeTopicPart, segmentDictionary);
+            if (copyOnWrite) {
+                final Map<String, TopicTreeNode> newChildrenMap = copyChildrenMap(childrenMap);
+                newChildrenMap.put(childNode.getTopicPart(), childNode);
+                this.childrenMap = newChildrenMap;
+            } else {
+                childrenMap.put(childNode.getTopicPart(), childNode);
+            }
+            return childNode;
         }
 
-        final TopicTreeNode childNode = new TopicTreeNode(childNodeTopicPart);
-        children = new TopicTreeNode[]{childNode};
+        final TopicTreeNode childNode = newNode(childNodeTopicPart, segmentDictionary);
+        this.children = new TopicTreeNode[]{childNode};
         return childNode;
     }
 
+    /**
+     * Removes the given node from the children of this node, if it is still a child of this node.
+     *
+     * @param childNode   the child node to remove
+     * @param copyOnWrite       if the children array or map that is currently published must not be modified in
+     *                          place, a modified copy is published instead
+     * @param segmentDictionary the dictionary of the compact tree mode or null if the tree is not compact
+     */
+    void removeChildNode(
+            final @NotNull TopicTreeNode childNode,
+            final boolean copyOnWrite,
+            final @Nullable TopicSegmentDictionary segmentDictionary) {
+
+        final TopicTreeNode[] children = this.children;
+        final Map<String, TopicTreeNode> childrenMap = this.childrenMap;
+
+        if (children != null) {
+            final TopicTreeNode[] newChildren = copyOnWrite ? children.clone() : children;
+            boolean removed = false;
+            for (int i = 0; i < newChildren.length; i++) {
+                if (newChildren[i] == childNode) {
+                    newChildren[i] = null;
+                    removed = true;
+                }
+            }
+            if (!removed) {
+                return;
+            }
+            if (copyOnWrite) {
+                this.children = newChildren;
+            }
+        } else if (childrenMap != null) {
+            if (childrenMap.get(childNode.getTopicPart()) != childNode) {
+                return;
+            }
+            if (copyOnWrite) {
+                final Map<String, TopicTreeNode> newChildrenMap = copyChildrenMap(childrenMap);
+                newChildrenMap.remove(childNode.getTopicPart());
+                this.childrenMap = newChildrenMap;
+            } else {
+                childrenMap.remove(childNode.getTopicPart());
+            }
+        } else {
+            return;
+        }
+        if (segmentDictionary != null) {
+            segmentDictionary.release(childNode.getTopicPart());
+        }
+    }
+
+    /**
+     * Creates a node that is not yet part of the tree. In the compact tree mode the node uses the canonical instance of
+     * its topic part from the dictionary.
+     */
+    static @NotNull TopicTreeNode newNode(
+            final @NotNull String topicPart, final @Nullable TopicSegmentDictionary segmentDictionary) {
+
+        if (segmentDictionary == null) {
+            return new TopicTreeNode(topicPart);
+        }
+        return new TopicTreeNode(segmentDictionary.acquire(topicPart));
+    }
+
+    private static @NotNull Map<String, TopicTreeNode> copyChildrenMap(
+            final @NotNull Map<String, TopicTreeNode> childrenMap) {
+
+        if (childrenMap instanceof CompactChildrenMap) {
+            return ((CompactChildrenMap) childrenMap).copy();
+        }
+        return new HashMap<>(childrenMap);
+    }
+
+    /**
+     * @return the approximate heap usage of this node including its subscriptions, but without its child nodes, in
+     *         bytes
+     */
+    long estimateSize(final boolean includeTopicPart) {
+        final TopicTreeNode[] children = this.children;
+        final Map<String, TopicTreeNode> childrenMap = this.childrenMap;
+
+        long size = ObjectMemoryEstimation.objectShellSize() + 5L * ObjectMemoryEstimation.objectRefSize();
+        if (includeTopicPart) {
+            size += ObjectMemoryEstimation.stringSize(topicPart);
+        }
+        if (children != null) {
+            size += ObjectMemoryEstimation.ARRAY_OVERHEAD +
+                    (long) children.length * ObjectMemoryEstimation.objectRefSize();
+        } else if (childrenMap instanceof CompactChildrenMap) {
+            size += ((CompactChildrenMap) childrenMap).estimateSize();
+        } else if (childrenMap != null) {
+            size += MatchingNodeSubscriptions.estimateHashMapSize(childrenMap.size());
+        }
+        size += exactSubscriptions.estimateSize();
+        size += wildcardSubscriptions.estimateSize();
+        return size;
+    }
+
     /**
      * Checks if the node is empty, that is if:
      * <p>
@@ -122,6 +269,8 @@ class TopicTreeNode {
      */
     public boolean isNodeEmpty() {
 
+        final TopicTreeNode[] children = this.children;
+        final Map<String, TopicTreeNode> childrenMap = this.childrenMap;
         final boolean noChildrenPresent = (children == null && childrenMap == null) ||
                 children != null && isEmptyArray(children) ||
                 childrenMap != null && childrenMap.isEmpty();
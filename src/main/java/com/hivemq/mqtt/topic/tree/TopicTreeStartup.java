@@ -15,8 +15,13 @@
  */
 package com.hivemq.mqtt.topic.tree;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.metrics.HiveMQMetrics;
 import com.hivemq.mqtt.message.subscribe.Topic;
 import com.hivemq.mqtt.topic.SubscriptionFlag;
 import com.hivemq.persistence.clientsession.ClientSession;
@@ -29,13 +34,25 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRE_ON_DISCONNECT;
 import static com.hivemq.persistence.clientsession.SharedSubscriptionService.SharedSubscription;
 
 /**
  * This class is responsible for adding all topic information to the topic tree on application startup.
+ * <p>
+ * The subscriptions are read from the persistences in batches. Each batch is partitioned by the first segment of the
+ * topic filters, which is also the key of the segment locks of the topic tree, and the partitions are added to the
+ * topic tree concurrently in a fork-join pool.
  *
  * @author Dominik Obermaier
  */
@@ -48,17 +65,20 @@ public class TopicTreeStartup {
     private final @NotNull ClientSessionPersistence clientSessionPersistence;
     private final @NotNull ClientSessionSubscriptionPersistence clientSessionSubscriptionPersistence;
     private final @NotNull SharedSubscriptionService sharedSubscriptionService;
+    private final @NotNull MetricRegistry metricRegistry;
 
     @Inject
     TopicTreeStartup(
             final @NotNull LocalTopicTree topicTree,
             final @NotNull ClientSessionPersistence clientSessionPersistence,
             final @NotNull ClientSessionSubscriptionPersistence clientSessionSubscriptionPersistence,
-            final @NotNull SharedSubscriptionService sharedSubscriptionService) {
+            final @NotNull SharedSubscriptionService sharedSubscriptionService,
+            final @NotNull MetricRegistry metricRegistry) {
         this.topicTree = topicTree;
         this.clientSessionPersistence = clientSessionPersistence;
         this.clientSessionSubscriptionPersistence = clientSessionSubscriptionPersistence;
         this.sharedSubscriptionService = sharedSubscriptionService;
+        this.metricRegistry = metricRegistry;
     }
 
     @PostConstruct
@@ -71,10 +91,20 @@ public class TopicTreeStartup {
      * Populates the topic tree with all information from the ClientSessionPersistence
      */
     private void populateTopicTree() {
+        final int parallelism = Math.max(1, InternalConfigurations.TOPIC_TREE_STARTUP_PARALLELISM.get());
+        final int batchSize = Math.max(1, InternalConfigurations.TOPIC_TREE_STARTUP_BATCH_SIZE.get());
+        final ForkJoinPool pool = parallelism > 1 ?
+                new ForkJoinPool(parallelism, TopicTreeStartup::newWorkerThread, null, false) :
+                null;
+        final StartupTimings timings = new StartupTimings();
+
         final ListenableFuture<Set<String>> clientsFuture = clientSessionPersistence.getAllClients();
         // Blocking. The TopicTreeStartup needs to be done before new connections are allowed.
         try {
             final Set<String> clients = clientsFuture.get();
+            Map<String, List<StartupSubscription>> partitions = new HashMap<>();
+            int batchSubscriptions = 0;
+            long readStart = System.nanoTime();
             for (final String client : clients) {
                 final Set<Topic> clientSubscriptions = clientSessionSubscriptionPersistence.getSubscriptions(client);
                 final ClientSession session = clientSessionPersistence.getSession(client, false);
@@ -85,29 +115,167 @@ public class TopicTreeStartup {
                 }
 
                 for (final Topic topic : clientSubscriptions) {
-                    final SharedSubscription sharedSubscription =
-                            sharedSubscriptionService.checkForSharedSubscription(topic.getTopic());
-
-                    if (sharedSubscription == null) {
-                        final byte flags =
-                                SubscriptionFlag.getDefaultFlags(false, topic.isRetainAsPublished(), topic.isNoLocal());
-
-                        topicTree.addTopic(client, topic, flags, null);
-                    } else {
-                        final byte flags =
-                                SubscriptionFlag.getDefaultFlags(true, topic.isRetainAsPublished(), topic.isNoLocal());
-
-                        final Topic sharedTopic = new Topic(sharedSubscription.getTopicFilter(),
-                                topic.getQoS(),
-                                topic.isNoLocal(),
-                                topic.isRetainAsPublished());
+                    final StartupSubscription subscription = startupSubscription(client, topic);
+                    partitions.computeIfAbsent(firstSegment(subscription.topic.getTopic()), key -> new ArrayList<>())
+                            .add(subscription);
+                }
+                batchSubscriptions += clientSubscriptions.size();
 
-                        topicTree.addTopic(client, sharedTopic, flags, sharedSubscription.getShareName());
-                    }
+                if (batchSubscriptions >= batchSize) {
+                    timings.readNanos += System.nanoTime() - readStart;
+                    addPartitions(partitions, pool, timings);
+                    timings.subscriptions += batchSubscriptions;
+                    partitions = new HashMap<>();
+                    batchSubscriptions = 0;
+                    readStart = System.nanoTime();
                 }
             }
+            timings.readNanos += System.nanoTime() - readStart;
+            addPartitions(partitions, pool, timings);
+            timings.subscriptions += batchSubscriptions;
+
+            log.info("Built topic tree with {} subscriptions in {} ms ({} ms reading persistences, {} ms adding " +
+                            "subscriptions with parallelism {}).",
+                    timings.subscriptions,
+                    TimeUnit.NANOSECONDS.toMillis(timings.readNanos + timings.buildNanos),
+                    TimeUnit.NANOSECONDS.toMillis(timings.readNanos),
+                    TimeUnit.NANOSECONDS.toMillis(timings.buildNanos),
+                    parallelism);
         } catch (final Exception ex) {
             log.error("Failed to bootstrap topic tree.", ex);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
         }
+        registerMetrics(timings);
+    }
+
+    private @NotNull StartupSubscription startupSubscription(final @NotNull String client, final @NotNull Topic topic) {
+        final SharedSubscription sharedSubscription =
+                sharedSubscriptionService.checkForSharedSubscription(topic.getTopic());
+
+        if (sharedSubscription == null) {
+            final byte flags = SubscriptionFlag.getDefaultFlags(false, topic.isRetainAsPublished(), topic.isNoLocal());
+
+            return new StartupSubscription(client, topic, flags, null);
+        } else {
+            final byte flags = SubscriptionFlag.getDefaultFlags(true, topic.isRetainAsPublished(), topic.isNoLocal());
+
+            final Topic sharedTopic = new Topic(sharedSubscription.getTopicFilter(),
+                    topic.getQoS(),
+                    topic.isNoLocal(),
+                    topic.isRetainAsPublished(),
+                    topic.getRetainHandling(),
+                    topic.getSubscriptionIdentifier());
+
+            return new StartupSubscription(client, sharedTopic, flags, sharedSubscription.getShareName());
+        }
+    }
+
+    private void addPartitions(
+            final @NotNull Map<String, List<StartupSubscription>> partitions,
+            final @Nullable ForkJoinPool pool,
+            final @NotNull StartupTimings timings) {
+
+        if (partitions.isEmpty()) {
+            return;
+        }
+        final long buildStart = System.nanoTime();
+        final List<List<StartupSubscription>> partitionList = new ArrayList<>(partitions.values());
+        if (pool == null || partitionList.size() == 1) {
+            for (final List<StartupSubscription> partition : partitionList) {
+                addPartition(partition);
+            }
+        } else {
+            pool.invoke(new AddPartitionsAction(partitionList, 0, partitionList.size()));
+        }
+        timings.buildNanos += System.nanoTime() - buildStart;
+    }
+
+    private void addPartition(final @NotNull List<StartupSubscription> partition) {
+        for (final StartupSubscription subscription : partition) {
+            topicTree.addTopic(subscription.client, subscription.topic, subscription.flags, subscription.sharedName);
+        }
+    }
+
+    private void registerMetrics(final @NotNull StartupTimings timings) {
+        final long readMillis = TimeUnit.NANOSECONDS.toMillis(timings.readNanos);
+        final long buildMillis = TimeUnit.NANOSECONDS.toMillis(timings.buildNanos);
+        final long subscriptions = timings.subscriptions;
+        metricRegistry.register(HiveMQMetrics.TOPIC_TREE_STARTUP_READ_TIME_MILLIS.name(),
+                (Gauge<Long>) () -> readMillis);
+        metricRegistry.register(HiveMQMetrics.TOPIC_TREE_STARTUP_BUILD_TIME_MILLIS.name(),
+                (Gauge<Long>) () -> buildMillis);
+        metricRegistry.register(HiveMQMetrics.TOPIC_TREE_STARTUP_SUBSCRIPTIONS.name(),
+                (Gauge<Long>) () -> subscriptions);
+    }
+
+    /**
+     * @return the first segment of the topic filter, which is the key of the segment locks of the topic tree
+     */
+    private static @NotNull String firstSegment(final @NotNull String topicFilter) {
+        final int index = topicFilter.indexOf('/');
+        return index < 0 ? topicFilter : topicFilter.substring(0, index);
+    }
+
+    private static @NotNull ForkJoinWorkerThread newWorkerThread(final @NotNull ForkJoinPool pool) {
+        final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("topic-tree-startup-" + thread.getPoolIndex());
+        return thread;
+    }
+
+    /**
+     * Splits the partitions until a single partition is left. The subscriptions of one partition are added
+     * sequentially, because they are guarded by the same segment lock anyways.
+     */
+    private class AddPartitionsAction extends RecursiveAction {
+
+        private final @NotNull List<List<StartupSubscription>> partitions;
+        private final int from;
+        private final int to;
+
+        AddPartitionsAction(final @NotNull List<List<StartupSubscription>> partitions, final int from, final int to) {
+            this.partitions = partitions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                addPartition(partitions.get(from));
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            invokeAll(new AddPartitionsAction(partitions, from, middle),
+                    new AddPartitionsAction(partitions, middle, to));
+        }
+    }
+
+    private static class StartupSubscription {
+
+        private final @NotNull String client;
+        private final @NotNull Topic topic;
+        private final byte flags;
+        private final @Nullable String sharedName;
+
+        StartupSubscription(
+                final @NotNull String client,
+                final @NotNull Topic topic,
+                final byte flags,
+                final @Nullable String sharedName) {
+            this.client = client;
+            this.topic = topic;
+            this.flags = flags;
+            this.sharedName = sharedName;
+        }
+    }
+
+    private static class StartupTimings {
+
+        private long readNanos;
+        private long buildNanos;
+        private long subscriptions;
     }
 }
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.google.common.collect.ImmutableList;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of the shape of the {@link LocalTopicTree} and of the contention on its segment locks.
+ * <p>
+ * The fan-out histogram counts the nodes by their amount of children in power of two buckets: bucket 0 holds the
+ * nodes without children, bucket 1 the nodes with 1 child, bucket 2 the nodes with 2-3 children, bucket 3 the nodes
+ * with 4-7 children and so on.
+ */
+public class TopicTreeStatistics {
+
+    private static final int LARGEST_SEGMENTS = 10;
+
+    private final long nodeCount;
+    private final long @NotNull [] nodesPerDepth;
+    private final long @NotNull [] fanOutHistogram;
+    private final int maxFanOut;
+    private final long childrenMapNodeCount;
+    private final long subscriptionsMapNodeCount;
+    private final int rootWildcardSubscriptionCount;
+    private final long subscriptionCount;
+    private final @NotNull ImmutableList<SegmentStatistics> largestSegments;
+    private final @NotNull ImmutableList<LockStripeStatistics> contendedLockStripes;
+
+    private TopicTreeStatistics(final @NotNull Collector collector) {
+        nodeCount = collector.nodeCount;
+        nodesPerDepth = Arrays.copyOf(collector.nodesPerDepth, collector.maxDepth);
+        fanOutHistogram = collector.fanOutHistogram.clone();
+        maxFanOut = collector.maxFanOut;
+        childrenMapNodeCount = collector.childrenMapNodeCount;
+        subscriptionsMapNodeCount = collector.subscriptionsMapNodeCount;
+        rootWildcardSubscriptionCount = collector.rootWildcardSubscriptionCount;
+        subscriptionCount = collector.subscriptionCount;
+        largestSegments = ImmutableList.sortedCopyOf(
+                Comparator.comparingLong((SegmentStatistics segment) -> segment.nodeCount).reversed(),
+                collector.segments).subList(0, Math.min(LARGEST_SEGMENTS, collector.segments.size()));
+        contendedLockStripes = ImmutableList.sortedCopyOf(
+                Comparator.comparingLong((LockStripeStatistics stripe) -> stripe.waitNanos).reversed(),
+                collector.lockStripes);
+    }
+
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getMaxDepth() {
+        return nodesPerDepth.length;
+    }
+
+    /**
+     * @return the amount of nodes per depth, starting with the nodes of the first topic level at index 0
+     */
+    public long @NotNull [] getNodesPerDepth() {
+        return nodesPerDepth.clone();
+    }
+
+    public long @NotNull [] getFanOutHistogram() {
+        return fanOutHistogram.clone();
+    }
+
+    public int getMaxFanOut() {
+        return maxFanOut;
+    }
+
+    public long getChildrenMapNodeCount() {
+        return childrenMapNodeCount;
+    }
+
+    public long getSubscriptionsMapNodeCount() {
+        return subscriptionsMapNodeCount;
+    }
+
+    public int getRootWildcardSubscriptionCount() {
+        return rootWildcardSubscriptionCount;
+    }
+
+    public long getSubscriptionCount() {
+        return subscriptionCount;
+    }
+
+    /**
+     * @return a human readable description of the statistics for diagnostic purposes
+     */
+    public @NotNull String dump() {
+        final StringBuilder builder = new StringBuilder();
+        add(builder, "Subscriptions", subscriptionCount);
+        add(builder, "Root wildcard subscriptions", rootWildcardSubscriptionCount);
+        add(builder, "Nodes", nodeCount);
+        add(builder, "Nodes with children map", childrenMapNodeCount);
+        add(builder, "Nodes with subscriptions map", subscriptionsMapNodeCount);
+        add(builder, "Max depth", nodesPerDepth.length);
+        for (int depth = 0; depth < nodesPerDepth.length; depth++) {
+            add(builder, "Nodes at depth " + (depth + 1), nodesPerDepth[depth]);
+        }
+        add(builder, "Max fan-out", maxFanOut);
+        for (int bucket = 0; bucket < fanOutHistogram.length; bucket++) {
+            if (fanOutHistogram[bucket] > 0) {
+                add(builder, "Nodes with fan-out " + fanOutRange(bucket), fanOutHistogram[bucket]);
+            }
+        }
+        for (final SegmentStatistics segment : largestSegments) {
+            add(builder, "Nodes below first level '" + segment.segment + "'", segment.nodeCount);
+        }
+        for (final LockStripeStatistics stripe : contendedLockStripes) {
+            add(builder, "Segment lock stripe " + stripe.stripe + " " + stripe.segments,
+                    stripe.contendedAcquisitions + " contended acquisitions, " +
+                            TimeUnit.NANOSECONDS.toMillis(stripe.waitNanos) + " ms waited");
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return dump();
+    }
+
+    private static void add(final @NotNull StringBuilder builder, final @NotNull String key, final Object value) {
+        builder.append(String.format("[%s] = [%s]\n", key, value));
+    }
+
+    private static @NotNull String fanOutRange(final int bucket) {
+        if (bucket <= 1) {
+            return String.valueOf(bucket);
+        }
+        final long from = 1L << (bucket - 1);
+        return from + "-" + ((from << 1) - 1);
+    }
+
+    /**
+     * Collects the statistics while the topic tree is walked.
+     */
+    static class Collector {
+
+        private final int rootWildcardSubscriptionCount;
+        private final long subscriptionCount;
+        private long nodeCount;
+        private long @NotNull [] nodesPerDepth = new long[8];
+        private int maxDepth;
+        private final long @NotNull [] fanOutHistogram = new long[Integer.SIZE];
+        private int maxFanOut;
+        private long childrenMapNodeCount;
+        private long subscriptionsMapNodeCount;
+        private final @NotNull List<SegmentStatistics> segments = new ArrayList<>();
+        private final @NotNull List<LockStripeStatistics> lockStripes = new ArrayList<>();
+
+        Collector(final int rootWildcardSubscriptionCount, final long subscriptionCount) {
+            this.rootWildcardSubscriptionCount = rootWildcardSubscriptionCount;
+            this.subscriptionCount = subscriptionCount;
+        }
+
+        /**
+         * @param depth             the depth of the node, 1 for the nodes of the first topic level
+         * @param fanOut            the amount of children of the node
+         * @param childrenMap       if the node stores its children in a map
+         * @param subscriptionsMap  if the node stores its exact or wildcard subscriptions in a map
+         */
+        void addNode(final int depth, final int fanOut, final boolean childrenMap, final boolean subscriptionsMap) {
+            nodeCount++;
+            if (depth > nodesPerDepth.length) {
+                nodesPerDepth = Arrays.copyOf(nodesPerDepth, Math.max(depth, nodesPerDepth.length * 2));
+            }
+            nodesPerDepth[depth - 1]++;
+            maxDepth = Math.max(maxDepth, depth);
+            fanOutHistogram[Integer.SIZE - Integer.numberOfLeadingZeros(fanOut)]++;
+            maxFanOut = Math.max(maxFanOut, fanOut);
+            if (childrenMap) {
+                childrenMapNodeCount++;
+            }
+            if (subscriptionsMap) {
+                subscriptionsMapNodeCount++;
+            }
+        }
+
+        void addSegment(final @NotNull String segment, final long nodeCount) {
+            segments.add(new SegmentStatistics(segment, nodeCount));
+        }
+
+        void addLockStripe(
+                final int stripe,
+                final long contendedAcquisitions,
+                final long waitNanos,
+                final @NotNull List<String> segments) {
+            lockStripes.add(new LockStripeStatistics(stripe, contendedAcquisitions, waitNanos, segments));
+        }
+
+        long nodeCount() {
+            return nodeCount;
+        }
+
+        @NotNull TopicTreeStatistics build() {
+            return new TopicTreeStatistics(this);
+        }
+    }
+
+    private static class SegmentStatistics {
+
+        private final @NotNull String segment;
+        private final long nodeCount;
+
+        SegmentStatistics(final @NotNull String segment, final long nodeCount) {
+            this.segment = segment;
+            this.nodeCount = nodeCount;
+        }
+    }
+
+    private static class LockStripeStatistics {
+
+        private final int stripe;
+        private final long contendedAcquisitions;
+        private final long waitNanos;
+        private final @NotNull List<String> segments;
+
+        LockStripeStatistics(
+                final int stripe,
+                final long contendedAcquisitions,
+                final long waitNanos,
+                final @NotNull List<String> segments) {
+            this.stripe = stripe;
+            this.contendedAcquisitions = contendedAcquisitions;
+            this.waitNanos = waitNanos;
+            this.segments = segments;
+        }
+    }
+}
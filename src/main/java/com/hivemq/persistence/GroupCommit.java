@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A group commit lets several single writer tasks share the transactions of the persistences they write to.
+ * <p>
+ * The single writer begins a group commit on its thread before it executes a slice of tasks and commits it after the
+ * last task of the slice. While the group commit is open, a persistence joins it with one {@link Participant} per
+ * storage (for example a Xodus environment), which is reused by all following tasks for the same storage. The results
+ * of the tasks must only be published after {@link #commit()} returned.
+ * <p>
+ * The writes of a task that fails inside a group commit can not be separated from the writes of the other tasks in
+ * the shared transactions. The single writer therefore aborts the whole group commit and executes the tasks again,
+ * each in a group commit of its own.
+ */
+public final class GroupCommit {
+
+    private static final @NotNull ThreadLocal<GroupCommit> CURRENT = new ThreadLocal<>();
+
+    private final @NotNull Map<Object, Participant> participants = new IdentityHashMap<>();
+    private final @NotNull List<Participant> order = new ArrayList<>();
+
+    private GroupCommit() {
+    }
+
+    /**
+     * Begins a group commit on the current thread.
+     *
+     * @return the group commit, which must be committed or aborted on the same thread
+     * @throws IllegalStateException if a group commit is already open on the current thread
+     */
+    public static @NotNull GroupCommit begin() {
+        if (CURRENT.get() != null) {
+            throw new IllegalStateException("A group commit is already open on this thread");
+        }
+        final GroupCommit groupCommit = new GroupCommit();
+        CURRENT.set(groupCommit);
+        return groupCommit;
+    }
+
+    /**
+     * @return the group commit that is open on the current thread or <code>null</code> if there is none
+     */
+    public static @Nullable GroupCommit current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @param storage the storage the participant writes to
+     * @return the participant for the storage or <code>null</code> if the storage did not join yet
+     */
+    public @Nullable Participant participant(final @NotNull Object storage) {
+        return participants.get(storage);
+    }
+
+    /**
+     * Adds the participant for a storage. It is committed or aborted together with all other participants.
+     */
+    public void join(final @NotNull Object storage, final @NotNull Participant participant) {
+        if (participants.putIfAbsent(storage, participant) == null) {
+            order.add(participant);
+        }
+    }
+
+    /**
+     * @return the amount of storages that joined this group commit
+     */
+    public int getParticipantCount() {
+        return order.size();
+    }
+
+    /**
+     * Commits all participants in the order they joined and closes the group commit. If a participant fails to
+     * commit, it and the remaining participants are aborted.
+     *
+     * @throws RuntimeException the exception of the first participant that failed to commit
+     */
+    public void commit() {
+        CURRENT.remove();
+        int committed = 0;
+        try {
+            for (final Participant participant : order) {
+                participant.commit();
+                committed++;
+            }
+        } finally {
+            for (int i = committed; i < order.size(); i++) {
+                order.get(i).abort();
+            }
+        }
+    }
+
+    /**
+     * Aborts all participants and closes the group commit.
+     */
+    public void abort() {
+        CURRENT.remove();
+        for (final Participant participant : order) {
+            participant.abort();
+        }
+    }
+
+    /**
+     * The open transaction of one storage in a group commit.
+     */
+    public interface Participant {
+
+        void commit();
+
+        void abort();
+    }
+}
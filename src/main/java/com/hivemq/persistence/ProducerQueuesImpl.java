@@ -25,9 +25,11 @@ import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.metrics.SingleWriterMetrics;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
 import com.hivemq.util.ThreadFactoryUtil;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
 import java.util.SplittableRandom;
@@ -36,6 +38,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.hivemq.persistence.SingleWriterServiceImpl.Task;
@@ -62,6 +65,9 @@ public class ProducerQueuesImpl implements ProducerQueues {
     private final @NotNull ImmutableList<AtomicBoolean> locks;
     private final @NotNull ImmutableList<AtomicLong> queueTaskCounter;
     private final @NotNull SingleWriterServiceImpl singleWriterServiceImpl;
+    private final boolean groupCommit;
+    private final @NotNull SingleWriterMetrics metrics;
+    private final @NotNull AtomicIntegerArray bucketDepths;
 
     private final AtomicBoolean shutdown = new AtomicBoolean(false);
 
@@ -70,8 +76,19 @@ public class ProducerQueuesImpl implements ProducerQueues {
     // Initialized as long max value, to ensure the the grace period condition is not met, when shutdown is true but the start time is net yet set.
 
 
-    public ProducerQueuesImpl(final SingleWriterServiceImpl singleWriterServiceImpl, final int amountOfQueues) {
+    /**
+     * @param groupCommit whether the tasks of one execution share the transactions of the persistence, see
+     *                    {@link GroupCommit}
+     * @param metrics     the metrics of the tasks of this producer
+     */
+    public ProducerQueuesImpl(
+            final @NotNull SingleWriterServiceImpl singleWriterServiceImpl,
+            final int amountOfQueues,
+            final boolean groupCommit,
+            final @NotNull SingleWriterMetrics metrics) {
         this.singleWriterServiceImpl = singleWriterServiceImpl;
+        this.groupCommit = groupCommit;
+        this.metrics = metrics;
 
         final int bucketCount = singleWriterServiceImpl.getPersistenceBucketCount();
         this.amountOfQueues = amountOfQueues;
@@ -91,6 +108,8 @@ public class ProducerQueuesImpl implements ProducerQueues {
         }
         locks = locksBuilder.build();
         queueTaskCounter = counterBuilder.build();
+        bucketDepths = new AtomicIntegerArray(bucketCount);
+        metrics.registerQueueDepths(taskCount::get, bucketDepths);
     }
 
     @NotNull
@@ -135,8 +154,14 @@ public class ProducerQueuesImpl implements ProducerQueues {
             resultFuture = null;
         }
 
-        queue.add(new TaskWithFuture<>(resultFuture, task, bucketIndex, successCallback, failedCallback));
+        queue.add(new TaskWithFuture<>(resultFuture,
+                task,
+                bucketIndex,
+                successCallback,
+                failedCallback,
+                metrics.taskSubmitted()));
         taskCount.incrementAndGet();
+        bucketDepths.incrementAndGet(bucketIndex);
         singleWriterServiceImpl.getGlobalTaskCount().incrementAndGet();
         if (queueTaskCounter.get(queueIndex).getAndIncrement() == 0) {
             singleWriterServiceImpl.incrementNonemptyQueueCounter();
@@ -213,6 +238,10 @@ public class ProducerQueuesImpl implements ProducerQueues {
         if (!lock.getAndSet(true)) {
             try {
                 final Queue<TaskWithFuture<?>> queue = queues.get(queueIndex);
+                if (groupCommit && queueTaskCounter.get(queueIndex).get() > 1) {
+                    executeGroup(queueIndex, queue);
+                    return;
+                }
                 int creditCount = 0;
                 while (creditCount < singleWriterServiceImpl.getCreditsPerExecution()) {
                     final TaskWithFuture taskWithFuture = queue.poll();
@@ -220,31 +249,19 @@ public class ProducerQueuesImpl implements ProducerQueues {
                         return;
                     }
                     creditCount++;
+                    final long startTime = metrics.taskStarted(taskWithFuture.getEnqueueTime());
+                    Object result = null;
+                    Exception exception = null;
                     try {
-                        final Object result = taskWithFuture.getTask().doTask(taskWithFuture.getBucketIndex());
-                        if (taskWithFuture.getFuture() != null) {
-                            taskWithFuture.getFuture().set(result);
-                        } else {
-                            if (taskWithFuture.getSuccessCallback() != null) {
-                                singleWriterServiceImpl.getCallbackExecutors()[queueIndex].submit(() -> taskWithFuture.getSuccessCallback()
-                                        .afterTask(result));
-                            }
-                        }
+                        result = taskWithFuture.getTask().doTask(taskWithFuture.getBucketIndex());
                     } catch (final Exception e) {
-                        if (taskWithFuture.getFuture() != null) {
-                            taskWithFuture.getFuture().setException(e);
-                        } else {
-                            if (taskWithFuture.getFailedCallback() != null) {
-                                singleWriterServiceImpl.getCallbackExecutors()[queueIndex].submit(() -> taskWithFuture.getFailedCallback()
-                                        .afterTask(e));
-                            }
-                        }
-                    }
-                    taskCount.decrementAndGet();
-                    singleWriterServiceImpl.getGlobalTaskCount().decrementAndGet();
-                    if (queueTaskCounter.get(queueIndex).decrementAndGet() == 0) {
-                        singleWriterServiceImpl.decrementNonemptyQueueCounter();
+                        exception = e;
                     }
+                    metrics.taskExecuted(startTime);
+                    complete(queueIndex, taskWithFuture, result, exception);
+                }
+                if (queueTaskCounter.get(queueIndex).get() > 0) {
+                    metrics.creditsExhausted();
                 }
             } finally {
                 lock.set(false);
@@ -252,6 +269,131 @@ public class ProducerQueuesImpl implements ProducerQueues {
         }
     }
 
+    /**
+     * Executes the tasks of one execution in a {@link GroupCommit}. The futures and callbacks of the tasks are
+     * completed after the group commit, so no caller sees a result before it is persisted.
+     * <p>
+     * If a task fails after it wrote to a shared transaction, or the group commit fails, the group commit is aborted
+     * and the tasks are executed again one by one, so only the writes of the failing tasks are lost.
+     */
+    private void executeGroup(final int queueIndex, final @NotNull Queue<TaskWithFuture<?>> queue) {
+        final int credits = singleWriterServiceImpl.getCreditsPerExecution();
+        final List<TaskWithFuture<?>> tasks = new ArrayList<>(credits);
+        final List<Object> results = new ArrayList<>(credits);
+        final List<Exception> exceptions = new ArrayList<>(credits);
+
+        final GroupCommit groupCommit = GroupCommit.begin();
+        boolean aborted = false;
+        Exception commitException = null;
+        final long start = System.nanoTime();
+        try {
+            while (tasks.size() < credits) {
+                final TaskWithFuture<?> taskWithFuture = queue.poll();
+                if (taskWithFuture == null) {
+                    break;
+                }
+                tasks.add(taskWithFuture);
+                final long startTime = metrics.taskStarted(taskWithFuture.getEnqueueTime());
+                try {
+                    results.add(taskWithFuture.getTask().doTask(taskWithFuture.getBucketIndex()));
+                    exceptions.add(null);
+                } catch (final Exception e) {
+                    results.add(null);
+                    exceptions.add(e);
+                    // The writes of the task can only be undone if the group commit has shared transactions
+                    aborted |= groupCommit.getParticipantCount() > 0;
+                }
+                metrics.taskExecuted(startTime);
+            }
+        } finally {
+            if (aborted) {
+                groupCommit.abort();
+            } else {
+                try {
+                    groupCommit.commit();
+                } catch (final Exception e) {
+                    commitException = e;
+                }
+            }
+        }
+        if (groupCommit.getParticipantCount() > 0) {
+            singleWriterServiceImpl.recordGroupCommit(tasks.size(), System.nanoTime() - start);
+        }
+
+        if (aborted || commitException != null) {
+            for (final TaskWithFuture<?> taskWithFuture : tasks) {
+                executeAlone(queueIndex, taskWithFuture);
+            }
+        } else {
+            for (int i = 0; i < tasks.size(); i++) {
+                complete(queueIndex, tasks.get(i), results.get(i), exceptions.get(i));
+            }
+        }
+        if (tasks.size() == credits && queueTaskCounter.get(queueIndex).get() > 0) {
+            metrics.creditsExhausted();
+        }
+    }
+
+    /**
+     * Executes a task of an aborted group commit again in a group commit of its own. If it fails, its writes are
+     * aborted.
+     */
+    private void executeAlone(final int queueIndex, final @NotNull TaskWithFuture<?> taskWithFuture) {
+        final GroupCommit groupCommit = GroupCommit.begin();
+        Object result = null;
+        Exception exception = null;
+        try {
+            result = taskWithFuture.getTask().doTask(taskWithFuture.getBucketIndex());
+        } catch (final Exception e) {
+            exception = e;
+        } finally {
+            if (exception != null) {
+                groupCommit.abort();
+            } else {
+                try {
+                    groupCommit.commit();
+                } catch (final Exception e) {
+                    exception = e;
+                }
+            }
+        }
+        complete(queueIndex, taskWithFuture, exception == null ? result : null, exception);
+    }
+
+    private void complete(
+            final int queueIndex,
+            final @NotNull TaskWithFuture taskWithFuture,
+            final @Nullable Object result,
+            final @Nullable Exception exception) {
+        if (exception == null) {
+            if (taskWithFuture.getFuture() != null) {
+                taskWithFuture.getFuture().set(result);
+            } else {
+                if (taskWithFuture.getSuccessCallback() != null) {
+                    singleWriterServiceImpl.getCallbackExecutors()[queueIndex].submit(() -> taskWithFuture
+                            .getSuccessCallback()
+                            .afterTask(result));
+                }
+            }
+        } else {
+            if (taskWithFuture.getFuture() != null) {
+                taskWithFuture.getFuture().setException(exception);
+            } else {
+                if (taskWithFuture.getFailedCallback() != null) {
+                    singleWriterServiceImpl.getCallbackExecutors()[queueIndex].submit(() -> taskWithFuture
+                            .getFailedCallback()
+                            .afterTask(exception));
+                }
+            }
+        }
+        taskCount.decrementAndGet();
+        bucketDepths.decrementAndGet(taskWithFuture.getBucketIndex());
+        singleWriterServiceImpl.getGlobalTaskCount().decrementAndGet();
+        if (queueTaskCounter.get(queueIndex).decrementAndGet() == 0) {
+            singleWriterServiceImpl.decrementNonemptyQueueCounter();
+        }
+    }
+
     @NotNull
     public ListenableFuture<Void> shutdown(final @Nullable Task<Void> finalTask) {
         if (shutdown.getAndSet(true)) {
@@ -309,18 +451,21 @@ public class ProducerQueuesImpl implements ProducerQueues {
         private final int bucketIndex;
         private final @Nullable SingleWriterServiceImpl.SuccessCallback<T> successCallback;
         private final @Nullable SingleWriterServiceImpl.FailedCallback failedCallback;
+        private final long enqueueTime;
 
         private TaskWithFuture(
                 final @Nullable SettableFuture<T> future,
                 final @NotNull Task task,
                 final int bucketIndex,
                 final @Nullable SingleWriterServiceImpl.SuccessCallback<T> successCallback,
-                final @Nullable SingleWriterServiceImpl.FailedCallback failedCallback) {
+                final @Nullable SingleWriterServiceImpl.FailedCallback failedCallback,
+                final long enqueueTime) {
             this.future = future;
             this.task = task;
             this.bucketIndex = bucketIndex;
             this.successCallback = successCallback;
             this.failedCallback = failedCallback;
+            this.enqueueTime = enqueueTime;
         }
 
         @Nullable
@@ -344,5 +489,9 @@ public class ProducerQueuesImpl implements ProducerQueues {
         @Nullable SingleWriterServiceImpl.FailedCallback getFailedCallback() {
             return failedCallback;
         }
+
+        long getEnqueueTime() {
+            return enqueueTime;
+        }
     }
 }
@@ -15,11 +15,17 @@
  */
 package com.hivemq.persistence;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.HiveMQMetrics;
+import com.hivemq.metrics.MetricsHolder;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
 import com.hivemq.util.Exceptions;
 import com.hivemq.util.ThreadFactoryUtil;
@@ -53,6 +59,8 @@ public class SingleWriterServiceImpl implements SingleWriterService {
     private static final int SUBSCRIPTION_QUEUE_INDEX = 2;
     private static final int QUEUED_MESSAGES_QUEUE_INDEX = 3;
     private static final int ATTRIBUTE_STORE_QUEUE_INDEX = 4;
+    private static final @NotNull String @NotNull [] PRODUCER_NAMES =
+            {"retained-messages", "client-sessions", "subscriptions", "queued-messages", "attributes"};
 
     private final int persistenceBucketCount;
     private final int threadPoolSize;
@@ -76,8 +84,16 @@ public class SingleWriterServiceImpl implements SingleWriterService {
 
     private final int amountOfQueues;
 
-    @Inject
+    private final @NotNull Meter groupCommitTasks;
+    private final @NotNull Histogram groupCommitSize;
+    private final @NotNull Timer groupCommitTime;
+
     public SingleWriterServiceImpl() {
+        this(new MetricsHolder(new MetricRegistry()));
+    }
+
+    @Inject
+    public SingleWriterServiceImpl(final @NotNull MetricsHolder metricsHolder) {
 
         persistenceBucketCount = InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get();
         threadPoolSize = InternalConfigurations.SINGLE_WRITER_THREAD_POOL_SIZE.get();
@@ -89,9 +105,17 @@ public class SingleWriterServiceImpl implements SingleWriterService {
 
         amountOfQueues = validAmountOfQueues(threadPoolSize, persistenceBucketCount);
 
+        final boolean groupCommit = InternalConfigurations.SINGLE_WRITER_GROUP_COMMIT_ENABLED.get();
         for (int i = 0; i < producers.length; i++) {
-            producers[i] = new ProducerQueuesImpl(this, amountOfQueues);
+            producers[i] = new ProducerQueuesImpl(this,
+                    amountOfQueues,
+                    groupCommit && (i == CLIENT_SESSION_QUEUE_INDEX || i == QUEUED_MESSAGES_QUEUE_INDEX),
+                    metricsHolder.getSingleWriterMetrics(PRODUCER_NAMES[i]));
         }
+        final MetricRegistry metricRegistry = metricsHolder.getMetricRegistry();
+        groupCommitTasks = metricRegistry.meter(HiveMQMetrics.SINGLE_WRITER_GROUP_COMMIT_TASKS.name());
+        groupCommitSize = metricRegistry.histogram(HiveMQMetrics.SINGLE_WRITER_GROUP_COMMIT_SIZE.name());
+        groupCommitTime = metricRegistry.timer(HiveMQMetrics.SINGLE_WRITER_GROUP_COMMIT_TIME.name());
 
         callbackExecutors = new ExecutorService[amountOfQueues];
         for (int i = 0; i < amountOfQueues; i++) {
@@ -161,6 +185,12 @@ public class SingleWriterServiceImpl implements SingleWriterService {
         return callbackExecutors[queueIndex];
     }
 
+    void recordGroupCommit(final int tasks, final long nanos) {
+        groupCommitTasks.mark(tasks);
+        groupCommitSize.update(tasks);
+        groupCommitTime.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
     public void decrementNonemptyQueueCounter() {
         nonemptyQueueCounter.decrementAndGet();
     }
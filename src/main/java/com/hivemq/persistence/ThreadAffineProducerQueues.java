@@ -0,0 +1,261 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.metrics.SingleWriterMetrics;
+import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
+import com.hivemq.util.ThreadFactoryUtil;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hivemq.persistence.SingleWriterService.Task;
+
+/**
+ * This class is responsible for the access of the persistences when the {@link ThreadAffineSingleWriter} is used.
+ * <p>
+ * Every task is handed to the writer that owns the bucket group of the task. The writer executes the tasks of its
+ * queue one after another, so the access is single-threaded for each bucket and the tasks for a bucket are executed
+ * in the order they were submitted. Success and failed callbacks are executed inline on the writer.
+ * <p>
+ * The queue depths and the sampled wait and execution times of the tasks are recorded like in the
+ * {@link ProducerQueuesImpl}. Credits are not used, so they are never exhausted.
+ */
+public class ThreadAffineProducerQueues implements ProducerQueues {
+
+    private final int bucketsPerQueue;
+
+    private final @NotNull AtomicBoolean shutdown = new AtomicBoolean(false);
+
+    private @Nullable ListenableFuture<Void> closeFuture;
+
+    private final int persistenceBucketCount;
+
+    private final @NotNull Executor @NotNull [] writers;
+
+    private final @NotNull SingleWriterMetrics metrics;
+    private final @NotNull AtomicLong taskCount = new AtomicLong();
+    private final @NotNull AtomicIntegerArray bucketDepths;
+
+    private final long shutdownGracePeriod;
+    // Initialized as long max value, to ensure that the grace period condition is not met, when shutdown is true but
+    // the start time is not yet set.
+    private long shutdownStartTime = Long.MAX_VALUE;
+
+    /**
+     * @param metrics the metrics of the tasks of this producer
+     */
+    public ThreadAffineProducerQueues(
+            final int persistenceBucketCount,
+            final @NotNull Executor @NotNull [] writers,
+            final @NotNull SingleWriterMetrics metrics) {
+        this.persistenceBucketCount = persistenceBucketCount;
+        this.writers = writers;
+        this.metrics = metrics;
+        bucketsPerQueue = persistenceBucketCount / writers.length;
+        shutdownGracePeriod = InternalConfigurations.PERSISTENCE_SHUTDOWN_GRACE_PERIOD_MSEC.get();
+        bucketDepths = new AtomicIntegerArray(persistenceBucketCount);
+        metrics.registerQueueDepths(taskCount::get, bucketDepths);
+    }
+
+    public <R> @NotNull ListenableFuture<R> submit(final @NotNull String key, final @NotNull Task<R> task) {
+        //noinspection ConstantConditions (future is never null if the callbacks are null)
+        return submitInternal(getBucket(key), task, null, null, false);
+    }
+
+    public <R> @NotNull ListenableFuture<R> submit(final int bucketIndex, final @NotNull Task<R> task) {
+        //noinspection ConstantConditions (future is never null if the callbacks are null)
+        return submitInternal(bucketIndex, task, null, null, false);
+    }
+
+    public <R> @Nullable ListenableFuture<R> submit(
+            final int bucketIndex,
+            final @NotNull Task<R> task,
+            final @Nullable SingleWriterService.SuccessCallback<R> successCallback,
+            final @Nullable SingleWriterService.FailedCallback failedCallback) {
+
+        return submitInternal(bucketIndex, task, successCallback, failedCallback, false);
+    }
+
+    private <R> @Nullable ListenableFuture<R> submitInternal(
+            final int bucketIndex,
+            final @NotNull Task<R> task,
+            final @Nullable SingleWriterService.SuccessCallback<R> successCallback,
+            final @Nullable SingleWriterService.FailedCallback failedCallback,
+            final boolean ignoreShutdown) {
+        if (!ignoreShutdown && shutdown.get() && System.currentTimeMillis() - shutdownStartTime > shutdownGracePeriod) {
+            return SettableFuture.create(); // Future will never return since we are shutting down.
+        }
+        final SettableFuture<R> resultFuture;
+        if (successCallback == null) {
+            resultFuture = SettableFuture.create();
+        } else {
+            resultFuture = null;
+        }
+
+        final long enqueueTime = metrics.taskSubmitted();
+        taskCount.incrementAndGet();
+        bucketDepths.incrementAndGet(bucketIndex);
+        writers[bucketIndex / bucketsPerQueue].execute(() -> {
+            final long startTime = metrics.taskStarted(enqueueTime);
+            R result = null;
+            Exception exception = null;
+            try {
+                result = task.doTask(bucketIndex);
+            } catch (final Exception e) {
+                exception = e;
+            }
+            metrics.taskExecuted(startTime);
+            taskCount.decrementAndGet();
+            bucketDepths.decrementAndGet(bucketIndex);
+            if (exception == null) {
+                if (resultFuture != null) {
+                    resultFuture.set(result);
+                } else {
+                    successCallback.afterTask(result);
+                }
+            } else {
+                if (resultFuture != null) {
+                    resultFuture.setException(exception);
+                } else if (failedCallback != null) {
+                    failedCallback.afterTask(exception);
+                }
+            }
+        });
+        return resultFuture;
+    }
+
+    /**
+     * submits the task for all buckets either parallel or sequential
+     *
+     * @param task     the task to submit
+     * @param <R>      the returned object
+     * @param parallel true for parallel, false for sequential
+     * @return a list of listenableFutures of type R
+     */
+    public @NotNull <R> List<ListenableFuture<R>> submitToAllBuckets(
+            final @NotNull Task<R> task, final boolean parallel) {
+        if (parallel) {
+            return submitToAllBucketsParallel(task, false);
+        } else {
+            return submitToAllBucketsSequential(task);
+        }
+    }
+
+    /**
+     * submits the task for all buckets at once
+     *
+     * @param task the task to submit
+     * @param <R>  the returned object
+     * @return a list of listenableFutures of type R
+     */
+    public @NotNull <R> List<ListenableFuture<R>> submitToAllBucketsParallel(final @NotNull Task<R> task) {
+        return submitToAllBucketsParallel(task, false);
+    }
+
+    private @NotNull <R> List<ListenableFuture<R>> submitToAllBucketsParallel(
+            final @NotNull Task<R> task, final boolean ignoreShutdown) {
+        final ImmutableList.Builder<ListenableFuture<R>> builder = ImmutableList.builder();
+        for (int bucket = 0; bucket < persistenceBucketCount; bucket++) {
+            //noinspection ConstantConditions (future is never null if the callbacks are null)
+            builder.add(submitInternal(bucket, task, null, null, ignoreShutdown));
+        }
+        return builder.build();
+    }
+
+    public @NotNull <R> List<ListenableFuture<R>> submitToAllBucketsSequential(final @NotNull Task<R> task) {
+
+        final ImmutableList.Builder<ListenableFuture<R>> builder = ImmutableList.builder();
+
+        ListenableFuture<R> previousFuture = Futures.immediateFuture(null);
+        for (int bucket = 0; bucket < persistenceBucketCount; bucket++) {
+            final int finalBucket = bucket;
+            final SettableFuture<R> future = SettableFuture.create();
+            previousFuture.addListener(() -> future.setFuture(submit(finalBucket, task)),
+                    MoreExecutors.directExecutor());
+            previousFuture = future;
+            builder.add(future);
+        }
+        return builder.build();
+    }
+
+    public int getBucket(final @NotNull String key) {
+        return BucketUtils.getBucket(key, persistenceBucketCount);
+    }
+
+    @NotNull
+    public ListenableFuture<Void> shutdown(final @Nullable Task<Void> finalTask) {
+        if (shutdown.getAndSet(true)) {
+            //guard from being called twice
+            //needed for integration tests because shutdown hooks for every Embedded HiveMQ are added to the JVM
+            //if the persistence is stopped manually this would result in errors, because the shutdown hook might be
+            //called twice.
+            if (closeFuture != null) {
+                return closeFuture;
+            }
+            return Futures.immediateFuture(null);
+        }
+
+        shutdownStartTime = System.currentTimeMillis();
+        // We create a temporary single thread executor when we shut down, so we don't waste a thread at runtime.
+        final ThreadFactory threadFactory = ThreadFactoryUtil.create("persistence-shutdown-%d");
+        final ListeningScheduledExecutorService executorService =
+                MoreExecutors.listeningDecorator(Executors.newSingleThreadScheduledExecutor(threadFactory));
+
+        closeFuture = executorService.schedule(() -> {
+                    // Even if no task has to be executed on shutdown, we still have to delay the success of the close
+                    // future by the shutdown grace period.
+                    if (finalTask != null) {
+                        Futures.allAsList(submitToAllBucketsParallel(finalTask, true)).get();
+                    } else {
+                        Futures.allAsList(submitToAllBucketsParallel((Task<Void>) (bucketIndex) -> null, true)).get();
+                    }
+                    return null;
+                },
+                shutdownGracePeriod + 50,
+                // We may have to delay the task for some milliseconds, because a task could just get enqueued.
+                TimeUnit.MILLISECONDS);
+
+        Futures.addCallback(closeFuture, new FutureCallback<>() {
+            @Override
+            public void onSuccess(final @Nullable Void aVoid) {
+                executorService.shutdown();
+            }
+
+            @Override
+            public void onFailure(final @NotNull Throwable throwable) {
+                executorService.shutdown();
+            }
+        }, executorService);
+        return closeFuture;
+    }
+}
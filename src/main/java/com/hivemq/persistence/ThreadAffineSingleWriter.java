@@ -0,0 +1,258 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
+import com.hivemq.util.ThreadFactoryUtil;
+import org.jctools.queues.MpscUnboundedArrayQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This SingleWriterService implementation assigns every group of buckets to exactly one dedicated writer thread.
+ * <p>
+ * All producers (retained messages, client sessions, subscriptions, queued messages and attributes) enqueue their
+ * tasks for a bucket group into the multi-producer single-consumer queue of the owning writer. The writer drains its
+ * queue and parks when it is empty, producers unpark it after enqueuing. In contrast to the
+ * {@link SingleWriterServiceImpl} no thread pool is scheduled, no queue is polled periodically and the success and
+ * failed callbacks of tasks are executed inline on the writer, because the writer is the only thread which ever
+ * accesses the buckets of its group. These callbacks are internal completions that must not block. Callbacks of
+ * other components are executed by the {@link #callbackExecutor(String)}, which is not the writer, so they may
+ * submit tasks and wait for their results.
+ * <p>
+ * Submitted tasks may block (for example for disk IO), but must never wait for another task of the single writer.
+ * Group commits are not supported, so this single writer is not used if they are enabled.
+ */
+@LazySingleton
+public class ThreadAffineSingleWriter implements SingleWriterService {
+
+    private static final @NotNull Logger log = LoggerFactory.getLogger(ThreadAffineSingleWriter.class);
+
+    private static final int AMOUNT_OF_PRODUCERS = 5;
+    private static final int RETAINED_MESSAGE_QUEUE_INDEX = 0;
+    private static final int CLIENT_SESSION_QUEUE_INDEX = 1;
+    private static final int SUBSCRIPTION_QUEUE_INDEX = 2;
+    private static final int QUEUED_MESSAGES_QUEUE_INDEX = 3;
+    private static final int ATTRIBUTE_STORE_QUEUE_INDEX = 4;
+    private static final @NotNull String @NotNull [] PRODUCER_NAMES =
+            {"retained-messages", "client-sessions", "subscriptions", "queued-messages", "attributes"};
+
+    private final int persistenceBucketCount;
+    private final int bucketsPerQueue;
+    private final long shutdownGracePeriod;
+
+    private final @NotNull ThreadAffineProducerQueues @NotNull [] producers =
+            new ThreadAffineProducerQueues[AMOUNT_OF_PRODUCERS];
+
+    @VisibleForTesting
+    final @NotNull Writer @NotNull [] writers;
+
+    @VisibleForTesting
+    final @NotNull ExecutorService @NotNull [] callbackExecutors;
+
+    public ThreadAffineSingleWriter() {
+        this(new MetricsHolder(new MetricRegistry()));
+    }
+
+    @Inject
+    public ThreadAffineSingleWriter(final @NotNull MetricsHolder metricsHolder) {
+
+        persistenceBucketCount = InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get();
+        shutdownGracePeriod = InternalConfigurations.PERSISTENCE_SHUTDOWN_GRACE_PERIOD_MSEC.get();
+        final int threadPoolSize = InternalConfigurations.SINGLE_WRITER_THREAD_POOL_SIZE.get();
+        final int amountOfQueues = validAmountOfQueues(threadPoolSize, persistenceBucketCount);
+        bucketsPerQueue = persistenceBucketCount / amountOfQueues;
+
+        final ThreadFactory threadFactory = ThreadFactoryUtil.create("single-writer-%d");
+        writers = new Writer[amountOfQueues];
+        for (int i = 0; i < amountOfQueues; i++) {
+            writers[i] = new Writer(threadFactory);
+        }
+        callbackExecutors = new ExecutorService[amountOfQueues];
+        for (int i = 0; i < amountOfQueues; i++) {
+            final ThreadFactory callbackThreadFactory = ThreadFactoryUtil.create("single-writer-callback-" + i);
+            callbackExecutors[i] = Executors.newSingleThreadExecutor(callbackThreadFactory);
+        }
+        for (int i = 0; i < producers.length; i++) {
+            producers[i] = new ThreadAffineProducerQueues(persistenceBucketCount,
+                    writers,
+                    metricsHolder.getSingleWriterMetrics(PRODUCER_NAMES[i]));
+        }
+        for (final Writer writer : writers) {
+            writer.thread.start();
+        }
+    }
+
+    @VisibleForTesting
+    int validAmountOfQueues(final int processorCount, final int bucketCount) {
+        for (int i = processorCount; i < bucketCount; i++) {
+            if (bucketCount % i == 0) {
+                return i;
+            }
+        }
+        return persistenceBucketCount;
+    }
+
+    public @NotNull ProducerQueues getRetainedMessageQueue() {
+        return producers[RETAINED_MESSAGE_QUEUE_INDEX];
+    }
+
+    public @NotNull ProducerQueues getClientSessionQueue() {
+        return producers[CLIENT_SESSION_QUEUE_INDEX];
+    }
+
+    public @NotNull ProducerQueues getSubscriptionQueue() {
+        return producers[SUBSCRIPTION_QUEUE_INDEX];
+    }
+
+    public @NotNull ProducerQueues getQueuedMessagesQueue() {
+        return producers[QUEUED_MESSAGES_QUEUE_INDEX];
+    }
+
+    public @NotNull ProducerQueues getAttributeStoreQueue() {
+        return producers[ATTRIBUTE_STORE_QUEUE_INDEX];
+    }
+
+    /**
+     * Callbacks for a key are executed by a callback thread of the bucket group of the key, not by its writer, so a
+     * callback may submit a task to the single writer and wait for its result.
+     */
+    public @NotNull Executor callbackExecutor(final @NotNull String key) {
+        final int bucketIndex = BucketUtils.getBucket(key, persistenceBucketCount);
+        return callbackExecutors[bucketIndex / bucketsPerQueue];
+    }
+
+    public int getPersistenceBucketCount() {
+        return persistenceBucketCount;
+    }
+
+    public void stop() {
+        final long start = System.currentTimeMillis();
+        if (log.isTraceEnabled()) {
+            log.trace("Shutting down single writer");
+        }
+        for (final Writer writer : writers) {
+            writer.shutdown();
+        }
+        try {
+            for (final Writer writer : writers) {
+                final long remaining = shutdownGracePeriod - (System.currentTimeMillis() - start);
+                if (remaining > 0) {
+                    writer.thread.join(remaining);
+                }
+            }
+            if (log.isTraceEnabled()) {
+                log.trace("Finished single writer shutdown in {} ms", (System.currentTimeMillis() - start));
+            }
+        } catch (final InterruptedException e) {
+            //ignore
+        }
+        for (final Writer writer : writers) {
+            writer.thread.interrupt();
+        }
+        for (final ExecutorService callbackExecutor : callbackExecutors) {
+            callbackExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * A writer owns one bucket group. It is the only consumer of its queue.
+     */
+    @VisibleForTesting
+    static class Writer implements Executor, Runnable {
+
+        /**
+         * Polls before the writer parks, so a burst of tasks does not pay for a park and unpark per task.
+         */
+        private static final int SPINS_BEFORE_PARK = 64;
+
+        private final @NotNull MpscUnboundedArrayQueue<Runnable> queue = new MpscUnboundedArrayQueue<>(1024);
+        final @NotNull Thread thread;
+
+        private volatile boolean parked;
+        private volatile boolean running = true;
+
+        Writer(final @NotNull ThreadFactory threadFactory) {
+            thread = threadFactory.newThread(this);
+        }
+
+        @Override
+        public void execute(final @NotNull Runnable command) {
+            queue.offer(command);
+            // The writer publishes that it parks before it checks the queue a last time, so either it sees this task
+            // or we see that it is (about to be) parked. An unpark before the park is remembered as a permit.
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            int spins = 0;
+            while (true) {
+                final Runnable task = queue.poll();
+                if (task != null) {
+                    spins = 0;
+                    runTask(task);
+                    continue;
+                }
+                if (!running) {
+                    if (queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                if (spins < SPINS_BEFORE_PARK) {
+                    spins++;
+                    Thread.onSpinWait();
+                    continue;
+                }
+                parked = true;
+                if (queue.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+                spins = 0;
+            }
+        }
+
+        private static void runTask(final @NotNull Runnable task) {
+            try {
+                task.run();
+            } catch (final Throwable throwable) {
+                log.error("Exception in single writer task", throwable);
+            }
+        }
+
+        void shutdown() {
+            running = false;
+            LockSupport.unpark(thread);
+        }
+    }
+}
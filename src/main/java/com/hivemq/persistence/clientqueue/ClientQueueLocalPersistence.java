@@ -35,6 +35,8 @@ import static com.hivemq.configuration.service.MqttConfigurationService.QueuedMe
  */
 public interface ClientQueueLocalPersistence extends LocalPersistence {
 
+    String PERSISTENCE_NAME = "client_queue";
+
     /**
      * Adds a PUBLISH to a client or shared subscription queue. If the size exceeds the queue limit, the given PUBLISH
      * or the oldest PUBLISH in the queue will be dropped dependent on the queued messages strategy.
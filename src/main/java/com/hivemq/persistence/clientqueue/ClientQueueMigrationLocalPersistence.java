@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.clientqueue;
+
+import com.google.common.collect.ImmutableList;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+
+/**
+ * A client queue local persistence whose queues can be read as a whole, which is needed to migrate the queued messages
+ * between the persistence types. In-memory persistences are never migrated and do not implement it.
+ */
+public interface ClientQueueMigrationLocalPersistence extends ClientQueueLocalPersistence {
+
+    /**
+     * Calls the callback for every queue with its QoS 1 and 2 messages in the order in which they are stored.
+     *
+     * @param callback called for every queue
+     */
+    void iterate(@NotNull QueueCallback callback);
+
+    interface QueueCallback {
+        void onItem(@NotNull ClientQueuePersistenceImpl.Key key, @NotNull ImmutableList<ClientQueueEntry> messages);
+    }
+}
@@ -21,6 +21,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.mqtt.message.MessageWithID;
 import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.persistence.util.CompletionCounter;
 
 import java.util.List;
 
@@ -43,6 +44,27 @@ public interface ClientQueuePersistence {
     @NotNull ListenableFuture<Void> add(
             @NotNull String queueId, boolean shared, @NotNull PUBLISH publish, boolean retained, long queueLimit);
 
+    /**
+     * Add a publish to the queue.
+     * The publish will be queued without a packet ID. The result is reported to the given completion counter instead
+     * of a future.
+     *
+     * @param queueId    of the queue
+     * @param shared     is true if the client is actually a shared subscription
+     * @param publish    to add
+     * @param retained   true if this message was sent in response to a subscribe.
+     *                   It is not necessarily the same as the retain flag of the publish.
+     * @param queueLimit of the client session or the default configuration.
+     * @param completion to register the add operation with, is marked as congested if the queue is congested
+     */
+    void add(
+            @NotNull String queueId,
+            boolean shared,
+            @NotNull PUBLISH publish,
+            boolean retained,
+            long queueLimit,
+            @NotNull CompletionCounter completion);
+
     /**
      * Add a list of publishes to the queue.
      * The publishes will be queued without packet IDs
@@ -61,6 +83,18 @@ public interface ClientQueuePersistence {
             boolean retained,
             final long queueLimit);
 
+    /**
+     * Add publishes to the queues of multiple clients in a single task.
+     * The publishes will be queued without packet IDs. A publish that can not be added to its queue does not prevent
+     * the other publishes from being added, but fails the completion.
+     *
+     * @param bucketIndex of the persistence bucket that contains the queues of all entries
+     * @param entries     the queue IDs of not shared subscriptions and the publishes to add
+     * @param completion  to register the add operation with, is marked as congested if any of the queues is congested
+     */
+    void addToBucket(
+            int bucketIndex, @NotNull List<ClientQueueBatchEntry> entries, @NotNull CompletionCounter completion);
+
     /**
      * Read publishes that are not yet in-flight.
      * Sets the given packet ID's for the returned publishes if qos > 0.
@@ -175,6 +209,16 @@ public interface ClientQueuePersistence {
      */
     @NotNull ListenableFuture<Void> removeAllQos0Messages(@NotNull String queueId, boolean shared);
 
+    /**
+     * Returns if the queue of a client is known to be empty, without waiting for the single writer. The state is
+     * updated by the single writer whenever the queue is read or messages are added or removed, so it can be outdated
+     * by a concurrent change.
+     *
+     * @param client of the queue
+     * @return true if the queue was empty after its last change, false if it holds messages or its state is unknown,
+     *         e.g. before the queue was read for the first time after a restart
+     */
+    boolean isQueueEmpty(@NotNull String client);
 
     /**
      * Notify that the client is connected and publishes are available
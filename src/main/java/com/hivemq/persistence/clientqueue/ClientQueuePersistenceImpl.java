@@ -20,10 +20,14 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.primitives.ImmutableIntArray;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.hivemq.annotations.ExecuteInSingleWriter;
 import com.hivemq.bootstrap.ClientConnection;
 import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
 import com.hivemq.configuration.service.MqttConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.metrics.SampledTimer;
 import com.hivemq.mqtt.message.MessageWithID;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.mqtt.message.pubrel.PUBREL;
@@ -37,16 +41,23 @@ import com.hivemq.persistence.clientsession.ClientSession;
 import com.hivemq.persistence.clientsession.SharedSubscriptionService;
 import com.hivemq.persistence.connection.ConnectionPersistence;
 import com.hivemq.persistence.local.ClientSessionLocalPersistence;
+import com.hivemq.persistence.util.CompletionCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 @LazySingleton
 public class ClientQueuePersistenceImpl extends AbstractPersistence implements ClientQueuePersistence {
 
+    private static final Logger log = LoggerFactory.getLogger(ClientQueuePersistenceImpl.class);
+
     public static final int SHARED_IN_FLIGHT_MARKER = 1;
 
     @NotNull
@@ -63,6 +74,15 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
     private final ConnectionPersistence connectionPersistence;
     @NotNull
     private final PublishPollService publishPollService;
+    @NotNull
+    private final SampledTimer queueTimer;
+    @NotNull
+    private final ClientQueuePressure queuePressure;
+    /**
+     * The clients whose queues were empty after their last change. Queues of unknown state are not contained.
+     */
+    @NotNull
+    private final Set<String> emptyQueues = ConcurrentHashMap.newKeySet();
 
     @Inject
     public ClientQueuePersistenceImpl(
@@ -72,7 +92,9 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
             @NotNull final ClientSessionLocalPersistence clientSessionLocalPersistence,
             @NotNull final LocalTopicTree topicTree,
             @NotNull final ConnectionPersistence connectionPersistence,
-            @NotNull final PublishPollService publishPollService) {
+            @NotNull final PublishPollService publishPollService,
+            @NotNull final MetricsHolder metricsHolder,
+            @NotNull final ClientQueuePressure queuePressure) {
         this.localPersistence = localPersistence;
         this.mqttConfigurationService = mqttConfigurationService;
         this.clientSessionLocalPersistence = clientSessionLocalPersistence;
@@ -80,6 +102,8 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
         this.connectionPersistence = connectionPersistence;
         this.publishPollService = publishPollService;
         singleWriter = singleWriterService.getQueuedMessagesQueue();
+        queueTimer = metricsHolder.getPublishQueueTimer();
+        this.queuePressure = queuePressure;
     }
 
     @Override
@@ -97,7 +121,47 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
             return Futures.immediateFailedFuture(exception);
         }
 
+        final long start = queueTimer.start();
         return singleWriter.submit(queueId, (bucketIndex) -> {
+            addLocally(queueId, shared, publish, retained, queueLimit, bucketIndex, start);
+            return null;
+        });
+    }
+
+    @Override
+    public void add(
+            @NotNull final String queueId,
+            final boolean shared,
+            @NotNull final PUBLISH publish,
+            final boolean retained,
+            final long queueLimit,
+            @NotNull final CompletionCounter completion) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        checkNotNull(publish, "Publish must not be null");
+
+        final long start = queueTimer.start();
+        completion.expect();
+        singleWriter.submit(singleWriter.getBucket(queueId), (bucketIndex) -> {
+            if (addLocally(queueId, shared, publish, retained, queueLimit, bucketIndex, start)) {
+                completion.congested();
+            }
+            return null;
+        }, completion, completion);
+    }
+
+    /**
+     * @return whether the queue is congested after the message was added
+     */
+    private boolean addLocally(
+            @NotNull final String queueId,
+            final boolean shared,
+            @NotNull final PUBLISH publish,
+            final boolean retained,
+            final long queueLimit,
+            final int bucketIndex,
+            final long start) {
+        queueNotEmpty(queueId, shared);
+        try {
             localPersistence.add(queueId,
                     shared,
                     publish,
@@ -105,16 +169,19 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
                     mqttConfigurationService.getQueuedMessagesStrategy(),
                     retained,
                     bucketIndex);
-            final int queueSize = localPersistence.size(queueId, shared, bucketIndex);
-            if (queueSize == 1) {
-                if (shared) {
-                    sharedPublishAvailable(queueId);
-                } else {
-                    publishAvailable(queueId);
-                }
+        } finally {
+            queueTimer.stop(start);
+        }
+        final int queueSize = localPersistence.size(queueId, shared, bucketIndex);
+        final boolean congested = queuePressure.added(queueId, shared, queueSize, queueLimit);
+        if (queueSize == 1) {
+            if (shared) {
+                sharedPublishAvailable(queueId);
+            } else {
+                publishAvailable(queueId);
             }
-            return null;
-        });
+        }
+        return congested;
     }
 
     @Override
@@ -133,6 +200,7 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
         }
 
         return singleWriter.submit(queueId, (bucketIndex) -> {
+            queueNotEmpty(queueId, shared);
             final boolean queueWasEmpty = localPersistence.size(queueId, shared, bucketIndex) == 0;
             localPersistence.add(queueId,
                     shared,
@@ -141,6 +209,9 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
                     mqttConfigurationService.getQueuedMessagesStrategy(),
                     retained,
                     bucketIndex);
+            if (queuePressure.isEnabled()) {
+                queuePressure.added(queueId, shared, localPersistence.size(queueId, shared, bucketIndex), queueLimit);
+            }
             if (queueWasEmpty) {
                 if (shared) {
                     sharedPublishAvailable(queueId);
@@ -152,6 +223,51 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
         });
     }
 
+    @Override
+    public void addToBucket(
+            final int bucketIndex,
+            @NotNull final List<ClientQueueBatchEntry> entries,
+            @NotNull final CompletionCounter completion) {
+        checkNotNull(entries, "Entries must not be null");
+
+        final long start = queueTimer.start();
+        completion.expect();
+        singleWriter.submit(bucketIndex, (bucketIdx) -> {
+            final MqttConfigurationService.QueuedMessagesStrategy strategy =
+                    mqttConfigurationService.getQueuedMessagesStrategy();
+            for (final ClientQueueBatchEntry entry : entries) {
+                final String queueId = entry.getQueueId();
+                queueNotEmpty(queueId, false);
+                try {
+                    localPersistence.add(queueId,
+                            false,
+                            entry.getPublish(),
+                            entry.getQueueLimit(),
+                            strategy,
+                            false,
+                            bucketIdx);
+                    final int queueSize = localPersistence.size(queueId, false, bucketIdx);
+                    if (queuePressure.added(queueId, false, queueSize, entry.getQueueLimit())) {
+                        completion.congested();
+                    }
+                    if (queueSize == 1) {
+                        publishAvailable(queueId);
+                    }
+                } catch (final Exception e) {
+                    log.error("Unable to queue message with id {} for client {}.",
+                            entry.getPublish().getUniqueId(),
+                            queueId,
+                            e);
+                    // The other entries are still added, but the publish must not be reported as delivered
+                    completion.expect();
+                    completion.fail(e);
+                }
+            }
+            queueTimer.stop(start);
+            return null;
+        }, completion, completion);
+    }
+
     @Override
     public void publishAvailable(@NotNull final String client) {
         final ClientSession session = clientSessionLocalPersistence.getSession(client);
@@ -190,9 +306,13 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
         } catch (final Exception exception) {
             return Futures.immediateFailedFuture(exception);
         }
-        return singleWriter.submit(
-                queueId,
-                bucketIndex -> localPersistence.readNew(queueId, shared, packetIds, byteLimit, bucketIndex));
+        return singleWriter.submit(queueId, bucketIndex -> {
+            final ImmutableList<PUBLISH> publishes =
+                    localPersistence.readNew(queueId, shared, packetIds, byteLimit, bucketIndex);
+            updateQueuePressure(queueId, shared, bucketIndex);
+            updateEmptyQueue(queueId, shared, bucketIndex);
+            return publishes;
+        });
     }
 
     @Override
@@ -224,6 +344,8 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
         checkNotNull(client, "Client ID must not be null");
         return singleWriter.submit(client, (bucketIndex) -> {
             localPersistence.remove(client, packetId, bucketIndex);
+            updateQueuePressure(client, false, bucketIndex);
+            updateEmptyQueue(client, false, bucketIndex);
             return null;
         });
     }
@@ -233,6 +355,8 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
     public ListenableFuture<Void> putPubrel(@NotNull final String client, final int packetId) {
         checkNotNull(client, "Client must not be null");
         return singleWriter.submit(client, (bucketIndex) -> {
+            // an unknown PUBREL is added to the queue
+            queueNotEmpty(client, false);
             localPersistence.replace(client, new PUBREL(packetId), bucketIndex);
             return null;
         });
@@ -244,6 +368,9 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
         checkNotNull(queueId, "Queue ID must not be");
         return singleWriter.submit(queueId, (bucketIndex) -> {
             localPersistence.clear(queueId, shared, bucketIndex);
+            updateQueuePressure(queueId, shared, bucketIndex);
+            // the queue is usually cleared because the session is removed, so its state is forgotten
+            queueNotEmpty(queueId, shared);
             return null;
         });
     }
@@ -269,6 +396,14 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
                     localPersistence.clear(sharedQueue, true, bucketIndex);
                 }
             }
+            if (queuePressure.isEnabled()) {
+                // expired messages were removed from the queues of this bucket
+                for (final Key key : queuePressure.getCongestedQueues()) {
+                    if (singleWriter.getBucket(key.getQueueId()) == bucketIndex1) {
+                        updateQueuePressure(key.getQueueId(), key.isShared(), bucketIndex1);
+                    }
+                }
+            }
             return null;
         });
     }
@@ -285,6 +420,7 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
             @NotNull final String sharedSubscription, @NotNull final String uniqueId) {
         return singleWriter.submit(sharedSubscription, (bucketIndex) -> {
             localPersistence.removeShared(sharedSubscription, uniqueId, bucketIndex);
+            updateQueuePressure(sharedSubscription, true, bucketIndex);
             return null;
         });
     }
@@ -307,10 +443,46 @@ public class ClientQueuePersistenceImpl extends AbstractPersistence implements C
     public ListenableFuture<Void> removeAllQos0Messages(@NotNull final String queueId, final boolean shared) {
         return singleWriter.submit(queueId, (bucketIndex) -> {
             localPersistence.removeAllQos0Messages(queueId, shared, bucketIndex);
+            updateQueuePressure(queueId, shared, bucketIndex);
+            updateEmptyQueue(queueId, shared, bucketIndex);
             return null;
         });
     }
 
+    @Override
+    public boolean isQueueEmpty(@NotNull final String client) {
+        return emptyQueues.contains(client);
+    }
+
+    /**
+     * Must be called before messages are added to the queue, so it is never considered empty while it is not.
+     */
+    @ExecuteInSingleWriter
+    private void queueNotEmpty(@NotNull final String queueId, final boolean shared) {
+        if (!shared) {
+            emptyQueues.remove(queueId);
+        }
+    }
+
+    @ExecuteInSingleWriter
+    private void updateEmptyQueue(@NotNull final String queueId, final boolean shared, final int bucketIndex) {
+        if (shared) {
+            return;
+        }
+        if (localPersistence.size(queueId, false, bucketIndex) == 0) {
+            emptyQueues.add(queueId);
+        } else {
+            emptyQueues.remove(queueId);
+        }
+    }
+
+    @ExecuteInSingleWriter
+    private void updateQueuePressure(@NotNull final String queueId, final boolean shared, final int bucketIndex) {
+        if (queuePressure.isCongested(queueId, shared)) {
+            queuePressure.shrunk(queueId, shared, localPersistence.size(queueId, shared, bucketIndex));
+        }
+    }
+
     public static class Key implements Comparable<Key> {
 
         @NotNull
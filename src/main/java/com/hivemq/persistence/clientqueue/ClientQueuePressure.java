@@ -0,0 +1,166 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.clientqueue;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.metrics.HiveMQMetrics;
+import com.hivemq.persistence.clientqueue.ClientQueuePersistenceImpl.Key;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the pressure on the client queues, which is used for the back-pressure of publishers.
+ * <p>
+ * A client queue is congested if it is filled above a percentage of its limit, and stays congested until it dropped to
+ * the resume percentage of this fill level. The client queues are under pressure if too many queues are congested or
+ * the queued messages use too much memory, and stay under pressure until both dropped to the resume percentage of
+ * the thresholds. Only the publishers of messages that are added to congested queues are paused.
+ */
+@Singleton
+public class ClientQueuePressure {
+
+    private final boolean enabled;
+    private final double fillRatio;
+    private final double resumeRatio;
+    private final int congestedQueuesThreshold;
+    private final int congestedQueuesResume;
+    private final long queuedBytesThreshold;
+    private final long queuedBytesResume;
+    private final @NotNull MetricRegistry metricRegistry;
+
+    /**
+     * Maps every congested queue to the size it has to drop to, to be no longer congested.
+     */
+    private final @NotNull ConcurrentHashMap<Key, Long> congestedQueues = new ConcurrentHashMap<>();
+
+    private @Nullable Gauge<?> queuedBytesGauge;
+    private volatile boolean underPressure;
+
+    @Inject
+    public ClientQueuePressure(final @NotNull MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+        enabled = InternalConfigurations.PUBLISH_BACK_PRESSURE_ENABLED.get();
+        fillRatio = InternalConfigurations.PUBLISH_BACK_PRESSURE_QUEUE_FILL_PERCENT.get() / 100.0;
+        resumeRatio = InternalConfigurations.PUBLISH_BACK_PRESSURE_RESUME_PERCENT.get() / 100.0;
+        congestedQueuesThreshold = InternalConfigurations.PUBLISH_BACK_PRESSURE_CONGESTED_QUEUES.get();
+        congestedQueuesResume = (int) (congestedQueuesThreshold * resumeRatio);
+        queuedBytesThreshold = InternalConfigurations.PUBLISH_BACK_PRESSURE_QUEUED_BYTES.get();
+        queuedBytesResume = (long) (queuedBytesThreshold * resumeRatio);
+
+        if (enabled) {
+            metricRegistry.register(HiveMQMetrics.QUEUED_MESSAGES_CONGESTED_QUEUES_CURRENT.name(),
+                    (Gauge<Integer>) congestedQueues::size);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Must be called after a message was added to a queue.
+     *
+     * @param queueId    the id of the queue
+     * @param shared     whether the queue is the queue of a shared subscription
+     * @param size       the size of the queue after the message was added
+     * @param queueLimit the limit of the queue
+     * @return whether the queue is congested, so the publisher of the message has to be paused while the client
+     *         queues are under pressure
+     */
+    public boolean added(final @NotNull String queueId, final boolean shared, final int size, final long queueLimit) {
+        if (!enabled || queueLimit <= 0) {
+            return false;
+        }
+        final double congestedSize = queueLimit * fillRatio;
+        if (size >= congestedSize) {
+            congestedQueues.putIfAbsent(new Key(queueId, shared), (long) (congestedSize * resumeRatio));
+            return true;
+        }
+        return isCongested(queueId, shared);
+    }
+
+    /**
+     * @return whether the queue is currently congested, only congested queues have to be reported as {@link
+     *         #shrunk(String, boolean, int)}
+     */
+    public boolean isCongested(final @NotNull String queueId, final boolean shared) {
+        return enabled && !congestedQueues.isEmpty() && congestedQueues.containsKey(new Key(queueId, shared));
+    }
+
+    /**
+     * Must be called after messages were removed from a congested queue.
+     *
+     * @param queueId the id of the queue
+     * @param shared  whether the queue is the queue of a shared subscription
+     * @param size    the size of the queue after the messages were removed
+     */
+    public void shrunk(final @NotNull String queueId, final boolean shared, final int size) {
+        congestedQueues.computeIfPresent(new Key(queueId, shared),
+                (key, resumeSize) -> size <= resumeSize ? null : resumeSize);
+    }
+
+    public @NotNull Set<Key> getCongestedQueues() {
+        return congestedQueues.keySet();
+    }
+
+    /**
+     * @return whether the client queues are under pressure, so publishers have to be paused
+     */
+    public boolean isUnderPressure() {
+        if (!enabled) {
+            return false;
+        }
+        final int congested = congestedQueues.size();
+        final long queuedBytes = queuedBytes();
+        if (underPressure) {
+            if (congested <= congestedQueuesResume && queuedBytes <= queuedBytesResume) {
+                underPressure = false;
+            }
+        } else if (congested >= congestedQueuesThreshold || queuedBytes >= queuedBytesThreshold) {
+            underPressure = true;
+        }
+        return underPressure;
+    }
+
+    /**
+     * @return the memory usage of the queued messages if the memory persistence is used, 0 otherwise
+     */
+    @VisibleForTesting
+    long queuedBytes() {
+        Gauge<?> gauge = queuedBytesGauge;
+        if (gauge == null) {
+            // the queue persistence is created lazily
+            final Metric metric =
+                    metricRegistry.getMetrics().get(HiveMQMetrics.QUEUED_MESSAGES_MEMORY_PERSISTENCE_TOTAL_SIZE.name());
+            if (!(metric instanceof Gauge)) {
+                return 0;
+            }
+            gauge = (Gauge<?>) metric;
+            queuedBytesGauge = gauge;
+        }
+        final Object value = gauge.getValue();
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+}
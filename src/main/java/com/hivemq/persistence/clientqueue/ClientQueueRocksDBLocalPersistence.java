@@ -0,0 +1,1295 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.clientqueue;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.ImmutableIntArray;
+import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.configuration.service.MqttConfigurationService.QueuedMessagesStrategy;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.mqtt.message.MessageWithID;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.dropping.MessageDroppedService;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.mqtt.message.pubrel.PUBREL;
+import com.hivemq.persistence.PersistenceStartup;
+import com.hivemq.persistence.local.rocksdb.RocksDBLocalPersistence;
+import com.hivemq.persistence.local.xodus.XodusUtils;
+import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
+import com.hivemq.persistence.payload.PayloadPersistenceException;
+import com.hivemq.persistence.payload.PublishPayloadPersistence;
+import com.hivemq.util.LocalPersistenceFileUtil;
+import com.hivemq.util.Strings;
+import com.hivemq.util.ThreadPreConditions;
+import jetbrains.exodus.ByteIterable;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Slice;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.hivemq.configuration.service.InternalConfigurations.QOS_0_MEMORY_HARD_LIMIT_DIVISOR;
+import static com.hivemq.persistence.clientqueue.ClientQueuePersistenceImpl.Key;
+import static com.hivemq.util.ThreadPreConditions.SINGLE_WRITER_THREAD_PREFIX;
+
+/**
+ * A {@link ClientQueueLocalPersistence} that stores the qos 1 and 2 messages in RocksDB.
+ * <p>
+ * The keys are the same as the ones of the {@link ClientQueueXodusLocalPersistence}: the queue id, the shared flag
+ * and the message index. As RocksDB orders the keys bytewise as well, all messages of a queue are stored next to each
+ * other in the order they were added. A queue is read by seeking to its prefix with an upper bound right behind the
+ * prefix, so the iterator never leaves the queue. All modifications of one call are committed in one {@link
+ * WriteBatch}. The in-memory queue sizes and the payload references of the stored messages are only changed after the
+ * batch was written, a failed write is thrown to the single writer.
+ */
+@LazySingleton
+public class ClientQueueRocksDBLocalPersistence extends RocksDBLocalPersistence
+        implements ClientQueueMigrationLocalPersistence {
+
+    private static final @NotNull Logger log = LoggerFactory.getLogger(ClientQueueRocksDBLocalPersistence.class);
+
+    public static final String PERSISTENCE_VERSION = "040500_R";
+    private static final int LINKED_LIST_NODE_OVERHEAD = 24;
+
+    private final @NotNull ClientQueuePersistenceSerializer serializer;
+    private final @NotNull MessageDroppedService messageDroppedService;
+    private final @NotNull PublishPayloadPersistence payloadPersistence;
+
+    private final @NotNull ConcurrentHashMap<Integer, Map<Key, AtomicInteger>> queueSizeBuckets;
+    private final @NotNull ConcurrentHashMap<Integer, Map<Key, AtomicInteger>> retainedQueueSizeBuckets;
+    private final @NotNull ConcurrentHashMap<Integer, Map<Key, LinkedList<PublishWithRetained>>> qos0MessageBuckets;
+    private final @NotNull ConcurrentHashMap<String, AtomicInteger> clientQos0MemoryMap;
+
+    private final int retainedMessageMax;
+    private final long qos0MemoryLimit;
+    private final int qos0ClientMemoryLimit;
+    private final @NotNull AtomicLong qos0MessagesMemory = new AtomicLong();
+
+    // this caches the lower bound for a publish without packet-id,
+    // the cached index is guaranteed to be lower or equal to the index
+    // so it is safe to seek to this index without missing a publish without packet-id
+    @VisibleForTesting
+    final @NotNull Cache<String, Long> sharedSubLastPacketWithoutIdCache;
+
+    @Inject
+    ClientQueueRocksDBLocalPersistence(
+            final @NotNull PublishPayloadPersistence payloadPersistence,
+            final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
+            final @NotNull PersistenceStartup persistenceStartup,
+            final @NotNull MessageDroppedService messageDroppedService) {
+        super(localPersistenceFileUtil,
+                persistenceStartup,
+                InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get(),
+                InternalConfigurations.CLIENT_QUEUE_MEMTABLE_SIZE_PORTION,
+                InternalConfigurations.CLIENT_QUEUE_BLOCK_CACHE_SIZE_PORTION,
+                InternalConfigurations.CLIENT_QUEUE_BLOCK_SIZE_BYTES,
+                InternalConfigurations.CLIENT_QUEUE_PERSISTENCE_TYPE.get() == PersistenceType.FILE_NATIVE);
+        this.retainedMessageMax = InternalConfigurations.RETAINED_MESSAGE_QUEUE_SIZE.get();
+        this.qos0ClientMemoryLimit = InternalConfigurations.QOS_0_MEMORY_LIMIT_PER_CLIENT_BYTES.get();
+        this.serializer = new ClientQueuePersistenceSerializer(payloadPersistence);
+        this.messageDroppedService = messageDroppedService;
+        this.payloadPersistence = payloadPersistence;
+        this.queueSizeBuckets = new ConcurrentHashMap<>();
+        this.retainedQueueSizeBuckets = new ConcurrentHashMap<>();
+        this.qos0MessageBuckets = new ConcurrentHashMap<>();
+        this.clientQos0MemoryMap = new ConcurrentHashMap<>();
+        this.qos0MemoryLimit = getQos0MemoryLimit();
+        this.sharedSubLastPacketWithoutIdCache = CacheBuilder.newBuilder()
+                .maximumSize(InternalConfigurations.SHARED_SUBSCRIPTION_WITHOUT_PACKET_ID_CACHE_MAX_SIZE_ENTRIES.get())
+                .expireAfterAccess(60, TimeUnit.SECONDS)
+                .build();
+    }
+
+    private long getQos0MemoryLimit() {
+        final long maxHeap = Runtime.getRuntime().maxMemory();
+        final int hardLimitDivisor = QOS_0_MEMORY_HARD_LIMIT_DIVISOR.get();
+        //fallback to default if config failed
+        final long maxHardLimit = hardLimitDivisor < 1 ? maxHeap / 4 : maxHeap / hardLimitDivisor;
+        log.debug("{} allocated for qos 0 inflight messages", Strings.convertBytes(maxHardLimit));
+        return maxHardLimit;
+    }
+
+    @NotNull
+    @Override
+    protected String getName() {
+        return PERSISTENCE_NAME;
+    }
+
+    @NotNull
+    @Override
+    protected String getVersion() {
+        return PERSISTENCE_VERSION;
+    }
+
+    @NotNull
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+
+    @PostConstruct
+    protected void postConstruct() {
+        super.postConstruct();
+    }
+
+    @Override
+    protected void init() {
+        log.debug("Initializing payload reference count and queue sizes for {} persistence.", PERSISTENCE_NAME);
+
+        for (int i = 0; i < buckets.length; i++) {
+            qos0MessageBuckets.put(i, new ConcurrentHashMap<>());
+            queueSizeBuckets.put(i, new ConcurrentSkipListMap<>());
+            retainedQueueSizeBuckets.put(i, new ConcurrentHashMap<>());
+        }
+
+        long nextMessageIndex = Long.MAX_VALUE / 2;
+        for (final RocksDB bucket : buckets) {
+            try (final RocksIterator iterator = bucket.newIterator()) {
+                iterator.seekToFirst();
+                while (iterator.isValid()) {
+                    final ByteIterable serializedKey = XodusUtils.bytesToByteIterable(iterator.key());
+                    final ByteIterable serializedValue = XodusUtils.bytesToByteIterable(iterator.value());
+                    final Key key = serializer.deserializeKeyId(serializedKey);
+                    final int bucketIndex = BucketUtils.getBucket(key.getQueueId(), getBucketCount());
+
+                    final MessageWithID messageWithID = serializer.deserializeValue(serializedValue);
+                    if (messageWithID instanceof PUBLISH) {
+                        final PUBLISH publish = (PUBLISH) messageWithID;
+                        nextMessageIndex = Math.max(nextMessageIndex, serializer.deserializeIndex(serializedKey) + 1);
+                        payloadPersistence.incrementReferenceCounterOnBootstrap(publish.getPublishId());
+                    }
+                    getOrPutQueueSize(key, bucketIndex).incrementAndGet();
+                    if (serializer.deserializeRetained(serializedValue)) {
+                        getOrPutRetainedQueueSize(key, bucketIndex).incrementAndGet();
+                    }
+                    iterator.next();
+                }
+            }
+        }
+
+        ClientQueuePersistenceSerializer.NEXT_PUBLISH_NUMBER.set(nextMessageIndex);
+    }
+
+    private void decrementSharedSubscriptionIndexFirstMessageWithoutPacketId(
+            final @NotNull String sharedSubId, final long newIndex) {
+        final Long previous = sharedSubLastPacketWithoutIdCache.getIfPresent(sharedSubId);
+        if (previous == null || previous > newIndex) {
+            sharedSubLastPacketWithoutIdCache.put(sharedSubId, newIndex);
+        }
+    }
+
+    private void incrementSharedSubscriptionIndexFirstMessageWithoutPacketId(
+            final @NotNull String sharedSubId, final long newIndex) {
+        final Long previous = sharedSubLastPacketWithoutIdCache.getIfPresent(sharedSubId);
+        if (previous == null || previous < newIndex) {
+            sharedSubLastPacketWithoutIdCache.put(sharedSubId, newIndex);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void add(
+            final @NotNull String queueId,
+            final boolean shared,
+            final @NotNull PUBLISH publish,
+            final long max,
+            final @NotNull QueuedMessagesStrategy strategy,
+            final boolean retained,
+            final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        checkNotNull(publish, "Publish must not be null");
+        checkNotNull(strategy, "Strategy must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        add(queueId, shared, List.of(publish), max, strategy, retained, bucketIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void add(
+            final @NotNull String queueId,
+            final boolean shared,
+            final @NotNull List<PUBLISH> publishes,
+            final long max,
+            final @NotNull QueuedMessagesStrategy strategy,
+            final boolean retained,
+            final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        checkNotNull(publishes, "Publishes must not be null");
+        checkNotNull(strategy, "Strategy must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(queueId, shared);
+        final ImmutableList.Builder<PUBLISH> qos1and2Publishes = ImmutableList.builder();
+        for (final PUBLISH publish : publishes) {
+            if (publish.getQoS() == QoS.AT_MOST_ONCE) {
+                addQos0Publish(key, new PublishWithRetained(publish, retained), bucketIndex);
+            } else {
+                qos1and2Publishes.add(publish);
+            }
+        }
+
+        final RocksDB bucket = buckets[bucketIndex];
+
+        final AtomicInteger queueSize = getOrPutQueueSize(key, bucketIndex);
+        final AtomicInteger retainedQueueSize = getOrPutRetainedQueueSize(key, bucketIndex);
+        final int qos0Size = qos0Size(key, bucketIndex);
+
+        // The messages added by this call are not visible to the iterator over the stored messages, so they are
+        // remembered in order to discard them after all stored messages were discarded.
+        final ArrayDeque<AddedPublish> added = new ArrayDeque<>();
+        final List<Runnable> afterWrite = new ArrayList<>();
+        int addedCount = 0;
+        QueueIterator oldest = null;
+        try (final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions options = new WriteOptions()) {
+            for (final PUBLISH publish : qos1and2Publishes.build()) {
+
+                // The sizes are only increased after the write, so the messages added by this call are counted here
+                final int currentRetainedQueueSize = retainedQueueSize.get() + (retained ? addedCount : 0);
+                final int qos1And2QueueSize = queueSize.get() + addedCount - qos0Size - currentRetainedQueueSize;
+                final boolean full = retained ?
+                        currentRetainedQueueSize >= retainedMessageMax :
+                        qos1And2QueueSize >= max;
+
+                if (full) {
+                    if (strategy == QueuedMessagesStrategy.DISCARD) {
+                        logAndDecrementPayloadReference(publish, shared, queueId);
+                        continue;
+                    }
+                    if (oldest == null) {
+                        oldest = new QueueIterator(bucket, key);
+                        seekQueue(oldest, key, true);
+                    }
+                    if (!discardOldest(oldest, key, retained, writeBatch, afterWrite) &&
+                            !discardAdded(added, key, writeBatch, afterWrite)) {
+                        //If there is no other message that could be dropped than this message will not be added
+                        logAndDecrementPayloadReference(publish, shared, queueId);
+                        continue;
+                    }
+                } else {
+                    addedCount++;
+                }
+                final byte[] keyBytes = bytes(serializer.serializeNewPublishKey(key));
+                writeBatch.put(keyBytes, bytes(serializer.serializePublishWithoutPacketId(publish, retained)));
+                added.add(new AddedPublish(keyBytes, publish));
+            }
+            bucket.write(options, writeBatch);
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while adding messages to the client queue persistence.");
+            log.debug("Original Exception:", e);
+            throw writeFailed(e);
+        } finally {
+            if (oldest != null) {
+                oldest.close();
+            }
+        }
+        queueSize.addAndGet(addedCount);
+        if (retained) {
+            retainedQueueSize.addAndGet(addedCount);
+        }
+        afterWrite.forEach(Runnable::run);
+    }
+
+    /**
+     * Discards the oldest stored message that is not in-flight and has the given retained flag. The iterator must be
+     * positioned with {@link #seekQueue(QueueIterator, Key, boolean)} skipping the in-flight messages and is moved
+     * behind the discarded message, so repeated calls discard the messages in their order.
+     *
+     * @return true if a message was discarded, else false
+     */
+    private boolean discardOldest(
+            final @NotNull QueueIterator iterator,
+            final @NotNull Key key,
+            final boolean retainedOnly,
+            final @NotNull WriteBatch writeBatch,
+            final @NotNull List<Runnable> afterWrite) throws RocksDBException {
+
+        while (iterator.isValid()) {
+            final ByteIterable value = iterator.value();
+            // Messages that are queue as retained messages are not discarded,
+            // otherwise a client could only receive a limited amount of retained message per subscription.
+            if (serializer.deserializeRetained(value) == retainedOnly) {
+                final PUBLISH publish = (PUBLISH) serializer.deserializeValue(value);
+                afterWrite.add(() -> logAndDecrementPayloadReference(publish, key.isShared(), key.getQueueId()));
+                writeBatch.delete(bytes(iterator.key()));
+                iterator.next();
+                return true;
+            }
+            iterator.next();
+        }
+        return false;
+    }
+
+    /**
+     * @return true if a message that was added in the same write batch was discarded, else false
+     */
+    private boolean discardAdded(
+            final @NotNull ArrayDeque<AddedPublish> added,
+            final @NotNull Key key,
+            final @NotNull WriteBatch writeBatch,
+            final @NotNull List<Runnable> afterWrite) throws RocksDBException {
+
+        final AddedPublish addedPublish = added.poll();
+        if (addedPublish == null) {
+            return false;
+        }
+        afterWrite.add(() -> logAndDecrementPayloadReference(addedPublish.publish, key.isShared(), key.getQueueId()));
+        writeBatch.delete(addedPublish.key);
+        return true;
+    }
+
+    private void addQos0Publish(
+            final @NotNull Key key, final @NotNull PublishWithRetained publishWithRetained, final int bucketIndex) {
+        final long currentQos0MessagesMemory = qos0MessagesMemory.get();
+        final PUBLISH publish = publishWithRetained.publish;
+        if (currentQos0MessagesMemory >= qos0MemoryLimit) {
+            if (key.isShared()) {
+                messageDroppedService.qos0MemoryExceededShared(key.getQueueId(),
+                        publish.getTopic(),
+                        0,
+                        currentQos0MessagesMemory,
+                        qos0MemoryLimit);
+            } else {
+                messageDroppedService.qos0MemoryExceeded(key.getQueueId(),
+                        publish.getTopic(),
+                        0,
+                        currentQos0MessagesMemory,
+                        qos0MemoryLimit);
+            }
+            payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+            return;
+        }
+
+        if (!key.isShared()) {
+            final AtomicInteger clientQos0Memory = clientQos0MemoryMap.get(key.getQueueId());
+            if (clientQos0Memory != null && clientQos0Memory.get() >= qos0ClientMemoryLimit) {
+                messageDroppedService.qos0MemoryExceeded(key.getQueueId(),
+                        publish.getTopic(),
+                        0,
+                        clientQos0Memory.get(),
+                        qos0ClientMemoryLimit);
+                payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+                return;
+            }
+        }
+
+        getOrPutQos0Messages(key, bucketIndex).add(publishWithRetained);
+        getOrPutQueueSize(key, bucketIndex).incrementAndGet();
+        if (publishWithRetained.retained) {
+            getOrPutRetainedQueueSize(key, bucketIndex).incrementAndGet();
+        }
+        increaseQos0MessagesMemory(publish.getEstimatedSizeInMemory());
+        increaseClientQos0MessagesMemory(key, publish.getEstimatedSizeInMemory());
+    }
+
+    private void logMessageDropped(
+            final @NotNull PUBLISH publish, final boolean shared, final @NotNull String queueId) {
+        if (shared) {
+            messageDroppedService.queueFullShared(queueId, publish.getTopic(), publish.getQoS().getQosNumber());
+        } else {
+            messageDroppedService.queueFull(queueId, publish.getTopic(), publish.getQoS().getQosNumber());
+        }
+    }
+
+    private void logAndDecrementPayloadReference(
+            final @NotNull PUBLISH publish, final boolean shared, final @NotNull String queueId) {
+        logMessageDropped(publish, shared, queueId);
+        payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+    }
+
+    /**
+     * @param size the amount of bytes the currently used qos 0 memory will be increased by. May be negative.
+     */
+    private void increaseQos0MessagesMemory(final int size) {
+        if (size < 0) {
+            qos0MessagesMemory.addAndGet(size - LINKED_LIST_NODE_OVERHEAD);
+        } else {
+            qos0MessagesMemory.addAndGet(size + LINKED_LIST_NODE_OVERHEAD);
+        }
+    }
+
+    /**
+     * @param size the amount of bytes the currently used qos 0 memory will be increased by. May be negative.
+     */
+    @VisibleForTesting
+    void increaseClientQos0MessagesMemory(final @NotNull Key key, final int size) {
+        if (key.isShared()) {
+            return;
+        }
+
+        final AtomicInteger qos0MemoryPerClient =
+                clientQos0MemoryMap.compute(key.getQueueId(), (clientId, clientQos0Memory) -> {
+                    if (clientQos0Memory == null) {
+                        if (size < 0) {
+                            //strange case that should never happen as there must be a increase before a decrease..
+                            return new AtomicInteger(0);
+                        } else {
+                            return new AtomicInteger(size + LINKED_LIST_NODE_OVERHEAD);
+                        }
+                    }
+                    if (size < 0) {
+                        clientQos0Memory.addAndGet(size - LINKED_LIST_NODE_OVERHEAD);
+                    } else {
+                        clientQos0Memory.addAndGet(size + LINKED_LIST_NODE_OVERHEAD);
+                    }
+                    return clientQos0Memory;
+                });
+
+        if (qos0MemoryPerClient.get() <= 0) {
+            clientQos0MemoryMap.remove(key.getQueueId());
+        }
+    }
+
+    private boolean setPayloadIfExistingElseDrop(
+            final @NotNull PUBLISH publish,
+            final @NotNull String queueId,
+            final boolean shared,
+            final int bucketIndex) {
+        try {
+            publish.dereferencePayload();
+        } catch (final PayloadPersistenceException e) {
+            messageDroppedService.failed(queueId, publish.getTopic(), publish.getQoS().getQosNumber());
+            // No payload exists: remove the PUBLISH from its persistent queue. (Not necessary for QoS 0.)
+            if (publish.getQoS() != QoS.AT_MOST_ONCE) {
+                // The caller's write batch does not modify this PUBLISH, so it can be removed with its own batch.
+                if (shared) {
+                    removeShared(queueId, publish.getUniqueId(), bucketIndex);
+                } else {
+                    remove(queueId, publish.getPacketIdentifier(), publish.getUniqueId(), bucketIndex);
+                }
+            }
+            return false;
+        }
+        if (publish.getQoS() == QoS.AT_MOST_ONCE) {
+            // We can decrement the persistence counter immediately because the QoS 0 PUBLISH has already been
+            // removed from its (in-memory) queue, hence we won't attempt to access its payload again anyway.
+            payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NotNull
+    @Override
+    public ImmutableList<PUBLISH> readNew(
+            final @NotNull String queueId,
+            final boolean shared,
+            final @NotNull ImmutableIntArray packetIds,
+            final long bytesLimit,
+            final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        checkNotNull(packetIds, "Packet IDs must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(queueId, shared);
+
+        final AtomicInteger queueSize = getOrPutQueueSize(key, bucketIndex);
+        if (queueSize.get() == 0) {
+            return ImmutableList.of();
+        }
+
+        final LinkedList<PublishWithRetained> qos0Messages = getOrPutQos0Messages(key, bucketIndex);
+        if (queueSize.get() == qos0Messages.size()) {
+            // In case there are only qos 0 messages
+            final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
+            int qos0MessagesFound = 0;
+            int qos0Bytes = 0;
+            while (qos0MessagesFound < packetIds.length() && bytesLimit > qos0Bytes) {
+                final PUBLISH qos0Publish = pollQos0Message(key, bucketIndex);
+                if (qos0Publish.hasExpired()) {
+                    payloadPersistence.decrementReferenceCounter(qos0Publish.getPublishId());
+                } else if (setPayloadIfExistingElseDrop(qos0Publish, queueId, shared, bucketIndex)) {
+                    publishes.add(qos0Publish);
+                    qos0MessagesFound++;
+                    qos0Bytes += qos0Publish.getEstimatedSizeInMemory();
+                }
+                if (qos0Messages.isEmpty()) {
+                    break;
+                }
+            }
+
+            return publishes.build();
+        }
+
+        final RocksDB bucket = buckets[bucketIndex];
+        final ImmutableList.Builder<PUBLISH> publishes = ImmutableList.builder();
+        final List<Runnable> afterWrite = new ArrayList<>();
+        try (final QueueIterator iterator = new QueueIterator(bucket, key);
+             final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions options = new WriteOptions()) {
+
+            final int countLimit = packetIds.length();
+            int messageCount = 0;
+            int packetIdIndex = 0;
+            int bytes = 0;
+
+            seekQueue(iterator, key, true);
+            while (iterator.isValid()) {
+                final ByteIterable serializedValue = iterator.value();
+                final PUBLISH publish = (PUBLISH) serializer.deserializeValue(serializedValue);
+                if (publish.hasExpired()) {
+                    writeBatch.delete(bytes(iterator.key()));
+                    afterWrite.add(storedMessageRemoved(key,
+                            publish,
+                            serializer.deserializeRetained(serializedValue),
+                            bucketIndex));
+                    //do not return here, because we could have a QoS 0 message left
+                } else {
+                    if (!setPayloadIfExistingElseDrop(publish, queueId, shared, bucketIndex)) {
+                        iterator.next();
+                        continue;
+                    }
+
+                    final int packetId = packetIds.get(packetIdIndex);
+                    publish.setPacketIdentifier(packetId);
+                    writeBatch.put(bytes(iterator.key()),
+                            bytes(serializer.serializeAndSetPacketId(serializedValue, packetId)));
+
+                    publishes.add(publish);
+                    packetIdIndex++;
+                    messageCount++;
+                    bytes += publish.getEstimatedSizeInMemory();
+                    if ((messageCount == countLimit) || (bytes > bytesLimit)) {
+                        break;
+                    }
+                }
+
+                // Add a qos 0 message
+                if (!qos0Messages.isEmpty()) {
+                    final PUBLISH qos0Publish = pollQos0Message(key, bucketIndex);
+                    if (qos0Publish.hasExpired()) {
+                        payloadPersistence.decrementReferenceCounter(qos0Publish.getPublishId());
+                    } else if (setPayloadIfExistingElseDrop(qos0Publish, queueId, shared, bucketIndex)) {
+                        publishes.add(qos0Publish);
+                        messageCount++;
+                        bytes += qos0Publish.getEstimatedSizeInMemory();
+                    }
+                }
+                if ((messageCount == countLimit) || (bytes > bytesLimit)) {
+                    break;
+                }
+                iterator.next();
+            }
+            bucket.write(options, writeBatch);
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while reading new messages from the client queue persistence.");
+            log.debug("Original Exception:", e);
+            throw writeFailed(e);
+        }
+        afterWrite.forEach(Runnable::run);
+        return publishes.build();
+    }
+
+    @NotNull
+    private PUBLISH pollQos0Message(final @NotNull Key key, final int bucketIndex) {
+        final LinkedList<PublishWithRetained> qos0Messages = getOrPutQos0Messages(key, bucketIndex);
+        final PublishWithRetained publishWithRetained = qos0Messages.removeFirst();
+        final PUBLISH qos0Publish = publishWithRetained.publish;
+        getOrPutQueueSize(key, bucketIndex).decrementAndGet();
+        if (publishWithRetained.retained) {
+            getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
+        }
+        increaseQos0MessagesMemory(qos0Publish.getEstimatedSizeInMemory() * -1);
+        increaseClientQos0MessagesMemory(key, qos0Publish.getEstimatedSizeInMemory() * -1);
+        return qos0Publish;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NotNull
+    @Override
+    public ImmutableList<MessageWithID> readInflight(
+            final @NotNull String client,
+            final boolean shared,
+            final int batchSize,
+            final long bytesLimit,
+            final int bucketIndex) {
+        checkNotNull(client, "client id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(client, shared);
+
+        final ImmutableList.Builder<MessageWithID> messages = ImmutableList.builder();
+        try (final QueueIterator iterator = new QueueIterator(buckets[bucketIndex], key)) {
+            int count = 0;
+            int bytes = 0;
+
+            seekQueue(iterator, key, false);
+            while (iterator.isValid()) {
+                final MessageWithID message = serializer.deserializeValue(iterator.value());
+
+                // This works because in-flight messages are always first in the queue
+                if (message.getPacketIdentifier() == ClientQueuePersistenceSerializer.NO_PACKET_ID) {
+                    break;
+                }
+
+                iterator.next();
+                if (message instanceof PUBLISH) {
+                    final PUBLISH publish = (PUBLISH) message;
+                    if (!setPayloadIfExistingElseDrop(publish, client, shared, bucketIndex)) {
+                        continue;
+                    }
+                    bytes += publish.getEstimatedSizeInMemory();
+                    publish.setDuplicateDelivery(true);
+                }
+
+                messages.add(message);
+                count++;
+                if ((count == batchSize) || (bytes > bytesLimit)) {
+                    break;
+                }
+            }
+        }
+        return messages.build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Nullable
+    public String replace(final @NotNull String client, final @NotNull PUBREL pubrel, final int bucketIndex) {
+        checkNotNull(client, "client id must not be null");
+        checkNotNull(pubrel, "pubrel must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(client, false);
+        final RocksDB bucket = buckets[bucketIndex];
+
+        String replacedId = null;
+        final List<Runnable> afterWrite = new ArrayList<>();
+        try (final QueueIterator iterator = new QueueIterator(bucket, key);
+             final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions options = new WriteOptions()) {
+
+            boolean packetIdFound = false;
+            seekQueue(iterator, key, false);
+            while (iterator.isValid()) {
+                final ByteIterable serializedValue = iterator.value();
+                final MessageWithID message = serializer.deserializeValue(serializedValue);
+                final int packetId = message.getPacketIdentifier();
+                if (packetId == pubrel.getPacketIdentifier()) {
+                    packetIdFound = true;
+                    final boolean retained = serializer.deserializeRetained(serializedValue);
+                    if (message instanceof PUBLISH) {
+                        final PUBLISH publish = (PUBLISH) message;
+                        afterWrite.add(() -> payloadPersistence.decrementReferenceCounter(publish.getPublishId()));
+                        pubrel.setMessageExpiryInterval(publish.getMessageExpiryInterval());
+                        pubrel.setPublishTimestamp(publish.getTimestamp());
+                        replacedId = publish.getUniqueId();
+                    } else if (message instanceof PUBREL) {
+                        pubrel.setMessageExpiryInterval(((PUBREL) message).getMessageExpiryInterval());
+                        pubrel.setPublishTimestamp(((PUBREL) message).getPublishTimestamp());
+                    }
+                    writeBatch.put(bytes(iterator.key()), bytes(serializer.serializePubRel(pubrel, retained)));
+                    break;
+                }
+                if (packetId == ClientQueuePersistenceSerializer.NO_PACKET_ID) {
+                    break;
+                }
+                iterator.next();
+            }
+            if (!packetIdFound) {
+                afterWrite.add(() -> getOrPutQueueSize(key, bucketIndex).incrementAndGet());
+                writeBatch.put(bytes(serializer.serializeUnknownPubRelKey(key)),
+                        bytes(serializer.serializePubRel(pubrel, false)));
+            }
+            bucket.write(options, writeBatch);
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while replacing a message in the client queue persistence.");
+            log.debug("Original Exception:", e);
+            throw writeFailed(e);
+        }
+        afterWrite.forEach(Runnable::run);
+        return replacedId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Nullable
+    public String remove(final @NotNull String client, final int packetId, final int bucketIndex) {
+        return remove(client, packetId, null, bucketIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Nullable
+    public String remove(
+            final @NotNull String client, final int packetId, final @Nullable String uniqueId, final int bucketIndex) {
+        checkNotNull(client, "client id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(client, false);
+        final RocksDB bucket = buckets[bucketIndex];
+
+        String removedId = null;
+        Runnable afterWrite = null;
+        try (final QueueIterator iterator = new QueueIterator(bucket, key);
+             final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions options = new WriteOptions()) {
+
+            seekQueue(iterator, key, false);
+            while (iterator.isValid()) {
+                final ByteIterable serializedValue = iterator.value();
+                final MessageWithID message = serializer.deserializeValue(serializedValue);
+                if (message.getPacketIdentifier() == packetId) {
+                    PUBLISH publish = null;
+                    if (message instanceof PUBLISH) {
+                        publish = (PUBLISH) message;
+                        if (uniqueId != null && !uniqueId.equals(publish.getUniqueId())) {
+                            break;
+                        }
+                        removedId = publish.getUniqueId();
+                    }
+                    afterWrite = storedMessageRemoved(key,
+                            publish,
+                            serializer.deserializeRetained(serializedValue),
+                            bucketIndex);
+                    writeBatch.delete(bytes(iterator.key()));
+                    break;
+                }
+                iterator.next();
+            }
+            bucket.write(options, writeBatch);
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while removing a message from the client queue persistence.");
+            log.debug("Original Exception:", e);
+            throw writeFailed(e);
+        }
+        if (afterWrite != null) {
+            afterWrite.run();
+        }
+        return removedId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size(final @NotNull String queueId, final boolean shared, final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX); // QueueSizes are not thread save
+        final AtomicInteger queueSize = queueSizeBuckets.get(bucketIndex).get(new Key(queueId, shared));
+        return (queueSize == null) ? 0 : queueSize.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int qos0Size(final @NotNull String queueId, final boolean shared, final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX); // QueueSizes are not thread save
+        return qos0Size(new Key(queueId, shared), bucketIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear(final @NotNull String queueId, final boolean shared, final int bucketIndex) {
+        checkNotNull(queueId, "Queue ID must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(queueId, shared);
+        final RocksDB bucket = buckets[bucketIndex];
+
+        final List<Long> publishIds = new ArrayList<>();
+        try (final QueueIterator iterator = new QueueIterator(bucket, key);
+             final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions options = new WriteOptions()) {
+
+            seekQueue(iterator, key, false);
+            while (iterator.isValid()) {
+                final MessageWithID message = serializer.deserializeValue(iterator.value());
+                if (message instanceof PUBLISH) {
+                    publishIds.add(((PUBLISH) message).getPublishId());
+                }
+                writeBatch.delete(bytes(iterator.key()));
+                iterator.next();
+            }
+            bucket.write(options, writeBatch);
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while clearing a queue of the client queue persistence.");
+            log.debug("Original Exception:", e);
+            throw writeFailed(e);
+        }
+        for (final Long publishId : publishIds) {
+            payloadPersistence.decrementReferenceCounter(publishId);
+        }
+
+        final LinkedList<PublishWithRetained> qos0Messages = getOrPutQos0Messages(key, bucketIndex);
+        for (final PublishWithRetained qos0Message : qos0Messages) {
+            increaseQos0MessagesMemory(qos0Message.publish.getEstimatedSizeInMemory() * -1);
+            increaseClientQos0MessagesMemory(key, qos0Message.publish.getEstimatedSizeInMemory() * -1);
+            payloadPersistence.decrementReferenceCounter(qos0Message.publish.getPublishId());
+        }
+        qos0MessageBuckets.get(bucketIndex).remove(key);
+        queueSizeBuckets.get(bucketIndex).remove(key);
+        retainedQueueSizeBuckets.get(bucketIndex).remove(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeAllQos0Messages(final @NotNull String queueId, final boolean shared, final int bucketIndex) {
+        checkNotNull(queueId, "Queue id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(queueId, shared);
+        final Iterator<PublishWithRetained> iterator = getOrPutQos0Messages(key, bucketIndex).iterator();
+        while (iterator.hasNext()) {
+            final PublishWithRetained publishWithRetained = iterator.next();
+            final PUBLISH publish = publishWithRetained.publish;
+            iterator.remove();
+            payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+            getOrPutQueueSize(key, bucketIndex).decrementAndGet();
+            if (publishWithRetained.retained) {
+                getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
+            }
+            increaseQos0MessagesMemory(publish.getEstimatedSizeInMemory() * -1);
+            increaseClientQos0MessagesMemory(key, publish.getEstimatedSizeInMemory() * -1);
+        }
+        qos0MessageBuckets.get(bucketIndex).remove(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @NotNull
+    @Override
+    public ImmutableSet<String> cleanUp(final int bucketIndex) {
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        if (stopped.get()) {
+            return ImmutableSet.of();
+        }
+
+        final ImmutableSet.Builder<String> sharedQueues = ImmutableSet.builder();
+        for (final Key bucketKey : queueSizeBuckets.get(bucketIndex).keySet()) {
+            if (bucketKey.isShared()) {
+                sharedQueues.add(bucketKey.getQueueId());
+            }
+            cleanExpiredMessages(bucketKey, bucketIndex);
+        }
+        return sharedQueues.build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeShared(
+            final @NotNull String sharedSubscription, final @NotNull String uniqueId, final int bucketIndex) {
+        checkNotNull(sharedSubscription, "Shared subscription must not be null");
+        checkNotNull(uniqueId, "Unique id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(sharedSubscription, true);
+        final RocksDB bucket = buckets[bucketIndex];
+
+        Runnable afterWrite = null;
+        try (final QueueIterator iterator = new QueueIterator(bucket, key);
+             final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions options = new WriteOptions()) {
+
+            seekQueue(iterator, key, false);
+            while (iterator.isValid()) {
+                final ByteIterable serializedValue = iterator.value();
+                final MessageWithID message = serializer.deserializeValue(serializedValue);
+                if (message instanceof PUBLISH) {
+                    final PUBLISH publish = (PUBLISH) message;
+                    if (uniqueId.equals(publish.getUniqueId())) {
+                        afterWrite = storedMessageRemoved(key,
+                                publish,
+                                serializer.deserializeRetained(serializedValue),
+                                bucketIndex);
+                        writeBatch.delete(bytes(iterator.key()));
+                        break;
+                    }
+                    iterator.next();
+                } else {
+                    break;
+                }
+            }
+            bucket.write(options, writeBatch);
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while removing a shared message from the client queue persistence.");
+            log.debug("Original Exception:", e);
+            throw writeFailed(e);
+        }
+        if (afterWrite != null) {
+            afterWrite.run();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeInFlightMarker(
+            final @NotNull String sharedSubscription, final @NotNull String uniqueId, final int bucketIndex) {
+        checkNotNull(sharedSubscription, "Shared subscription must not be null");
+        checkNotNull(uniqueId, "Unique id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(sharedSubscription, true);
+        final RocksDB bucket = buckets[bucketIndex];
+
+        long index = -1;
+        try (final QueueIterator iterator = new QueueIterator(bucket, key);
+             final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions options = new WriteOptions()) {
+
+            seekQueue(iterator, key, false);
+            while (iterator.isValid()) {
+                final MessageWithID message = serializer.deserializeValue(iterator.value());
+                if (message instanceof PUBLISH) {
+                    final PUBLISH publish = (PUBLISH) message;
+                    if (uniqueId.equals(publish.getUniqueId())) {
+                        final ByteIterable serializedKey = iterator.key();
+                        index = serializer.deserializeIndex(serializedKey);
+                        writeBatch.put(bytes(serializedKey),
+                                bytes(serializer.serializePublishWithoutPacketId(publish, false)));
+                        break;
+                    }
+                    iterator.next();
+                } else {
+                    break;
+                }
+            }
+            bucket.write(options, writeBatch);
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while removing an in-flight marker from the client queue persistence.");
+            log.debug("Original Exception:", e);
+            throw writeFailed(e);
+        }
+        if (index != -1) {
+            decrementSharedSubscriptionIndexFirstMessageWithoutPacketId(sharedSubscription, index);
+        }
+    }
+
+    public @NotNull ConcurrentHashMap<Integer, Map<Key, AtomicInteger>> getQueueSizeBuckets() {
+        return queueSizeBuckets;
+    }
+
+    public @NotNull ConcurrentHashMap<String, AtomicInteger> getClientQos0MemoryMap() {
+        return clientQos0MemoryMap;
+    }
+
+    private void cleanExpiredMessages(final @NotNull Key key, final int bucketIndex) {
+        final Iterator<PublishWithRetained> qos0Iterator = getOrPutQos0Messages(key, bucketIndex).iterator();
+        while (qos0Iterator.hasNext()) {
+            final PublishWithRetained publishWithRetained = qos0Iterator.next();
+            final PUBLISH qos0Message = publishWithRetained.publish;
+            if (qos0Message.hasExpired()) {
+                getOrPutQueueSize(key, bucketIndex).decrementAndGet();
+                increaseQos0MessagesMemory(qos0Message.getEstimatedSizeInMemory() * -1);
+                increaseClientQos0MessagesMemory(key, qos0Message.getEstimatedSizeInMemory() * -1);
+                payloadPersistence.decrementReferenceCounter(qos0Message.getPublishId());
+                if (publishWithRetained.retained) {
+                    getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
+                }
+                qos0Iterator.remove();
+            }
+        }
+
+        final RocksDB bucket = buckets[bucketIndex];
+        final List<Runnable> afterWrite = new ArrayList<>();
+        try (final QueueIterator iterator = new QueueIterator(bucket, key);
+             final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions options = new WriteOptions()) {
+
+            seekQueue(iterator, key, false);
+            while (iterator.isValid()) {
+                final ByteIterable serializedValue = iterator.value();
+                final MessageWithID message = serializer.deserializeValue(serializedValue);
+                final boolean drop;
+                if (message instanceof PUBREL) {
+                    final PUBREL pubrel = (PUBREL) message;
+                    drop = InternalConfigurations.EXPIRE_INFLIGHT_PUBRELS_ENABLED &&
+                            pubrel.getMessageExpiryInterval() != null &&
+                            pubrel.getPublishTimestamp() != null &&
+                            pubrel.hasExpired();
+                } else if (message instanceof PUBLISH) {
+                    final PUBLISH publish = (PUBLISH) message;
+                    final boolean expireInflight = InternalConfigurations.EXPIRE_INFLIGHT_MESSAGES_ENABLED;
+                    final boolean isInflight =
+                            publish.getQoS() == QoS.EXACTLY_ONCE && publish.getPacketIdentifier() > 0;
+                    drop = publish.hasExpired() && (!isInflight || expireInflight);
+                } else {
+                    drop = false;
+                }
+                if (drop) {
+                    afterWrite.add(storedMessageRemoved(key,
+                            message instanceof PUBLISH ? (PUBLISH) message : null,
+                            serializer.deserializeRetained(serializedValue),
+                            bucketIndex));
+                    writeBatch.delete(bytes(iterator.key()));
+                }
+                iterator.next();
+            }
+            bucket.write(options, writeBatch);
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while cleaning up expired messages of the client queue persistence.");
+            log.debug("Original Exception:", e);
+            throw writeFailed(e);
+        }
+        afterWrite.forEach(Runnable::run);
+    }
+
+    /**
+     * @param publish the removed PUBLISH or null if a PUBREL was removed
+     * @return the action that updates the queue sizes and the payload reference after the removal was written
+     */
+    private @NotNull Runnable storedMessageRemoved(
+            final @NotNull Key key, final @Nullable PUBLISH publish, final boolean retained, final int bucketIndex) {
+        return () -> {
+            if (publish != null) {
+                payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+            }
+            getOrPutQueueSize(key, bucketIndex).decrementAndGet();
+            if (retained) {
+                getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
+            }
+        };
+    }
+
+    private static @NotNull IllegalStateException writeFailed(final @NotNull RocksDBException e) {
+        return new IllegalStateException("Could not write to the client queue persistence", e);
+    }
+
+    /**
+     * Moves the iterator to the first message of the queue, or to the first message without a packet id if
+     * skipWithId is true.
+     */
+    private void seekQueue(final @NotNull QueueIterator iterator, final @NotNull Key key, final boolean skipWithId) {
+        if (!skipWithId) {
+            iterator.seekToFirst();
+            return;
+        }
+        final Long indexToLookTo = sharedSubLastPacketWithoutIdCache.getIfPresent(key.getQueueId());
+        if (indexToLookTo != null) {
+            iterator.seek(bytes(serializer.serializeKey(key, indexToLookTo)));
+        } else {
+            iterator.seekToFirst();
+        }
+        while (iterator.isValid() &&
+                serializer.deserializePacketId(iterator.value()) != ClientQueuePersistenceSerializer.NO_PACKET_ID) {
+            iterator.next();
+        }
+        if (key.isShared() && iterator.isValid()) {
+            incrementSharedSubscriptionIndexFirstMessageWithoutPacketId(key.getQueueId(),
+                    serializer.deserializeIndex(iterator.key()));
+        }
+    }
+
+    @NotNull
+    public ImmutableList<ClientQueueEntry> getAll(
+            final @NotNull String queueId, final boolean shared, final int bucketIndex) {
+        checkNotNull(queueId, "Queue id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Key key = new Key(queueId, shared);
+        final ImmutableList.Builder<ClientQueueEntry> entries = ImmutableList.builder();
+        try (final QueueIterator iterator = new QueueIterator(buckets[bucketIndex], key)) {
+            seekQueue(iterator, key, false);
+            while (iterator.isValid()) {
+                final ByteIterable value = iterator.value();
+                entries.add(new ClientQueueEntry(serializer.deserializeValue(value),
+                        serializer.deserializeRetained(value)));
+                iterator.next();
+            }
+        }
+        return entries.build();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void iterate(final @NotNull QueueCallback callback) {
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        for (final RocksDB bucket : buckets) {
+            try (final RocksIterator iterator = bucket.newIterator()) {
+                iterator.seekToFirst();
+                Key currentKey = null;
+                ImmutableList.Builder<ClientQueueEntry> entries = ImmutableList.builder();
+                while (iterator.isValid()) {
+                    final Key key = serializer.deserializeKeyId(XodusUtils.bytesToByteIterable(iterator.key()));
+                    if (currentKey != null && !currentKey.equals(key)) {
+                        callback.onItem(currentKey, entries.build());
+                        entries = ImmutableList.builder();
+                    }
+                    currentKey = key;
+                    final ByteIterable value = XodusUtils.bytesToByteIterable(iterator.value());
+                    entries.add(new ClientQueueEntry(serializer.deserializeValue(value),
+                            serializer.deserializeRetained(value)));
+                    iterator.next();
+                }
+                if (currentKey != null) {
+                    callback.onItem(currentKey, entries.build());
+                }
+            }
+        }
+    }
+
+    private @NotNull AtomicInteger getOrPutQueueSize(final @NotNull Key key, final int bucketIndex) {
+        return queueSizeBuckets.get(bucketIndex).computeIfAbsent(key, k -> new AtomicInteger());
+    }
+
+    private @NotNull AtomicInteger getOrPutRetainedQueueSize(final @NotNull Key key, final int bucketIndex) {
+        return retainedQueueSizeBuckets.get(bucketIndex).computeIfAbsent(key, k -> new AtomicInteger());
+    }
+
+    private @NotNull LinkedList<PublishWithRetained> getOrPutQos0Messages(
+            final @NotNull Key key, final int bucketIndex) {
+        return qos0MessageBuckets.get(bucketIndex).computeIfAbsent(key, k -> new LinkedList<>());
+    }
+
+    private int qos0Size(final @NotNull Key key, final int bucketIndex) {
+        final LinkedList<PublishWithRetained> publishes = qos0MessageBuckets.get(bucketIndex).get(key);
+        return (publishes == null) ? 0 : publishes.size();
+    }
+
+    private static @NotNull byte[] bytes(final @NotNull ByteIterable byteIterable) {
+        return XodusUtils.byteIterableToBytes(byteIterable);
+    }
+
+    /**
+     * An iterator over the messages of one queue. The upper bound of the underlying iterator is the queue prefix with
+     * its last byte (the shared flag) incremented, so it becomes invalid right after the last key that starts with
+     * the prefix. The keys of other queues whose id starts with the id of this queue are skipped.
+     */
+    private class QueueIterator implements AutoCloseable {
+
+        private final @NotNull byte[] prefix;
+        private final @NotNull Slice upperBound;
+        private final @NotNull ReadOptions readOptions;
+        private final @NotNull RocksIterator iterator;
+
+        QueueIterator(final @NotNull RocksDB bucket, final @NotNull Key key) {
+            this.prefix = bytes(serializer.serializeKey(key));
+            final byte[] upperBoundBytes = Arrays.copyOf(prefix, prefix.length);
+            upperBoundBytes[upperBoundBytes.length - 1]++;
+            this.upperBound = new Slice(upperBoundBytes);
+            this.readOptions = new ReadOptions().setIterateUpperBound(upperBound);
+            this.iterator = bucket.newIterator(readOptions);
+        }
+
+        void seekToFirst() {
+            seek(prefix);
+        }
+
+        void seek(final @NotNull byte[] target) {
+            iterator.seek(target);
+            skipOtherQueues();
+        }
+
+        boolean isValid() {
+            return iterator.isValid();
+        }
+
+        void next() {
+            iterator.next();
+            skipOtherQueues();
+        }
+
+        @NotNull ByteIterable key() {
+            return XodusUtils.bytesToByteIterable(iterator.key());
+        }
+
+        @NotNull ByteIterable value() {
+            return XodusUtils.bytesToByteIterable(iterator.value());
+        }
+
+        private void skipOtherQueues() {
+            while (iterator.isValid() && iterator.key().length != prefix.length + Long.BYTES) {
+                iterator.next();
+            }
+        }
+
+        @Override
+        public void close() {
+            iterator.close();
+            readOptions.close();
+            upperBound.close();
+        }
+    }
+
+    private static class AddedPublish {
+
+        private final @NotNull byte[] key;
+        private final @NotNull PUBLISH publish;
+
+        private AddedPublish(final @NotNull byte[] key, final @NotNull PUBLISH publish) {
+            this.key = key;
+            this.publish = publish;
+        }
+    }
+
+    private static class PublishWithRetained {
+
+        private final @NotNull PUBLISH publish;
+        private final boolean retained;
+
+        private PublishWithRetained(final @NotNull PUBLISH publish, final boolean retained) {
+            this.publish = publish;
+            this.retained = retained;
+        }
+    }
+}
@@ -28,6 +28,7 @@ import com.hivemq.configuration.service.MqttConfigurationService;
 import com.hivemq.configuration.service.MqttConfigurationService.QueuedMessagesStrategy;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.mqtt.message.MessageWithID;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.dropping.MessageDroppedService;
@@ -36,6 +37,7 @@ import com.hivemq.mqtt.message.pubrel.PUBREL;
 import com.hivemq.persistence.PersistenceStartup;
 import com.hivemq.persistence.local.xodus.EnvironmentUtil;
 import com.hivemq.persistence.local.xodus.XodusLocalPersistence;
+import com.hivemq.persistence.local.xodus.XodusTransactions;
 import com.hivemq.persistence.local.xodus.bucket.Bucket;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
 import com.hivemq.persistence.payload.PayloadPersistenceException;
@@ -73,12 +75,12 @@ import static com.hivemq.util.ThreadPreConditions.SINGLE_WRITER_THREAD_PREFIX;
  * @author Silvio Giebl
  */
 @LazySingleton
-public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence implements ClientQueueLocalPersistence {
+public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence
+        implements ClientQueueMigrationLocalPersistence {
 
     @NotNull
     private static final Logger log = LoggerFactory.getLogger(ClientQueueXodusLocalPersistence.class);
 
-    public static final String PERSISTENCE_NAME = "client_queue";
     public static final String PERSISTENCE_VERSION = "040500";
     private static final int LINKED_LIST_NODE_OVERHEAD = 24;
 
@@ -124,7 +126,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                 localPersistenceFileUtil,
                 persistenceStartup,
                 InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get(),
-                true);
+                InternalConfigurations.CLIENT_QUEUE_PERSISTENCE_TYPE.get() == PersistenceType.FILE);
         retainedMessageMax = InternalConfigurations.RETAINED_MESSAGE_QUEUE_SIZE.get();
         qos0ClientMemoryLimit = InternalConfigurations.QOS_0_MEMORY_LIMIT_PER_CLIENT_BYTES.get();
 
@@ -203,7 +205,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
 
         for (final Bucket bucket : buckets) {
 
-            bucket.getEnvironment().executeInReadonlyTransaction(txn -> {
+            XodusTransactions.executeInReadonlyTransaction(bucket.getEnvironment(), txn -> {
                 try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
                     Key currentKey = null;
                     int queueSize = 0;
@@ -321,16 +323,14 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                 return;
             }
         } else {
-            queueSize.incrementAndGet();
-            if (retained) {
-                retainedQueueSize.incrementAndGet();
-            }
+            changeQueueSize(key, bucketIndex, 1, retained);
         }
 
         final ByteIterable keyBytes = serializer.serializeNewPublishKey(key);
         final ByteIterable valueBytes = serializer.serializePublishWithoutPacketId(publish, retained);
 
-        bucket.getEnvironment().executeInTransaction(txn -> bucket.getStore().put(txn, keyBytes, valueBytes));
+        XodusTransactions.executeInTransaction(bucket.getEnvironment(),
+                txn -> bucket.getStore().put(txn, keyBytes, valueBytes));
     }
 
     /**
@@ -345,12 +345,12 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
             final @NotNull Key key,
             final @NotNull Bucket bucket) {
         if (strategy == QueuedMessagesStrategy.DISCARD) {
-            logAndDecrementPayloadReference(publish, shared, queueId);
+            logAndDecrementPayloadReference(publish, shared, queueId, bucket);
             return true;
         } else {
             final boolean discarded = discardOldest(bucket, key, retained);
             if (!discarded) {
-                logAndDecrementPayloadReference(publish, shared, queueId);
+                logAndDecrementPayloadReference(publish, shared, queueId, bucket);
                 return true;
             }
         }
@@ -391,39 +391,36 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         final AtomicInteger retainedQueueSize = getOrPutRetainedQueueSize(key, bucketIndex);
         final int qos0Size = qos0Size(key, bucketIndex);
 
-        bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+        XodusTransactions.executeInExclusiveTransaction(bucket.getEnvironment(), txn -> {
             for (final PUBLISH publish : qos1and2Publishes.build()) {
 
                 final int qos1And2QueueSize = queueSize.get() - qos0Size - retainedQueueSize.get();
 
                 if (qos1And2QueueSize >= max && !retained) {
                     if (strategy == QueuedMessagesStrategy.DISCARD) {
-                        logAndDecrementPayloadReference(publish, shared, queueId);
+                        logAndDecrementPayloadReference(publish, shared, queueId, bucket);
                         continue;
                     } else {
                         final boolean discarded = discardOldest(bucket, key, retained, txn);
                         if (!discarded) {
-                            logAndDecrementPayloadReference(publish, shared, queueId);
+                            logAndDecrementPayloadReference(publish, shared, queueId, bucket);
                             continue;
                         }
                     }
                 } else if (retainedQueueSize.get() >= retainedMessageMax && retained) {
                     if (strategy == QueuedMessagesStrategy.DISCARD) {
-                        logAndDecrementPayloadReference(publish, shared, queueId);
+                        logAndDecrementPayloadReference(publish, shared, queueId, bucket);
                         continue;
                     } else {
                         final boolean discarded = discardOldest(bucket, key, retained, txn);
                         if (!discarded) {
                             //If there is no other message that could be dropped than this message will not be added
-                            logAndDecrementPayloadReference(publish, shared, queueId);
+                            logAndDecrementPayloadReference(publish, shared, queueId, bucket);
                             continue;
                         }
                     }
                 } else {
-                    queueSize.incrementAndGet();
-                    if (retained) {
-                        retainedQueueSize.incrementAndGet();
-                    }
+                    changeQueueSize(key, bucketIndex, 1, retained);
                 }
                 final ByteIterable keyBytes = serializer.serializeNewPublishKey(key);
                 final ByteIterable valueBytes = serializer.serializePublishWithoutPacketId(publish, retained);
@@ -451,7 +448,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                         currentQos0MessagesMemory,
                         qos0MemoryLimit);
             }
-            payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+            decrementPayloadReference(buckets[bucketIndex], publish.getPublishId());
             return;
         }
 
@@ -463,18 +460,80 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                         0,
                         clientQos0Memory.get(),
                         qos0ClientMemoryLimit);
-                payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+                decrementPayloadReference(buckets[bucketIndex], publish.getPublishId());
                 return;
             }
         }
 
+        final int size = publish.getEstimatedSizeInMemory();
         getOrPutQos0Messages(key, bucketIndex).add(publishWithRetained);
-        getOrPutQueueSize(key, bucketIndex).incrementAndGet();
-        if (publishWithRetained.retained) {
-            getOrPutRetainedQueueSize(key, bucketIndex).incrementAndGet();
+        changeQueueSize(key, bucketIndex, 1, publishWithRetained.retained);
+        increaseQos0MessagesMemory(size);
+        increaseClientQos0MessagesMemory(key, size);
+        XodusTransactions.onAbort(buckets[bucketIndex].getEnvironment(), () -> {
+            getOrPutQos0Messages(key, bucketIndex).removeLastOccurrence(publishWithRetained);
+            increaseQos0MessagesMemory(-size);
+            increaseClientQos0MessagesMemory(key, -size);
+        });
+    }
+
+    /**
+     * Updates the sizes after a qos 0 message was removed from its in-memory queue. The removal is undone if the shared
+     * transaction of a group commit is aborted.
+     *
+     * @param index the index the message had in the in-memory queue
+     */
+    private void qos0MessageRemoved(
+            final @NotNull Key key,
+            final int bucketIndex,
+            final int index,
+            final @NotNull PublishWithRetained publishWithRetained) {
+        final int size = publishWithRetained.publish.getEstimatedSizeInMemory();
+        changeQueueSize(key, bucketIndex, -1, publishWithRetained.retained);
+        increaseQos0MessagesMemory(-size);
+        increaseClientQos0MessagesMemory(key, -size);
+        XodusTransactions.onAbort(buckets[bucketIndex].getEnvironment(), () -> {
+            getOrPutQos0Messages(key, bucketIndex).add(index, publishWithRetained);
+            increaseQos0MessagesMemory(size);
+            increaseClientQos0MessagesMemory(key, size);
+        });
+    }
+
+    /**
+     * Changes the size of a queue immediately, so the following writes of the transaction see it. The change is undone
+     * if the shared transaction of a group commit is aborted.
+     */
+    private void changeQueueSize(
+            final @NotNull Key key, final int bucketIndex, final int delta, final boolean retained) {
+        getOrPutQueueSize(key, bucketIndex).addAndGet(delta);
+        if (retained) {
+            getOrPutRetainedQueueSize(key, bucketIndex).addAndGet(delta);
+        }
+        XodusTransactions.onAbort(buckets[bucketIndex].getEnvironment(), () -> {
+            getOrPutQueueSize(key, bucketIndex).addAndGet(-delta);
+            if (retained) {
+                getOrPutRetainedQueueSize(key, bucketIndex).addAndGet(-delta);
+            }
+        });
+    }
+
+    /**
+     * Decrements the reference of a removed PUBLISH to its payload once the removal is committed.
+     */
+    private void decrementPayloadReference(final @NotNull Bucket bucket, final long publishId) {
+        XodusTransactions.afterCommit(bucket.getEnvironment(),
+                () -> payloadPersistence.decrementReferenceCounter(publishId));
+    }
+
+    /**
+     * The cached index is only a lower bound if the writes it was read from are committed, so it is invalidated if
+     * the shared transaction of a group commit is aborted.
+     */
+    private void invalidateSharedSubscriptionIndexOnAbort(final @NotNull Bucket bucket, final @NotNull Key key) {
+        if (key.isShared()) {
+            XodusTransactions.onAbort(bucket.getEnvironment(),
+                    () -> sharedSubLastPacketWithoutIdCache.invalidate(key.getQueueId()));
         }
-        increaseQos0MessagesMemory(publish.getEstimatedSizeInMemory());
-        increaseClientQos0MessagesMemory(key, publish.getEstimatedSizeInMemory());
     }
 
     private void logMessageDropped(
@@ -534,8 +593,8 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
      */
     private boolean discardOldest(@NotNull final Bucket bucket, @NotNull final Key key, final boolean retainedOnly) {
 
-        return bucket.getEnvironment()
-                .computeInExclusiveTransaction(txn -> discardOldest(bucket, key, retainedOnly, txn));
+        return XodusTransactions.computeInExclusiveTransaction(bucket.getEnvironment(),
+                txn -> discardOldest(bucket, key, retainedOnly, txn));
     }
 
     /**
@@ -548,6 +607,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
             @NotNull final Transaction txn) {
 
         final AtomicBoolean discarded = new AtomicBoolean();
+        invalidateSharedSubscriptionIndexOnAbort(bucket, key);
         try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
             // Go to the first entry without a packet id because we don't discard in-flight messages
@@ -560,7 +620,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                     return true;
                 }
                 final PUBLISH publish = (PUBLISH) serializer.deserializeValue(value);
-                logAndDecrementPayloadReference(publish, key.isShared(), key.getQueueId());
+                logAndDecrementPayloadReference(publish, key.isShared(), key.getQueueId(), bucket);
                 cursor.deleteCurrent();
 
                 discarded.set(true);
@@ -572,9 +632,12 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
     }
 
     private void logAndDecrementPayloadReference(
-            final @NotNull PUBLISH publish, final boolean shared, final @NotNull String queueId) {
+            final @NotNull PUBLISH publish,
+            final boolean shared,
+            final @NotNull String queueId,
+            final @NotNull Bucket bucket) {
         logMessageDropped(publish, shared, queueId);
-        payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+        decrementPayloadReference(bucket, publish.getPublishId());
     }
 
     private boolean setPayloadIfExistingElseDrop(
@@ -604,7 +667,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         if (publish.getQoS() == QoS.AT_MOST_ONCE) {
             // We can decrement the persistence counter immediately because the QoS 0 PUBLISH has already been
             // removed from its (in-memory) queue, hence we won't attempt to access its payload again anyway.
-            payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+            decrementPayloadReference(buckets[bucketIndex], publish.getPublishId());
         }
         return true;
     }
@@ -640,7 +703,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
             while (qos0MessagesFound < packetIds.length() && bytesLimit > qos0Bytes) {
                 final PUBLISH qos0Publish = pollQos0Message(key, bucketIndex);
                 if (qos0Publish.hasExpired()) {
-                    payloadPersistence.decrementReferenceCounter(qos0Publish.getPublishId());
+                    decrementPayloadReference(buckets[bucketIndex], qos0Publish.getPublishId());
                 } else if (setPayloadIfExistingElseDrop(qos0Publish, queueId, shared, bucketIndex)) {
                     publishes.add(qos0Publish);
                     qos0MessagesFound++;
@@ -655,7 +718,8 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         }
 
         final Bucket bucket = buckets[bucketIndex];
-        return bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+        return XodusTransactions.computeInExclusiveTransaction(bucket.getEnvironment(), txn -> {
+            invalidateSharedSubscriptionIndexOnAbort(bucket, key);
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
                 final int countLimit = packetIds.length();
@@ -669,11 +733,8 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                     final PUBLISH publish = (PUBLISH) serializer.deserializeValue(serializedValue);
                     if (publish.hasExpired()) {
                         cursor.deleteCurrent();
-                        payloadPersistence.decrementReferenceCounter(publish.getPublishId());
-                        getOrPutQueueSize(key, bucketIndex).decrementAndGet();
-                        if (serializer.deserializeRetained(serializedValue)) {
-                            getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
-                        }
+                        decrementPayloadReference(bucket, publish.getPublishId());
+                        changeQueueSize(key, bucketIndex, -1, serializer.deserializeRetained(serializedValue));
                         //do not return here, because we could have a QoS 0 message left
                     } else {
                         if (!setPayloadIfExistingElseDrop(publish, queueId, shared, bucketIndex)) {
@@ -700,7 +761,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                     if (!qos0Messages.isEmpty()) {
                         final PUBLISH qos0Publish = pollQos0Message(key, bucketIndex);
                         if (qos0Publish.hasExpired()) {
-                            payloadPersistence.decrementReferenceCounter(qos0Publish.getPublishId());
+                            decrementPayloadReference(bucket, qos0Publish.getPublishId());
                         } else if (setPayloadIfExistingElseDrop(qos0Publish, queueId, shared, bucketIndex)) {
                             publishes.add(qos0Publish);
                             messageCount[0]++;
@@ -720,12 +781,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         final PublishWithRetained publishWithRetained = qos0Messages.get(0);
         final PUBLISH qos0Publish = publishWithRetained.publish;
         qos0Messages.remove(0);
-        getOrPutQueueSize(key, bucketIndex).decrementAndGet();
-        if (publishWithRetained.retained) {
-            getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
-        }
-        increaseQos0MessagesMemory(qos0Publish.getEstimatedSizeInMemory() * -1);
-        increaseClientQos0MessagesMemory(key, qos0Publish.getEstimatedSizeInMemory() * -1);
+        qos0MessageRemoved(key, bucketIndex, 0, publishWithRetained);
         return qos0Publish;
     }
 
@@ -744,7 +800,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
 
         final Bucket bucket = buckets[bucketIndex];
 
-        return bucket.getEnvironment().computeInReadonlyTransaction(txn -> {
+        return XodusTransactions.computeInReadonlyTransaction(bucket.getEnvironment(), txn -> {
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
                 final int[] count = {0};
@@ -794,7 +850,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
 
         final Bucket bucket = buckets[bucketIndex];
 
-        return bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+        return XodusTransactions.computeInExclusiveTransaction(bucket.getEnvironment(), txn -> {
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
                 final boolean[] packetIdFound = new boolean[1];
@@ -808,7 +864,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                         final boolean retained = serializer.deserializeRetained(cursor.getValue());
                         if (message instanceof PUBLISH) {
                             final PUBLISH publish = (PUBLISH) message;
-                            payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+                            decrementPayloadReference(bucket, publish.getPublishId());
                             pubrel.setMessageExpiryInterval(publish.getMessageExpiryInterval());
                             pubrel.setPublishTimestamp(publish.getTimestamp());
                             replacedId[0] = publish.getUniqueId();
@@ -823,7 +879,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                     return packetId != ClientQueuePersistenceSerializer.NO_PACKET_ID;
                 });
                 if (!packetIdFound[0]) {
-                    getOrPutQueueSize(key, bucketIndex).incrementAndGet();
+                    changeQueueSize(key, bucketIndex, 1, false);
                     final ByteIterable serializedPubRel = serializer.serializePubRel(pubrel, false);
                     bucket.getStore().put(txn, serializer.serializeUnknownPubRelKey(key), serializedPubRel);
                 }
@@ -853,7 +909,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         final Key key = new Key(client, false);
 
         final Bucket bucket = buckets[bucketIndex];
-        return bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+        return XodusTransactions.computeInExclusiveTransaction(bucket.getEnvironment(), txn -> {
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
                 final String[] result = {null};
@@ -867,13 +923,10 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                             if (uniqueId != null && !uniqueId.equals(publish.getUniqueId())) {
                                 return false;
                             }
-                            payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+                            decrementPayloadReference(bucket, publish.getPublishId());
                             removedId = publish.getUniqueId();
                         }
-                        getOrPutQueueSize(key, bucketIndex).decrementAndGet();
-                        if (serializer.deserializeRetained(cursor.getValue())) {
-                            getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
-                        }
+                        changeQueueSize(key, bucketIndex, -1, serializer.deserializeRetained(cursor.getValue()));
                         cursor.deleteCurrent();
                         result[0] = removedId;
                         return false;
@@ -919,13 +972,13 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         final Key key = new Key(queueId, shared);
 
         final Bucket bucket = buckets[bucketIndex];
-        bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+        XodusTransactions.executeInExclusiveTransaction(bucket.getEnvironment(), txn -> {
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
                 iterateQueue(cursor, key, false, () -> {
                     final MessageWithID message = serializer.deserializeValue(cursor.getValue());
                     if (message instanceof PUBLISH) {
-                        payloadPersistence.decrementReferenceCounter(((PUBLISH) message).getPublishId());
+                        decrementPayloadReference(bucket, ((PUBLISH) message).getPublishId());
                     }
                     cursor.deleteCurrent();
                     return true;
@@ -937,11 +990,24 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         for (final PublishWithRetained qos0Message : qos0Messages) {
             increaseQos0MessagesMemory(qos0Message.publish.getEstimatedSizeInMemory() * -1);
             increaseClientQos0MessagesMemory(key, qos0Message.publish.getEstimatedSizeInMemory() * -1);
-            payloadPersistence.decrementReferenceCounter(qos0Message.publish.getPublishId());
+            decrementPayloadReference(bucket, qos0Message.publish.getPublishId());
         }
         qos0MessageBuckets.get(bucketIndex).remove(key);
-        queueSizeBuckets.get(bucketIndex).remove(key);
-        retainedQueueSizeBuckets.get(bucketIndex).remove(key);
+        final AtomicInteger queueSize = queueSizeBuckets.get(bucketIndex).remove(key);
+        final AtomicInteger retainedQueueSize = retainedQueueSizeBuckets.get(bucketIndex).remove(key);
+        XodusTransactions.onAbort(bucket.getEnvironment(), () -> {
+            for (final PublishWithRetained qos0Message : qos0Messages) {
+                increaseQos0MessagesMemory(qos0Message.publish.getEstimatedSizeInMemory());
+                increaseClientQos0MessagesMemory(key, qos0Message.publish.getEstimatedSizeInMemory());
+            }
+            qos0MessageBuckets.get(bucketIndex).put(key, qos0Messages);
+            if (queueSize != null) {
+                queueSizeBuckets.get(bucketIndex).put(key, queueSize);
+            }
+            if (retainedQueueSize != null) {
+                retainedQueueSizeBuckets.get(bucketIndex).put(key, retainedQueueSize);
+            }
+        });
     }
 
     /**
@@ -957,15 +1023,9 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         final Iterator<PublishWithRetained> iterator = publishesWithRetained.iterator();
         while (iterator.hasNext()) {
             final PublishWithRetained publishWithRetained = iterator.next();
-            final PUBLISH publish = publishWithRetained.publish;
             iterator.remove();
-            payloadPersistence.decrementReferenceCounter(publish.getPublishId());
-            getOrPutQueueSize(key, bucketIndex).decrementAndGet();
-            if (publishWithRetained.retained) {
-                getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
-            }
-            increaseQos0MessagesMemory(publish.getEstimatedSizeInMemory() * -1);
-            increaseClientQos0MessagesMemory(key, publish.getEstimatedSizeInMemory() * -1);
+            decrementPayloadReference(buckets[bucketIndex], publishWithRetained.publish.getPublishId());
+            qos0MessageRemoved(key, bucketIndex, 0, publishWithRetained);
         }
         qos0MessageBuckets.get(bucketIndex).remove(key);
     }
@@ -1008,7 +1068,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         final Key key = new Key(sharedSubscription, true);
 
         final Bucket bucket = buckets[bucketIndex];
-        bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+        XodusTransactions.executeInExclusiveTransaction(bucket.getEnvironment(), txn -> {
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
                 iterateQueue(cursor, key, false, () -> {
@@ -1019,11 +1079,8 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                         if (!uniqueId.equals(publish.getUniqueId())) {
                             return true;
                         }
-                        payloadPersistence.decrementReferenceCounter(publish.getPublishId());
-                        getOrPutQueueSize(key, bucketIndex).decrementAndGet();
-                        if (serializer.deserializeRetained(cursor.getValue())) {
-                            getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
-                        }
+                        decrementPayloadReference(bucket, publish.getPublishId());
+                        changeQueueSize(key, bucketIndex, -1, serializer.deserializeRetained(cursor.getValue()));
                         cursor.deleteCurrent();
                     }
                     return false;
@@ -1045,7 +1102,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         final Key key = new Key(sharedSubscription, true);
 
         final Bucket bucket = buckets[bucketIndex];
-        bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+        XodusTransactions.executeInExclusiveTransaction(bucket.getEnvironment(), txn -> {
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
                 iterateQueue(cursor, key, false, () -> {
@@ -1077,25 +1134,22 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
 
     private void cleanExpiredMessages(@NotNull final Key key, final int bucketIndex) {
         final LinkedList<PublishWithRetained> qos0Messages = getOrPutQos0Messages(key, bucketIndex);
+        final Bucket bucket = buckets[bucketIndex];
         final Iterator<PublishWithRetained> iterator = qos0Messages.iterator();
+        int index = 0;
         while (iterator.hasNext()) {
             final PublishWithRetained publishWithRetained = iterator.next();
             final PUBLISH qos0Message = publishWithRetained.publish;
             if (qos0Message.hasExpired()) {
-                getOrPutQueueSize(key, bucketIndex).decrementAndGet();
-                increaseQos0MessagesMemory(qos0Message.getEstimatedSizeInMemory() * -1);
-                increaseClientQos0MessagesMemory(key, qos0Message.getEstimatedSizeInMemory() * -1);
-                payloadPersistence.decrementReferenceCounter(qos0Message.getPublishId());
-                if (publishWithRetained.retained) {
-                    getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
-                }
                 iterator.remove();
+                decrementPayloadReference(bucket, qos0Message.getPublishId());
+                qos0MessageRemoved(key, bucketIndex, index, publishWithRetained);
+            } else {
+                index++;
             }
         }
 
-        final Bucket bucket = buckets[bucketIndex];
-
-        bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+        XodusTransactions.executeInExclusiveTransaction(bucket.getEnvironment(), txn -> {
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
                 iterateQueue(cursor, key, false, () -> {
@@ -1112,10 +1166,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                         if (!pubrel.hasExpired()) {
                             return true;
                         }
-                        getOrPutQueueSize(key, bucketIndex).decrementAndGet();
-                        if (serializer.deserializeRetained(serializedValue)) {
-                            getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
-                        }
+                        changeQueueSize(key, bucketIndex, -1, serializer.deserializeRetained(serializedValue));
                         cursor.deleteCurrent();
 
                     } else if (message instanceof PUBLISH) {
@@ -1125,11 +1176,8 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
                                 publish.getQoS() == QoS.EXACTLY_ONCE && publish.getPacketIdentifier() > 0;
                         final boolean drop = publish.hasExpired() && (!isInflight || expireInflight);
                         if (drop) {
-                            payloadPersistence.decrementReferenceCounter(publish.getPublishId());
-                            getOrPutQueueSize(key, bucketIndex).decrementAndGet();
-                            if (serializer.deserializeRetained(serializedValue)) {
-                                getOrPutRetainedQueueSize(key, bucketIndex).decrementAndGet();
-                            }
+                            decrementPayloadReference(bucket, publish.getPublishId());
+                            changeQueueSize(key, bucketIndex, -1, serializer.deserializeRetained(serializedValue));
                             cursor.deleteCurrent();
                         }
                     }
@@ -1221,7 +1269,7 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
 
         final Bucket bucket = buckets[bucketIndex];
         final ImmutableList.Builder<ClientQueueEntry> messageBuilder =
-                bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+                XodusTransactions.computeInExclusiveTransaction(bucket.getEnvironment(), txn -> {
                     try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
 
                         final ImmutableList.Builder<ClientQueueEntry> entries = ImmutableList.builder();
@@ -1239,8 +1287,35 @@ public class ClientQueueXodusLocalPersistence extends XodusLocalPersistence impl
         return messageBuilder.build();
     }
 
-    public interface QueueCallback {
-        void onItem(@NotNull Key queueId, @NotNull ImmutableList<ClientQueueEntry> messages);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void iterate(final @NotNull QueueCallback callback) {
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        for (final Bucket bucket : buckets) {
+            XodusTransactions.executeInReadonlyTransaction(bucket.getEnvironment(), txn -> {
+                try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
+                    Key currentKey = null;
+                    ImmutableList.Builder<ClientQueueEntry> entries = ImmutableList.builder();
+                    while (cursor.getNext()) {
+                        final Key key = serializer.deserializeKeyId(cursor.getKey());
+                        if (currentKey != null && !currentKey.equals(key)) {
+                            callback.onItem(currentKey, entries.build());
+                            entries = ImmutableList.builder();
+                        }
+                        currentKey = key;
+                        final ByteIterable value = cursor.getValue();
+                        entries.add(new ClientQueueEntry(serializer.deserializeValue(value),
+                                serializer.deserializeRetained(value)));
+                    }
+                    if (currentKey != null) {
+                        callback.onItem(currentKey, entries.build());
+                    }
+                }
+            });
+        }
     }
 
     @NotNull
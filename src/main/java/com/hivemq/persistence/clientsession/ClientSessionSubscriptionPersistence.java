@@ -135,13 +135,13 @@ public interface ClientSessionSubscriptionPersistence {
     ImmutableSet<Topic> getSharedSubscriptions(@NotNull String client);
 
     /**
-     * Invalidates Shared subscription caches for a client, and starts polling.
+     * Starts polling the shared subscription queues for a client.
      * <p>
      *
      * @param clientId   the client's id.
-     * @param sharedSubs the shared subscriptions to invalidate cache for.
+     * @param sharedSubs the shared subscriptions to poll for.
      */
-    void invalidateSharedSubscriptionCacheAndPoll(
+    void pollSharedSubscriptions(
             @NotNull String clientId, @NotNull ImmutableSet<Subscription> sharedSubs);
 
 
@@ -61,7 +61,6 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
 
     private final @NotNull ClientSessionSubscriptionLocalPersistence localPersistence;
     private final @NotNull LocalTopicTree topicTree;
-    private final @NotNull SharedSubscriptionService sharedSubscriptionService;
     private final @NotNull ConnectionPersistence connectionPersistence;
     private final @NotNull ProducerQueues singleWriter;
     private final @NotNull ClientSessionLocalPersistence clientSessionLocalPersistence;
@@ -73,7 +72,6 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
     ClientSessionSubscriptionPersistenceImpl(
             final @NotNull ClientSessionSubscriptionLocalPersistence localPersistence,
             final @NotNull LocalTopicTree topicTree,
-            final @NotNull SharedSubscriptionService sharedSubscriptionService,
             final @NotNull SingleWriterService singleWriterService,
             final @NotNull ConnectionPersistence connectionPersistence,
             final @NotNull ClientSessionLocalPersistence clientSessionLocalPersistence,
@@ -83,7 +81,6 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
 
         this.localPersistence = localPersistence;
         this.topicTree = topicTree;
-        this.sharedSubscriptionService = sharedSubscriptionService;
         this.connectionPersistence = connectionPersistence;
         this.clientSessionLocalPersistence = clientSessionLocalPersistence;
         this.publishPollService = publishPollService;
@@ -159,7 +156,7 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
 
                 persistFuture = singleWriter.submit(client, (bucketIndex) -> {
                     localPersistence.addSubscription(client, topic, timestamp, bucketIndex);
-                    invalidateSharedSubscriptionCacheAndPoll(client, ImmutableSet.of(subscription));
+                    pollSharedSubscriptions(client, ImmutableSet.of(subscription));
                     return null;
                 });
             }
@@ -350,7 +347,7 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
             return null;
         });
 
-        invalidateSharedSubscriptionCacheAndPoll(clientId, sharedSubs.build());
+        pollSharedSubscriptions(clientId, sharedSubs.build());
 
         //set future result when local persistence future and topic tree future return;
         return Futures.whenAllComplete(persistFuture)
@@ -358,7 +355,7 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
     }
 
     @Override
-    public void invalidateSharedSubscriptionCacheAndPoll(
+    public void pollSharedSubscriptions(
             final @NotNull String clientId, final @NotNull ImmutableSet<Subscription> sharedSubs) {
 
         checkNotNull(clientId, "Client id must never be null");
@@ -366,7 +363,7 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
 
         final ClientSession session = clientSessionLocalPersistence.getSession(clientId);
 
-        //not connected clients and empty subscription don't need invalidation of cache
+        //not connected clients and empty subscription don't need to poll
         if ((session != null && !session.isConnected()) || sharedSubs.isEmpty()) {
             return;
         }
@@ -384,10 +381,8 @@ public class ClientSessionSubscriptionPersistenceImpl extends AbstractPersistenc
                         topic.isRetainAsPublished(),
                         topic.getSubscriptionIdentifier(),
                         clientConnection.getChannel());
-                sharedSubscriptionService.invalidateSharedSubscriptionCache(clientId);
-                sharedSubscriptionService.invalidateSharedSubscriberCache(sharedSubId);
                 clientConnection.setNoSharedSubscription(false);
-                log.trace("Invalidated cache and polled for shared subscription '{}' and client '{}'",
+                log.trace("Polled for shared subscription '{}' and client '{}'",
                         sharedSubId,
                         clientId);
             }
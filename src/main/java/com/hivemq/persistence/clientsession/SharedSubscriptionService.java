@@ -15,8 +15,6 @@
  */
 package com.hivemq.persistence.clientsession;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableSet;
 import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
@@ -27,21 +25,10 @@ import com.hivemq.mqtt.topic.SubscriberWithQoS;
 import com.hivemq.mqtt.topic.SubscriptionFlag;
 import com.hivemq.mqtt.topic.tree.LocalTopicTree;
 
-import javax.annotation.PostConstruct;
 import javax.inject.Inject;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import static com.hivemq.configuration.service.InternalConfigurations.SHARED_SUBSCRIBER_CACHE_CONCURRENCY_LEVEL;
-import static com.hivemq.configuration.service.InternalConfigurations.SHARED_SUBSCRIBER_CACHE_MAX_SIZE_SUBSCRIBERS;
-import static com.hivemq.configuration.service.InternalConfigurations.SHARED_SUBSCRIBER_CACHE_TIME_TO_LIVE_MSEC;
-import static com.hivemq.configuration.service.InternalConfigurations.SHARED_SUBSCRIPTION_CACHE_CONCURRENCY_LEVEL;
-import static com.hivemq.configuration.service.InternalConfigurations.SHARED_SUBSCRIPTION_CACHE_MAX_SIZE_SUBSCRIPTIONS;
-import static com.hivemq.configuration.service.InternalConfigurations.SHARED_SUBSCRIPTION_CACHE_TIME_TO_LIVE_MSEC;
-
 @LazySingleton
 @ThreadSafe
 public class SharedSubscriptionService {
@@ -54,9 +41,6 @@ public class SharedSubscriptionService {
 
     private final @NotNull LocalTopicTree topicTree;
 
-    private @Nullable Cache<String, ImmutableSet<SubscriberWithQoS>> sharedSubscriberCache;
-    private @Nullable Cache<String, ImmutableSet<Topic>> sharedSubscriptionCache;
-
     @Inject
     public SharedSubscriptionService(
             final @NotNull LocalTopicTree topicTree) {
@@ -74,24 +58,6 @@ public class SharedSubscriptionService {
         return SHARED_SUBSCRIPTION_PATTERN.matcher(topic);
     }
 
-    @PostConstruct
-    void postConstruct() {
-
-        sharedSubscriberCache = CacheBuilder.newBuilder()
-                .expireAfterWrite(SHARED_SUBSCRIBER_CACHE_TIME_TO_LIVE_MSEC, TimeUnit.MILLISECONDS)
-                .concurrencyLevel(SHARED_SUBSCRIBER_CACHE_CONCURRENCY_LEVEL.get())
-                .maximumSize(SHARED_SUBSCRIBER_CACHE_MAX_SIZE_SUBSCRIBERS)
-                .recordStats()
-                .build();
-
-        sharedSubscriptionCache = CacheBuilder.newBuilder()
-                .expireAfterWrite(SHARED_SUBSCRIPTION_CACHE_TIME_TO_LIVE_MSEC, TimeUnit.MILLISECONDS)
-                .concurrencyLevel(SHARED_SUBSCRIPTION_CACHE_CONCURRENCY_LEVEL.get())
-                .maximumSize(SHARED_SUBSCRIPTION_CACHE_MAX_SIZE_SUBSCRIPTIONS)
-                .recordStats()
-                .build();
-    }
-
     /**
      * This check is only for the shared subscription service, the subscription topic validation happens for
      * performance reasons in com.hivemq.util.Topics. Changes to the shared subscription syntax need to be reflected
@@ -141,39 +107,26 @@ public class SharedSubscriptionService {
     }
 
     /**
-     * Requests all shared subscribers for a given shared subscription.
+     * Requests all shared subscribers for a given shared subscription. The subscribers are looked up in the index of
+     * the shared subscriptions of the topic tree, which is updated on every subscribe and unsubscribe.
      *
      * @param sharedSubscription is the share name and the topic filter separated by a '/'
      * @return a set of subscribers
      */
     public @NotNull ImmutableSet<SubscriberWithQoS> getSharedSubscriber(final @NotNull String sharedSubscription) {
-        //calling this method before post construct will return an empty set
-        if (sharedSubscriberCache == null) {
-            return ImmutableSet.of();
-        }
-        try {
-            return sharedSubscriberCache.get(sharedSubscription, () -> {
-                final SharedSubscription split = splitTopicAndGroup(sharedSubscription);
-                return topicTree.getSharedSubscriber(split.getShareName(), split.getTopicFilter());
-            });
-        } catch (final ExecutionException e) {
-            return ImmutableSet.of();
-        }
+        final SharedSubscription split = splitTopicAndGroup(sharedSubscription);
+        return topicTree.getSharedSubscriber(split.getShareName(), split.getTopicFilter());
     }
 
     /**
-     * Requests all shared subscriptions for a given client id.
+     * Requests all shared subscriptions for a given client id. The subscriptions are looked up in the index of the
+     * shared subscriptions of the topic tree, which is updated on every subscribe and unsubscribe.
      *
      * @param client of which the subscriptions are requested.
-     * @return a set of subscriptions
+     * @return a set of subscriptions, as topics with the '$share/' prefix
      */
-    public @NotNull ImmutableSet<Topic> getSharedSubscriptions(
-            final @NotNull String client, final @NotNull Callable cacheUpdater) throws ExecutionException {
-        //calling this method before post construct will return an empty set
-        if (sharedSubscriptionCache == null) {
-            return ImmutableSet.of();
-        }
-        return sharedSubscriptionCache.get(client, cacheUpdater);
+    public @NotNull ImmutableSet<Topic> getSharedSubscriptions(final @NotNull String client) {
+        return topicTree.getSharedSubscriptions(client);
     }
 
     /**
@@ -190,18 +143,6 @@ public class SharedSubscriptionService {
         return new SharedSubscription(topicFilter, group);
     }
 
-    public void invalidateSharedSubscriberCache(final @NotNull String sharedSubscription) {
-        if (sharedSubscriberCache != null) {
-            sharedSubscriberCache.invalidate(sharedSubscription);
-        }
-    }
-
-    public void invalidateSharedSubscriptionCache(final @NotNull String clientId) {
-        if (sharedSubscriptionCache != null) {
-            sharedSubscriptionCache.invalidate(clientId);
-        }
-    }
-
     /**
      * Removes the '$share/' from a given topic.
      * The remaining string has the same pattern that is used for she shared subscription message queue.
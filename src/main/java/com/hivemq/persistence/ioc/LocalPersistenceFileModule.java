@@ -28,6 +28,8 @@ import com.hivemq.persistence.ioc.provider.local.ClientSessionSubscriptionLocalP
 import com.hivemq.persistence.local.ClientSessionLocalPersistence;
 import com.hivemq.persistence.local.ClientSessionSubscriptionLocalPersistence;
 import com.hivemq.persistence.local.xodus.RetainedMessageXodusLocalPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionRocksDBLocalPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionRocksDBLocalPersistence;
 import com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionXodusLocalPersistence;
 import com.hivemq.persistence.local.xodus.clientsession.ClientSessionXodusLocalPersistence;
 import com.hivemq.persistence.payload.PublishPayloadLocalPersistence;
@@ -44,12 +46,16 @@ class LocalPersistenceFileModule extends SingletonModule<Class<LocalPersistenceF
     private final @NotNull Injector persistenceInjector;
     private final @NotNull PersistenceType payloadPersistenceType;
     private final @NotNull PersistenceType retainedPersistenceType;
+    private final @NotNull PersistenceType clientQueuePersistenceType;
+    private final @NotNull PersistenceType clientSessionPersistenceType;
 
     public LocalPersistenceFileModule(@NotNull final Injector persistenceInjector) {
         super(LocalPersistenceFileModule.class);
         this.persistenceInjector = persistenceInjector;
         this.payloadPersistenceType = InternalConfigurations.PAYLOAD_PERSISTENCE_TYPE.get();
         this.retainedPersistenceType = InternalConfigurations.RETAINED_MESSAGE_PERSISTENCE_TYPE.get();
+        this.clientQueuePersistenceType = InternalConfigurations.CLIENT_QUEUE_PERSISTENCE_TYPE.get();
+        this.clientSessionPersistenceType = InternalConfigurations.CLIENT_SESSION_PERSISTENCE_TYPE.get();
     }
 
     @Override
@@ -64,21 +70,33 @@ class LocalPersistenceFileModule extends SingletonModule<Class<LocalPersistenceF
                     RetainedMessageXodusLocalPersistence.class,
                     null);
         }
+        if (clientQueuePersistenceType == PersistenceType.FILE) {
+            bindLocalPersistence(ClientQueueLocalPersistence.class, ClientQueueXodusLocalPersistence.class, null);
+        }
 
         if (payloadPersistenceType == PersistenceType.FILE_NATIVE ||
-                retainedPersistenceType == PersistenceType.FILE_NATIVE) {
+                retainedPersistenceType == PersistenceType.FILE_NATIVE ||
+                clientQueuePersistenceType == PersistenceType.FILE_NATIVE) {
             install(new LocalPersistenceRocksDBModule(persistenceInjector));
         }
 
-        bindLocalPersistence(ClientSessionLocalPersistence.class,
-                ClientSessionXodusLocalPersistence.class,
-                ClientSessionLocalProvider.class);
+        if (clientSessionPersistenceType == PersistenceType.FILE_NATIVE) {
+            bindLocalPersistence(ClientSessionLocalPersistence.class,
+                    ClientSessionRocksDBLocalPersistence.class,
+                    ClientSessionLocalProvider.class);
 
-        bindLocalPersistence(ClientSessionSubscriptionLocalPersistence.class,
-                ClientSessionSubscriptionXodusLocalPersistence.class,
-                ClientSessionSubscriptionLocalProvider.class);
+            bindLocalPersistence(ClientSessionSubscriptionLocalPersistence.class,
+                    ClientSessionSubscriptionRocksDBLocalPersistence.class,
+                    ClientSessionSubscriptionLocalProvider.class);
+        } else {
+            bindLocalPersistence(ClientSessionLocalPersistence.class,
+                    ClientSessionXodusLocalPersistence.class,
+                    ClientSessionLocalProvider.class);
 
-        bindLocalPersistence(ClientQueueLocalPersistence.class, ClientQueueXodusLocalPersistence.class, null);
+            bindLocalPersistence(ClientSessionSubscriptionLocalPersistence.class,
+                    ClientSessionSubscriptionXodusLocalPersistence.class,
+                    ClientSessionSubscriptionLocalProvider.class);
+        }
     }
 
     private void bindLocalPersistence(
@@ -21,6 +21,8 @@ import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.persistence.clientqueue.ClientQueueLocalPersistence;
+import com.hivemq.persistence.clientqueue.ClientQueueRocksDBLocalPersistence;
 import com.hivemq.persistence.local.xodus.RetainedMessageRocksDBLocalPersistence;
 import com.hivemq.persistence.payload.PublishPayloadLocalPersistence;
 import com.hivemq.persistence.payload.PublishPayloadRocksDBLocalPersistence;
@@ -36,12 +38,14 @@ class LocalPersistenceRocksDBModule extends SingletonModule<Class<LocalPersisten
     private final Injector persistenceInjector;
     private final PersistenceType payloadPersistenceType;
     private final PersistenceType retainedPersistenceType;
+    private final PersistenceType clientQueuePersistenceType;
 
     LocalPersistenceRocksDBModule(@NotNull final Injector persistenceInjector) {
         super(LocalPersistenceRocksDBModule.class);
         this.persistenceInjector = persistenceInjector;
         this.payloadPersistenceType = InternalConfigurations.PAYLOAD_PERSISTENCE_TYPE.get();
         this.retainedPersistenceType = InternalConfigurations.RETAINED_MESSAGE_PERSISTENCE_TYPE.get();
+        this.clientQueuePersistenceType = InternalConfigurations.CLIENT_QUEUE_PERSISTENCE_TYPE.get();
     }
 
     @Override
@@ -57,6 +61,10 @@ class LocalPersistenceRocksDBModule extends SingletonModule<Class<LocalPersisten
                     PublishPayloadRocksDBLocalPersistence.class,
                     null);
         }
+
+        if (clientQueuePersistenceType == PersistenceType.FILE_NATIVE) {
+            bindLocalPersistence(ClientQueueLocalPersistence.class, ClientQueueRocksDBLocalPersistence.class, null);
+        }
     }
 
     private void bindLocalPersistence(
@@ -39,11 +39,13 @@ public class PersistenceMigrationFileModule extends SingletonModule<Class<Persis
 
     private final @NotNull PersistenceType payloadPersistenceType;
     private final @NotNull PersistenceType retainedPersistenceType;
+    private final @NotNull PersistenceType clientQueuePersistenceType;
 
     public PersistenceMigrationFileModule() {
         super(PersistenceMigrationFileModule.class);
         this.payloadPersistenceType = InternalConfigurations.PAYLOAD_PERSISTENCE_TYPE.get();
         this.retainedPersistenceType = InternalConfigurations.RETAINED_MESSAGE_PERSISTENCE_TYPE.get();
+        this.clientQueuePersistenceType = InternalConfigurations.CLIENT_QUEUE_PERSISTENCE_TYPE.get();
     }
 
     @Override
@@ -57,15 +59,18 @@ public class PersistenceMigrationFileModule extends SingletonModule<Class<Persis
             bind(PublishPayloadLocalPersistence.class).to(PublishPayloadXodusLocalPersistence.class)
                     .in(Singleton.class);
         }
+        if (clientQueuePersistenceType == PersistenceType.FILE) {
+            bind(ClientQueueLocalPersistence.class).to(ClientQueueXodusLocalPersistence.class).in(Singleton.class);
+        }
 
         if (retainedPersistenceType == PersistenceType.FILE_NATIVE ||
-                payloadPersistenceType == PersistenceType.FILE_NATIVE) {
+                payloadPersistenceType == PersistenceType.FILE_NATIVE ||
+                clientQueuePersistenceType == PersistenceType.FILE_NATIVE) {
             install(new PersistenceMigrationRocksDBModule());
         }
 
         bind(ClientSessionLocalPersistence.class).toProvider(ClientSessionLocalProvider.class).in(Singleton.class);
         bind(ClientSessionSubscriptionLocalPersistence.class).toProvider(ClientSessionSubscriptionLocalProvider.class)
                 .in(Singleton.class);
-        bind(ClientQueueLocalPersistence.class).to(ClientQueueXodusLocalPersistence.class).in(Singleton.class);
     }
 }
@@ -19,6 +19,8 @@ import com.hivemq.bootstrap.ioc.SingletonModule;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.persistence.clientqueue.ClientQueueLocalPersistence;
+import com.hivemq.persistence.clientqueue.ClientQueueRocksDBLocalPersistence;
 import com.hivemq.persistence.local.xodus.RetainedMessageRocksDBLocalPersistence;
 import com.hivemq.persistence.payload.PublishPayloadLocalPersistence;
 import com.hivemq.persistence.payload.PublishPayloadRocksDBLocalPersistence;
@@ -33,12 +35,14 @@ class PersistenceMigrationRocksDBModule extends SingletonModule<Class<Persistenc
 
     private final @NotNull PersistenceType payloadPersistenceType;
     private final @NotNull PersistenceType retainedPersistenceType;
+    private final @NotNull PersistenceType clientQueuePersistenceType;
 
     PersistenceMigrationRocksDBModule() {
         super(PersistenceMigrationRocksDBModule.class);
 
         this.payloadPersistenceType = InternalConfigurations.PAYLOAD_PERSISTENCE_TYPE.get();
         this.retainedPersistenceType = InternalConfigurations.RETAINED_MESSAGE_PERSISTENCE_TYPE.get();
+        this.clientQueuePersistenceType = InternalConfigurations.CLIENT_QUEUE_PERSISTENCE_TYPE.get();
     }
 
     @Override
@@ -52,5 +56,9 @@ class PersistenceMigrationRocksDBModule extends SingletonModule<Class<Persistenc
             bind(PublishPayloadLocalPersistence.class).to(PublishPayloadRocksDBLocalPersistence.class)
                     .in(Singleton.class);
         }
+
+        if (clientQueuePersistenceType == PersistenceType.FILE_NATIVE) {
+            bind(ClientQueueLocalPersistence.class).to(ClientQueueRocksDBLocalPersistence.class).in(Singleton.class);
+        }
     }
 }
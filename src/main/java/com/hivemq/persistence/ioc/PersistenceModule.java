@@ -31,12 +31,15 @@ import com.hivemq.persistence.PersistenceShutdownHookInstaller;
 import com.hivemq.persistence.ScheduledCleanUpService;
 import com.hivemq.persistence.SingleWriterService;
 import com.hivemq.persistence.SingleWriterServiceImpl;
+import com.hivemq.persistence.ThreadAffineSingleWriter;
 import com.hivemq.persistence.ioc.annotation.PayloadPersistence;
 import com.hivemq.persistence.ioc.annotation.Persistence;
 import com.hivemq.persistence.ioc.provider.local.PayloadPersistenceScheduledExecutorProvider;
 import com.hivemq.persistence.ioc.provider.local.PersistenceExecutorProvider;
 import com.hivemq.persistence.ioc.provider.local.PersistenceScheduledExecutorProvider;
 import com.hivemq.persistence.util.FutureUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
@@ -46,6 +49,8 @@ import java.util.concurrent.ScheduledExecutorService;
  */
 public class PersistenceModule extends SingletonModule<Class<PersistenceModule>> {
 
+    private static final @NotNull Logger log = LoggerFactory.getLogger(PersistenceModule.class);
+
     private final @NotNull Injector persistenceInjector;
     private final PersistenceConfigurationService persistenceConfigurationService;
 
@@ -65,7 +70,14 @@ public class PersistenceModule extends SingletonModule<Class<PersistenceModule>>
         if ((persistenceConfigurationService.getMode() == PersistenceConfigurationService.PersistenceMode.IN_MEMORY) &&
                 InternalConfigurations.IN_MEMORY_SINGLE_WRITER.get()) {
             bind(SingleWriterService.class).to(InMemorySingleWriter.class);
+        } else if (InternalConfigurations.SINGLE_WRITER_THREAD_AFFINE.get() &&
+                !InternalConfigurations.SINGLE_WRITER_GROUP_COMMIT_ENABLED.get()) {
+            bind(SingleWriterService.class).to(ThreadAffineSingleWriter.class);
         } else {
+            if (InternalConfigurations.SINGLE_WRITER_THREAD_AFFINE.get()) {
+                log.warn("The thread-affine single writer does not support group commits. " +
+                        "Using the default single writer instead.");
+            }
             bind(SingleWriterService.class).to(SingleWriterServiceImpl.class);
         }
 
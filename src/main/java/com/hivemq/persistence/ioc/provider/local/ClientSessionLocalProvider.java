@@ -16,7 +16,10 @@
 package com.hivemq.persistence.ioc.provider.local;
 
 
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.persistence.local.ClientSessionLocalPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionRocksDBLocalPersistence;
 import com.hivemq.persistence.local.xodus.clientsession.ClientSessionXodusLocalPersistence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,14 +40,22 @@ public class ClientSessionLocalProvider implements Provider<ClientSessionLocalPe
     private static final Logger log = LoggerFactory.getLogger(ClientSessionLocalProvider.class);
 
     private final Provider<ClientSessionXodusLocalPersistence> localFilePersistence;
+    private final Provider<ClientSessionRocksDBLocalPersistence> localRocksDBPersistence;
 
     @Inject
-    ClientSessionLocalProvider(final Provider<ClientSessionXodusLocalPersistence> localFilePersistence) {
+    ClientSessionLocalProvider(
+            final Provider<ClientSessionXodusLocalPersistence> localFilePersistence,
+            final Provider<ClientSessionRocksDBLocalPersistence> localRocksDBPersistence) {
         this.localFilePersistence = localFilePersistence;
+        this.localRocksDBPersistence = localRocksDBPersistence;
     }
 
     @Override
     public ClientSessionLocalPersistence get() {
+        if (InternalConfigurations.CLIENT_SESSION_PERSISTENCE_TYPE.get() == PersistenceType.FILE_NATIVE) {
+            log.trace("Using native file based Client Session Persistence store");
+            return localRocksDBPersistence.get();
+        }
         log.trace("Using file based Client Session Persistence store");
         return localFilePersistence.get();
     }
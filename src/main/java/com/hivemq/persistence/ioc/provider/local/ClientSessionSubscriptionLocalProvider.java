@@ -15,7 +15,10 @@
  */
 package com.hivemq.persistence.ioc.provider.local;
 
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.persistence.local.ClientSessionSubscriptionLocalPersistence;
+import com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionRocksDBLocalPersistence;
 import com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionXodusLocalPersistence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,14 +39,22 @@ public class ClientSessionSubscriptionLocalProvider implements Provider<ClientSe
     private static final Logger log = LoggerFactory.getLogger(ClientSessionSubscriptionLocalProvider.class);
 
     private final Provider<ClientSessionSubscriptionXodusLocalPersistence> localFilePersistence;
+    private final Provider<ClientSessionSubscriptionRocksDBLocalPersistence> localRocksDBPersistence;
 
     @Inject
-    ClientSessionSubscriptionLocalProvider(final Provider<ClientSessionSubscriptionXodusLocalPersistence> localFilePersistence) {
+    ClientSessionSubscriptionLocalProvider(
+            final Provider<ClientSessionSubscriptionXodusLocalPersistence> localFilePersistence,
+            final Provider<ClientSessionSubscriptionRocksDBLocalPersistence> localRocksDBPersistence) {
         this.localFilePersistence = localFilePersistence;
+        this.localRocksDBPersistence = localRocksDBPersistence;
     }
 
     @Override
     public ClientSessionSubscriptionLocalPersistence get() {
+        if (InternalConfigurations.CLIENT_SESSION_PERSISTENCE_TYPE.get() == PersistenceType.FILE_NATIVE) {
+            log.trace("Using native file based ClientSession Subscription store");
+            return localRocksDBPersistence.get();
+        }
         log.trace("Using file based ClientSession Subscription store");
         return localFilePersistence.get();
     }
@@ -35,6 +35,8 @@ import java.util.Set;
  */
 public interface ClientSessionLocalPersistence extends LocalPersistence {
 
+    String PERSISTENCE_NAME = "client_session_store";
+
     /**
      * Get a {@link ClientSession} for a specific client id with an expired check.
      *
@@ -32,6 +32,8 @@ import java.util.Map;
  */
 public interface ClientSessionSubscriptionLocalPersistence extends LocalPersistence {
 
+    String PERSISTENCE_NAME = "client_session_subscriptions";
+
     /**
      * Add a subscription of specific topic for a specific client to a persistence bucket.
      *
@@ -239,7 +239,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
                         currentQos0MessagesMemory,
                         qos0MemoryLimit);
             }
-            payloadPersistence.decrementReferenceCounter(publishWithRetained.getPublishId());
+            decrementPayloadReference(publishWithRetained);
             return;
         }
 
@@ -250,7 +250,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
                         0,
                         messages.qos0Memory,
                         qos0ClientMemoryLimit);
-                payloadPersistence.decrementReferenceCounter(publishWithRetained.getPublishId());
+                decrementPayloadReference(publishWithRetained);
                 return;
             }
         }
@@ -308,7 +308,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
 
             if (publishWithRetained.hasExpired()) {
                 iterator.remove();
-                payloadPersistence.decrementReferenceCounter(publishWithRetained.getPublishId());
+                decrementPayloadReference(publishWithRetained);
                 if (publishWithRetained.retained) {
                     messages.retainedQos1Or2Messages--;
                 }
@@ -318,6 +318,8 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
 
                 final int packetId = packetIds.get(packetIdIndex);
                 publishWithRetained.setPacketIdentifier(packetId);
+                // The message stays in the queue while it is written, so the writer owns an additional reference
+                publishWithRetained.retainPayload();
                 publishes.add(publishWithRetained);
                 packetIdIndex++;
                 messageCount++;
@@ -329,10 +331,14 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
 
             // poll a qos 0 message
             final PUBLISH qos0Publish = pollQos0Message(messages);
-            if ((qos0Publish != null) && !qos0Publish.hasExpired()) {
-                publishes.add(qos0Publish);
-                messageCount++;
-                bytes += qos0Publish.getEstimatedSizeInMemory();
+            if (qos0Publish != null) {
+                if (!qos0Publish.hasExpired()) {
+                    publishes.add(qos0Publish);
+                    messageCount++;
+                    bytes += qos0Publish.getEstimatedSizeInMemory();
+                } else {
+                    qos0Publish.releasePayload();
+                }
             }
             if ((messageCount == countLimit) || (bytes > bytesLimit)) {
                 break;
@@ -356,6 +362,8 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
                 publishes.add(qos0Publish);
                 qos0MessagesFound++;
                 qos0Bytes += qos0Publish.getEstimatedSizeInMemory();
+            } else {
+                qos0Publish.releasePayload();
             }
         }
 
@@ -372,6 +380,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
         increaseClientQos0MessagesMemory(messages, -estimatedSize);
         increaseMessagesMemory(-estimatedSize);
         payloadPersistence.decrementReferenceCounter(publishWithRetained.getPublishId());
+        // The ownership of an off-heap payload is handed over to the caller
         return publishWithRetained;
     }
 
@@ -410,6 +419,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
                 final PublishWithRetained publishWithRetained = (PublishWithRetained) messageWithID;
                 bytes += publishWithRetained.getEstimatedSizeInMemory();
                 publishWithRetained.setDuplicateDelivery(true);
+                publishWithRetained.retainPayload();
             }
 
             if ((messageCount == batchSize) || (bytes > bytesLimit)) {
@@ -454,7 +464,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
                 if (messageWithID instanceof PublishWithRetained) {
                     final PublishWithRetained publish = (PublishWithRetained) messageWithID;
                     retained = publish.retained;
-                    payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+                    decrementPayloadReference(publish);
                     increaseMessagesMemory(-publish.getEstimatedSize());
                     pubrel.setMessageExpiryInterval(publish.getMessageExpiryInterval());
                     pubrel.setPublishTimestamp(publish.getTimestamp());
@@ -515,7 +525,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
                     if (uniqueId != null && !uniqueId.equals(publish.getUniqueId())) {
                         break;
                     }
-                    payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+                    decrementPayloadReference(publish);
                     removedId = publish.getUniqueId();
                 }
                 if (isRetained(messageWithID)) {
@@ -575,13 +585,13 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
 
         for (final MessageWithID messageWithID : messages.qos1Or2Messages) {
             if (messageWithID instanceof PublishWithRetained) {
-                payloadPersistence.decrementReferenceCounter(((PublishWithRetained) messageWithID).getPublishId());
+                decrementPayloadReference((PublishWithRetained) messageWithID);
             }
             increaseMessagesMemory(-getMessageSize(messageWithID));
         }
 
         for (final PublishWithRetained qos0Message : messages.qos0Messages) {
-            payloadPersistence.decrementReferenceCounter(qos0Message.getPublishId());
+            decrementPayloadReference(qos0Message);
             final int estimatedSize = qos0Message.getEstimatedSize();
             increaseQos0MessagesMemory(-estimatedSize);
             // increaseClientQos0MessagesMemory not necessary as messages are removed completely
@@ -605,7 +615,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
         }
 
         for (final PublishWithRetained publishWithRetained : messages.qos0Messages) {
-            payloadPersistence.decrementReferenceCounter(publishWithRetained.getPublishId());
+            decrementPayloadReference(publishWithRetained);
             increaseQos0MessagesMemory(-publishWithRetained.getEstimatedSize());
             // increaseClientQos0MessagesMemory not necessary as messages.qos0Memory = 0 below
             increaseMessagesMemory(-publishWithRetained.getEstimatedSize());
@@ -657,7 +667,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
                 if (!uniqueId.equals(publish.getUniqueId())) {
                     continue;
                 }
-                payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+                decrementPayloadReference(publish);
                 if (publish.retained) {
                     messages.retainedQos1Or2Messages--;
                 }
@@ -701,12 +711,27 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
     @ExecuteInSingleWriter
     public void closeDB(final int bucketIndex) {
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+        releasePayloads(buckets[bucketIndex]);
+        releasePayloads(sharedBuckets[bucketIndex]);
         buckets[bucketIndex].clear();
         sharedBuckets[bucketIndex].clear();
         totalMemorySize.set(0L);
         qos0MessagesMemory.set(0L);
     }
 
+    private static void releasePayloads(final @NotNull Map<String, Messages> bucket) {
+        for (final Messages messages : bucket.values()) {
+            for (final MessageWithID messageWithID : messages.qos1Or2Messages) {
+                if (messageWithID instanceof PublishWithRetained) {
+                    ((PublishWithRetained) messageWithID).releasePayload();
+                }
+            }
+            for (final PublishWithRetained qos0Message : messages.qos0Messages) {
+                qos0Message.releasePayload();
+            }
+        }
+    }
+
     private int getMessageSize(final @NotNull MessageWithID messageWithID) {
         if (messageWithID instanceof PublishWithRetained) {
             return ((PublishWithRetained) messageWithID).getEstimatedSize();
@@ -810,7 +835,12 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
             final @NotNull PUBLISH publish, final boolean shared, final @NotNull String queueId) {
 
         logMessageDropped(publish, shared, queueId);
+        decrementPayloadReference(publish);
+    }
+
+    private void decrementPayloadReference(final @NotNull PUBLISH publish) {
         payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+        publish.releasePayload();
     }
 
     private void cleanExpiredMessages(final @NotNull Messages messages) {
@@ -822,7 +852,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
                 increaseQos0MessagesMemory(-publishWithRetained.getEstimatedSize());
                 increaseClientQos0MessagesMemory(messages, -publishWithRetained.getEstimatedSize());
                 increaseMessagesMemory(-publishWithRetained.getEstimatedSize());
-                payloadPersistence.decrementReferenceCounter(publishWithRetained.getPublishId());
+                decrementPayloadReference(publishWithRetained);
                 iterator.remove();
             }
         }
@@ -853,7 +883,7 @@ public class ClientQueueMemoryLocalPersistence implements ClientQueueLocalPersis
                 final boolean isInflight = publish.getQoS() == QoS.EXACTLY_ONCE && publish.getPacketIdentifier() > 0;
                 final boolean drop = publish.hasExpired() && (!isInflight || expireInflight);
                 if (drop) {
-                    payloadPersistence.decrementReferenceCounter(publish.getPublishId());
+                    decrementPayloadReference(publish);
                     if (publish.retained) {
                         messages.retainedQos1Or2Messages--;
                     }
@@ -26,6 +26,7 @@ import com.hivemq.util.LocalPersistenceFileUtil;
 import org.rocksdb.BlockBasedTableConfig;
 import org.rocksdb.LRUCache;
 import org.rocksdb.Options;
+import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.Statistics;
@@ -44,6 +45,8 @@ import static com.google.common.base.Preconditions.checkArgument;
  */
 public abstract class RocksDBLocalPersistence implements LocalPersistence, FilePersistence {
 
+    private static final long SCAN_READAHEAD_SIZE_BYTES = 2 * 1024 * 1024;
+
     protected final AtomicBoolean stopped = new AtomicBoolean(false);
     protected final @NotNull RocksDB[] buckets;
     private final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil;
@@ -108,6 +111,7 @@ public abstract class RocksDBLocalPersistence implements LocalPersistence, FileP
             final BlockBasedTableConfig tableConfig = new BlockBasedTableConfig();
             tableConfig.setBlockCache(cache);
             tableConfig.setBlockSize(blockSize);
+            configureTableConfig(tableConfig);
             options.setStatistics(new Statistics());
             options.setCreateIfMissing(true);
             options.setTableFormatConfig(tableConfig);
@@ -118,6 +122,7 @@ public abstract class RocksDBLocalPersistence implements LocalPersistence, FileP
             options.setMaxLogFileSize(InternalConfigurations.ROCKSDB_MAX_LOG_FILE_SIZE_BYTES);
             options.setKeepLogFileNum(InternalConfigurations.ROCKSDB_LOG_FILES_COUNT);
             options.setStatsHistoryBufferSize(InternalConfigurations.OCKSDB_STATS_HISTORY_BUFFER_SIZE_BYTES);
+            configureKeyLayout(options);
 
             for (int i = 0; i < bucketCount; i++) {
                 final File persistenceFile = new File(persistenceFolder, name + "_" + i);
@@ -150,6 +155,7 @@ public abstract class RocksDBLocalPersistence implements LocalPersistence, FileP
             final BlockBasedTableConfig tableConfig = new BlockBasedTableConfig();
             tableConfig.setBlockCache(cache);
             tableConfig.setBlockSize(blockSize);
+            configureTableConfig(tableConfig);
             options.setStatistics(new Statistics());
             options.setCreateIfMissing(true);
             options.setTableFormatConfig(tableConfig);
@@ -160,6 +166,7 @@ public abstract class RocksDBLocalPersistence implements LocalPersistence, FileP
             options.setMaxLogFileSize(InternalConfigurations.ROCKSDB_MAX_LOG_FILE_SIZE_BYTES);
             options.setKeepLogFileNum(InternalConfigurations.ROCKSDB_LOG_FILES_COUNT);
             options.setStatsHistoryBufferSize(InternalConfigurations.OCKSDB_STATS_HISTORY_BUFFER_SIZE_BYTES);
+            configureKeyLayout(options);
 
             final File persistenceFolder = localPersistenceFileUtil.getVersionedLocalPersistenceFolder(name, version);
             final CountDownLatch counter = new CountDownLatch(bucketCount);
@@ -221,6 +228,36 @@ public abstract class RocksDBLocalPersistence implements LocalPersistence, FileP
         // default noop
     }
 
+    /**
+     * Overwrite this method to configure options that depend on the layout of the keys, e.g. a prefix extractor
+     *
+     * @param options the options object which can be configured
+     */
+    protected void configureKeyLayout(final @NotNull Options options) {
+        // default noop
+    }
+
+    /**
+     * Overwrite this method to configure the block based table, e.g. to add a filter policy
+     *
+     * @param tableConfig the table config which can be configured
+     */
+    protected void configureTableConfig(final @NotNull BlockBasedTableConfig tableConfig) {
+        // default noop
+    }
+
+    /**
+     * Creates the read options for iterations over a whole bucket, e.g. on startup or in cleanups. The iteration reads
+     * ahead and the read blocks are not added to the block cache, so the cache is not evicted by the iteration.
+     *
+     * @return the read options, which must be closed by the caller
+     */
+    protected static @NotNull ReadOptions scanReadOptions() {
+        return new ReadOptions().setFillCache(false)
+                .setReadaheadSize(SCAN_READAHEAD_SIZE_BYTES)
+                .setTotalOrderSeek(true);
+    }
+
     protected abstract void init();
 
     @Override
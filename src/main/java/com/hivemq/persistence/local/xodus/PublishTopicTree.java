@@ -18,15 +18,15 @@ package com.hivemq.persistence.local.xodus;
 import com.google.common.collect.ImmutableSet;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
-import org.apache.commons.lang3.StringUtils;
+import com.hivemq.mqtt.topic.TopicTokenizer;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 /**
  * @author Lukas Brandl
  */
@@ -35,24 +35,23 @@ public class PublishTopicTree {
     private final Node root = new Node();
 
     public void add(@NotNull final String topic) {
-        final ArrayList<String> subTopics =
-                new ArrayList<>(Arrays.asList(StringUtils.splitPreserveAllTokens(topic, '/')));
-        root.add(subTopics);
+        checkArgument(!topic.isEmpty(), "Topic must not be empty");
+        root.add(TopicTokenizer.threadLocal(topic), 0);
     }
 
     @NotNull
     public Set<String> get(@NotNull final String topic) {
-        final ArrayList<String> subTopics =
-                new ArrayList<>(Arrays.asList(StringUtils.splitPreserveAllTokens(topic, '/')));
-        return root.get(subTopics, null, false);
+        return root.get(TopicTokenizer.threadLocal(topic), 0, null, false);
     }
 
     public void remove(@NotNull final String topic) {
-        final ArrayList<String> subTopics =
-                new ArrayList<>(Arrays.asList(StringUtils.splitPreserveAllTokens(topic, '/')));
-        root.remove(subTopics);
+        root.remove(TopicTokenizer.threadLocal(topic), 0);
     }
 
+    /**
+     * The levels of the topic are not copied into a list per node. Each node gets the tokenized topic and the index of
+     * its level instead.
+     */
     private static class Node {
         // child and childSubTopic are only used if there is no more than one child node.
         @Nullable Node child = null;
@@ -64,9 +63,8 @@ public class PublishTopicTree {
         This is important if for example the topics "a/b/c" and "a/b" are both stored in the tree.
         */ boolean directMatch = false;
 
-        public void add(@NotNull final ArrayList<String> subTopics) {
-            final String currentSubTopic = subTopics.get(0);
-            if (child != null && !currentSubTopic.equals(childSubTopic)) {
+        public void add(@NotNull final TopicTokenizer subTopics, final int index) {
+            if (child != null && !subTopics.segmentEquals(index, childSubTopic)) {
                 childNodes = new HashMap<>(1);
                 childNodes.put(childSubTopic, child);
                 child = null;
@@ -76,6 +74,7 @@ public class PublishTopicTree {
             Node nextChild;
             if (childNodes != null) {
                 //This is NOT the first child node that is added
+                final String currentSubTopic = subTopics.segment(index);
                 nextChild = childNodes.get(currentSubTopic);
                 if (nextChild == null) {
                     nextChild = new Node();
@@ -84,15 +83,14 @@ public class PublishTopicTree {
             } else if (child == null) {
                 //This is the first child node that is added
                 child = new Node();
-                childSubTopic = currentSubTopic;
+                childSubTopic = subTopics.segment(index);
                 nextChild = child;
             } else {
                 nextChild = child;
             }
 
-            subTopics.remove(0);
-            if (!subTopics.isEmpty()) {
-                nextChild.add(subTopics);
+            if (index + 1 < subTopics.count()) {
+                nextChild.add(subTopics, index + 1);
             } else {
                 nextChild.directMatch();
             }
@@ -102,8 +100,8 @@ public class PublishTopicTree {
             directMatch = true;
         }
 
-        public boolean remove(@NotNull final ArrayList<String> subTopics) {
-            if (subTopics.isEmpty()) {
+        public boolean remove(@NotNull final TopicTokenizer subTopics, final int index) {
+            if (index == subTopics.count()) {
                 if (!directMatch) {
                     return false;
                 } else {
@@ -114,13 +112,10 @@ public class PublishTopicTree {
             if (childNodes == null && child == null) {
                 return false;
             }
-            final String currentSubTopic = subTopics.get(0);
 
             if (child != null) {
-                if (childSubTopic.equals(currentSubTopic)) {
-                    final ArrayList<String> nextSubTopics = new ArrayList<>(subTopics);
-                    nextSubTopics.remove(0);
-                    final boolean removed = child.remove(nextSubTopics);
+                if (subTopics.segmentEquals(index, childSubTopic)) {
+                    final boolean removed = child.remove(subTopics, index + 1);
                     if (removed && (!child.directMatch)) {
                         child = null;
                         return true;
@@ -130,13 +125,12 @@ public class PublishTopicTree {
                     return false;
                 }
             } else {
+                final String currentSubTopic = subTopics.segment(index);
                 final Node node = childNodes.get(currentSubTopic);
                 if (node == null) {
                     return false;
                 }
-                final ArrayList<String> nextSubTopics = new ArrayList<>(subTopics);
-                nextSubTopics.remove(0);
-                final boolean removed = node.remove(nextSubTopics);
+                final boolean removed = node.remove(subTopics, index + 1);
                 if (removed && !node.directMatch) {
                     childNodes.remove(currentSubTopic);
                     if (childNodes.size() == 1) {
@@ -153,16 +147,18 @@ public class PublishTopicTree {
 
         @NotNull
         public Set<String> get(
-                @NotNull final ArrayList<String> subTopics, @Nullable final String currentTopic, final boolean getAll) {
+                @NotNull final TopicTokenizer subTopics,
+                final int index,
+                @Nullable final String currentTopic,
+                final boolean getAll) {
             if (childNodes == null && child == null) {
                 if (currentTopic == null) {
                     return ImmutableSet.of();
                 }
-                if (subTopics.isEmpty() || getAll) {
+                if (index == subTopics.count() || getAll) {
                     return ImmutableSet.of(currentTopic);
                 }
-                final String currentSubTopic = subTopics.get(0);
-                if (currentSubTopic.equals("#")) {
+                if (subTopics.isMultiLevelWildcard(index)) {
                     // x/y/z matches x/y/z/#
                     return ImmutableSet.of(currentTopic);
                 }
@@ -170,64 +166,64 @@ public class PublishTopicTree {
             }
             final Set<String> result = new HashSet<>();
 
-            if (subTopics.isEmpty()) {
+            if (index == subTopics.count()) {
                 if (directMatch) {
                     result.add(currentTopic);
                 }
                 return result;
             }
-            final String currentSubTopic = subTopics.get(0);
-            if ((getAll || currentSubTopic.equals("#")) && directMatch) {
+            final boolean multiLevelWildcard = subTopics.isMultiLevelWildcard(index);
+            if ((getAll || multiLevelWildcard) && directMatch) {
                 // x/y/z matches x/y/z/#
                 result.add(currentTopic);
             }
 
-            if (currentSubTopic.equals("+") || currentSubTopic.equals("#")) {
-                final ArrayList<String> nextSubTopics = new ArrayList<>(subTopics);
-                if (!currentSubTopic.equals("#")) {
-                    nextSubTopics.remove(0);
-                }
+            if (multiLevelWildcard || subTopics.isSingleLevelWildcard(index)) {
+                // the multi level wildcard stays the current level for all child nodes
+                final int nextIndex = multiLevelWildcard ? index : index + 1;
                 if (childNodes != null) {
                     for (final Map.Entry<String, Node> entry : childNodes.entrySet()) {
                         if (currentTopic == null) {
                             result.addAll(entry.getValue()
-                                    .get(nextSubTopics, entry.getKey(), currentSubTopic.equals("#")));
+                                    .get(subTopics, nextIndex, entry.getKey(), multiLevelWildcard));
                         } else {
                             result.addAll(entry.getValue()
-                                    .get(nextSubTopics,
+                                    .get(subTopics,
+                                            nextIndex,
                                             currentTopic + "/" + entry.getKey(),
-                                            currentSubTopic.equals("#")));
+                                            multiLevelWildcard));
                         }
                     }
                 } else if (child != null) {
                     if (currentTopic == null) {
-                        result.addAll(child.get(nextSubTopics, childSubTopic, currentSubTopic.equals("#")));
+                        result.addAll(child.get(subTopics, nextIndex, childSubTopic, multiLevelWildcard));
                     } else {
-                        result.addAll(child.get(nextSubTopics,
+                        result.addAll(child.get(subTopics,
+                                nextIndex,
                                 currentTopic + "/" + childSubTopic,
-                                currentSubTopic.equals("#")));
+                                multiLevelWildcard));
                     }
                 }
             } else {
-                final ArrayList<String> nextSubTopics = new ArrayList<>(subTopics);
-                nextSubTopics.remove(0);
-
+                final String currentSubTopic;
                 final Node nextChild;
                 if (childNodes != null) {
+                    currentSubTopic = subTopics.segment(index);
                     nextChild = childNodes.get(currentSubTopic);
                     if (nextChild == null) {
                         return result;
                     }
                 } else {
-                    if (child == null || !childSubTopic.equals(currentSubTopic)) {
+                    if (child == null || !subTopics.segmentEquals(index, childSubTopic)) {
                         return result;
                     }
+                    currentSubTopic = childSubTopic;
                     nextChild = child;
                 }
                 if (currentTopic == null) {
-                    result.addAll(nextChild.get(nextSubTopics, currentSubTopic, false));
+                    result.addAll(nextChild.get(subTopics, index + 1, currentSubTopic, false));
                 } else {
-                    result.addAll(nextChild.get(nextSubTopics, currentTopic + "/" + currentSubTopic, false));
+                    result.addAll(nextChild.get(subTopics, index + 1, currentTopic + "/" + currentSubTopic, false));
                 }
             }
             return result;
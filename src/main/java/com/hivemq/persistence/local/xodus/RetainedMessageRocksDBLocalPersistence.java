@@ -33,6 +33,7 @@ import com.hivemq.util.LocalPersistenceFileUtil;
 import com.hivemq.util.ThreadPreConditions;
 import jetbrains.exodus.ExodusException;
 import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
 import org.rocksdb.WriteBatch;
 import org.rocksdb.WriteOptions;
@@ -198,22 +199,10 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
         final RocksDB bucket = buckets[bucketIndex];
 
-        try {
-            final byte[] key = serializer.serializeKey(topic);
-            final byte[] removed = bucket.get(key);
-            if (removed == null) {
-                log.trace("Removing retained message for topic {} (no message was stored previously)", topic);
-                return;
-            }
-
-            final RetainedMessage message = serializer.deserializeValue(removed);
-
-            log.trace("Removing retained message for topic {}", topic);
-            bucket.delete(key);
-            topicTrees[bucketIndex].remove(topic);
-            payloadPersistence.decrementReferenceCounter(message.getPublishId());
-            retainMessageCounter.decrementAndGet();
-
+        try (final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions options = new WriteOptions()) {
+            remove(writeBatch, topic, bucketIndex);
+            bucket.write(options, writeBatch);
         } catch (final Exception e) {
             log.error("An error occurred while removing a retained message.");
             log.debug("Original Exception:", e);
@@ -221,6 +210,24 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
 
     }
 
+    private void remove(final @NotNull WriteBatch writeBatch, final @NotNull String topic, final int bucketIndex)
+            throws RocksDBException {
+        final byte[] key = serializer.serializeKey(topic);
+        final byte[] removed = buckets[bucketIndex].get(key);
+        if (removed == null) {
+            log.trace("Removing retained message for topic {} (no message was stored previously)", topic);
+            return;
+        }
+
+        final RetainedMessage message = serializer.deserializeValue(removed);
+
+        log.trace("Removing retained message for topic {}", topic);
+        writeBatch.delete(key);
+        topicTrees[bucketIndex].remove(topic);
+        payloadPersistence.decrementReferenceCounter(message.getPublishId());
+        retainMessageCounter.decrementAndGet();
+    }
+
     @Nullable
     @Override
     public RetainedMessage get(@NotNull final String topic, final int bucketIndex) {
@@ -272,22 +279,10 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
 
         final RocksDB bucket = buckets[bucketIndex];
 
-        try {
-            final byte[] serializedTopic = serializer.serializeKey(topic);
-            final byte[] valueAsBytes = bucket.get(serializedTopic);
-            if (valueAsBytes != null) {
-                final RetainedMessage retainedMessageFromStore = serializer.deserializeValue(valueAsBytes);
-                log.trace("Replacing retained message for topic {}", topic);
-                bucket.put(serializedTopic, serializer.serializeValue(retainedMessage));
-                // The previous retained message is replaced, so we have to decrement the reference count.
-                payloadPersistence.decrementReferenceCounter(retainedMessageFromStore.getPublishId());
-            } else {
-                log.trace("Creating new retained message for topic {}", topic);
-                bucket.put(serializedTopic, serializer.serializeValue(retainedMessage));
-                topicTrees[bucketIndex].add(topic);
-                //persist needs increment.
-                retainMessageCounter.incrementAndGet();
-            }
+        try (final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions options = new WriteOptions()) {
+            put(writeBatch, retainedMessage, topic, bucketIndex);
+            bucket.write(options, writeBatch);
         } catch (final Exception e) {
             log.error("An error occurred while persisting a retained message.");
             log.debug("Original Exception:", e);
@@ -295,6 +290,55 @@ public class RetainedMessageRocksDBLocalPersistence extends RocksDBLocalPersiste
 
     }
 
+    private void put(
+            final @NotNull WriteBatch writeBatch,
+            final @NotNull RetainedMessage retainedMessage,
+            final @NotNull String topic,
+            final int bucketIndex) throws RocksDBException {
+        final byte[] serializedTopic = serializer.serializeKey(topic);
+        final byte[] valueAsBytes = buckets[bucketIndex].get(serializedTopic);
+        if (valueAsBytes != null) {
+            final RetainedMessage retainedMessageFromStore = serializer.deserializeValue(valueAsBytes);
+            log.trace("Replacing retained message for topic {}", topic);
+            writeBatch.put(serializedTopic, serializer.serializeValue(retainedMessage));
+            // The previous retained message is replaced, so we have to decrement the reference count.
+            payloadPersistence.decrementReferenceCounter(retainedMessageFromStore.getPublishId());
+        } else {
+            log.trace("Creating new retained message for topic {}", topic);
+            writeBatch.put(serializedTopic, serializer.serializeValue(retainedMessage));
+            topicTrees[bucketIndex].add(topic);
+            //persist needs increment.
+            retainMessageCounter.incrementAndGet();
+        }
+    }
+
+    /**
+     * All writes are committed in one {@link WriteBatch}. As the batch is not visible to reads before the commit,
+     * every topic may only be contained once, which the map guarantees.
+     */
+    @Override
+    public void putAll(final @NotNull Map<String, @Nullable RetainedMessage> writes, final int bucketIndex) {
+        checkNotNull(writes, "Writes must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final RocksDB bucket = buckets[bucketIndex];
+
+        try (final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions options = new WriteOptions()) {
+            for (final Map.Entry<String, RetainedMessage> write : writes.entrySet()) {
+                if (write.getValue() == null) {
+                    remove(writeBatch, write.getKey(), bucketIndex);
+                } else {
+                    put(writeBatch, write.getValue(), write.getKey(), bucketIndex);
+                }
+            }
+            bucket.write(options, writeBatch);
+        } catch (final Exception e) {
+            log.error("An error occurred while persisting retained messages.");
+            log.debug("Original Exception:", e);
+        }
+    }
+
     @NotNull
     @Override
     public Set<String> getAllTopics(
@@ -35,6 +35,7 @@ import jetbrains.exodus.ByteIterable;
 import jetbrains.exodus.ExodusException;
 import jetbrains.exodus.env.Cursor;
 import jetbrains.exodus.env.StoreConfig;
+import jetbrains.exodus.env.Transaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -206,24 +207,30 @@ public class RetainedMessageXodusLocalPersistence extends XodusLocalPersistence
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
         final Bucket bucket = buckets[bucketIndex];
 
-        bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
-            final ByteIterable key = stringToByteIterable(topic);
-            final ByteIterable byteIterable =
-                    bucket.getStore().get(txn, bytesToByteIterable(serializer.serializeKey(topic)));
-            if (byteIterable == null) {
-                log.trace("Removing retained message for topic {} (no message was stored previously)", topic);
-                return;
-            }
+        bucket.getEnvironment().executeInExclusiveTransaction(txn -> remove(txn, bucket, topic, bucketIndex));
 
-            final RetainedMessage message = serializer.deserializeValue(byteIterableToBytes(byteIterable));
+    }
 
-            log.trace("Removing retained message for topic {}", topic);
-            bucket.getStore().delete(txn, key);
-            topicTrees.get(bucketIndex).remove(topic);
-            payloadPersistence.decrementReferenceCounter(message.getPublishId());
-            retainMessageCounter.decrementAndGet();
-        });
+    private void remove(
+            final @NotNull Transaction txn,
+            final @NotNull Bucket bucket,
+            final @NotNull String topic,
+            final int bucketIndex) {
+        final ByteIterable key = stringToByteIterable(topic);
+        final ByteIterable byteIterable =
+                bucket.getStore().get(txn, bytesToByteIterable(serializer.serializeKey(topic)));
+        if (byteIterable == null) {
+            log.trace("Removing retained message for topic {} (no message was stored previously)", topic);
+            return;
+        }
+
+        final RetainedMessage message = serializer.deserializeValue(byteIterableToBytes(byteIterable));
 
+        log.trace("Removing retained message for topic {}", topic);
+        bucket.getStore().delete(txn, key);
+        topicTrees.get(bucketIndex).remove(topic);
+        payloadPersistence.decrementReferenceCounter(message.getPublishId());
+        retainMessageCounter.decrementAndGet();
     }
 
     @Nullable
@@ -284,29 +291,57 @@ public class RetainedMessageXodusLocalPersistence extends XodusLocalPersistence
 
         final Bucket bucket = buckets[bucketIndex];
 
+        bucket.getEnvironment()
+                .executeInExclusiveTransaction(txn -> put(txn, bucket, retainedMessage, topic, bucketIndex));
+    }
+
+    private void put(
+            final @NotNull Transaction txn,
+            final @NotNull Bucket bucket,
+            final @NotNull RetainedMessage retainedMessage,
+            final @NotNull String topic,
+            final int bucketIndex) {
+        try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
+            final ByteIterable byteIterable = cursor.getSearchKey(bytesToByteIterable(serializer.serializeKey(topic)));
+            if (byteIterable != null) {
+                final RetainedMessage retainedMessageFromStore =
+                        serializer.deserializeValue(byteIterableToBytes(cursor.getValue()));
+                log.trace("Replacing retained message for topic {}", topic);
+                bucket.getStore()
+                        .put(txn,
+                                bytesToByteIterable(serializer.serializeKey(topic)),
+                                bytesToByteIterable(serializer.serializeValue(retainedMessage)));
+                // The previous retained message is replaced, so we have to decrement the reference count.
+                payloadPersistence.decrementReferenceCounter(retainedMessageFromStore.getPublishId());
+            } else {
+                bucket.getStore()
+                        .put(txn,
+                                bytesToByteIterable(serializer.serializeKey(topic)),
+                                bytesToByteIterable(serializer.serializeValue(retainedMessage)));
+                log.trace("Creating new retained message for topic {}", topic);
+                //persist needs increment.
+                retainMessageCounter.incrementAndGet();
+                topicTrees.get(bucketIndex).add(topic);
+            }
+        }
+    }
+
+    /**
+     * All writes are committed in one exclusive transaction.
+     */
+    @Override
+    public void putAll(final @NotNull Map<String, @Nullable RetainedMessage> writes, final int bucketIndex) {
+        checkNotNull(writes, "Writes must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final Bucket bucket = buckets[bucketIndex];
+
         bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
-            try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
-                final ByteIterable byteIterable =
-                        cursor.getSearchKey(bytesToByteIterable(serializer.serializeKey(topic)));
-                if (byteIterable != null) {
-                    final RetainedMessage retainedMessageFromStore =
-                            serializer.deserializeValue(byteIterableToBytes(cursor.getValue()));
-                    log.trace("Replacing retained message for topic {}", topic);
-                    bucket.getStore()
-                            .put(txn,
-                                    bytesToByteIterable(serializer.serializeKey(topic)),
-                                    bytesToByteIterable(serializer.serializeValue(retainedMessage)));
-                    // The previous retained message is replaced, so we have to decrement the reference count.
-                    payloadPersistence.decrementReferenceCounter(retainedMessageFromStore.getPublishId());
+            for (final Map.Entry<String, RetainedMessage> write : writes.entrySet()) {
+                if (write.getValue() == null) {
+                    remove(txn, bucket, write.getKey(), bucketIndex);
                 } else {
-                    bucket.getStore()
-                            .put(txn,
-                                    bytesToByteIterable(serializer.serializeKey(topic)),
-                                    bytesToByteIterable(serializer.serializeValue(retainedMessage)));
-                    log.trace("Creating new retained message for topic {}", topic);
-                    //persist needs increment.
-                    retainMessageCounter.incrementAndGet();
-                    topicTrees.get(bucketIndex).add(topic);
+                    put(txn, bucket, write.getValue(), write.getKey(), bucketIndex);
                 }
             }
         });
@@ -24,16 +24,29 @@ import java.util.List;
 /**
  * Makes it simpler to run multiple actions on transaction commit
  * while preventing us from forgetting to define the commit hook accordingly.
+ * <p>
+ * The shared transaction of a {@link com.hivemq.persistence.GroupCommit} additionally runs rollback actions if it is
+ * aborted, see {@link XodusTransactions#onAbort}.
  */
 public class TransactionCommitActions implements Runnable {
 
     private final @NotNull List<Runnable> actions;
+    private final @NotNull List<Runnable> rollbackActions;
 
     private TransactionCommitActions() {
         actions = new ArrayList<>();
+        rollbackActions = new ArrayList<>();
     }
 
+    /**
+     * @return the commit actions of the transaction. The transaction of a {@link com.hivemq.persistence.GroupCommit}
+     *         has one instance for all tasks of the group, so the actions of the previous tasks are kept.
+     */
     public static @NotNull TransactionCommitActions asCommitHookFor(final @NotNull Transaction transaction) {
+        return XodusTransactions.commitActions(transaction);
+    }
+
+    static @NotNull TransactionCommitActions newCommitHookFor(final @NotNull Transaction transaction) {
         final TransactionCommitActions transactionCommitActions = new TransactionCommitActions();
         transaction.setCommitHook(transactionCommitActions);
         return transactionCommitActions;
@@ -43,8 +56,21 @@ public class TransactionCommitActions implements Runnable {
         actions.add(action);
     }
 
+    void addRollback(final @NotNull Runnable action) {
+        rollbackActions.add(action);
+    }
+
     @Override
     public void run() {
         actions.forEach(Runnable::run);
     }
+
+    /**
+     * Runs the rollback actions in reverse order, so every action sees the state its change was applied to.
+     */
+    void rollback() {
+        for (int i = rollbackActions.size() - 1; i >= 0; i--) {
+            rollbackActions.get(i).run();
+        }
+    }
 }
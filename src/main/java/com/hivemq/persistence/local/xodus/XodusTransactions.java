@@ -0,0 +1,192 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.local.xodus;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.persistence.GroupCommit;
+import jetbrains.exodus.ExodusException;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Transaction;
+import jetbrains.exodus.env.TransactionalComputable;
+import jetbrains.exodus.env.TransactionalExecutable;
+
+/**
+ * Executes Xodus transactions of the single writer tasks.
+ * <p>
+ * Without a {@link GroupCommit} on the current thread every call uses its own transaction, exactly like the methods of
+ * the {@link Environment}. With a group commit all calls for the same environment share one exclusive transaction,
+ * which is committed by the group commit. Read-only calls use the shared transaction as well, so they see the writes
+ * of the previous tasks of the group.
+ * <p>
+ * In-memory state that mirrors the writes must follow the shared transaction: changes that are only needed after the
+ * commit are deferred with {@link #afterCommit}, changes that the following tasks must see are applied immediately
+ * and undone with {@link #onAbort} if the shared transaction is aborted.
+ */
+public class XodusTransactions {
+
+    private XodusTransactions() {
+        //Utility class, don't instantiate
+    }
+
+    public static void executeInTransaction(
+            final @NotNull Environment environment, final @NotNull TransactionalExecutable executable) {
+        final Transaction groupTransaction = groupTransaction(environment, true);
+        if (groupTransaction != null) {
+            executable.execute(groupTransaction);
+        } else {
+            environment.executeInTransaction(executable);
+        }
+    }
+
+    public static void executeInExclusiveTransaction(
+            final @NotNull Environment environment, final @NotNull TransactionalExecutable executable) {
+        final Transaction groupTransaction = groupTransaction(environment, true);
+        if (groupTransaction != null) {
+            executable.execute(groupTransaction);
+        } else {
+            environment.executeInExclusiveTransaction(executable);
+        }
+    }
+
+    public static <T> T computeInExclusiveTransaction(
+            final @NotNull Environment environment, final @NotNull TransactionalComputable<T> computable) {
+        final Transaction groupTransaction = groupTransaction(environment, true);
+        if (groupTransaction != null) {
+            return computable.compute(groupTransaction);
+        }
+        return environment.computeInExclusiveTransaction(computable);
+    }
+
+    public static void executeInReadonlyTransaction(
+            final @NotNull Environment environment, final @NotNull TransactionalExecutable executable) {
+        final Transaction groupTransaction = groupTransaction(environment, false);
+        if (groupTransaction != null) {
+            executable.execute(groupTransaction);
+        } else {
+            environment.executeInReadonlyTransaction(executable);
+        }
+    }
+
+    public static <T> T computeInReadonlyTransaction(
+            final @NotNull Environment environment, final @NotNull TransactionalComputable<T> computable) {
+        final Transaction groupTransaction = groupTransaction(environment, false);
+        if (groupTransaction != null) {
+            return computable.compute(groupTransaction);
+        }
+        return environment.computeInReadonlyTransaction(computable);
+    }
+
+    /**
+     * Runs an action once the writes to the environment are committed: immediately without a group commit, when the
+     * shared transaction of the environment is committed with a group commit.
+     */
+    public static void afterCommit(final @NotNull Environment environment, final @NotNull Runnable action) {
+        final SharedTransaction sharedTransaction = sharedTransaction(environment);
+        if (sharedTransaction != null) {
+            sharedTransaction.commitActions.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Registers the undo of an in-memory change that was applied immediately. With a group commit it is run if the
+     * shared transaction of the environment is aborted or can not be committed. Without a group commit every call
+     * commits on its own, so nothing is registered.
+     */
+    public static void onAbort(final @NotNull Environment environment, final @NotNull Runnable undo) {
+        final SharedTransaction sharedTransaction = sharedTransaction(environment);
+        if (sharedTransaction != null) {
+            sharedTransaction.commitActions.addRollback(undo);
+        }
+    }
+
+    /**
+     * @return the commit actions of the transaction, which are shared by all tasks if it is the transaction of a group
+     *         commit
+     */
+    static @NotNull TransactionCommitActions commitActions(final @NotNull Transaction transaction) {
+        final GroupCommit groupCommit = GroupCommit.current();
+        if (groupCommit != null) {
+            final GroupCommit.Participant participant = groupCommit.participant(transaction.getEnvironment());
+            if (participant instanceof SharedTransaction &&
+                    ((SharedTransaction) participant).transaction == transaction) {
+                return ((SharedTransaction) participant).commitActions;
+            }
+        }
+        return TransactionCommitActions.newCommitHookFor(transaction);
+    }
+
+    /**
+     * @param begin whether the shared transaction is begun if the environment did not join the group commit yet
+     * @return the shared transaction or <code>null</code> if there is no group commit or no shared transaction
+     */
+    private static @Nullable Transaction groupTransaction(final @NotNull Environment environment, final boolean begin) {
+        final GroupCommit groupCommit = GroupCommit.current();
+        if (groupCommit == null) {
+            return null;
+        }
+        final GroupCommit.Participant participant = groupCommit.participant(environment);
+        if (participant != null) {
+            return ((SharedTransaction) participant).transaction;
+        }
+        if (!begin) {
+            return null;
+        }
+        final SharedTransaction sharedTransaction = new SharedTransaction(environment.beginExclusiveTransaction());
+        groupCommit.join(environment, sharedTransaction);
+        return sharedTransaction.transaction;
+    }
+
+    /**
+     * @return the shared transaction of the environment, which is begun if the environment did not join the group
+     *         commit yet, or <code>null</code> if there is no group commit
+     */
+    private static @Nullable SharedTransaction sharedTransaction(final @NotNull Environment environment) {
+        if (groupTransaction(environment, true) == null) {
+            return null;
+        }
+        //noinspection ConstantConditions (the group commit and the participant exist after groupTransaction)
+        return (SharedTransaction) GroupCommit.current().participant(environment);
+    }
+
+    private static class SharedTransaction implements GroupCommit.Participant {
+
+        private final @NotNull Transaction transaction;
+        private final @NotNull TransactionCommitActions commitActions;
+
+        private SharedTransaction(final @NotNull Transaction transaction) {
+            this.transaction = transaction;
+            commitActions = TransactionCommitActions.newCommitHookFor(transaction);
+        }
+
+        @Override
+        public void commit() {
+            if (!transaction.commit()) {
+                throw new ExodusException("Shared transaction of a group commit could not be committed");
+            }
+        }
+
+        @Override
+        public void abort() {
+            if (!transaction.isFinished()) {
+                transaction.abort();
+            }
+            commitActions.rollback();
+        }
+    }
+}
@@ -0,0 +1,700 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.local.xodus.clientsession;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.exceptions.UnrecoverableException;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
+import com.hivemq.extensions.iteration.BucketChunkResult;
+import com.hivemq.logging.EventLog;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.persistence.NoSessionException;
+import com.hivemq.persistence.PersistenceEntry;
+import com.hivemq.persistence.PersistenceStartup;
+import com.hivemq.persistence.clientsession.ClientSession;
+import com.hivemq.persistence.clientsession.ClientSessionWill;
+import com.hivemq.persistence.clientsession.PendingWillMessages;
+import com.hivemq.persistence.exception.InvalidSessionExpiryIntervalException;
+import com.hivemq.persistence.local.ClientSessionLocalPersistence;
+import com.hivemq.persistence.local.rocksdb.RocksDBLocalPersistence;
+import com.hivemq.persistence.payload.PublishPayloadPersistence;
+import com.hivemq.util.LocalPersistenceFileUtil;
+import com.hivemq.util.ThreadPreConditions;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRE_ON_DISCONNECT;
+import static com.hivemq.mqtt.message.disconnect.DISCONNECT.SESSION_EXPIRY_NOT_SET;
+import static com.hivemq.util.ThreadPreConditions.SINGLE_WRITER_THREAD_PREFIX;
+
+/**
+ * An implementation of the ClientSessionLocalPersistence based on RocksDB.
+ * <p>
+ * The sessions are stored with the same key and value format as in the Xodus persistence. The key is the client id,
+ * so the bloom filters of the buckets answer the lookups of unknown client ids without reading any block.
+ * <p>
+ * All writes for a bucket are executed by the single writer of the bucket, so a read followed by a write of the same
+ * session doesn't need a transaction.
+ */
+@ThreadSafe
+@LazySingleton
+public class ClientSessionRocksDBLocalPersistence extends RocksDBLocalPersistence
+        implements ClientSessionLocalPersistence {
+
+    private static final @NotNull Logger log = LoggerFactory.getLogger(ClientSessionRocksDBLocalPersistence.class);
+
+    public static final @NotNull String PERSISTENCE_VERSION = "040500_R";
+
+    private final @NotNull ClientSessionPersistenceSerializer serializer;
+    private final @NotNull PublishPayloadPersistence payloadPersistence;
+    private final @NotNull EventLog eventLog;
+    private final @NotNull MetricsHolder metricsHolder;
+    private final @NotNull AtomicInteger sessionsCount = new AtomicInteger(0);
+
+    @Inject
+    ClientSessionRocksDBLocalPersistence(
+            final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
+            final @NotNull PublishPayloadPersistence payloadPersistence,
+            final @NotNull EventLog eventLog,
+            final @NotNull PersistenceStartup persistenceStartup,
+            final @NotNull MetricsHolder metricsHolder) {
+        super(localPersistenceFileUtil,
+                persistenceStartup,
+                InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get(),
+                InternalConfigurations.CLIENT_SESSION_MEMTABLE_SIZE_PORTION,
+                InternalConfigurations.CLIENT_SESSION_BLOCK_CACHE_SIZE_PORTION,
+                InternalConfigurations.CLIENT_SESSION_BLOCK_SIZE_BYTES,
+                InternalConfigurations.CLIENT_SESSION_PERSISTENCE_TYPE.get() == PersistenceType.FILE_NATIVE);
+
+        this.payloadPersistence = payloadPersistence;
+        this.eventLog = eventLog;
+        this.metricsHolder = metricsHolder;
+        serializer = new ClientSessionPersistenceSerializer();
+    }
+
+    @Override
+    protected @NotNull String getName() {
+        return PERSISTENCE_NAME;
+    }
+
+    @Override
+    protected @NotNull String getVersion() {
+        return PERSISTENCE_VERSION;
+    }
+
+    @Override
+    protected @NotNull Logger getLogger() {
+        return log;
+    }
+
+    @Override
+    protected void configureTableConfig(final @NotNull BlockBasedTableConfig tableConfig) {
+        tableConfig.setFilterPolicy(new BloomFilter(InternalConfigurations.CLIENT_SESSION_BLOOM_FILTER_BITS_PER_KEY));
+    }
+
+    @PostConstruct
+    protected void postConstruct() {
+        super.postConstruct();
+    }
+
+    @Override
+    protected void init() {
+        try {
+            for (final RocksDB bucket : buckets) {
+                int persistentSessions = 0;
+                final List<ClientSessionWill> wills = new ArrayList<>();
+                try (final ReadOptions readOptions = scanReadOptions();
+                     final RocksIterator iterator = bucket.newIterator(readOptions);
+                     final WriteBatch writeBatch = new WriteBatch();
+                     final WriteOptions options = new WriteOptions()) {
+                    iterator.seekToFirst();
+                    while (iterator.isValid()) {
+                        final byte[] bytes = iterator.value();
+                        final ClientSession clientSession = serializer.deserializeValue(bytes);
+                        if (persistent(clientSession)) {
+                            persistentSessions++;
+                        }
+                        final ClientSessionWill will = clientSession.getWillPublish();
+                        if (will != null) {
+                            wills.add(will);
+                            clientSession.setWillPublish(null);
+                            final long timestamp = serializer.deserializeTimestamp(bytes);
+                            writeBatch.put(iterator.key(), serializer.serializeValue(clientSession, timestamp));
+                        }
+                        iterator.next();
+                    }
+                    // All sessions with a will of the bucket are updated at once.
+                    if (writeBatch.count() > 0) {
+                        bucket.write(options, writeBatch);
+                    }
+                }
+                for (final ClientSessionWill will : wills) {
+                    // Since we are starting HiveMQ stateful the PublishPayloadPersistence has no references
+                    // to any stored payloads. In order to delete the payload we need to create a reference
+                    // and remove it again.
+                    payloadPersistence.incrementReferenceCounterOnBootstrap(will.getPublishId());
+                    payloadPersistence.decrementReferenceCounter(will.getPublishId());
+                }
+                sessionsCount.addAndGet(persistentSessions);
+            }
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while preparing the Client Session persistence.");
+            log.debug("Original Exception:", e);
+            throw new UnrecoverableException(false);
+        }
+    }
+
+    @Override
+    public @Nullable ClientSession getSession(final @NotNull String clientId) {
+        checkNotNull(clientId, "Client id must not be null");
+
+        return getSession(clientId, getRocksDb(clientId), true, true);
+    }
+
+    @Override
+    public @Nullable ClientSession getSession(final @NotNull String clientId, final int bucketIndex) {
+        checkNotNull(clientId, "Client id must not be null");
+        checkBucketIndex(bucketIndex);
+
+        return getSession(clientId, buckets[bucketIndex], true, true);
+    }
+
+    @Override
+    public @Nullable ClientSession getSession(final @NotNull String clientId, final boolean checkExpired) {
+        checkNotNull(clientId, "Client id must not be null");
+
+        return getSession(clientId, getRocksDb(clientId), checkExpired, true);
+    }
+
+    @Override
+    public @Nullable ClientSession getSession(
+            final @NotNull String clientId,
+            final int bucketIndex,
+            final boolean checkExpired) {
+        checkNotNull(clientId, "Client id must not be null");
+        checkBucketIndex(bucketIndex);
+
+        return getSession(clientId, buckets[bucketIndex], checkExpired, true);
+    }
+
+    @Override
+    public @Nullable ClientSession getSession(
+            final @NotNull String clientId,
+            final boolean checkExpired,
+            final boolean includeWill) {
+        checkNotNull(clientId, "Client id must not be null");
+
+        return getSession(clientId, getRocksDb(clientId), checkExpired, includeWill);
+    }
+
+    private @Nullable ClientSession getSession(
+            final @NotNull String clientId,
+            final @NotNull RocksDB bucket,
+            final boolean checkExpired,
+            final boolean includeWill) {
+        final byte[] bytes = get(bucket, clientId);
+        if (bytes == null) {
+            return null;
+        }
+        final ClientSession clientSession;
+        if (includeWill) {
+            clientSession = serializer.deserializeValue(bytes);
+        } else {
+            clientSession = serializer.deserializeValueWithoutWill(bytes);
+        }
+
+        if (checkExpired &&
+                clientSession.isExpired(System.currentTimeMillis() - serializer.deserializeTimestamp(bytes))) {
+            return null;
+        }
+
+        if (includeWill) {
+            loadWillPayload(clientSession);
+        }
+        return clientSession;
+    }
+
+    @Override
+    public @Nullable Long getTimestamp(final @NotNull String clientId) {
+        return getTimestamp(clientId, getBucketIndex(clientId));
+    }
+
+    @Override
+    public @Nullable Long getTimestamp(final @NotNull String clientId, final int bucketIndex) {
+        final byte[] bytes = get(buckets[bucketIndex], clientId);
+        if (bytes == null) {
+            return null;
+        }
+        return serializer.deserializeTimestamp(bytes);
+    }
+
+    @Override
+    public void put(
+            final @NotNull String clientId,
+            final @NotNull ClientSession newClientSession,
+            final long timestamp,
+            final int bucketIndex) {
+        checkNotNull(clientId, "Client id must not be null");
+        checkNotNull(newClientSession, "Client session must not be null");
+        checkArgument(timestamp > 0, "Timestamp must be greater than 0");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final RocksDB bucket = buckets[bucketIndex];
+        final byte[] key = serializer.serializeKey(clientId);
+        try {
+            final byte[] value = bucket.get(key);
+            bucket.put(key, serializer.serializeValue(newClientSession, timestamp));
+
+            final boolean isPersistent = persistent(newClientSession);
+            if (value == null) {
+                if (isPersistent || newClientSession.isConnected()) {
+                    sessionsCount.incrementAndGet();
+                }
+
+                final ClientSessionWill newWill = newClientSession.getWillPublish();
+                if (newWill != null) {
+                    addWillReference(newWill);
+                }
+            } else {
+                final ClientSession prevClientSession = serializer.deserializeValue(value);
+
+                handleWillPayloads(prevClientSession.getWillPublish(), newClientSession.getWillPublish());
+
+                final boolean prevIsPersistent = persistent(prevClientSession);
+
+                if ((isPersistent || newClientSession.isConnected()) &&
+                        (!prevIsPersistent && !prevClientSession.isConnected())) {
+                    sessionsCount.incrementAndGet();
+                } else if ((prevIsPersistent || prevClientSession.isConnected()) &&
+                        (!isPersistent && !newClientSession.isConnected())) {
+                    sessionsCount.decrementAndGet();
+                }
+            }
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while persisting the client session of client {}.", clientId);
+            log.debug("Original Exception:", e);
+        }
+    }
+
+    @Override
+    public @NotNull ClientSession disconnect(
+            final @NotNull String clientId,
+            final long timestamp,
+            final boolean sendWill,
+            final int bucketIndex,
+            final long sessionExpiryInterval) {
+        checkNotNull(clientId, "Client id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final RocksDB bucket = buckets[bucketIndex];
+        final byte[] key = serializer.serializeKey(clientId);
+        try {
+            final byte[] bytes = bucket.get(key);
+
+            if (bytes == null) {
+                // we create a tombstone here which will be removed at next cleanup
+                final ClientSession clientSession = new ClientSession(false, SESSION_EXPIRE_ON_DISCONNECT);
+                bucket.put(key, serializer.serializeValue(clientSession, timestamp));
+                return clientSession;
+            }
+
+            final ClientSession clientSession = serializer.deserializeValue(bytes);
+
+            if (sessionExpiryInterval != SESSION_EXPIRY_NOT_SET) {
+                clientSession.setSessionExpiryIntervalSec(sessionExpiryInterval);
+            }
+
+            final boolean isConnected = clientSession.isConnected();
+            final ClientSessionWill will = clientSession.getWillPublish();
+            clientSession.setConnected(false);
+            if (!sendWill && will != null) {
+                clientSession.setWillPublish(null);
+            }
+            bucket.put(key, serializer.serializeValue(clientSession, timestamp));
+
+            if (isConnected && !persistent(clientSession)) {
+                sessionsCount.decrementAndGet();
+            }
+            if (!sendWill && will != null) {
+                removeWillReference(will);
+            }
+            loadWillPayload(clientSession);
+            return clientSession;
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while disconnecting the client session of client {}.", clientId);
+            log.debug("Original Exception:", e);
+            // Unlike the other writes, the caller decides with the returned session what happens to the session,
+            // so the failure must not be hidden.
+            throw new IllegalStateException("Could not disconnect the client session of client " + clientId, e);
+        }
+    }
+
+    @Override
+    public @Nullable PersistenceEntry<ClientSession> deleteWill(final @NotNull String clientId, final int bucketIndex) {
+        checkNotNull(clientId, "Client id must not be null");
+        ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
+
+        final RocksDB bucket = buckets[bucketIndex];
+        final byte[] key = serializer.serializeKey(clientId);
+        try {
+            final byte[] bytes = bucket.get(key);
+            if (bytes == null) {
+                return null;
+            }
+
+            final ClientSession clientSession = serializer.deserializeValue(bytes);
+            // Just to be safe.
+            if (clientSession.isConnected()) {
+                return null;
+            }
+            final long timestamp = serializer.deserializeTimestamp(bytes);
+            final ClientSessionWill will = clientSession.getWillPublish();
+            if (will != null) {
+                clientSession.setWillPublish(null);
+                bucket.put(key, serializer.serializeValue(clientSession, timestamp));
+                removeWillReference(will);
+            }
+            return new PersistenceEntry<>(clientSession, timestamp);
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while deleting the will of client {}.", clientId);
+            log.debug("Original Exception:", e);
+            return null;
+        }
+    }
+
+    @Override
+    public @NotNull BucketChunkResult<Map<String, ClientSession>> getAllClientsChunk(
+            final int bucketIndex,
+            final @Nullable String lastClientId,
+            final int maxResults) {
+        checkBucketIndex(bucketIndex);
+
+        final Map<String, ClientSession> resultMap = new HashMap<>();
+        final RocksDB bucket = buckets[bucketIndex];
+        try (final ReadOptions readOptions = scanReadOptions();
+             final RocksIterator iterator = bucket.newIterator(readOptions)) {
+            int counter = 0;
+
+            //determine starting point
+            if (lastClientId != null) {
+                final byte[] lastClientKey = serializer.serializeKey(lastClientId);
+                iterator.seek(lastClientKey);
+                if (iterator.isValid() && Arrays.equals(iterator.key(), lastClientKey)) {
+                    //jump to the next key
+                    iterator.next();
+                }
+            } else {
+                iterator.seekToFirst();
+            }
+
+            String lastKey = lastClientId;
+
+            while (iterator.isValid()) {
+                final String key = serializer.deserializeKey(iterator.key());
+                lastKey = key;
+
+                final byte[] valueBytes = iterator.value();
+                iterator.next();
+
+                final ClientSession clientSession = serializer.deserializeValueWithoutWill(valueBytes);
+                final long timestamp = serializer.deserializeTimestamp(valueBytes);
+
+                if (clientSession.isExpired(System.currentTimeMillis() - timestamp)) {
+                    continue;
+                }
+
+                resultMap.put(key, clientSession);
+                counter++;
+
+                if (counter >= maxResults) {
+                    return new BucketChunkResult<>(resultMap, !iterator.isValid(), lastKey, bucketIndex);
+                }
+            }
+
+            return new BucketChunkResult<>(resultMap, true, lastKey, bucketIndex);
+        }
+    }
+
+    @Override
+    public @NotNull Set<String> getAllClients(final int bucketIndex) {
+        final RocksDB bucket = buckets[bucketIndex];
+        final ImmutableSet.Builder<String> clientSessions = ImmutableSet.builder();
+        try (final ReadOptions readOptions = scanReadOptions();
+             final RocksIterator iterator = bucket.newIterator(readOptions)) {
+            iterator.seekToFirst();
+            while (iterator.isValid()) {
+                clientSessions.add(serializer.deserializeKey(iterator.key()));
+                iterator.next();
+            }
+        }
+        return clientSessions.build();
+    }
+
+    @VisibleForTesting
+    void removeWithTimestamp(final @NotNull String client, final int bucketIndex) {
+        final RocksDB bucket = buckets[bucketIndex];
+        final byte[] key = serializer.serializeKey(client);
+        try {
+            final byte[] value = bucket.get(key);
+            if (value != null) {
+                final ClientSession clientSession = serializer.deserializeValue(value);
+                bucket.delete(key);
+                if (persistent(clientSession) || clientSession.isConnected()) {
+                    sessionsCount.decrementAndGet();
+                }
+                if (clientSession.getWillPublish() != null) {
+                    removeWillReference(clientSession.getWillPublish());
+                }
+            }
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while removing the client session of client {}.", client);
+            log.debug("Original Exception:", e);
+        }
+    }
+
+    @Override
+    public void setSessionExpiryInterval(
+            final @NotNull String clientId,
+            final long sessionExpiryInterval,
+            final int bucketIndex) {
+        checkNotNull(clientId, "Client Id must not be null");
+
+        if (sessionExpiryInterval < 0) {
+            throw new InvalidSessionExpiryIntervalException("Invalid session expiry interval " + sessionExpiryInterval);
+        }
+
+        final RocksDB bucket = buckets[bucketIndex];
+        final byte[] key = serializer.serializeKey(clientId);
+        try {
+            final byte[] valueFromStore = bucket.get(key);
+
+            if (valueFromStore == null) {
+                throw NoSessionException.INSTANCE;
+            }
+
+            final ClientSession clientSession = serializer.deserializeValue(valueFromStore);
+            // is tombstone?
+            if (!clientSession.isConnected() && !persistent(clientSession)) {
+                throw NoSessionException.INSTANCE;
+            }
+
+            clientSession.setSessionExpiryIntervalSec(sessionExpiryInterval);
+
+            bucket.put(key, serializer.serializeValue(clientSession, System.currentTimeMillis()));
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while setting the session expiry interval of client {}.", clientId);
+            log.debug("Original Exception:", e);
+        }
+    }
+
+    /**
+     * The expired sessions are deleted with one write batch. The wills of the sessions are not deserialized, as they
+     * aren't needed to decide if a session is expired.
+     */
+    @Override
+    public @NotNull Set<String> cleanUp(final int bucketIndex) {
+        if (stopped.get()) {
+            return ImmutableSet.of();
+        }
+        final RocksDB bucket = buckets[bucketIndex];
+        final ImmutableSet.Builder<String> expiredSessionsBuilder = ImmutableSet.builder();
+        final Map<String, Long> expiryTimestamps = new HashMap<>();
+        int delta = 0;
+        try (final ReadOptions readOptions = scanReadOptions();
+             final RocksIterator iterator = bucket.newIterator(readOptions);
+             final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions options = new WriteOptions()) {
+            iterator.seekToFirst();
+            final long now = System.currentTimeMillis();
+            while (iterator.isValid()) {
+                final byte[] valueBytes = iterator.value();
+                final ClientSession clientSession = serializer.deserializeValueWithoutWill(valueBytes);
+                final long timestamp = serializer.deserializeTimestamp(valueBytes);
+
+                final long sessionExpiryInterval = clientSession.getSessionExpiryIntervalSec();
+
+                // Expired is true if the persistent data for the client has to be removed
+                if (clientSession.isExpired(now - timestamp)) {
+                    if (sessionExpiryInterval > SESSION_EXPIRE_ON_DISCONNECT) {
+                        delta--;
+                    }
+                    final String clientId = serializer.deserializeKey(iterator.key());
+                    expiryTimestamps.put(clientId, timestamp + sessionExpiryInterval * 1000);
+                    writeBatch.delete(iterator.key());
+                    expiredSessionsBuilder.add(clientId);
+                }
+                iterator.next();
+            }
+            if (writeBatch.count() > 0) {
+                bucket.write(options, writeBatch);
+            }
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while cleaning up the client session persistence.");
+            log.debug("Original Exception:", e);
+            return ImmutableSet.of();
+        }
+        sessionsCount.addAndGet(delta);
+        for (final Map.Entry<String, Long> expired : expiryTimestamps.entrySet()) {
+            eventLog.clientSessionExpired(expired.getValue(), expired.getKey());
+        }
+        return expiredSessionsBuilder.build();
+    }
+
+    @Override
+    public @NotNull Set<String> getDisconnectedClients(final int bucketIndex) {
+        checkBucketIndex(bucketIndex);
+
+        final RocksDB bucket = buckets[bucketIndex];
+        final Set<String> collectSet = new HashSet<>();
+        try (final ReadOptions readOptions = scanReadOptions();
+             final RocksIterator iterator = bucket.newIterator(readOptions)) {
+            iterator.seekToFirst();
+            final long now = System.currentTimeMillis();
+            while (iterator.isValid()) {
+                final byte[] valueBytes = iterator.value();
+                final ClientSession clientSession = serializer.deserializeValueWithoutWill(valueBytes);
+                if (!clientSession.isConnected() && clientSession.getSessionExpiryIntervalSec() > 0) {
+                    final long timestamp = serializer.deserializeTimestamp(valueBytes);
+                    final long timeSinceDisconnect = now - timestamp;
+                    final long sessionExpiryIntervalInMillis = clientSession.getSessionExpiryIntervalSec() * 1000L;
+                    // We don't remove expired client sessions here, since this method is often called for all
+                    // buckets at once. Handling the TTL in the cleanup job will result in a more evenly distributed
+                    // CPU usage.
+                    if (timeSinceDisconnect < sessionExpiryIntervalInMillis) {
+                        collectSet.add(serializer.deserializeKey(iterator.key()));
+                    }
+                }
+                iterator.next();
+            }
+        }
+        return collectSet;
+    }
+
+    @Override
+    public int getSessionsCount() {
+        return sessionsCount.get();
+    }
+
+    @Override
+    public @NotNull Map<String, PendingWillMessages.PendingWill> getPendingWills(final int bucketIndex) {
+        final RocksDB bucket = buckets[bucketIndex];
+        final Map<String, PendingWillMessages.PendingWill> resultMap = new HashMap<>();
+        try (final ReadOptions readOptions = scanReadOptions();
+             final RocksIterator iterator = bucket.newIterator(readOptions)) {
+            iterator.seekToFirst();
+            while (iterator.isValid()) {
+                final byte[] valueBytes = iterator.value();
+                final ClientSession clientSession = serializer.deserializeValue(valueBytes);
+                final ClientSessionWill willPublish = clientSession.getWillPublish();
+                if (!clientSession.isConnected() && willPublish != null) {
+                    final long timestamp = serializer.deserializeTimestamp(valueBytes);
+                    resultMap.put(serializer.deserializeKey(iterator.key()),
+                            new PendingWillMessages.PendingWill(Math.min(willPublish.getDelayInterval(),
+                                    clientSession.getSessionExpiryIntervalSec()), timestamp));
+                }
+                iterator.next();
+            }
+        }
+        return resultMap;
+    }
+
+    private byte @Nullable [] get(final @NotNull RocksDB bucket, final @NotNull String clientId) {
+        try {
+            return bucket.get(serializer.serializeKey(clientId));
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while reading the client session of client {}.", clientId);
+            log.debug("Original Exception:", e);
+            return null;
+        }
+    }
+
+    private void loadWillPayload(final @NotNull ClientSession clientSession) {
+        final ClientSessionWill willPublish = clientSession.getWillPublish();
+        if (willPublish == null) {
+            return;
+        }
+        if (willPublish.getPayload() != null) {
+            return;
+        }
+        final byte[] payload = payloadPersistence.getPayloadOrNull(willPublish.getPublishId());
+        if (payload == null) {
+            clientSession.setWillPublish(null);
+            log.warn("Will Payload for payloadId {} not found", willPublish.getPublishId());
+            return;
+        }
+        willPublish.getMqttWillPublish().setPayload(payload);
+    }
+
+    private void handleWillPayloads(
+            final @Nullable ClientSessionWill previousWill,
+            final @Nullable ClientSessionWill currentWill) {
+        if (previousWill != null && currentWill != null) {
+            // When equal we have the payload already.
+            if (previousWill.getPublishId() != currentWill.getPublishId()) {
+                payloadPersistence.decrementReferenceCounter(previousWill.getPublishId());
+                payloadPersistence.add(currentWill.getPayload(), 1, currentWill.getPublishId());
+            }
+        } else {
+            if (previousWill != null) {
+                removeWillReference(previousWill);
+            }
+            if (currentWill != null) {
+                addWillReference(currentWill);
+            }
+        }
+    }
+
+    private static boolean persistent(final @NotNull ClientSession clientSession) {
+        return clientSession.getSessionExpiryIntervalSec() > SESSION_EXPIRE_ON_DISCONNECT;
+    }
+
+    private void addWillReference(final @NotNull ClientSessionWill will) {
+        metricsHolder.getStoredWillMessagesCount().inc();
+        payloadPersistence.add(will.getPayload(), 1, will.getPublishId());
+    }
+
+    private void removeWillReference(final @NotNull ClientSessionWill will) {
+        metricsHolder.getStoredWillMessagesCount().dec();
+        payloadPersistence.decrementReferenceCounter(will.getPublishId());
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.local.xodus.clientsession;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.extensions.iteration.BucketChunkResult;
+import com.hivemq.migration.meta.PersistenceType;
+import com.hivemq.mqtt.message.subscribe.Topic;
+import com.hivemq.persistence.PersistenceStartup;
+import com.hivemq.persistence.local.ClientSessionSubscriptionLocalPersistence;
+import com.hivemq.persistence.local.rocksdb.RocksDBLocalPersistence;
+import com.hivemq.util.LocalPersistenceFileUtil;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.Options;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionRocksDBSerializer.PREFIX_LENGTH;
+import static com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionRocksDBSerializer.deserializeClientId;
+import static com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionRocksDBSerializer.hasClientPrefix;
+import static com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionRocksDBSerializer.serializeClientPrefix;
+import static com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionRocksDBSerializer.serializeKey;
+
+/**
+ * A persistent ClientSessionSubscriptionLocalPersistence based on RocksDB.
+ * <p>
+ * Unlike the Xodus persistence, which stores the subscriptions as duplicates of the client id key, the topic is part
+ * of the key. A subscription to the same topic replaces the previous one, so there are no duplicates that have to be
+ * resolved by their id or cleaned up, and nothing has to be read on startup. The keys are prefixed with the hash of
+ * the client id, which is used for the prefix bloom filters, see {@link ClientSessionSubscriptionRocksDBSerializer}.
+ */
+@LazySingleton
+public class ClientSessionSubscriptionRocksDBLocalPersistence extends RocksDBLocalPersistence
+        implements ClientSessionSubscriptionLocalPersistence {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientSessionSubscriptionRocksDBLocalPersistence.class);
+    public static final String PERSISTENCE_VERSION = "040500_R";
+
+    /**
+     * The id of the values is only needed by the Xodus persistence to find the latest of the duplicates.
+     */
+    private static final long NO_ID = 0;
+
+    @VisibleForTesting
+    final @NotNull ClientSessionSubscriptionXodusSerializer serializer;
+
+    @Inject
+    ClientSessionSubscriptionRocksDBLocalPersistence(
+            final @NotNull LocalPersistenceFileUtil localPersistenceFileUtil,
+            final @NotNull PersistenceStartup persistenceStartup) {
+        super(localPersistenceFileUtil,
+                persistenceStartup,
+                InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get(),
+                InternalConfigurations.CLIENT_SESSION_MEMTABLE_SIZE_PORTION,
+                InternalConfigurations.CLIENT_SESSION_BLOCK_CACHE_SIZE_PORTION,
+                InternalConfigurations.CLIENT_SESSION_BLOCK_SIZE_BYTES,
+                InternalConfigurations.CLIENT_SESSION_PERSISTENCE_TYPE.get() == PersistenceType.FILE_NATIVE);
+        this.serializer = new ClientSessionSubscriptionXodusSerializer();
+    }
+
+    @NotNull
+    @Override
+    protected String getName() {
+        return PERSISTENCE_NAME;
+    }
+
+    @NotNull
+    @Override
+    protected String getVersion() {
+        return PERSISTENCE_VERSION;
+    }
+
+    @NotNull
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+
+    @Override
+    protected void configureKeyLayout(final @NotNull Options options) {
+        options.useFixedLengthPrefixExtractor(PREFIX_LENGTH);
+        options.setMemtablePrefixBloomSizeRatio(0.1);
+    }
+
+    @Override
+    protected void configureTableConfig(final @NotNull BlockBasedTableConfig tableConfig) {
+        tableConfig.setFilterPolicy(new BloomFilter(InternalConfigurations.CLIENT_SESSION_BLOOM_FILTER_BITS_PER_KEY));
+        // subscriptions are only read by prefix, never by their whole key
+        tableConfig.setWholeKeyFiltering(false);
+    }
+
+    @PostConstruct
+    protected void postConstruct() {
+        super.postConstruct();
+    }
+
+    @Override
+    protected void init() {
+        // nothing to prepare, as there are neither ids nor duplicates
+    }
+
+    @Override
+    public void addSubscription(
+            @NotNull final String client, @NotNull final Topic topic, final long timestamp, final int bucketIndex) {
+        checkNotNull(client, "Clientid must not be null");
+        checkNotNull(topic, "Topic must not be null");
+        checkNotNull(topic.getTopic(), "Topic must not be null");
+        checkState(timestamp > 0, "Timestamp must not be 0");
+
+        final RocksDB bucket = buckets[bucketIndex];
+        try {
+            bucket.put(serializeKey(client, topic.getTopic()), serializer.serializeValue(topic, timestamp, NO_ID));
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while persisting a subscription of client {}.", client);
+            log.debug("Original Exception:", e);
+        }
+    }
+
+    @Override
+    public void addSubscriptions(
+            @NotNull final String client,
+            @NotNull final ImmutableSet<Topic> topics,
+            final long timestamp,
+            final int bucketIndex) {
+        checkNotNull(client, "Client id must not be null");
+        checkNotNull(topics, "Topics must not be null");
+        checkState(timestamp > 0, "Timestamp must not be 0");
+
+        final RocksDB bucket = buckets[bucketIndex];
+        try (final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions options = new WriteOptions()) {
+            for (final Topic topic : topics) {
+                writeBatch.put(serializeKey(client, topic.getTopic()),
+                        serializer.serializeValue(topic, timestamp, NO_ID));
+            }
+            bucket.write(options, writeBatch);
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while persisting the subscriptions of client {}.", client);
+            log.debug("Original Exception:", e);
+        }
+    }
+
+    @Override
+    public void removeSubscriptions(
+            final @NotNull String client,
+            final @NotNull ImmutableSet<String> topics,
+            final long timestamp,
+            final int bucketIndex) {
+        checkNotNull(client, "Client id must not be null");
+        checkNotNull(topics, "Topics must not be null");
+        checkState(timestamp > 0, "Timestamp must not be 0");
+
+        // the keys are known, so the subscriptions don't have to be read
+        final RocksDB bucket = buckets[bucketIndex];
+        try (final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions options = new WriteOptions()) {
+            for (final String topic : topics) {
+                writeBatch.delete(serializeKey(client, topic));
+            }
+            bucket.write(options, writeBatch);
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while removing the subscriptions of client {}.", client);
+            log.debug("Original Exception:", e);
+        }
+    }
+
+    @Override
+    @NotNull
+    public ImmutableSet<Topic> getSubscriptions(@NotNull final String client) {
+        checkNotNull(client, "Clientid must not be null");
+
+        final byte[] clientPrefix = serializeClientPrefix(client);
+        final ImmutableSet.Builder<Topic> subscriptions = ImmutableSet.builder();
+        try (final ReadOptions readOptions = new ReadOptions().setPrefixSameAsStart(true);
+             final RocksIterator iterator = getRocksDb(client).newIterator(readOptions)) {
+            iterator.seek(clientPrefix);
+            while (iterator.isValid()) {
+                if (!hasClientPrefix(iterator.key(), clientPrefix)) {
+                    break;
+                }
+                subscriptions.add(serializer.deserializeValue(iterator.value()));
+                iterator.next();
+            }
+        }
+        return subscriptions.build();
+    }
+
+    @Override
+    public void removeAll(@NotNull final String client, final long timestamp, final int bucketIndex) {
+        checkNotNull(client, "Clientid must not be null");
+        checkState(timestamp > 0, "Timestamp must not be 0");
+
+        final RocksDB bucket = buckets[bucketIndex];
+        final byte[] clientPrefix = serializeClientPrefix(client);
+        try (final ReadOptions readOptions = new ReadOptions().setPrefixSameAsStart(true);
+             final RocksIterator iterator = bucket.newIterator(readOptions);
+             final WriteBatch writeBatch = new WriteBatch();
+             final WriteOptions options = new WriteOptions()) {
+            iterator.seek(clientPrefix);
+            while (iterator.isValid()) {
+                final byte[] key = iterator.key();
+                if (!hasClientPrefix(key, clientPrefix)) {
+                    break;
+                }
+                writeBatch.delete(key);
+                iterator.next();
+            }
+            if (writeBatch.count() > 0) {
+                bucket.write(options, writeBatch);
+            }
+        } catch (final RocksDBException e) {
+            log.error("An error occurred while removing all subscriptions of client {}.", client);
+            log.debug("Original Exception:", e);
+        }
+    }
+
+    @Override
+    public void remove(
+            @NotNull final String client, @NotNull final String topic, final long timestamp, final int bucketIndex) {
+        checkNotNull(client, "Clientid must not be null");
+        checkNotNull(topic, "Topic must not be null");
+        checkState(timestamp > 0, "Timestamp must not be 0");
+        removeSubscriptions(client, ImmutableSet.of(topic), timestamp, bucketIndex);
+    }
+
+    @Override
+    @NotNull
+    public BucketChunkResult<Map<String, ImmutableSet<Topic>>> getAllSubscribersChunk(
+            final int bucketIndex, @Nullable final String lastClientId, final int maxResults) {
+        checkArgument(maxResults > 0, "max results must be greater than 0");
+
+        final ImmutableMap.Builder<String, ImmutableSet<Topic>> resultBuilder = ImmutableMap.builder();
+
+        final RocksDB bucket = buckets[bucketIndex];
+        try (final ReadOptions readOptions = scanReadOptions();
+             final RocksIterator iterator = bucket.newIterator(readOptions)) {
+
+            if (lastClientId != null) {
+                //jump to last known client and skip all of its subscriptions
+                final byte[] lastClientPrefix = serializeClientPrefix(lastClientId);
+                iterator.seek(lastClientPrefix);
+                while (iterator.isValid() && hasClientPrefix(iterator.key(), lastClientPrefix)) {
+                    iterator.next();
+                }
+            } else {
+                //start at the beginning
+                iterator.seekToFirst();
+            }
+
+            String lastKey = null;
+            int containedItemCount = 0;
+            while (iterator.isValid()) {
+                final String clientId = deserializeClientId(iterator.key());
+                final byte[] clientPrefix = serializeClientPrefix(clientId);
+
+                //read all subscriptions for this clientId
+                final ImmutableSet.Builder<Topic> topics = ImmutableSet.builder();
+                do {
+                    topics.add(serializer.deserializeValue(iterator.value()));
+                    iterator.next();
+                } while (iterator.isValid() && hasClientPrefix(iterator.key(), clientPrefix));
+
+                lastKey = clientId;
+                final ImmutableSet<Topic> topicSet = topics.build();
+                containedItemCount += topicSet.size();
+                resultBuilder.put(clientId, topicSet);
+
+                if (containedItemCount >= maxResults) {
+                    return new BucketChunkResult<>(resultBuilder.build(), !iterator.isValid(), lastKey, bucketIndex);
+                }
+            }
+
+            return new BucketChunkResult<>(resultBuilder.build(), true, lastKey, bucketIndex);
+        }
+    }
+
+    @Override
+    public void cleanUp(final int bucket) {
+        // nothing to clean up, as a subscription to the same topic replaces the previous one
+    }
+}
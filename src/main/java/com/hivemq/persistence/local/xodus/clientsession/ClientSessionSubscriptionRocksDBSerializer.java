@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.local.xodus.clientsession;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.util.Bytes;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Serializes the keys of the RocksDB client session subscription persistence. Every subscription has its own key with
+ * the layout
+ * <p>
+ * ClientIdHash(4 bytes)|ClientIdLength(2 bytes)|ClientId(UTF-8)(n bytes)|Topic(UTF-8)(m bytes)
+ * <p>
+ * The hash of the client id is the fixed length prefix of the keys, so the prefix bloom filters of RocksDB are keyed by
+ * the client id. All subscriptions of a client share the key prefix up to the topic, as the length of the client id
+ * determines where the topic starts.
+ * <p>
+ * The values are serialized by the {@link ClientSessionSubscriptionXodusSerializer}.
+ */
+public class ClientSessionSubscriptionRocksDBSerializer {
+
+    /**
+     * The length of the fixed length prefix, which is the hash of the client id.
+     */
+    public static final int PREFIX_LENGTH = 4;
+
+    private ClientSessionSubscriptionRocksDBSerializer() {
+        //Utility class, don't instantiate
+    }
+
+    /**
+     * @param client the client id
+     * @return the part of the keys that all subscriptions of the client share
+     */
+    public static byte @NotNull [] serializeClientPrefix(final @NotNull String client) {
+        final byte[] clientIdBytes = client.getBytes(UTF_8);
+        final byte[] bytes = new byte[PREFIX_LENGTH + 2 + clientIdBytes.length];
+        copyClientPrefix(client, clientIdBytes, bytes);
+        return bytes;
+    }
+
+    /**
+     * @param client the client id
+     * @param topic  the topic filter of the subscription
+     * @return the key of the subscription
+     */
+    public static byte @NotNull [] serializeKey(final @NotNull String client, final @NotNull String topic) {
+        final byte[] clientIdBytes = client.getBytes(UTF_8);
+        final byte[] topicBytes = topic.getBytes(UTF_8);
+        final int clientPrefixLength = PREFIX_LENGTH + 2 + clientIdBytes.length;
+        final byte[] bytes = new byte[clientPrefixLength + topicBytes.length];
+        copyClientPrefix(client, clientIdBytes, bytes);
+        System.arraycopy(topicBytes, 0, bytes, clientPrefixLength, topicBytes.length);
+        return bytes;
+    }
+
+    /**
+     * @param key a serialized key
+     * @return the client id of the key
+     */
+    public static @NotNull String deserializeClientId(final byte @NotNull [] key) {
+        final int clientIdLength = Bytes.readUnsignedShort(key, PREFIX_LENGTH);
+        return new String(key, PREFIX_LENGTH + 2, clientIdLength, UTF_8);
+    }
+
+    /**
+     * @param key          a serialized key
+     * @param clientPrefix the serialized client prefix of a client
+     * @return true if the key is a key of a subscription of the client
+     */
+    public static boolean hasClientPrefix(final byte @NotNull [] key, final byte @NotNull [] clientPrefix) {
+        if (key.length < clientPrefix.length) {
+            return false;
+        }
+        for (int i = 0; i < clientPrefix.length; i++) {
+            if (key[i] != clientPrefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void copyClientPrefix(
+            final @NotNull String client, final byte @NotNull [] clientIdBytes, final byte @NotNull [] destination) {
+        checkArgument(clientIdBytes.length <= 65535, "Client id must not be longer than 65535 bytes");
+        Bytes.copyIntToByteArray(client.hashCode(), destination, 0);
+        Bytes.copyUnsignedShortToByteArray(clientIdBytes.length, destination, PREFIX_LENGTH);
+        System.arraycopy(clientIdBytes, 0, destination, PREFIX_LENGTH + 2, clientIdBytes.length);
+    }
+}
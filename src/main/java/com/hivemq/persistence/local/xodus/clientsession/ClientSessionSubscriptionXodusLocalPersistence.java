@@ -24,6 +24,7 @@ import com.hivemq.exceptions.UnrecoverableException;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extensions.iteration.BucketChunkResult;
+import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.mqtt.message.subscribe.Topic;
 import com.hivemq.persistence.PersistenceStartup;
 import com.hivemq.persistence.local.ClientSessionSubscriptionLocalPersistence;
@@ -61,7 +62,6 @@ public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPe
         implements ClientSessionSubscriptionLocalPersistence {
 
     private static final Logger log = LoggerFactory.getLogger(ClientSessionSubscriptionXodusLocalPersistence.class);
-    private static final String PERSISTENCE_NAME = "client_session_subscriptions";
     public static final String PERSISTENCE_VERSION = "040000";
 
     @VisibleForTesting
@@ -79,7 +79,7 @@ public class ClientSessionSubscriptionXodusLocalPersistence extends XodusLocalPe
                 localPersistenceFileUtil,
                 persistenceStartup,
                 InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get(),
-                true);
+                InternalConfigurations.CLIENT_SESSION_PERSISTENCE_TYPE.get() == PersistenceType.FILE);
         this.serializer = new ClientSessionSubscriptionXodusSerializer();
 
     }
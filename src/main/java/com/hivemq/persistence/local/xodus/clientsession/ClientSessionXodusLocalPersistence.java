@@ -25,6 +25,7 @@ import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extension.sdk.api.annotations.ThreadSafe;
 import com.hivemq.extensions.iteration.BucketChunkResult;
 import com.hivemq.logging.EventLog;
+import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.metrics.MetricsHolder;
 import com.hivemq.persistence.NoSessionException;
 import com.hivemq.persistence.PersistenceEntry;
@@ -37,6 +38,7 @@ import com.hivemq.persistence.local.ClientSessionLocalPersistence;
 import com.hivemq.persistence.local.xodus.EnvironmentUtil;
 import com.hivemq.persistence.local.xodus.TransactionCommitActions;
 import com.hivemq.persistence.local.xodus.XodusLocalPersistence;
+import com.hivemq.persistence.local.xodus.XodusTransactions;
 import com.hivemq.persistence.local.xodus.bucket.Bucket;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
@@ -78,7 +80,6 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
 
     private static final @NotNull Logger log = LoggerFactory.getLogger(ClientSessionXodusLocalPersistence.class);
 
-    private static final @NotNull String PERSISTENCE_NAME = "client_session_store";
     public static final @NotNull String PERSISTENCE_VERSION = "040000";
 
     private final @NotNull ClientSessionPersistenceSerializer serializer;
@@ -99,7 +100,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
                 localPersistenceFileUtil,
                 persistenceStartup,
                 InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get(),
-                true);
+                InternalConfigurations.CLIENT_SESSION_PERSISTENCE_TYPE.get() == PersistenceType.FILE);
 
         this.payloadPersistence = payloadPersistence;
         this.eventLog = eventLog;
@@ -136,7 +137,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
         for (int i = 0; i < bucketCount; i++) {
             final Bucket bucket = buckets[i];
             final SessionCounterDelta sessionCounterDelta = new SessionCounterDelta();
-            bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+            XodusTransactions.executeInExclusiveTransaction(bucket.getEnvironment(), txn -> {
                 final Store store = bucket.getStore();
 
                 try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
@@ -225,7 +226,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
             final Bucket bucket,
             final boolean checkExpired,
             final boolean includeWill) {
-        return bucket.getEnvironment().computeInReadonlyTransaction(txn -> {
+        return XodusTransactions.computeInReadonlyTransaction(bucket.getEnvironment(), txn -> {
 
             final ByteIterable byteIterable =
                     bucket.getStore().get(txn, bytesToByteIterable(serializer.serializeKey(clientId)));
@@ -261,7 +262,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
     @Override
     public @Nullable Long getTimestamp(final @NotNull String clientId, final int bucketIndex) {
         final Bucket bucket = buckets[bucketIndex];
-        return bucket.getEnvironment().computeInReadonlyTransaction(txn -> {
+        return XodusTransactions.computeInReadonlyTransaction(bucket.getEnvironment(), txn -> {
             final ByteIterable byteIterable =
                     bucket.getStore().get(txn, bytesToByteIterable(serializer.serializeKey(clientId)));
             if (byteIterable == null) {
@@ -284,13 +285,13 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
 
         final Bucket bucket = buckets[bucketIndex];
-        bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+        XodusTransactions.executeInExclusiveTransaction(bucket.getEnvironment(), txn -> {
             final ByteIterable key = bytesToByteIterable(serializer.serializeKey(clientId));
 
             final boolean isPersistent = persistent(newClientSession);
 
             final ByteIterable value = bucket.getStore().get(txn, key);
-            txn.setCommitHook(() -> {
+            TransactionCommitActions.asCommitHookFor(txn).add(() -> {
                 if (value == null) {
                     if (isPersistent || newClientSession.isConnected()) {
                         sessionsCount.incrementAndGet();
@@ -333,7 +334,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
 
         final Bucket bucket = buckets[bucketIndex];
-        return bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+        return XodusTransactions.computeInExclusiveTransaction(bucket.getEnvironment(), txn -> {
             final ByteIterable key = bytesToByteIterable(serializer.serializeKey(clientId));
             final ByteIterable byteIterable = bucket.getStore().get(txn, key);
 
@@ -353,7 +354,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
 
             final boolean isConnected = clientSession.isConnected();
             final ClientSessionWill will = clientSession.getWillPublish();
-            txn.setCommitHook(() -> {
+            TransactionCommitActions.asCommitHookFor(txn).add(() -> {
                 if (isConnected && !persistent(clientSession)) {
                     sessionsCount.decrementAndGet();
                 }
@@ -377,7 +378,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
         ThreadPreConditions.startsWith(SINGLE_WRITER_THREAD_PREFIX);
 
         final Bucket bucket = buckets[bucketIndex];
-        return bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+        return XodusTransactions.computeInExclusiveTransaction(bucket.getEnvironment(), txn -> {
             final ByteIterable key = bytesToByteIterable(serializer.serializeKey(clientId));
             final ByteIterable byteIterable = bucket.getStore().get(txn, key);
 
@@ -393,7 +394,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
             final long timestamp = serializer.deserializeTimestamp(byteIterableToBytes(byteIterable));
             final ClientSessionWill will = clientSession.getWillPublish();
             if (will != null) {
-                txn.setCommitHook(() -> removeWillReference(will));
+                TransactionCommitActions.asCommitHookFor(txn).add(() -> removeWillReference(will));
                 clientSession.setWillPublish(null);
                 bucket.getStore()
                         .put(txn, key, bytesToByteIterable(serializer.serializeValue(clientSession, timestamp)));
@@ -410,7 +411,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
         checkBucketIndex(bucketIndex);
 
         final Bucket bucket = buckets[bucketIndex];
-        return bucket.getEnvironment().computeInReadonlyTransaction(txn -> {
+        return XodusTransactions.computeInReadonlyTransaction(bucket.getEnvironment(), txn -> {
             final Map<String, ClientSession> resultMap = Maps.newHashMap();
 
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
@@ -469,7 +470,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
     @Override
     public @NotNull Set<String> getAllClients(final int bucketIndex) {
         final Bucket bucket = buckets[bucketIndex];
-        return bucket.getEnvironment().computeInReadonlyTransaction(txn -> {
+        return XodusTransactions.computeInReadonlyTransaction(bucket.getEnvironment(), txn -> {
             final ImmutableSet.Builder<String> clientSessions = ImmutableSet.builder();
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
                 while (cursor.getNext()) {
@@ -484,11 +485,11 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
     @VisibleForTesting
     void removeWithTimestamp(final @NotNull String client, final int bucketIndex) {
         final Bucket bucket = buckets[bucketIndex];
-        bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+        XodusTransactions.executeInExclusiveTransaction(bucket.getEnvironment(), txn -> {
             final ByteIterable value = bucket.getStore().get(txn, bytesToByteIterable(serializer.serializeKey(client)));
             if (value != null) {
                 final ClientSession clientSession = serializer.deserializeValue(byteIterableToBytes(value));
-                txn.setCommitHook(() -> {
+                TransactionCommitActions.asCommitHookFor(txn).add(() -> {
                     if (persistent(clientSession) || clientSession.isConnected()) {
                         sessionsCount.decrementAndGet();
                     }
@@ -513,7 +514,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
         }
 
         final Bucket bucket = buckets[bucketIndex];
-        bucket.getEnvironment().executeInExclusiveTransaction(txn -> {
+        XodusTransactions.executeInExclusiveTransaction(bucket.getEnvironment(), txn -> {
 
             final ByteIterable key = bytesToByteIterable(serializer.serializeKey(clientId));
 
@@ -544,7 +545,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
             return ImmutableSet.of();
         }
         final Bucket bucket = buckets[bucketIndex];
-        return bucket.getEnvironment().computeInExclusiveTransaction(txn -> {
+        return XodusTransactions.computeInExclusiveTransaction(bucket.getEnvironment(), txn -> {
             final ImmutableSet.Builder<String> expiredSessionsBuilder = ImmutableSet.builder();
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
                 final TransactionCommitActions commitActions = TransactionCommitActions.asCommitHookFor(txn);
@@ -582,7 +583,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
 
         final Bucket bucket = buckets[bucketIndex];
 
-        return bucket.getEnvironment().computeInReadonlyTransaction(txn -> {
+        return XodusTransactions.computeInReadonlyTransaction(bucket.getEnvironment(), txn -> {
 
             final Set<String> collectSet = new HashSet<>();
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
@@ -616,7 +617,7 @@ public class ClientSessionXodusLocalPersistence extends XodusLocalPersistence im
     public @NotNull Map<String, PendingWillMessages.PendingWill> getPendingWills(final int bucketIndex) {
         final Bucket bucket = buckets[bucketIndex];
 
-        return bucket.getEnvironment().computeInReadonlyTransaction(txn -> {
+        return XodusTransactions.computeInReadonlyTransaction(bucket.getEnvironment(), txn -> {
             final Map<String, PendingWillMessages.PendingWill> resultMap = new HashMap<>();
             try (final Cursor cursor = bucket.getStore().openCursor(txn)) {
                 while (cursor.getNext()) {
@@ -70,6 +70,25 @@ public interface RetainedMessageLocalPersistence extends LocalPersistence {
      */
     void put(@NotNull RetainedMessage retainedMessage, @NotNull String topic, int bucketIndex);
 
+    /**
+     * Set and remove the retained messages for multiple topics of a persistence bucket at once. Persistences that
+     * support it commit all writes together.
+     *
+     * @param writes      the retained messages by topic, a <code>null</code> message removes the retained message
+     *                    of the topic.
+     * @param bucketIndex The index of the bucket in which the retained messages are stored.
+     */
+    @ExecuteInSingleWriter
+    default void putAll(final @NotNull Map<String, @Nullable RetainedMessage> writes, final int bucketIndex) {
+        for (final Map.Entry<String, RetainedMessage> write : writes.entrySet()) {
+            if (write.getValue() == null) {
+                remove(write.getKey(), bucketIndex);
+            } else {
+                put(write.getValue(), write.getKey(), bucketIndex);
+            }
+        }
+    }
+
     /**
      * Get the topics of all retained messages for a subscription from a persistence bucket
      *
@@ -19,9 +19,12 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.hivemq.annotations.ExecuteInSingleWriter;
 import com.hivemq.bootstrap.ioc.lazysingleton.LazySingleton;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
 import com.hivemq.extensions.iteration.ChunkCursor;
 import com.hivemq.extensions.iteration.Chunker;
 import com.hivemq.extensions.iteration.MultipleChunkResult;
@@ -34,7 +37,10 @@ import com.hivemq.persistence.payload.PublishPayloadPersistence;
 import com.hivemq.persistence.util.FutureUtils;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -52,8 +58,11 @@ public class RetainedMessagePersistenceImpl extends AbstractPersistence implemen
     private final @NotNull RetainedMessageLocalPersistence localPersistence;
     private final @NotNull TopicMatcher topicMatcher;
     private final @NotNull PublishPayloadPersistence payloadPersistence;
+    private final @NotNull SingleWriterService singleWriterService;
     private final @NotNull ProducerQueues singleWriter;
     private final @NotNull Chunker chunker;
+    private final int writeBatchSize;
+    private final @NotNull PendingWrites @Nullable [] pendingWrites;
 
     @Inject
     RetainedMessagePersistenceImpl(
@@ -67,9 +76,21 @@ public class RetainedMessagePersistenceImpl extends AbstractPersistence implemen
         this.topicMatcher = topicMatcher;
         this.payloadPersistence = payloadPersistence;
 
+        this.singleWriterService = singleWriterService;
         singleWriter = singleWriterService.getRetainedMessageQueue();
 
         this.chunker = chunker;
+
+        writeBatchSize = InternalConfigurations.RETAINED_MESSAGE_WRITE_BATCH_SIZE.get();
+        if (writeBatchSize > 1) {
+            final int bucketCount = InternalConfigurations.PERSISTENCE_BUCKET_COUNT.get();
+            pendingWrites = new PendingWrites[bucketCount];
+            for (int i = 0; i < bucketCount; i++) {
+                pendingWrites[i] = new PendingWrites();
+            }
+        } else {
+            pendingWrites = null;
+        }
     }
 
     @NotNull
@@ -107,6 +128,10 @@ public class RetainedMessagePersistenceImpl extends AbstractPersistence implemen
         try {
             checkNotNull(topic, "Topic must not be null");
 
+            if (pendingWrites != null) {
+                return write(topic, null);
+            }
+
             return singleWriter.submit(topic, (bucketIndex) -> {
                 localPersistence.remove(topic, bucketIndex);
                 return null;
@@ -125,6 +150,10 @@ public class RetainedMessagePersistenceImpl extends AbstractPersistence implemen
 
             payloadPersistence.add(retainedMessage.getMessage(), 1, retainedMessage.getPublishId());
 
+            if (pendingWrites != null) {
+                return write(topic, retainedMessage);
+            }
+
             return singleWriter.submit(topic, (bucketIndex) -> {
                 localPersistence.put(retainedMessage, topic, bucketIndex);
                 return null;
@@ -135,6 +164,95 @@ public class RetainedMessagePersistenceImpl extends AbstractPersistence implemen
         }
     }
 
+    /**
+     * Adds the write to the pending writes of the bucket of the topic. A pending write to the same topic is replaced,
+     * both callers are notified when the last write is committed. Only one single writer task is submitted per bucket
+     * until it starts committing the pending writes, so reads that are submitted afterwards see the write.
+     */
+    private @NotNull ListenableFuture<Void> write(
+            final @NotNull String topic, final @Nullable RetainedMessage retainedMessage) {
+
+        final int bucketIndex = singleWriter.getBucket(topic);
+        final PendingWrites bucketWrites = pendingWrites[bucketIndex];
+        final PendingWrite write;
+        final RetainedMessage replacedMessage;
+        final boolean submit;
+        synchronized (bucketWrites) {
+            final PendingWrite pendingWrite = bucketWrites.writes.get(topic);
+            if (pendingWrite == null) {
+                write = new PendingWrite(retainedMessage);
+                bucketWrites.writes.put(topic, write);
+                replacedMessage = null;
+            } else {
+                write = pendingWrite;
+                replacedMessage = pendingWrite.retainedMessage;
+                pendingWrite.retainedMessage = retainedMessage;
+            }
+            submit = !bucketWrites.submitted;
+            bucketWrites.submitted = true;
+        }
+        if (replacedMessage != null) {
+            // the replaced message is never stored, so its payload reference is released right away
+            payloadPersistence.decrementReferenceCounter(replacedMessage.getPublishId());
+        }
+        if (submit) {
+            singleWriter.submit(bucketIndex, this::commitPendingWrites);
+        }
+        return write.future;
+    }
+
+    @ExecuteInSingleWriter
+    private @Nullable Void commitPendingWrites(final int bucketIndex) {
+        final PendingWrites bucketWrites = pendingWrites[bucketIndex];
+        final Map<String, PendingWrite> writes;
+        synchronized (bucketWrites) {
+            writes = bucketWrites.writes;
+            bucketWrites.writes = new HashMap<>();
+            bucketWrites.submitted = false;
+        }
+
+        final Iterator<Map.Entry<String, PendingWrite>> iterator = writes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map<String, RetainedMessage> batch = new HashMap<>();
+            final List<SettableFuture<Void>> futures = new ArrayList<>();
+            String topic = null;
+            while (iterator.hasNext() && batch.size() < writeBatchSize) {
+                final Map.Entry<String, PendingWrite> entry = iterator.next();
+                topic = entry.getKey();
+                batch.put(topic, entry.getValue().retainedMessage);
+                futures.add(entry.getValue().future);
+            }
+            Throwable failure = null;
+            try {
+                localPersistence.putAll(batch, bucketIndex);
+            } catch (final Throwable throwable) {
+                failure = throwable;
+            }
+            completePendingWrites(topic, futures, failure);
+        }
+        return null;
+    }
+
+    /**
+     * Completes the futures of the committed writes in the callback executor of the bucket, so listeners of the
+     * callers do not run in the single writer.
+     */
+    private void completePendingWrites(
+            final @NotNull String topic,
+            final @NotNull List<SettableFuture<Void>> futures,
+            final @Nullable Throwable failure) {
+
+        singleWriterService.callbackExecutor(topic).execute(() -> {
+            for (final SettableFuture<Void> future : futures) {
+                if (failure == null) {
+                    future.set(null);
+                } else {
+                    future.setException(failure);
+                }
+            }
+        });
+    }
+
     @NotNull
     @Override
     public ListenableFuture<Set<String>> getWithWildcards(@NotNull final String subscription) {
@@ -195,4 +313,20 @@ public class RetainedMessagePersistenceImpl extends AbstractPersistence implemen
                                         lastKey,
                                         maxResults)));
     }
+
+    private static class PendingWrites {
+
+        private @NotNull Map<String, PendingWrite> writes = new HashMap<>();
+        private boolean submitted;
+    }
+
+    private static class PendingWrite {
+
+        private final @NotNull SettableFuture<Void> future = SettableFuture.create();
+        private @Nullable RetainedMessage retainedMessage;
+
+        PendingWrite(final @Nullable RetainedMessage retainedMessage) {
+            this.retainedMessage = retainedMessage;
+        }
+    }
 }
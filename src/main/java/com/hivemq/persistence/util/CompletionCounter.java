@@ -0,0 +1,170 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.util;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.extension.sdk.api.annotations.Nullable;
+import com.hivemq.persistence.SingleWriterService;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Tracks the completion of a number of asynchronous operations with a single counter and a single callback, instead
+ * of a future per operation and an aggregated future.
+ * <p>
+ * Every operation is registered with {@link #expect()} before it is started and reports its result with
+ * {@link #complete()} or {@link #fail(Throwable)}. When all operations are registered, the registration is ended with
+ * {@link #seal()}. The callback is called exactly once, as soon as the counter is sealed and all operations are
+ * completed, in the thread that completed the last operation.
+ * <p>
+ * The counter can be passed to the single writer as success and failed callback of a task.
+ */
+public class CompletionCounter
+        implements SingleWriterService.SuccessCallback<Object>, SingleWriterService.FailedCallback {
+
+    private static final @NotNull AtomicIntegerFieldUpdater<CompletionCounter> PENDING_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(CompletionCounter.class, "pending");
+    private static final @NotNull AtomicReferenceFieldUpdater<CompletionCounter, Throwable> FAILURE_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(CompletionCounter.class, Throwable.class, "failure");
+
+    private final @NotNull Callback callback;
+    // The registration is pending until the counter is sealed
+    private volatile int pending = 1;
+    private volatile @Nullable Throwable failure;
+    private volatile boolean congested;
+
+    public CompletionCounter(final @NotNull Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * Creates a counter that completes the given future.
+     *
+     * @param future the future that is completed with the first failure of the operations or successfully
+     * @return the counter
+     */
+    public static @NotNull CompletionCounter forFuture(final @NotNull SettableFuture<Void> future) {
+        return new CompletionCounter(failure -> {
+            if (failure == null) {
+                future.set(null);
+            } else {
+                future.setException(failure);
+            }
+        });
+    }
+
+    /**
+     * Registers an operation. Must be called before the counter is sealed.
+     */
+    public void expect() {
+        PENDING_UPDATER.incrementAndGet(this);
+    }
+
+    /**
+     * Registers the given number of operations. Must be called before the counter is sealed.
+     */
+    public void expect(final int count) {
+        PENDING_UPDATER.addAndGet(this, count);
+    }
+
+    /**
+     * Completes a registered operation successfully.
+     */
+    public void complete() {
+        final int remaining = PENDING_UPDATER.decrementAndGet(this);
+        assert remaining >= 0 : "more operations completed than registered";
+        if (remaining == 0) {
+            callback.onComplete(failure);
+        }
+    }
+
+    /**
+     * Completes a registered operation with a failure. Only the first failure is passed to the callback.
+     */
+    public void fail(final @NotNull Throwable throwable) {
+        FAILURE_UPDATER.compareAndSet(this, null, throwable);
+        complete();
+    }
+
+    /**
+     * Ends the registration of operations. Must be called exactly once.
+     */
+    public void seal() {
+        complete();
+    }
+
+    public boolean isDone() {
+        return pending == 0;
+    }
+
+    /**
+     * Reports that an operation added a message to a congested client queue. Must be called before the operation is
+     * completed.
+     */
+    public void congested() {
+        congested = true;
+    }
+
+    /**
+     * @return whether any of the operations added a message to a congested client queue
+     */
+    public boolean isCongested() {
+        return congested;
+    }
+
+    /**
+     * Registers the given future as an operation of this counter.
+     */
+    public void track(final @NotNull ListenableFuture<?> future) {
+        expect();
+        Futures.addCallback(future, new FutureCallback<Object>() {
+            @Override
+            public void onSuccess(final @Nullable Object result) {
+                complete();
+            }
+
+            @Override
+            public void onFailure(final @NotNull Throwable throwable) {
+                fail(throwable);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    @Override
+    public void afterTask(final @NotNull Object result) {
+        complete();
+    }
+
+    @Override
+    public void afterTask(final @NotNull Exception exception) {
+        fail(exception);
+    }
+
+    @FunctionalInterface
+    public interface Callback {
+
+        /**
+         * @param failure the first failure of the operations or {@code null} if all operations succeeded
+         */
+        void onComplete(@Nullable Throwable failure);
+    }
+}
@@ -17,8 +17,10 @@ package com.hivemq.codec.encoder;
 
 import com.hivemq.bootstrap.ClientConnection;
 import com.hivemq.bootstrap.ClientConnectionContext;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.configuration.service.SecurityConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.mqtt.message.MessageRecycling;
 import com.hivemq.mqtt.message.PINGRESP;
 import com.hivemq.mqtt.message.ProtocolVersion;
 import com.hivemq.mqtt.message.QoS;
@@ -87,6 +89,22 @@ public class MQTTMessageEncoderTest {
         assertTrue(buf.readableBytes() > 0);
     }
 
+    @Test
+    public void test_recycled_puback_released_after_encoding() {
+        InternalConfigurations.MESSAGE_RECYCLING_ENABLED.set(true);
+        InternalConfigurations.MESSAGE_RECYCLING_LEAK_DETECTION_ENABLED.set(true);
+        try {
+            channel.writeOutbound(PUBACK.newInstance(10));
+            final ByteBuf buf = channel.readOutbound();
+            assertTrue(buf.readableBytes() > 0);
+            MessageRecycling.assertNoLeaks();
+        } finally {
+            InternalConfigurations.MESSAGE_RECYCLING_ENABLED.set(false);
+            InternalConfigurations.MESSAGE_RECYCLING_LEAK_DETECTION_ENABLED.set(false);
+            MessageRecycling.resetLeakDetection();
+        }
+    }
+
     @Test
     public void test_pubrec_encoded() {
 
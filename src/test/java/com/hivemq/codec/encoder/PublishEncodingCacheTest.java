@@ -0,0 +1,281 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.codec.encoder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.ImmutableIntArray;
+import com.hivemq.bootstrap.ClientConnection;
+import com.hivemq.bootstrap.ClientConnectionContext;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.configuration.service.impl.SecurityConfigurationServiceImpl;
+import com.hivemq.mqtt.handler.disconnect.MqttServerDisconnector;
+import com.hivemq.mqtt.message.ProtocolVersion;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.dropping.MessageDroppedService;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
+import com.hivemq.mqtt.message.mqtt5.MqttUserProperty;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.mqtt.message.publish.PUBLISHFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import util.DummyClientConnection;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+public class PublishEncodingCacheTest {
+
+    private final ByteBufAllocator allocator = new UnpooledByteBufAllocator(false);
+    private final byte[] payload = new byte[2048];
+
+    private EncoderFactory encoderFactory;
+    private ClientConnection clientConnection;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        Arrays.fill(payload, (byte) 7);
+        encoderFactory = new EncoderFactory(mock(MessageDroppedService.class),
+                new SecurityConfigurationServiceImpl(),
+                mock(MqttServerDisconnector.class));
+        channel = new EmbeddedChannel();
+        clientConnection = new DummyClientConnection(channel, null);
+        channel.attr(ClientConnectionContext.CHANNEL_ATTRIBUTE_NAME).set(clientConnection);
+        clientConnection.setClientId("client");
+        clientConnection.setRequestProblemInformation(true);
+    }
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.PUBLISH_ENCODING_CACHE_ENABLED.set(true);
+        encoderFactory.getPublishEncodingCache().invalidateAll();
+    }
+
+    @Test
+    public void encodeWithSharedBody_whenMqtt3_thenSameBytesAsEncode() {
+        clientConnection.setProtocolVersion(ProtocolVersion.MQTTv3_1_1);
+        final PUBLISH publish = publish(1, QoS.AT_LEAST_ONCE, null);
+
+        final ByteBuf shared =
+
+                encoderFactory.encodeWithSharedBody(clientConnection, publish, allocator, channel.newPromise());
+
+        assertNotNull(shared);
+        assertArrayEquals(encode(publish(1, QoS.AT_LEAST_ONCE, null)), ByteBufUtil.getBytes(shared));
+        shared.release();
+    }
+
+    @Test
+    public void encodeWithSharedBody_whenMqtt5WithSubscriptionIdentifiers_thenSameBytesAsEncode() {
+        clientConnection.setProtocolVersion(ProtocolVersion.MQTTv5);
+
+        final ByteBuf first = encoderFactory.encodeWithSharedBody(clientConnection,
+                publish(1, QoS.AT_LEAST_ONCE, ImmutableIntArray.of(1)), allocator, channel.newPromise());
+        final ByteBuf second = encoderFactory.encodeWithSharedBody(clientConnection,
+                publish(2, QoS.EXACTLY_ONCE, ImmutableIntArray.of(2, 300)), allocator, channel.newPromise());
+
+        assertNotNull(first);
+        assertNotNull(second);
+        assertArrayEquals(encode(publish(1, QoS.AT_LEAST_ONCE, ImmutableIntArray.of(1))),
+                ByteBufUtil.getBytes(first));
+        assertArrayEquals(encode(publish(2, QoS.EXACTLY_ONCE, ImmutableIntArray.of(2, 300))),
+                ByteBufUtil.getBytes(second));
+        assertEquals(1, encoderFactory.getPublishEncodingCache().size());
+        first.release();
+        second.release();
+    }
+
+    @Test
+    public void encodeWithSharedBody_whenMqtt5WithProperties_thenSameLengthAsEncode() {
+        clientConnection.setProtocolVersion(ProtocolVersion.MQTTv5);
+        final PUBLISH publish = new PUBLISHFactory.Mqtt5Builder().fromPublish(publish(1, QoS.AT_LEAST_ONCE, null))
+                .withContentType("type")
+                .withResponseTopic("response")
+                .withUserProperties(Mqtt5UserProperties.of(ImmutableList.of(new MqttUserProperty("key", "value"))))
+                .build();
+
+        final ByteBuf shared =
+
+                encoderFactory.encodeWithSharedBody(clientConnection, publish, allocator, channel.newPromise());
+
+        assertNotNull(shared);
+        assertEquals(encode(publish).length, shared.readableBytes());
+        shared.release();
+    }
+
+    @Test
+    public void encodeWithSharedBody_whenBodyCached_thenBodyIsShared() {
+        clientConnection.setProtocolVersion(ProtocolVersion.MQTTv5);
+
+        final CompositeByteBuf first = (CompositeByteBuf) encoderFactory.encodeWithSharedBody(clientConnection,
+                publish(1, QoS.AT_MOST_ONCE, null), allocator, channel.newPromise());
+        final CompositeByteBuf second = (CompositeByteBuf) encoderFactory.encodeWithSharedBody(clientConnection,
+                publish(2, QoS.AT_LEAST_ONCE, null), allocator, channel.newPromise());
+        assertNotNull(first);
+        assertNotNull(second);
+
+        final ByteBuf body = first.component(1);
+        // one reference of the cache and one for each write
+        assertEquals(3, body.refCnt());
+
+        first.release();
+        second.release();
+        assertEquals(1, body.refCnt());
+
+        encoderFactory.getPublishEncodingCache().invalidateAll();
+        assertEquals(0, body.refCnt());
+    }
+
+    @Test
+    public void encodeWithSharedBody_whenLastWriteCompleted_thenBodyRemovedFromCache() {
+        clientConnection.setProtocolVersion(ProtocolVersion.MQTTv5);
+        final ChannelPromise firstPromise = channel.newPromise();
+        final ChannelPromise secondPromise = channel.newPromise();
+
+        final CompositeByteBuf first = (CompositeByteBuf) encoderFactory.encodeWithSharedBody(clientConnection,
+                publish(1, QoS.AT_MOST_ONCE, null), allocator, firstPromise);
+        final CompositeByteBuf second = (CompositeByteBuf) encoderFactory.encodeWithSharedBody(clientConnection,
+                publish(2, QoS.AT_LEAST_ONCE, null), allocator, secondPromise);
+        assertNotNull(first);
+        assertNotNull(second);
+        final ByteBuf body = first.component(1);
+        first.release();
+        second.release();
+
+        firstPromise.setSuccess();
+        assertEquals(1, encoderFactory.getPublishEncodingCache().size());
+        assertEquals(1, body.refCnt());
+
+        secondPromise.setFailure(new RuntimeException("write failed"));
+        assertEquals(0, encoderFactory.getPublishEncodingCache().size());
+        assertEquals(0, body.refCnt());
+    }
+
+    @Test
+    public void encodeWithSharedBody_whenBodyReleasedByCacheBeforeWrite_thenWriteKeepsBody() {
+        clientConnection.setProtocolVersion(ProtocolVersion.MQTTv3_1_1);
+
+        final CompositeByteBuf shared = (CompositeByteBuf) encoderFactory.encodeWithSharedBody(clientConnection,
+                publish(1, QoS.AT_MOST_ONCE, null), allocator, channel.newPromise());
+        assertNotNull(shared);
+        final ByteBuf body = shared.component(1);
+
+        encoderFactory.getPublishEncodingCache().invalidateAll();
+        assertEquals(1, body.refCnt());
+        assertArrayEquals(encode(publish(1, QoS.AT_MOST_ONCE, null)), ByteBufUtil.getBytes(shared));
+
+        shared.release();
+        assertEquals(0, body.refCnt());
+    }
+
+    @Test
+    public void encodeWithSharedBody_whenPayloadModified_thenNotEncoded() {
+        clientConnection.setProtocolVersion(ProtocolVersion.MQTTv5);
+        final PUBLISH publish = publish(1, QoS.AT_LEAST_ONCE, null);
+        final ByteBuf shared =
+                encoderFactory.encodeWithSharedBody(clientConnection, publish, allocator, channel.newPromise());
+        assertNotNull(shared);
+
+        final byte[] modifiedPayload = Arrays.copyOf(payload, payload.length);
+        modifiedPayload[0] = 1;
+        final PUBLISH modified = new PUBLISHFactory.Mqtt5Builder().fromPublish(publish)
+                .withPayload(modifiedPayload)
+                .build();
+        assertNull(encoderFactory.encodeWithSharedBody(clientConnection, modified, allocator, channel.newPromise()));
+
+        final PUBLISH copiedPayload = new PUBLISHFactory.Mqtt5Builder().fromPublish(publish)
+                .withPayload(Arrays.copyOf(payload, payload.length))
+                .build();
+        final ByteBuf sharedCopy =
+                encoderFactory.encodeWithSharedBody(clientConnection, copiedPayload, allocator, channel.newPromise());
+        assertNotNull(sharedCopy);
+
+        shared.release();
+        sharedCopy.release();
+    }
+
+    @Test
+    public void encodeWithSharedBody_whenPayloadSmall_thenNotEncoded() {
+        clientConnection.setProtocolVersion(ProtocolVersion.MQTTv5);
+        final PUBLISH publish = new PUBLISHFactory.Mqtt5Builder().fromPublish(publish(1, QoS.AT_LEAST_ONCE, null))
+                .withPayload(new byte[]{1, 2, 3})
+                .build();
+
+        assertFalse(encoderFactory.mayEncodeWithSharedBody(publish));
+        assertNull(encoderFactory.encodeWithSharedBody(clientConnection, publish, allocator, channel.newPromise()));
+    }
+
+    @Test
+    public void encodeWithSharedBody_whenDisabled_thenNotEncoded() {
+        InternalConfigurations.PUBLISH_ENCODING_CACHE_ENABLED.set(false);
+        clientConnection.setProtocolVersion(ProtocolVersion.MQTTv5);
+
+        assertFalse(encoderFactory.mayEncodeWithSharedBody(publish(1, QoS.AT_LEAST_ONCE, null)));
+        assertNull(encoderFactory.encodeWithSharedBody(clientConnection,
+                publish(1, QoS.AT_LEAST_ONCE, null), allocator, channel.newPromise()));
+        assertEquals(0, encoderFactory.getPublishEncodingCache().size());
+    }
+
+    @Test
+    public void encodeWithSharedBody_whenMaximumPacketSizeExceeded_thenNotEncoded() {
+        clientConnection.setProtocolVersion(ProtocolVersion.MQTTv5);
+        clientConnection.setMaxPacketSizeSend(1024L);
+
+        assertNull(encoderFactory.encodeWithSharedBody(clientConnection,
+                publish(1, QoS.AT_LEAST_ONCE, null), allocator, channel.newPromise()));
+        assertEquals(0, encoderFactory.getPublishEncodingCache().size());
+    }
+
+    private PUBLISH publish(
+            final int packetIdentifier, final QoS qos, final ImmutableIntArray subscriptionIdentifiers) {
+        return new PUBLISHFactory.Mqtt5Builder().withHivemqId("hivemqId")
+                .withPublishId(42)
+                .withTopic("topic/a")
+                .withQoS(qos)
+                .withOnwardQos(qos)
+                .withPayload(payload)
+                .withMessageExpiryInterval(60)
+                .withPacketIdentifier(packetIdentifier)
+                .withSubscriptionIdentifiers(subscriptionIdentifiers)
+                .build();
+    }
+
+    private byte[] encode(final PUBLISH publish) {
+        final MqttEncoder encoder = encoderFactory.getEncoder(publish, clientConnection);
+        assertNotNull(encoder);
+        //noinspection unchecked
+        final ByteBuf out = allocator.buffer(encoder.bufferSize(clientConnection, publish));
+        //noinspection unchecked
+        encoder.encode(clientConnection, publish, out);
+        final byte[] bytes = ByteBufUtil.getBytes(out);
+        out.release();
+        return bytes;
+    }
+}
@@ -15,7 +15,10 @@
  */
 package com.hivemq.diagnostic.data;
 
+import com.codahale.metrics.MetricRegistry;
 import com.hivemq.configuration.info.SystemInformationImpl;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.mqtt.topic.tree.LocalTopicTree;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -32,6 +35,8 @@ public class DiagnosticDataTest {
 
     NetworkInterfaceInformation networkInterfaceInformation;
 
+    TopicTreeInformation topicTreeInformation;
+
     private DiagnosticData data;
 
     @Before
@@ -41,11 +46,14 @@ public class DiagnosticDataTest {
         hiveMQInformation = new HiveMQInformation(new SystemInformationImpl());
         systemInformation = new HiveMQSystemInformation();
         networkInterfaceInformation = new NetworkInterfaceInformation();
+        topicTreeInformation =
+                new TopicTreeInformation(new LocalTopicTree(new MetricsHolder(new MetricRegistry())));
 
         data = new DiagnosticData(systemPropertyInformation,
                 hiveMQInformation,
                 systemInformation,
-                networkInterfaceInformation);
+                networkInterfaceInformation,
+                topicTreeInformation);
 
     }
 
@@ -58,6 +66,7 @@ public class DiagnosticDataTest {
         assertTrue(diagnosticData.contains("Java System Properties"));
         assertTrue(diagnosticData.contains("System Information"));
         assertTrue(diagnosticData.contains("Network Interfaces"));
+        assertTrue(diagnosticData.contains("Topic Tree"));
     }
 
     @Test
@@ -70,6 +79,7 @@ public class DiagnosticDataTest {
         assertTrue(diagnosticData.contains("os.name"));
         assertTrue(diagnosticData.contains("Available Processors"));
         assertTrue(diagnosticData.contains("MAC Address"));
+        assertTrue(diagnosticData.contains("Root wildcard subscriptions"));
     }
 
 }
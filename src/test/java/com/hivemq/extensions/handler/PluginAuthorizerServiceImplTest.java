@@ -16,6 +16,7 @@
 
 package com.hivemq.extensions.handler;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableMap;
 import com.hivemq.bootstrap.ClientConnection;
 import com.hivemq.bootstrap.ClientConnectionContext;
@@ -39,6 +40,7 @@ import com.hivemq.extensions.handler.testextensions.TestPubAuthorizerNextProvide
 import com.hivemq.extensions.handler.testextensions.TestTimeoutAuthorizerProvider;
 import com.hivemq.extensions.services.auth.Authorizers;
 import com.hivemq.logging.EventLog;
+import com.hivemq.metrics.MetricsHolder;
 import com.hivemq.mqtt.handler.disconnect.MqttServerDisconnector;
 import com.hivemq.mqtt.handler.disconnect.MqttServerDisconnectorImpl;
 import com.hivemq.mqtt.handler.publish.IncomingPublishService;
@@ -139,7 +141,8 @@ public class PluginAuthorizerServiceImplTest {
                 hiveMQExtensions,
                 mqttServerDisconnector,
                 incomingPublishService,
-                incomingSubscribeService);
+                incomingSubscribeService,
+                new MetricsHolder(new MetricRegistry()));
 
         eventsHandler = new CollectUserEventsHandler<>(AuthorizeWillResultEvent.class);
         channel.pipeline().addLast(eventsHandler);
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.metrics;
+
+import com.codahale.metrics.Timer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SampledTimerTest {
+
+    @Test
+    public void test_sample_every_operation() {
+        final Timer timer = new Timer();
+        final SampledTimer sampledTimer = new SampledTimer(timer, 1);
+
+        for (int i = 0; i < 10; i++) {
+            final long start = sampledTimer.start();
+            assertNotEquals(SampledTimer.NOT_SAMPLED, start);
+            sampledTimer.stop(start);
+        }
+
+        assertEquals(10, timer.getCount());
+    }
+
+    @Test
+    public void test_sampling_disabled() {
+        final Timer timer = new Timer();
+        final SampledTimer sampledTimer = new SampledTimer(timer, 0);
+
+        for (int i = 0; i < 10; i++) {
+            final long start = sampledTimer.start();
+            assertEquals(SampledTimer.NOT_SAMPLED, start);
+            sampledTimer.stop(start);
+        }
+
+        assertEquals(0, timer.getCount());
+    }
+
+    @Test
+    public void test_sample_part_of_operations() {
+        final Timer timer = new Timer();
+        final SampledTimer sampledTimer = new SampledTimer(timer, 10);
+
+        for (int i = 0; i < 10_000; i++) {
+            sampledTimer.stop(sampledTimer.start());
+        }
+
+        // 1000 expected, the bounds are far outside of the random deviation
+        final long count = timer.getCount();
+        assertTrue("count was " + count, count > 500 && count < 1500);
+    }
+}
@@ -19,7 +19,9 @@ import com.google.common.collect.ImmutableMap;
 import com.hivemq.migration.MigrationUnit;
 import com.hivemq.migration.meta.PersistenceType;
 import com.hivemq.migration.persistence.payload.PublishPayloadTypeMigration;
+import com.hivemq.migration.persistence.clientsession.ClientSessionTypeMigration;
 import com.hivemq.migration.persistence.queue.ClientQueuePayloadIDMigration;
+import com.hivemq.migration.persistence.queue.ClientQueueTypeMigration;
 import com.hivemq.migration.persistence.retained.RetainedMessagePayloadIDMigration;
 import com.hivemq.migration.persistence.retained.RetainedMessageTypeMigration;
 import org.junit.Before;
@@ -40,6 +42,10 @@ public class PersistenceMigratorTest {
     @Mock
     private RetainedMessageTypeMigration retainedMessageTypeMigration;
     @Mock
+    private ClientQueueTypeMigration clientQueueTypeMigration;
+    @Mock
+    private ClientSessionTypeMigration clientSessionTypeMigration;
+    @Mock
     private ClientQueuePayloadIDMigration clientQueuePayloadIDMigration;
     @Mock
     private RetainedMessagePayloadIDMigration retainedMessagePayloadIDMigration;
@@ -49,6 +55,8 @@ public class PersistenceMigratorTest {
         MockitoAnnotations.initMocks(this);
         persistenceMigrator = new PersistenceMigrator(() -> publishPayloadTypeMigration,
                 () -> retainedMessageTypeMigration,
+                () -> clientQueueTypeMigration,
+                () -> clientSessionTypeMigration,
                 () -> retainedMessagePayloadIDMigration,
                 () -> clientQueuePayloadIDMigration);
     }
@@ -105,4 +113,22 @@ public class PersistenceMigratorTest {
         verify(retainedMessageTypeMigration).migrateToType(PersistenceType.FILE);
 
     }
+
+    @Test
+    public void test_migrate_client_queue_to_native() {
+
+        persistenceMigrator.migratePersistenceTypes(ImmutableMap.of(MigrationUnit.FILE_PERSISTENCE_CLIENT_QUEUE,
+                PersistenceType.FILE_NATIVE));
+
+        verify(clientQueueTypeMigration).migrateToType(PersistenceType.FILE_NATIVE);
+    }
+
+    @Test
+    public void test_migrate_client_session_to_native() {
+
+        persistenceMigrator.migratePersistenceTypes(ImmutableMap.of(MigrationUnit.FILE_PERSISTENCE_CLIENT_SESSION,
+                PersistenceType.FILE_NATIVE));
+
+        verify(clientSessionTypeMigration).migrateToType(PersistenceType.FILE_NATIVE);
+    }
 }
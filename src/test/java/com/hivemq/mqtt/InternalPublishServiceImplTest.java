@@ -28,6 +28,7 @@ import com.hivemq.mqtt.topic.SubscriptionFlag;
 import com.hivemq.mqtt.topic.tree.LocalTopicTree;
 import com.hivemq.mqtt.topic.tree.TopicSubscribers;
 import com.hivemq.persistence.retained.RetainedMessagePersistence;
+import com.hivemq.persistence.util.CompletionCounter;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -40,7 +41,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static com.hivemq.mqtt.handler.publish.PublishReturnCode.DELIVERED;
 import static com.hivemq.mqtt.handler.publish.PublishReturnCode.FAILED;
 import static com.hivemq.mqtt.handler.publish.PublishReturnCode.NO_MATCHING_SUBSCRIBERS;
 import static org.junit.Assert.assertEquals;
@@ -51,9 +54,8 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.anyMap;
-import static org.mockito.Mockito.anySet;
 import static org.mockito.Mockito.atLeastOnce;
-import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -81,13 +83,6 @@ public class InternalPublishServiceImplTest {
 
         executorService = MoreExecutors.newDirectExecutorService();
 
-        when(publishDistributor.distributeToNonSharedSubscribers(anyMap(),
-                any(PUBLISH.class),
-                eq(executorService))).thenReturn(Futures.immediateFuture(null));
-        when(publishDistributor.distributeToSharedSubscribers(anySet(),
-                any(PUBLISH.class),
-                eq(executorService))).thenReturn(Futures.immediateFuture(null));
-
         publishService = new InternalPublishServiceImpl(retainedMessagePersistence, topicTree, publishDistributor);
     }
 
@@ -225,15 +220,63 @@ public class InternalPublishServiceImplTest {
 
         final PUBLISH publish = TestMessageUtil.createMqtt5Publish("topic");
 
-        when(publishDistributor.distributeToNonSharedSubscribers(anyMap(),
-                any(),
-                any())).thenReturn(Futures.immediateFailedFuture(TestException.INSTANCE));
+        doAnswer(invocation -> {
+            final CompletionCounter completion = invocation.getArgument(2);
+            completion.expect();
+            completion.fail(TestException.INSTANCE);
+            return null;
+        }).when(publishDistributor).distributeToNonSharedSubscribers(anyMap(), any(), any());
 
         final PublishReturnCode returnCode = publishService.publish(publish, executorService, "sub1").get();
 
         assertEquals(FAILED, returnCode);
     }
 
+    @Test(timeout = 20000)
+    public void test_congested_callback() throws ExecutionException, InterruptedException {
+
+        final SubscriberWithIdentifiers sub1 = new SubscriberWithIdentifiers("sub1", 1, (byte) 0, null);
+
+        when(topicTree.findTopicSubscribers("topic")).thenReturn(new TopicSubscribers(ImmutableSet.of(sub1),
+                ImmutableSet.of()));
+
+        doAnswer(invocation -> {
+            final CompletionCounter completion = invocation.getArgument(2);
+            completion.expect();
+            completion.congested();
+            completion.complete();
+            return null;
+        }).when(publishDistributor).distributeToNonSharedSubscribers(anyMap(), any(), any());
+
+        final AtomicBoolean congested = new AtomicBoolean();
+        final PublishReturnCode returnCode = publishService.publish(TestMessageUtil.createMqtt5Publish("topic"),
+                executorService,
+                "sender",
+                () -> congested.set(true)).get();
+
+        assertEquals(DELIVERED, returnCode);
+        assertTrue(congested.get());
+    }
+
+    @Test(timeout = 20000)
+    public void test_congested_callback_not_run_for_not_congested_queues()
+            throws ExecutionException, InterruptedException {
+
+        final SubscriberWithIdentifiers sub1 = new SubscriberWithIdentifiers("sub1", 1, (byte) 0, null);
+
+        when(topicTree.findTopicSubscribers("topic")).thenReturn(new TopicSubscribers(ImmutableSet.of(sub1),
+                ImmutableSet.of()));
+
+        final AtomicBoolean congested = new AtomicBoolean();
+        final PublishReturnCode returnCode = publishService.publish(TestMessageUtil.createMqtt5Publish("topic"),
+                executorService,
+                "sender",
+                () -> congested.set(true)).get();
+
+        assertEquals(DELIVERED, returnCode);
+        assertFalse(congested.get());
+    }
+
     @Test(timeout = 20000)
     public void test_shared_subs_different_groups() {
 
@@ -74,7 +74,6 @@ import com.hivemq.mqtt.message.subscribe.Topic;
 import com.hivemq.mqtt.services.PublishPollService;
 import com.hivemq.persistence.clientsession.ClientSessionPersistence;
 import com.hivemq.persistence.clientsession.ClientSessionSubscriptionPersistence;
-import com.hivemq.persistence.clientsession.SharedSubscriptionService;
 import com.hivemq.persistence.connection.ConnectionPersistence;
 import com.hivemq.persistence.connection.ConnectionPersistenceImpl;
 import com.hivemq.persistence.qos.IncomingMessageFlowPersistence;
@@ -1572,7 +1571,6 @@ public class ConnectHandlerTest {
                 mqttConnacker,
                 new TopicAliasLimiterImpl(),
                 mock(PublishPollService.class),
-                mock(SharedSubscriptionService.class),
                 internalAuthServiceImpl,
                 authorizers,
                 pluginAuthorizerService,
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.handler.publish;
+
+import com.hivemq.bootstrap.ClientConnectionContext;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.dropping.MessageDroppedService;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
+import com.hivemq.mqtt.message.publish.PUBLISH;
+import com.hivemq.mqtt.message.publish.PUBLISHFactory;
+import com.hivemq.mqtt.message.publish.PublishPayloadBuffer;
+import com.hivemq.persistence.payload.PublishPayloadPersistence;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import util.DummyClientConnection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@SuppressWarnings("NullabilityAnnotations")
+public class DropOutgoingPublishesHandlerTest {
+
+    private MessageDroppedService messageDroppedService;
+    private DropOutgoingPublishesHandler dropOutgoingPublishesHandler;
+    private EmbeddedChannel channel;
+    private ChannelHandlerContext ctx;
+
+    @Before
+    public void setUp() {
+        InternalConfigurations.NOT_WRITABLE_QUEUE_SIZE.set(0);
+        messageDroppedService = mock(MessageDroppedService.class);
+        dropOutgoingPublishesHandler =
+                new DropOutgoingPublishesHandler(mock(PublishPayloadPersistence.class), messageDroppedService);
+        channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter());
+        channel.attr(ClientConnectionContext.CHANNEL_ATTRIBUTE_NAME).set(new DummyClientConnection(channel, null));
+        ClientConnectionContext.of(channel).setClientId("client");
+        ctx = channel.pipeline().firstContext();
+
+        // the unflushed write exceeds the high watermark, so the channel is not writable
+        channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(1, 2));
+        channel.write(Unpooled.buffer().writeZero(16));
+        assertFalse(channel.isWritable());
+    }
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.NOT_WRITABLE_QUEUE_SIZE.set(1000);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void test_dropped_qos_0_publish_releases_payload() throws Exception {
+        final PublishPayloadBuffer payloadBuffer =
+                new PublishPayloadBuffer(Unpooled.directBuffer().writeBytes(new byte[100]));
+        final PUBLISH publish = builder().withQoS(QoS.AT_MOST_ONCE)
+                .withOnwardQos(QoS.AT_MOST_ONCE)
+                .withPayloadBuffer(payloadBuffer)
+                .build();
+        final ChannelPromise promise = channel.newPromise();
+
+        assertTrue(dropOutgoingPublishesHandler.checkChannelNotWritable(ctx, publish, promise));
+
+        assertTrue(promise.isSuccess());
+        assertEquals(0, payloadBuffer.refCnt());
+        verify(messageDroppedService).notWritable("client", "topic", 0);
+    }
+
+    @Test
+    public void test_qos_1_publish_is_not_dropped() throws Exception {
+        final PublishPayloadBuffer payloadBuffer =
+                new PublishPayloadBuffer(Unpooled.directBuffer().writeBytes(new byte[100]));
+        final PUBLISH publish = builder().withPayloadBuffer(payloadBuffer).build();
+        final ChannelPromise promise = channel.newPromise();
+
+        assertFalse(dropOutgoingPublishesHandler.checkChannelNotWritable(ctx, publish, promise));
+
+        assertFalse(promise.isDone());
+        assertEquals(1, payloadBuffer.refCnt());
+        payloadBuffer.release();
+    }
+
+    private static PUBLISHFactory.Mqtt5Builder builder() {
+        return new PUBLISHFactory.Mqtt5Builder().withHivemqId("hivemqId")
+                .withTopic("topic")
+                .withQoS(QoS.AT_LEAST_ONCE)
+                .withOnwardQos(QoS.AT_LEAST_ONCE)
+                .withUserProperties(Mqtt5UserProperties.NO_USER_PROPERTIES);
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.hivemq.mqtt.handler.publish;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.util.concurrent.Futures;
 import com.hivemq.bootstrap.ClientConnection;
 import com.hivemq.bootstrap.ClientConnectionContext;
@@ -30,6 +31,7 @@ import com.hivemq.extension.sdk.api.packets.publish.AckReasonCode;
 import com.hivemq.extensions.handler.tasks.PublishAuthorizerResult;
 import com.hivemq.extensions.packets.general.ModifiableDefaultPermissionsImpl;
 import com.hivemq.extensions.services.builder.TopicPermissionBuilderImpl;
+import com.hivemq.metrics.MetricsHolder;
 import com.hivemq.mqtt.handler.disconnect.MqttServerDisconnectorImpl;
 import com.hivemq.mqtt.message.ProtocolVersion;
 import com.hivemq.mqtt.message.QoS;
@@ -40,6 +42,7 @@ import com.hivemq.mqtt.message.reason.Mqtt5DisconnectReasonCode;
 import com.hivemq.mqtt.message.reason.Mqtt5PubAckReasonCode;
 import com.hivemq.mqtt.message.reason.Mqtt5PubRecReasonCode;
 import com.hivemq.mqtt.services.InternalPublishService;
+import com.hivemq.persistence.clientqueue.ClientQueuePressure;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.embedded.EmbeddedChannel;
@@ -57,9 +60,12 @@ import util.TestException;
 import util.TestMessageUtil;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties.NO_USER_PROPERTIES;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.eq;
@@ -77,6 +83,8 @@ public class IncomingPublishServiceTest {
     private InternalPublishService publishService;
     @Mock
     private MqttServerDisconnectorImpl mqttServerDisconnector;
+    @Mock
+    private ClientQueuePressure queuePressure;
 
     private MqttConfigurationService mqttConfigurationService;
     private RestrictionsConfigurationService restrictionsConfigurationService;
@@ -106,7 +114,9 @@ public class IncomingPublishServiceTest {
         incomingPublishService = new IncomingPublishService(publishService,
                 mqttConfigurationService,
                 restrictionsConfigurationService,
-                mqttServerDisconnector);
+                mqttServerDisconnector,
+                new MetricsHolder(new MetricRegistry()),
+                queuePressure);
 
         final CheckUserEventTriggeredOnSuper triggeredUserEvents = new CheckUserEventTriggeredOnSuper();
 
@@ -189,6 +199,68 @@ public class IncomingPublishServiceTest {
         verify(publishService).publish(any(PUBLISH.class), any(ExecutorService.class), anyString());
     }
 
+    @Test
+    public void test_publish_back_pressure_pauses_reading() {
+        when(queuePressure.isEnabled()).thenReturn(true);
+        when(queuePressure.isUnderPressure()).thenReturn(true);
+        when(publishService.publish(any(PUBLISH.class),
+                any(ExecutorService.class),
+                anyString(),
+                any(Runnable.class))).thenAnswer(invocation -> {
+            // the PUBLISH was added to a congested queue
+            ((Runnable) invocation.getArgument(3)).run();
+            return Futures.immediateFuture(PublishReturnCode.DELIVERED);
+        });
+
+        final PUBLISH publish = TestMessageUtil.createMqtt3Publish("testtopic", "1234".getBytes(), QoS.AT_MOST_ONCE);
+        incomingPublishService.processPublish(ctx, publish, null);
+        channel.runPendingTasks();
+
+        assertFalse(channel.config().isAutoRead());
+
+        // still under pressure
+        channel.advanceTimeBy(1, TimeUnit.SECONDS);
+        channel.runScheduledPendingTasks();
+        assertFalse(channel.config().isAutoRead());
+
+        when(queuePressure.isUnderPressure()).thenReturn(false);
+        channel.advanceTimeBy(1, TimeUnit.SECONDS);
+        channel.runScheduledPendingTasks();
+        assertTrue(channel.config().isAutoRead());
+    }
+
+    @Test
+    public void test_publish_back_pressure_not_congested_queues_keeps_reading() {
+        when(queuePressure.isEnabled()).thenReturn(true);
+        when(queuePressure.isUnderPressure()).thenReturn(true);
+        when(publishService.publish(any(PUBLISH.class),
+                any(ExecutorService.class),
+                anyString(),
+                any(Runnable.class))).thenReturn(Futures.immediateFuture(PublishReturnCode.DELIVERED));
+
+        final PUBLISH publish = TestMessageUtil.createMqtt3Publish("testtopic", "1234".getBytes(), QoS.AT_MOST_ONCE);
+        incomingPublishService.processPublish(ctx, publish, null);
+        channel.runPendingTasks();
+
+        assertTrue(channel.config().isAutoRead());
+    }
+
+    @Test
+    public void test_publish_back_pressure_no_subscribers() {
+        when(queuePressure.isEnabled()).thenReturn(true);
+        when(queuePressure.isUnderPressure()).thenReturn(true);
+        when(publishService.publish(any(PUBLISH.class),
+                any(ExecutorService.class),
+                anyString(),
+                any(Runnable.class))).thenReturn(Futures.immediateFuture(PublishReturnCode.NO_MATCHING_SUBSCRIBERS));
+
+        final PUBLISH publish = TestMessageUtil.createMqtt3Publish("testtopic", "1234".getBytes(), QoS.AT_MOST_ONCE);
+        incomingPublishService.processPublish(ctx, publish, null);
+        channel.runPendingTasks();
+
+        assertTrue(channel.config().isAutoRead());
+    }
+
     @Test
     public void test_publish_valid_qos1() throws InterruptedException {
 
@@ -29,20 +29,27 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.EventLoop;
 import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.EventExecutor;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -61,10 +68,12 @@ public class PublishFlushHandlerTest {
     private @NotNull ChannelHandlerContext channelHandlerContext;
     @Mock
     private @NotNull EventLoop eventLoop;
+    @Mock
+    private @NotNull EventExecutor executor;
 
     private final @NotNull MetricsHolder metricsHolder = new MetricsHolder(new MetricRegistry());
 
-    private @NotNull PublishFlushHandler publishFlushHandler = new PublishFlushHandler(metricsHolder);
+    private @NotNull PublishFlushHandler publishFlushHandler = new PublishFlushHandler(metricsHolder, "listener");
 
     @Before
     public void setUp() {
@@ -77,6 +86,14 @@ public class PublishFlushHandlerTest {
             return null;
         }).when(eventLoop).execute(any(Runnable.class));
         when(channelHandlerContext.write(any())).thenReturn(mock(ChannelFuture.class));
+        when(channelHandlerContext.executor()).thenReturn(executor);
+    }
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.COUNT_OF_PUBLISHES_WRITTEN_TO_CHANNEL_TO_TRIGGER_FLUSH.set(128);
+        InternalConfigurations.PUBLISH_FLUSH_THRESHOLD_BYTES.set(64 * 1024);
+        InternalConfigurations.PUBLISH_FLUSH_MAX_DELAY_MICROS.set(0);
     }
 
     @Test
@@ -127,7 +144,7 @@ public class PublishFlushHandlerTest {
         when(channel.isWritable()).thenReturn(true);
         when(channel.isActive()).thenReturn(true);
         InternalConfigurations.COUNT_OF_PUBLISHES_WRITTEN_TO_CHANNEL_TO_TRIGGER_FLUSH.set(1);
-        publishFlushHandler = new PublishFlushHandler(metricsHolder);
+        publishFlushHandler = new PublishFlushHandler(metricsHolder, "listener");
         publishFlushHandler.handlerAdded(channelHandlerContext);
         final PUBLISH publish = new PUBLISHFactory.Mqtt3Builder().withTopic("topic")
                 .withHivemqId("hivemqId")
@@ -163,5 +180,69 @@ public class PublishFlushHandlerTest {
         assertEquals(PublishStatus.NOT_CONNECTED, publishWithFuture2.getFuture().get());
     }
 
+    @Test
+    public void whenByteThresholdIsReached_thenFlushIsTriggered() {
+        when(channel.isWritable()).thenReturn(true);
+        when(channel.isActive()).thenReturn(true);
+        InternalConfigurations.PUBLISH_FLUSH_THRESHOLD_BYTES.set(1024);
+        publishFlushHandler = new PublishFlushHandler(metricsHolder, "listener");
+        publishFlushHandler.handlerAdded(channelHandlerContext);
+
+        publishFlushHandler.sendPublishes(List.of(createPublish(1000), createPublish(1000), createPublish(1000)));
+
+        verify(channelHandlerContext, times(3)).write(any());
+        // one flush after the second PUBLISH exceeded the threshold and one after the queue was drained
+        verify(channelHandlerContext, times(2)).flush();
+        assertEquals(2, metricsHolder.getPublishFlushMetrics("listener").getFlushSize().getCount());
+        assertEquals(2, metricsHolder.getPublishFlushMetrics("listener").getFlushLatency().getCount());
+    }
+
+    @Test
+    public void whenMaxDelayIsSet_thenFlushIsDelayed() {
+        when(channel.isWritable()).thenReturn(true);
+        when(channel.isActive()).thenReturn(true);
+        InternalConfigurations.PUBLISH_FLUSH_MAX_DELAY_MICROS.set(1000);
+        publishFlushHandler = new PublishFlushHandler(metricsHolder, "listener");
+        publishFlushHandler.handlerAdded(channelHandlerContext);
+
+        publishFlushHandler.sendPublishes(List.of(createPublish(100)));
+        publishFlushHandler.sendPublishes(List.of(createPublish(100)));
+
+        final ArgumentCaptor<Runnable> flushCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).schedule(flushCaptor.capture(), anyLong(), eq(TimeUnit.NANOSECONDS));
+        verify(channelHandlerContext, times(2)).write(any());
+        verify(channelHandlerContext, never()).flush();
+
+        flushCaptor.getValue().run();
+        verify(channelHandlerContext).flush();
+        assertEquals(1, metricsHolder.getPublishFlushMetrics("listener").getFlushSize().getCount());
+    }
 
+    @Test
+    public void whenChannelBecomesNotWritable_thenDelayedWritesAreFlushed() {
+        when(channel.isWritable()).thenReturn(true);
+        when(channel.isActive()).thenReturn(true);
+        InternalConfigurations.PUBLISH_FLUSH_MAX_DELAY_MICROS.set(1000);
+        publishFlushHandler = new PublishFlushHandler(metricsHolder, "listener");
+        publishFlushHandler.handlerAdded(channelHandlerContext);
+
+        publishFlushHandler.sendPublishes(List.of(createPublish(100)));
+        verify(channelHandlerContext, never()).flush();
+
+        when(channel.isWritable()).thenReturn(false);
+        publishFlushHandler.channelWritabilityChanged(channelHandlerContext);
+
+        verify(channelHandlerContext).flush();
+        assertEquals(1, metricsHolder.getChannelNotWritableCounter().getCount());
+    }
+
+    private static @NotNull PublishWithFuture createPublish(final int payloadSize) {
+        final PUBLISH publish = new PUBLISHFactory.Mqtt3Builder().withTopic("topic")
+                .withHivemqId("hivemqId")
+                .withQoS(QoS.AT_LEAST_ONCE)
+                .withOnwardQos(QoS.AT_LEAST_ONCE)
+                .withPayload(new byte[payloadSize])
+                .build();
+        return new PublishWithFuture(publish, SettableFuture.create(), false);
+    }
 }
@@ -27,7 +27,6 @@ import com.hivemq.mqtt.message.reason.Mqtt5UnsubAckReasonCode;
 import com.hivemq.mqtt.message.unsuback.UNSUBACK;
 import com.hivemq.mqtt.message.unsubscribe.UNSUBSCRIBE;
 import com.hivemq.persistence.clientsession.ClientSessionSubscriptionPersistence;
-import com.hivemq.persistence.clientsession.SharedSubscriptionService;
 import io.netty.channel.embedded.EmbeddedChannel;
 import org.junit.Before;
 import org.junit.Test;
@@ -53,9 +52,6 @@ public class UnsubscribeHandlerTest {
     @Mock
     private @NotNull ClientSessionSubscriptionPersistence clientSessionSubscriptionPersistence;
 
-    @Mock
-    private @NotNull SharedSubscriptionService sharedSubscriptionService;
-
     private @NotNull UnsubscribeHandler unsubscribeHandler;
     private @NotNull EmbeddedChannel channel;
     private @NotNull ClientConnection clientConnection;
@@ -63,7 +59,7 @@ public class UnsubscribeHandlerTest {
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
-        unsubscribeHandler = new UnsubscribeHandler(clientSessionSubscriptionPersistence, sharedSubscriptionService);
+        unsubscribeHandler = new UnsubscribeHandler(clientSessionSubscriptionPersistence);
         clientConnection = new DummyClientConnection(channel, null);
         channel = new EmbeddedChannel(unsubscribeHandler);
         channel.attr(ClientConnectionContext.CHANNEL_ATTRIBUTE_NAME).set(clientConnection);
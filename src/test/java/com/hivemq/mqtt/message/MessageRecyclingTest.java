@@ -0,0 +1,101 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.message;
+
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
+import com.hivemq.mqtt.message.mqtt5.MqttUserProperty;
+import com.hivemq.mqtt.message.puback.PUBACK;
+import com.hivemq.mqtt.message.pubrel.PUBREL;
+import com.hivemq.mqtt.message.reason.Mqtt5PubAckReasonCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MessageRecyclingTest {
+
+    @Before
+    public void setUp() {
+        InternalConfigurations.MESSAGE_RECYCLING_ENABLED.set(true);
+        InternalConfigurations.MESSAGE_RECYCLING_LEAK_DETECTION_ENABLED.set(true);
+        MessageRecycling.resetLeakDetection();
+    }
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.MESSAGE_RECYCLING_ENABLED.set(false);
+        InternalConfigurations.MESSAGE_RECYCLING_LEAK_DETECTION_ENABLED.set(false);
+        MessageRecycling.resetLeakDetection();
+    }
+
+    @Test
+    public void test_new_instance_recycled() {
+        final PUBACK puback = PUBACK.newInstance(1);
+        assertEquals(1, puback.getPacketIdentifier());
+        assertEquals(Mqtt5PubAckReasonCode.SUCCESS, puback.getReasonCode());
+        puback.setUserProperties(Mqtt5UserProperties.of(new MqttUserProperty("name", "value")));
+        puback.setEncodedLength(10);
+        assertEquals(1, MessageRecycling.getOutstandingCount());
+
+        puback.recycle();
+        assertEquals(0, MessageRecycling.getOutstandingCount());
+
+        final PUBACK recycled = PUBACK.newInstance(2);
+        assertEquals(2, recycled.getPacketIdentifier());
+        assertEquals(Mqtt5UserProperties.NO_USER_PROPERTIES, recycled.getUserProperties());
+        assertEquals(-1, recycled.getEncodedLength());
+        recycled.recycle();
+        MessageRecycling.assertNoLeaks();
+    }
+
+    @Test
+    public void test_pubrel_expiry_reset() {
+        final PUBREL pubrel = PUBREL.newInstance(1);
+        pubrel.setPublishTimestamp(100L);
+        pubrel.setMessageExpiryInterval(10L);
+        pubrel.recycle();
+
+        final PUBREL recycled = PUBREL.newInstance(2);
+        assertNull(recycled.getPublishTimestamp());
+        assertNull(recycled.getMessageExpiryInterval());
+        recycled.recycle();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_leak_detected() {
+        PUBACK.newInstance(1);
+        MessageRecycling.assertNoLeaks();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_released_twice() {
+        final PUBACK puback = PUBACK.newInstance(1);
+        puback.recycle();
+        puback.recycle();
+    }
+
+    @Test
+    public void test_allocated_message_not_recycled() {
+        InternalConfigurations.MESSAGE_RECYCLING_ENABLED.set(false);
+        final PUBACK puback = PUBACK.newInstance(1);
+        puback.recycle();
+        puback.recycle();
+        MessageRecycling.assertNoLeaks();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.message.publish;
+
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PublishPayloadBufferTest {
+
+    private static final byte[] PAYLOAD = "payload".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void test_slice_released_with_last_reference() {
+        final ByteBuf slice = Unpooled.directBuffer().writeBytes(PAYLOAD);
+        final PublishPayloadBuffer payloadBuffer = new PublishPayloadBuffer(slice);
+        assertEquals(PAYLOAD.length, payloadBuffer.length());
+
+        payloadBuffer.retain();
+        payloadBuffer.release();
+        assertEquals(1, slice.refCnt());
+
+        payloadBuffer.release();
+        assertEquals(0, slice.refCnt());
+        assertNull(payloadBuffer.retainedSlice());
+    }
+
+    @Test
+    public void test_retained_slice_keeps_slice_alive() {
+        final ByteBuf slice = Unpooled.directBuffer().writeBytes(PAYLOAD);
+        final PublishPayloadBuffer payloadBuffer = new PublishPayloadBuffer(slice);
+
+        final ByteBuf retainedSlice = payloadBuffer.retainedSlice();
+        payloadBuffer.release();
+        assertEquals(1, slice.refCnt());
+        assertEquals(PAYLOAD.length, retainedSlice.readableBytes());
+
+        retainedSlice.release();
+        assertEquals(0, slice.refCnt());
+    }
+
+    @Test
+    public void test_detach_releases_inbound_buffer() {
+        final ByteBuf inbound = Unpooled.directBuffer().writeBytes(PAYLOAD);
+        final PublishPayloadBuffer payloadBuffer = new PublishPayloadBuffer(inbound.retainedSlice());
+        inbound.release();
+
+        final ByteBuf retainedSlice = payloadBuffer.retainedSlice();
+        payloadBuffer.detach();
+        assertEquals(1, inbound.refCnt());
+        retainedSlice.release();
+        assertEquals(0, inbound.refCnt());
+
+        assertEquals(PAYLOAD.length, payloadBuffer.length());
+        assertArrayEquals(PAYLOAD, payloadBuffer.toByteArray());
+        payloadBuffer.release();
+        assertNull(payloadBuffer.retainedSlice());
+    }
+
+    @Test
+    public void test_to_byte_array() {
+        final PublishPayloadBuffer payloadBuffer =
+                new PublishPayloadBuffer(Unpooled.directBuffer().writeBytes(PAYLOAD));
+
+        assertArrayEquals(PAYLOAD, payloadBuffer.toByteArray());
+        assertEquals(1, payloadBuffer.refCnt());
+        payloadBuffer.release();
+    }
+
+    @Test
+    public void test_publish_materializes_payload() {
+        final PublishPayloadBuffer payloadBuffer =
+                new PublishPayloadBuffer(Unpooled.directBuffer().writeBytes(PAYLOAD));
+        final PUBLISH publish = builder().withPayloadBuffer(payloadBuffer).build();
+
+        assertSame(payloadBuffer, publish.getPayloadBuffer());
+        assertEquals(PAYLOAD.length, publish.getPayloadLength());
+        assertArrayEquals(PAYLOAD, publish.getPayload());
+
+        publish.retainPayload();
+        assertEquals(2, payloadBuffer.refCnt());
+        publish.releasePayload();
+        publish.releasePayload();
+        assertEquals(0, payloadBuffer.refCnt());
+        // The materialized payload stays readable
+        assertArrayEquals(PAYLOAD, publish.getPayload());
+    }
+
+    @Test
+    public void test_builder_from_publish_shares_payload_buffer() {
+        final PublishPayloadBuffer payloadBuffer =
+                new PublishPayloadBuffer(Unpooled.directBuffer().writeBytes(PAYLOAD));
+        final PUBLISH publish = builder().withPayloadBuffer(payloadBuffer).build();
+
+        final PUBLISH copy = new PUBLISHFactory.Mqtt5Builder().fromPublish(publish).withQoS(QoS.AT_MOST_ONCE).build();
+        assertSame(payloadBuffer, copy.getPayloadBuffer());
+        assertEquals(PAYLOAD.length, copy.getPayloadLength());
+
+        final PUBLISH replaced =
+                new PUBLISHFactory.Mqtt5Builder().fromPublish(publish).withPayload(new byte[3]).build();
+        assertNull(replaced.getPayloadBuffer());
+        assertEquals(3, replaced.getPayloadLength());
+        payloadBuffer.release();
+    }
+
+    private static PUBLISHFactory.Mqtt5Builder builder() {
+        return new PUBLISHFactory.Mqtt5Builder().withHivemqId("hivemqId")
+                .withTopic("topic")
+                .withQoS(QoS.AT_LEAST_ONCE)
+                .withOnwardQos(QoS.AT_LEAST_ONCE)
+                .withUserProperties(Mqtt5UserProperties.NO_USER_PROPERTIES);
+    }
+}
@@ -15,11 +15,16 @@
  */
 package com.hivemq.mqtt.services;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.primitives.ImmutableIntArray;
 import com.google.common.util.concurrent.Futures;
-import com.google.common.util.concurrent.MoreExecutors;
+import com.hivemq.bootstrap.ClientConnection;
+import com.hivemq.bootstrap.ClientState;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.configuration.service.MqttConfigurationService;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.mqtt.handler.publish.PublishFlushHandler;
 import com.hivemq.mqtt.handler.publish.PublishStatus;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.publish.PUBLISH;
@@ -29,7 +34,10 @@ import com.hivemq.persistence.SingleWriterService;
 import com.hivemq.persistence.clientqueue.ClientQueuePersistence;
 import com.hivemq.persistence.clientsession.ClientSession;
 import com.hivemq.persistence.clientsession.ClientSessionPersistence;
+import com.hivemq.persistence.connection.ConnectionPersistence;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
+import com.hivemq.persistence.util.CompletionCounter;
+import io.netty.channel.Channel;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -45,8 +53,12 @@ import java.util.concurrent.ExecutionException;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -65,6 +77,8 @@ public class PublishDistributorImplTest {
     private @NotNull ClientSessionPersistence clientSessionPersistence;
     @Mock
     private @NotNull MqttConfigurationService mqttConfigurationService;
+    @Mock
+    private @NotNull ConnectionPersistence connectionPersistence;
 
     private @NotNull PublishDistributorImpl publishDistributor;
     private @NotNull SingleWriterService singleWriterService;
@@ -77,7 +91,9 @@ public class PublishDistributorImplTest {
                 clientQueuePersistence,
                 clientSessionPersistence,
                 singleWriterService,
-                mqttConfigurationService);
+                mqttConfigurationService,
+                connectionPersistence,
+                new MetricsHolder(new MetricRegistry()));
     }
 
     @After
@@ -181,51 +197,189 @@ public class PublishDistributorImplTest {
     public void test_distribute_to_non_shared() {
         when(clientSessionPersistence.getSession("client1", false)).thenReturn(new ClientSession(true, 1000L));
         when(clientSessionPersistence.getSession("client2", false)).thenReturn(new ClientSession(true, 1000L));
-        when(clientQueuePersistence.add(eq("client1"),
-                eq(false),
-                any(PUBLISH.class),
-                anyBoolean(),
-                anyLong())).thenReturn(Futures.immediateFuture(null));
-        when(clientQueuePersistence.add(eq("client2"),
-                eq(false),
-                any(PUBLISH.class),
-                anyBoolean(),
-                anyLong())).thenReturn(Futures.immediateFuture(null));
 
         final Map<String, SubscriberWithIdentifiers> subscribers = Map.of("client1",
                 new SubscriberWithIdentifiers("client1", 1, (byte) 0, null),
                 "client2",
                 new SubscriberWithIdentifiers("client2", 1, (byte) 0, null));
 
+        final CompletionCounter completion = new CompletionCounter(failure -> {});
         publishDistributor.distributeToNonSharedSubscribers(subscribers,
                 TestMessageUtil.createMqtt5Publish(),
-                MoreExecutors.newDirectExecutorService());
+                completion);
+
+        verify(clientQueuePersistence).add(eq("client1"),
+                eq(false),
+                any(PUBLISH.class),
+                anyBoolean(),
+                anyLong(),
+                eq(completion));
+        verify(clientQueuePersistence).add(eq("client2"),
+                eq(false),
+                any(PUBLISH.class),
+                anyBoolean(),
+                anyLong(),
+                eq(completion));
+    }
+
+    @Test(timeout = 5000)
+    public void test_distribute_to_non_shared_in_batches() {
+        final int batchMinSubscribers = InternalConfigurations.PUBLISH_DISTRIBUTION_BATCH_MIN_SUBSCRIBERS.get();
+        InternalConfigurations.PUBLISH_DISTRIBUTION_BATCH_MIN_SUBSCRIBERS.set(2);
+        try {
+            when(clientSessionPersistence.getSession("client1", false)).thenReturn(new ClientSession(true, 1000L));
+            when(clientSessionPersistence.getSession("client2", false)).thenReturn(new ClientSession(false, 1000L));
+            when(clientSessionPersistence.getSession("client3", false)).thenReturn(null);
+            when(mqttConfigurationService.maxQueuedMessages()).thenReturn(1000L);
+
+            final Map<String, SubscriberWithIdentifiers> subscribers = Map.of("client1",
+                    new SubscriberWithIdentifiers("client1", 1, (byte) 0, null),
+                    "client2",
+                    new SubscriberWithIdentifiers("client2", 0, (byte) 0, null),
+                    "client3",
+                    new SubscriberWithIdentifiers("client3", 1, (byte) 0, null));
+
+            final CompletionCounter completion = new CompletionCounter(failure -> {});
+            publishDistributor.distributeToNonSharedSubscribers(subscribers,
+                    TestMessageUtil.createMqtt5Publish(),
+                    completion);
+
+            // The offline QoS 0 subscriber and the subscriber without a session are skipped
+            final int bucket = singleWriterService.getQueuedMessagesQueue().getBucket("client1");
+            verify(clientQueuePersistence).addToBucket(eq(bucket),
+                    argThat(entries -> entries.size() == 1 && entries.get(0).getQueueId().equals("client1")),
+                    eq(completion));
+            verify(clientQueuePersistence, never()).add(any(),
+                    anyBoolean(),
+                    any(PUBLISH.class),
+                    anyBoolean(),
+                    anyLong(),
+                    any(CompletionCounter.class));
+        } finally {
+            InternalConfigurations.PUBLISH_DISTRIBUTION_BATCH_MIN_SUBSCRIBERS.set(batchMinSubscribers);
+        }
+    }
 
-        verify(clientQueuePersistence).add(eq("client1"), eq(false), any(PUBLISH.class), anyBoolean(), anyLong());
-        verify(clientQueuePersistence).add(eq("client2"), eq(false), any(PUBLISH.class), anyBoolean(), anyLong());
+    @Test(timeout = 5000)
+    public void test_qos_0_direct_write() {
+        InternalConfigurations.QOS_0_DIRECT_WRITE_ENABLED.set(true);
+        try {
+            when(clientSessionPersistence.getSession("client", false)).thenReturn(new ClientSession(true, 1000L));
+            when(clientQueuePersistence.isQueueEmpty("client")).thenReturn(true);
+            final PublishFlushHandler publishFlushHandler = mockConnection("client", true);
+
+            publishDistributor.sendMessageToSubscriber(createPublish(QoS.AT_LEAST_ONCE),
+                    "client",
+                    0,
+                    false,
+                    false,
+                    ImmutableIntArray.of(1));
+
+            verify(publishFlushHandler).sendPublishes(argThat(publishes -> publishes.size() == 1 &&
+                    publishes.get(0).getQoS() == QoS.AT_MOST_ONCE));
+            verify(clientQueuePersistence, never()).add(any(),
+                    anyBoolean(),
+                    any(PUBLISH.class),
+                    anyBoolean(),
+                    anyLong());
+        } finally {
+            InternalConfigurations.QOS_0_DIRECT_WRITE_ENABLED.set(false);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void test_qos_0_direct_write_not_writable() throws ExecutionException, InterruptedException {
+        InternalConfigurations.QOS_0_DIRECT_WRITE_ENABLED.set(true);
+        try {
+            when(clientSessionPersistence.getSession("client", false)).thenReturn(new ClientSession(true, 1000L));
+            when(clientQueuePersistence.add(eq("client"),
+                    eq(false),
+                    any(PUBLISH.class),
+                    anyBoolean(),
+                    anyLong())).thenReturn(Futures.immediateFuture(null));
+            when(clientQueuePersistence.isQueueEmpty("client")).thenReturn(true);
+            final PublishFlushHandler publishFlushHandler = mockConnection("client", false);
+
+            final PublishStatus status = publishDistributor.sendMessageToSubscriber(createPublish(QoS.AT_LEAST_ONCE),
+                    "client",
+                    0,
+                    false,
+                    false,
+                    ImmutableIntArray.of(1)).get();
+
+            // Falls back to the queue under back-pressure
+            assertEquals(PublishStatus.DELIVERED, status);
+            verify(publishFlushHandler, never()).sendPublishes(anyList());
+            verify(clientQueuePersistence).add(eq("client"), eq(false), any(PUBLISH.class), anyBoolean(), anyLong());
+        } finally {
+            InternalConfigurations.QOS_0_DIRECT_WRITE_ENABLED.set(false);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void test_qos_0_direct_write_queue_not_empty() throws ExecutionException, InterruptedException {
+        InternalConfigurations.QOS_0_DIRECT_WRITE_ENABLED.set(true);
+        try {
+            when(clientSessionPersistence.getSession("client", false)).thenReturn(new ClientSession(true, 1000L));
+            when(clientQueuePersistence.add(eq("client"),
+                    eq(false),
+                    any(PUBLISH.class),
+                    anyBoolean(),
+                    anyLong())).thenReturn(Futures.immediateFuture(null));
+            when(clientQueuePersistence.isQueueEmpty("client")).thenReturn(false);
+            final PublishFlushHandler publishFlushHandler = mockConnection("client", true);
+
+            final PublishStatus status = publishDistributor.sendMessageToSubscriber(createPublish(QoS.AT_LEAST_ONCE),
+                    "client",
+                    0,
+                    false,
+                    false,
+                    ImmutableIntArray.of(1)).get();
+
+            // Queued messages that were not polled yet must not be overtaken
+            assertEquals(PublishStatus.DELIVERED, status);
+            verify(publishFlushHandler, never()).sendPublishes(anyList());
+            verify(clientQueuePersistence).add(eq("client"), eq(false), any(PUBLISH.class), anyBoolean(), anyLong());
+        } finally {
+            InternalConfigurations.QOS_0_DIRECT_WRITE_ENABLED.set(false);
+        }
     }
 
     @Test
     public void test_distribute_to_shared_subs() {
-        when(clientQueuePersistence.add(eq("name/topic1"),
+        final Set<String> subscribers = Set.of("name/topic1", "name/topic2");
+
+        final CompletionCounter completion = new CompletionCounter(failure -> {});
+        publishDistributor.distributeToSharedSubscribers(subscribers,
+                TestMessageUtil.createMqtt5Publish("topic"),
+                completion);
+
+        verify(clientQueuePersistence).add(eq("name/topic1"),
                 eq(true),
                 any(PUBLISH.class),
                 anyBoolean(),
-                anyLong())).thenReturn(Futures.immediateFuture(null));
-        when(clientQueuePersistence.add(eq("name/topic2"),
+                anyLong(),
+                eq(completion));
+        verify(clientQueuePersistence).add(eq("name/topic2"),
                 eq(true),
                 any(PUBLISH.class),
                 anyBoolean(),
-                anyLong())).thenReturn(Futures.immediateFuture(null));
-
-        final Set<String> subscribers = Set.of("name/topic1", "name/topic2");
-
-        publishDistributor.distributeToSharedSubscribers(subscribers,
-                TestMessageUtil.createMqtt5Publish("topic"),
-                MoreExecutors.newDirectExecutorService());
+                anyLong(),
+                eq(completion));
+    }
 
-        verify(clientQueuePersistence).add(eq("name/topic1"), eq(true), any(PUBLISH.class), anyBoolean(), anyLong());
-        verify(clientQueuePersistence).add(eq("name/topic2"), eq(true), any(PUBLISH.class), anyBoolean(), anyLong());
+    private @NotNull PublishFlushHandler mockConnection(final @NotNull String client, final boolean writable) {
+        final Channel channel = mock(Channel.class);
+        when(channel.isActive()).thenReturn(true);
+        when(channel.isWritable()).thenReturn(writable);
+        final PublishFlushHandler publishFlushHandler = mock(PublishFlushHandler.class);
+        final ClientConnection clientConnection = mock(ClientConnection.class);
+        when(clientConnection.getClientState()).thenReturn(ClientState.AUTHENTICATED);
+        when(clientConnection.isInFlightMessagesSent()).thenReturn(true);
+        when(clientConnection.getChannel()).thenReturn(channel);
+        when(clientConnection.getPublishFlushHandler()).thenReturn(publishFlushHandler);
+        when(connectionPersistence.get(client)).thenReturn(clientConnection);
+        return publishFlushHandler;
     }
 
     private PUBLISH createPublish(final @NotNull QoS qos) {
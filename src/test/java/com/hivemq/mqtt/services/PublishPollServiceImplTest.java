@@ -15,6 +15,7 @@
  */
 package com.hivemq.mqtt.services;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.primitives.ImmutableIntArray;
@@ -24,6 +25,7 @@ import com.hivemq.bootstrap.ClientConnectionContext;
 import com.hivemq.bootstrap.ClientState;
 import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.MetricsHolder;
 import com.hivemq.mqtt.handler.publish.PublishFlowHandler;
 import com.hivemq.mqtt.handler.publish.PublishFlushHandler;
 import com.hivemq.mqtt.handler.publish.PublishStatus;
@@ -39,7 +41,6 @@ import com.hivemq.mqtt.topic.SubscriberWithQoS;
 import com.hivemq.mqtt.topic.SubscriptionFlag;
 import com.hivemq.persistence.SingleWriterService;
 import com.hivemq.persistence.clientqueue.ClientQueuePersistence;
-import com.hivemq.persistence.clientsession.ClientSessionSubscriptionPersistence;
 import com.hivemq.persistence.clientsession.SharedSubscriptionService;
 import com.hivemq.persistence.connection.ConnectionPersistence;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
@@ -97,8 +98,6 @@ public class PublishPollServiceImplTest {
         final MessageDroppedService messageDroppedService = mock(MessageDroppedService.class);
         sharedSubscriptionService = mock(SharedSubscriptionService.class);
         publishFlushHandler = mock(PublishFlushHandler.class);
-        final ClientSessionSubscriptionPersistence clientSessionSubscriptionPersistence =
-                mock(ClientSessionSubscriptionPersistence.class);
 
         when(channel.pipeline()).thenReturn(pipeline);
 
@@ -125,7 +124,7 @@ public class PublishPollServiceImplTest {
                 messageDroppedService,
                 sharedSubscriptionService,
                 singleWriterService,
-                clientSessionSubscriptionPersistence);
+                new MetricsHolder(new MetricRegistry()));
     }
 
     @After
@@ -122,13 +122,12 @@ public class PermissionTopicMatcherUtilsTest {
         final boolean endsWithWildCard = StringUtils.endsWith(stripedPermissionTopic, "/#");
 
         final String stripedActualTopic = StringUtils.stripEnd(actualTopic, "/");
-        final String[] splitActualTopic = StringUtils.splitPreserveAllTokens(stripedActualTopic, "/");
         return PermissionTopicMatcherUtils.matches(stripedPermissionTopic,
                 splitPermissionTopic,
                 nonWildCard,
                 endsWithWildCard,
                 rootWildCard,
                 stripedActualTopic,
-                splitActualTopic);
+                new TopicTokenizer().tokenize(stripedActualTopic));
     }
 }
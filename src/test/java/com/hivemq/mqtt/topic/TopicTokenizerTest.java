@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TopicTokenizerTest {
+
+    @Test
+    public void tokenize_whenLevelsAreEmpty_thenLevelsArePreserved() {
+        final TopicTokenizer tokenizer = new TopicTokenizer().tokenize("/a//b/");
+
+        assertEquals(5, tokenizer.count());
+        assertEquals("", tokenizer.segment(0));
+        assertEquals("a", tokenizer.segment(1));
+        assertEquals("", tokenizer.segment(2));
+        assertEquals("b", tokenizer.segment(3));
+        assertEquals("", tokenizer.segment(4));
+    }
+
+    @Test
+    public void tokenize_whenTopicIsEmpty_thenNoLevels() {
+        assertEquals(0, new TopicTokenizer().tokenize("").count());
+    }
+
+    @Test
+    public void tokenize_whenManyLevels_thenAllLevelsAreFound() {
+        final StringBuilder topic = new StringBuilder("0");
+        for (int i = 1; i < 100; i++) {
+            topic.append('/').append(i);
+        }
+        final TopicTokenizer tokenizer = new TopicTokenizer().tokenize(topic.toString());
+
+        assertEquals(100, tokenizer.count());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(tokenizer.segmentEquals(i, String.valueOf(i)));
+        }
+    }
+
+    @Test
+    public void tokenize_whenReused_thenPreviousLevelsAreDiscarded() {
+        final TopicTokenizer tokenizer = new TopicTokenizer();
+        assertEquals("b", tokenizer.tokenize("a/b/c").segment(1));
+
+        tokenizer.tokenize("x/y");
+        assertEquals(2, tokenizer.count());
+        assertEquals("y", tokenizer.segment(1));
+        assertFalse(tokenizer.segmentEquals(1, "b"));
+    }
+
+    @Test
+    public void segment_whenCalledTwice_thenSameInstance() {
+        final TopicTokenizer tokenizer = new TopicTokenizer().tokenize("a/b");
+        assertSame(tokenizer.segment(1), tokenizer.segment(1));
+        assertNotSame(tokenizer.getTopic(), tokenizer.segment(0));
+        assertSame("single", new TopicTokenizer().tokenize("single").segment(0));
+    }
+
+    @Test
+    public void segmentEquals_whenWildcards_thenDetected() {
+        final TopicTokenizer tokenizer = new TopicTokenizer().tokenize("a/+/#/++");
+
+        assertTrue(tokenizer.segmentEquals(0, "a"));
+        assertFalse(tokenizer.segmentEquals(0, "ab"));
+        assertTrue(tokenizer.isSingleLevelWildcard(1));
+        assertTrue(tokenizer.isMultiLevelWildcard(2));
+        assertFalse(tokenizer.isSingleLevelWildcard(3));
+    }
+
+    @Test
+    public void matchedBy_whenFilterSegments_thenSameRulesAsMatches() {
+        final TopicTokenizer tokenizer = new TopicTokenizer().tokenize("a/b/c");
+
+        assertTrue(tokenizer.matchedBy(new String[]{"a", "b", "c"}));
+        assertTrue(tokenizer.matchedBy(new String[]{"a", "+", "c"}));
+        assertTrue(tokenizer.matchedBy(new String[]{"a", "#"}));
+        assertTrue(tokenizer.matchedBy(new String[]{"a", "b", "c", "#"}));
+        assertFalse(tokenizer.matchedBy(new String[]{"a", "b"}));
+        assertFalse(tokenizer.matchedBy(new String[]{"a", "b", "c", "d"}));
+        assertFalse(tokenizer.matchedBy(new String[]{"a", "+"}));
+    }
+
+    @Test
+    public void threadLocal_whenCalled_thenSameInstanceIsReused() {
+        final TopicTokenizer first = TopicTokenizer.threadLocal("a/b");
+        final TopicTokenizer second = TopicTokenizer.threadLocal("c");
+
+        assertSame(first, second);
+        assertEquals(1, second.count());
+    }
+
+    @Test
+    public void matches_whenFilterMatchesTopic_thenTrue() {
+        assertTrue(TopicTokenizer.matches("a/b/c", "a/b/c"));
+        assertTrue(TopicTokenizer.matches("a/+/c", "a/b/c"));
+        assertTrue(TopicTokenizer.matches("+/+/+", "a/b/c"));
+        assertTrue(TopicTokenizer.matches("a/#", "a/b/c"));
+        assertTrue(TopicTokenizer.matches("a/#", "a"));
+        assertTrue(TopicTokenizer.matches("#", "$SYS/a"));
+        assertTrue(TopicTokenizer.matches("a//b", "a//b"));
+        assertTrue(TopicTokenizer.matches("a/+/b", "a//b"));
+    }
+
+    @Test
+    public void matches_whenFilterDoesNotMatchTopic_thenFalse() {
+        assertFalse(TopicTokenizer.matches("a/b", "a/b/c"));
+        assertFalse(TopicTokenizer.matches("a/b/c/d", "a/b/c"));
+        assertFalse(TopicTokenizer.matches("a/+", "a/b/c"));
+        assertFalse(TopicTokenizer.matches("a/bb", "a/b"));
+        assertFalse(TopicTokenizer.matches("b/#", "a/b"));
+        assertFalse(TopicTokenizer.matches("a/b/#", "a"));
+    }
+}
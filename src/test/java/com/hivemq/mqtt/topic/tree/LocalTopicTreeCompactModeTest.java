@@ -0,0 +1,157 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.subscribe.Topic;
+import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LocalTopicTreeCompactModeTest {
+
+    private LocalTopicTree topicTree;
+
+    @Before
+    public void setUp() {
+        InternalConfigurations.TOPIC_TREE_MAP_CREATION_THRESHOLD.set(1);
+        InternalConfigurations.TOPIC_TREE_COMPACT_MODE_ENABLED.set(true);
+        topicTree = new LocalTopicTree(new MetricsHolder(new MetricRegistry()));
+    }
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.TOPIC_TREE_COMPACT_MODE_ENABLED.set(false);
+        InternalConfigurations.TOPIC_TREE_MAP_CREATION_THRESHOLD.set(16);
+    }
+
+    @Test
+    public void findTopicSubscribers_whenCompactMode_thenSameResultsAsDefaultMode() {
+        topicTree.addTopic("sub1", new Topic("a/b/c", QoS.AT_LEAST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub2", new Topic("a/+/c", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub3", new Topic("a/#", QoS.EXACTLY_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub4", new Topic("+/b/c", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub5", new Topic("a/d/c", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub6", new Topic("a/e", QoS.AT_MOST_ONCE), (byte) 0, null);
+
+        assertEquals(Set.of("sub1", "sub2", "sub3", "sub4"), findSubscribers("a/b/c"));
+        assertEquals(Set.of("sub2", "sub3", "sub5"), findSubscribers("a/d/c"));
+        assertEquals(Set.of("sub3", "sub6"), findSubscribers("a/e"));
+        assertEquals(Set.of(), findSubscribers("b/e"));
+        assertEquals(Set.of("sub2"), topicTree.getSubscribersWithFilter("a/+/c", subscription -> true));
+    }
+
+    @Test
+    public void addTopic_whenChildrenExceedThreshold_thenChildrenAreStoredInCompactMap() {
+        topicTree.addTopic("sub1", new Topic("a/b", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub2", new Topic("a/c", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub3", new Topic("a/d", QoS.AT_MOST_ONCE), (byte) 0, null);
+
+        final TopicTreeNode node = topicTree.segments.get("a");
+        assertNull(node.getChildren());
+        assertTrue(node.getChildrenMap() instanceof CompactChildrenMap);
+        assertEquals(3, node.getChildrenMap().size());
+        assertNotNull(node.getChildrenMap().get("c"));
+        assertNull(node.getChildrenMap().get("x"));
+    }
+
+    @Test
+    public void addTopic_whenSegmentsRepeat_thenNodesShareTheInternedSegment() {
+        topicTree.addTopic("sub1", new Topic("devices/1/telemetry", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub2", new Topic("devices/2/telemetry", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub3", new Topic("devices/3/telemetry", QoS.AT_MOST_ONCE), (byte) 0, null);
+
+        final TopicTreeNode devices = topicTree.segments.get("devices");
+        final TopicTreeNode telemetry1 = devices.getChildrenMap().get("1").getChildren()[0];
+        final TopicTreeNode telemetry2 = devices.getChildrenMap().get("2").getChildren()[0];
+
+        assertSame(telemetry1.getTopicPart(), telemetry2.getTopicPart());
+        assertEquals(5, topicTree.segmentDictionary.size());
+    }
+
+    @Test
+    public void removeSubscriber_whenAllSubscriptionsRemoved_thenDictionaryIsEmpty() {
+        for (int i = 0; i < 100; i++) {
+            topicTree.addTopic("sub" + i, new Topic("devices/" + i + "/telemetry", QoS.AT_MOST_ONCE), (byte) 0, null);
+        }
+        topicTree.addTopic("sub", new Topic("devices/+/telemetry", QoS.AT_MOST_ONCE), (byte) 0, null);
+        assertEquals(103, topicTree.segmentDictionary.size());
+
+        for (int i = 0; i < 100; i++) {
+            topicTree.removeSubscriber("sub" + i, "devices/" + i + "/telemetry", null);
+        }
+        assertEquals(3, topicTree.segmentDictionary.size());
+        assertEquals(Set.of("sub"), findSubscribers("devices/5/telemetry"));
+
+        topicTree.removeSubscriber("sub", "devices/+/telemetry", null);
+        assertEquals(0, topicTree.segmentDictionary.size());
+        assertTrue(topicTree.segments.isEmpty());
+    }
+
+    @Test
+    public void addTopic_whenSegmentIdIsReused_thenLookupsStillMatchTheSegment() {
+        topicTree.addTopic("sub1", new Topic("a/b", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub2", new Topic("a/c", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub3", new Topic("a/d", QoS.AT_MOST_ONCE), (byte) 0, null);
+        final int removedId = topicTree.segmentDictionary.getId("b");
+        topicTree.removeSubscriber("sub1", "a/b", null);
+        topicTree.addTopic("sub4", new Topic("a/z", QoS.AT_MOST_ONCE), (byte) 0, null);
+
+        assertEquals(removedId, topicTree.segmentDictionary.getId("z"));
+        assertEquals(Set.of(), findSubscribers("a/b"));
+        assertEquals(Set.of("sub2"), findSubscribers("a/c"));
+        assertEquals(Set.of("sub3"), findSubscribers("a/d"));
+        assertEquals(Set.of("sub4"), findSubscribers("a/z"));
+    }
+
+    @Test
+    public void estimateBytesPerSubscription_whenCompactMode_thenLessThanDefaultMode() {
+        InternalConfigurations.TOPIC_TREE_COMPACT_MODE_ENABLED.set(false);
+        final LocalTopicTree defaultTree = new LocalTopicTree(new MetricsHolder(new MetricRegistry()));
+        for (int i = 0; i < 1000; i++) {
+            final Topic topic = new Topic("devices/" + (i % 100) + "/sensor" + (i / 100) + "/telemetry",
+                    QoS.AT_MOST_ONCE);
+            topicTree.addTopic("client" + i, topic, (byte) 0, null);
+            defaultTree.addTopic("client" + i, topic, (byte) 0, null);
+        }
+
+        final long compactBytes = topicTree.estimateBytesPerSubscription();
+        final long defaultBytes = defaultTree.estimateBytesPerSubscription();
+        assertTrue(compactBytes > 0);
+        assertTrue(compactBytes < defaultBytes);
+    }
+
+    private Set<String> findSubscribers(final String topic) {
+        return topicTree.findTopicSubscribers(topic)
+                .getSubscribers()
+                .stream()
+                .map(SubscriberWithIdentifiers::getSubscriber)
+                .collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.subscribe.Topic;
+import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
+import com.hivemq.mqtt.topic.SubscriptionFlag;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LocalTopicTreeCopyOnWriteTest {
+
+    private LocalTopicTree topicTree;
+
+    @Before
+    public void setUp() {
+        InternalConfigurations.TOPIC_TREE_MAP_CREATION_THRESHOLD.set(1);
+        InternalConfigurations.TOPIC_TREE_COPY_ON_WRITE_ENABLED.set(true);
+        topicTree = new LocalTopicTree(new MetricsHolder(new MetricRegistry()));
+    }
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.TOPIC_TREE_COPY_ON_WRITE_ENABLED.set(false);
+        InternalConfigurations.TOPIC_TREE_MAP_CREATION_THRESHOLD.set(16);
+    }
+
+    @Test
+    public void findTopicSubscribers_whenCopyOnWrite_thenSameResultsAsLockedMode() {
+        topicTree.addTopic("sub1", new Topic("a/b/c", QoS.AT_LEAST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub2", new Topic("a/+/c", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub3", new Topic("a/#", QoS.EXACTLY_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub4", new Topic("+/b/c", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub5", new Topic("#", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub6",
+                new Topic("a/b/c", QoS.AT_MOST_ONCE),
+                SubscriptionFlag.getDefaultFlags(true, false, false),
+                "group");
+
+        final TopicSubscribers topicSubscribers = topicTree.findTopicSubscribers("a/b/c");
+        final Set<String> clients = topicSubscribers.getSubscribers()
+                .stream()
+                .map(SubscriberWithIdentifiers::getSubscriber)
+                .collect(Collectors.toSet());
+
+        assertEquals(Set.of("sub1", "sub2", "sub3", "sub4", "sub5"), clients);
+        assertEquals(Set.of("group/a/b/c"), topicSubscribers.getSharedSubscriptions());
+
+        topicTree.removeSubscriber("sub1", "a/b/c", null);
+        topicTree.removeSubscriber("sub6", "a/b/c", "group");
+
+        final TopicSubscribers afterRemoval = topicTree.findTopicSubscribers("a/b/c");
+        assertEquals(4, afterRemoval.getSubscribers().size());
+        assertTrue(afterRemoval.getSharedSubscriptions().isEmpty());
+        assertEquals(4, topicTree.counters.getSubscriptionCounter().getCount());
+    }
+
+    @Test
+    public void addTopic_whenCopyOnWrite_thenPublishedChildrenArrayIsNotModified() {
+        topicTree.addTopic("sub1", new Topic("a/b", QoS.AT_MOST_ONCE), (byte) 0, null);
+        final TopicTreeNode segmentNode = topicTree.segments.get("a");
+
+        final TopicTreeNode[] childrenBefore = segmentNode.getChildren();
+        assertNotNull(childrenBefore);
+        final TopicTreeNode[] childrenBeforeCopy = childrenBefore.clone();
+
+        topicTree.addTopic("sub2", new Topic("a/c", QoS.AT_MOST_ONCE), (byte) 0, null);
+
+        assertArrayEquals(childrenBeforeCopy, childrenBefore);
+        assertNotSame(childrenBefore, segmentNode.getChildren());
+        assertEquals(2, LocalTopicTree.getChildrenCount(segmentNode));
+    }
+
+    @Test
+    public void removeSubscriber_whenCopyOnWrite_thenPublishedSubscriberArrayIsNotModified() {
+        topicTree.addTopic("sub1", new Topic("a", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub2", new Topic("a", QoS.AT_MOST_ONCE), (byte) 0, null);
+        final TopicTreeNode segmentNode = topicTree.segments.get("a");
+
+        final SubscriberWithQoS[] subscribersBefore = segmentNode.exactSubscriptions.nonSharedSubscribersArray;
+        assertNotNull(subscribersBefore);
+
+        topicTree.removeSubscriber("sub1", "a", null);
+
+        assertNotNull(subscribersBefore[0]);
+        assertNotNull(subscribersBefore[1]);
+        assertEquals(1, segmentNode.exactSubscriptions.getSubscriberCount());
+    }
+
+    @Test
+    public void addTopic_whenCopyOnWriteAndThresholdExceeded_thenMapIsPublishedAndArrayRemoved() {
+        topicTree.addTopic("sub1", new Topic("a/b", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub1", new Topic("a/c", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub1", new Topic("a/d", QoS.AT_MOST_ONCE), (byte) 0, null);
+        final TopicTreeNode segmentNode = topicTree.segments.get("a");
+        final Map<String, TopicTreeNode> mapBefore = segmentNode.getChildrenMap();
+
+        topicTree.addTopic("sub1", new Topic("a/e", QoS.AT_MOST_ONCE), (byte) 0, null);
+
+        assertNull(segmentNode.getChildren());
+        assertNotNull(mapBefore);
+        assertEquals(3, mapBefore.size());
+        assertEquals(4, segmentNode.getChildrenMap().size());
+        assertSame(mapBefore.get("b"), segmentNode.getChildrenMap().get("b"));
+    }
+
+    @Test(timeout = 20_000)
+    public void findTopicSubscribers_whenConcurrentChurn_thenStableSubscriberIsAlwaysFound() throws Exception {
+        topicTree.addTopic("stable", new Topic("devices/+/cmd", QoS.AT_LEAST_ONCE), (byte) 0, null);
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch writerStarted = new CountDownLatch(1);
+
+        final Thread writer = new Thread(() -> {
+            try {
+                int i = 0;
+                while (running.get()) {
+                    final String client = "client" + (i % 100);
+                    final Topic topic = new Topic("devices/" + i % 50 + "/cmd", QoS.AT_MOST_ONCE);
+                    topicTree.addTopic(client, topic, (byte) 0, null);
+                    topicTree.removeSubscriber(client, "devices/" + (i + 25) % 50 + "/cmd", null);
+                    writerStarted.countDown();
+                    i++;
+                }
+            } catch (final Throwable t) {
+                failure.set(t);
+                writerStarted.countDown();
+            }
+        });
+        writer.start();
+        writerStarted.await();
+
+        try {
+            for (int i = 0; i < 10_000; i++) {
+                final TopicSubscribers subscribers = topicTree.findTopicSubscribers("devices/" + i % 50 + "/cmd");
+                assertTrue(subscribers.getSubscribers()
+                        .stream()
+                        .anyMatch(subscriber -> subscriber.getSubscriber().equals("stable")));
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5RetainHandling;
+import com.hivemq.mqtt.message.subscribe.Topic;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
+import com.hivemq.mqtt.topic.SubscriptionFlag;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PackedSubscriptionsTest {
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.TOPIC_TREE_PACKED_SUBSCRIPTIONS_ENABLED.set(false);
+        InternalConfigurations.TOPIC_TREE_MAP_CREATION_THRESHOLD.set(16);
+    }
+
+    @Test
+    public void put_whenSubscriptionsAdded_thenColumnsHoldQosFlagsAndIdentifiers() {
+        final PackedSubscriptions subscriptions = new PackedSubscriptions(null, null, 1);
+        final byte flags = SubscriptionFlag.getDefaultFlags(false, true, true);
+
+        assertNull(subscriptions.put("sub1", new SubscriberWithQoS("sub1", 2, flags, null, Integer.MAX_VALUE, null)));
+        assertNull(subscriptions.put("sub2", new SubscriberWithQoS("sub2", 1, (byte) 0, null, null, null)));
+
+        assertEquals(2, subscriptions.size());
+        assertEquals("sub1", subscriptions.client(0));
+        assertEquals(2, subscriptions.qos(0));
+        assertEquals(flags, subscriptions.flags(0));
+        assertTrue(subscriptions.hasSubscriptionIdentifier(0));
+        assertEquals(Integer.MAX_VALUE, subscriptions.subscriptionIdentifier(0));
+        assertFalse(subscriptions.hasSubscriptionIdentifier(1));
+        assertEquals(new SubscriberWithQoS("sub1", 2, flags, null, Integer.MAX_VALUE, null),
+                subscriptions.get("sub1"));
+        assertEquals(new SubscriberWithQoS("sub2", 1, (byte) 0, null, null, null), subscriptions.get("sub2"));
+    }
+
+    @Test
+    public void put_whenClientAlreadyPresent_thenSubscriptionIsReplaced() {
+        final PackedSubscriptions subscriptions = new PackedSubscriptions(null, null, 4);
+        subscriptions.put("sub1", new SubscriberWithQoS("sub1", 0, (byte) 0, null, 1, null));
+
+        final SubscriberWithQoS previous =
+                subscriptions.put("sub1", new SubscriberWithQoS("sub1", 1, (byte) 0, null, 2, null));
+
+        assertEquals(new SubscriberWithQoS("sub1", 0, (byte) 0, null, 1, null), previous);
+        assertEquals(1, subscriptions.size());
+        assertEquals(new SubscriberWithQoS("sub1", 1, (byte) 0, null, 2, null), subscriptions.get("sub1"));
+    }
+
+    @Test
+    public void remove_whenSlotInTheMiddle_thenLastSlotIsMovedIntoTheHole() {
+        final PackedSubscriptions subscriptions = new PackedSubscriptions(null, null, 4);
+        subscriptions.put("sub1", new SubscriberWithQoS("sub1", 0, (byte) 0, null, null, null));
+        subscriptions.put("sub2", new SubscriberWithQoS("sub2", 1, (byte) 0, null, null, null));
+        subscriptions.put("sub3", new SubscriberWithQoS("sub3", 2, (byte) 0, null, null, null));
+
+        assertEquals(new SubscriberWithQoS("sub1", 0, (byte) 0, null, null, null), subscriptions.remove("sub1"));
+        assertNull(subscriptions.remove("sub1"));
+
+        assertEquals(2, subscriptions.size());
+        assertEquals("sub3", subscriptions.client(0));
+        assertEquals(2, subscriptions.qos(0));
+        assertEquals(new SubscriberWithQoS("sub3", 2, (byte) 0, null, null, null), subscriptions.get("sub3"));
+        assertEquals(Set.of("sub2", "sub3"), subscriptions.keySet());
+    }
+
+    @Test
+    public void copy_whenCopyModified_thenOriginalIsUnchanged() {
+        final PackedSubscriptions subscriptions = new PackedSubscriptions("group", null, 1);
+        subscriptions.put("sub1", new SubscriberWithQoS("sub1", 0, (byte) 0, "group", null, null));
+
+        final PackedSubscriptions copy = subscriptions.copy();
+        copy.put("sub2", new SubscriberWithQoS("sub2", 0, (byte) 0, "group", null, null));
+        copy.remove("sub1");
+
+        assertEquals(Set.of("sub1"), subscriptions.keySet());
+        assertEquals(Set.of("sub2"), copy.keySet());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void put_whenSharedNameDiffers_thenException() {
+        final PackedSubscriptions subscriptions = new PackedSubscriptions("group", null, 1);
+        subscriptions.put("sub1", new SubscriberWithQoS("sub1", 0, (byte) 0, "other", null, null));
+    }
+
+    @Test
+    public void addSubscriber_whenSubscriptionDoesNotFit_thenMapIsConverted() {
+        final MatchingNodeSubscriptions node = new MatchingNodeSubscriptions();
+        final SubscriptionCounters counters = new SubscriptionCounters(new Counter());
+        final SubscriptionStorageOptions options = new SubscriptionStorageOptions(0, false, true);
+        node.addSubscriber(new SubscriberWithQoS("sub1", 0, (byte) 0, null, null, null), "a", counters, options);
+        node.addSubscriber(new SubscriberWithQoS("sub2", 0, (byte) 0, null, null, null), "a", counters, options);
+        assertTrue(node.nonSharedSubscribersMap instanceof PackedSubscriptions);
+
+        node.addSubscriber(new SubscriberWithQoS("sub3", 0, (byte) 0, null, null, "a"), "a", counters, options);
+
+        assertTrue(node.nonSharedSubscribersMap instanceof HashMap);
+        assertEquals(3, node.getSubscriberCount());
+    }
+
+    @Test
+    public void findTopicSubscribers_whenPackedSubscriptions_thenSameResultsAsDefaultMode() {
+        InternalConfigurations.TOPIC_TREE_MAP_CREATION_THRESHOLD.set(1);
+        final LocalTopicTree defaultTree = new LocalTopicTree(new MetricsHolder(new MetricRegistry()));
+        InternalConfigurations.TOPIC_TREE_PACKED_SUBSCRIPTIONS_ENABLED.set(true);
+        final LocalTopicTree packedTree = new LocalTopicTree(new MetricsHolder(new MetricRegistry()));
+
+        for (final LocalTopicTree tree : List.of(defaultTree, packedTree)) {
+            for (int i = 0; i < 20; i++) {
+                final Topic topic = new Topic(i % 2 == 0 ? "a/b" : "a/#",
+                        QoS.valueOf(i % 3),
+                        false,
+                        i % 4 == 0,
+                        Mqtt5RetainHandling.SEND,
+                        i % 5 == 0 ? i : null);
+                tree.addTopic("client" + i, topic, SubscriptionFlag.getDefaultFlags(false, false, i % 4 == 0), null);
+            }
+            // the same client with wildcard and exact subscription is merged
+            tree.addTopic("client1", new Topic("a/b", QoS.EXACTLY_ONCE), (byte) 0, null);
+            tree.addTopic("shared1", new Topic("a/b", QoS.AT_MOST_ONCE), (byte) 2, "group");
+            tree.addTopic("shared2", new Topic("a/b", QoS.AT_MOST_ONCE), (byte) 2, "group");
+            tree.removeSubscriber("client4", "a/b", null);
+        }
+
+        assertTrue(packedTree.segments.get("a").getChildren()[0].exactSubscriptions.nonSharedSubscribersMap
+                instanceof PackedSubscriptions);
+        assertEquals(defaultTree.findTopicSubscribers("a/b").getSubscribers(),
+                packedTree.findTopicSubscribers("a/b").getSubscribers());
+        assertEquals(defaultTree.findTopicSubscribers("a/b").getSharedSubscriptions(),
+                packedTree.findTopicSubscribers("a/b").getSharedSubscriptions());
+        assertEquals(defaultTree.findTopicSubscribers("a/c").getSubscribers(),
+                packedTree.findTopicSubscribers("a/c").getSubscribers());
+        assertEquals(defaultTree.getSubscribersForTopic("a/b", subscription -> true, false),
+                packedTree.getSubscribersForTopic("a/b", subscription -> true, false));
+        assertTrue(packedTree.estimateMemoryUsage() < defaultTree.estimateMemoryUsage());
+    }
+}
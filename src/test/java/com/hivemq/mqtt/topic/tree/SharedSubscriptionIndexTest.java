@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.mqtt5.Mqtt5RetainHandling;
+import com.hivemq.mqtt.message.subscribe.Topic;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
+import com.hivemq.mqtt.topic.SubscriptionFlag;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SharedSubscriptionIndexTest {
+
+    private static final byte SHARED_FLAGS = SubscriptionFlag.getDefaultFlags(true, false, false);
+
+    private LocalTopicTree topicTree;
+
+    @Before
+    public void setUp() {
+        topicTree = new LocalTopicTree(new MetricsHolder(new MetricRegistry()));
+    }
+
+    @Test
+    public void getSharedSubscriber_whenSubscribersAdded_thenIndexedByGroupAndTopicFilter() {
+        topicTree.addTopic("sub1", new Topic("a/b", QoS.AT_LEAST_ONCE), SHARED_FLAGS, "group1");
+        topicTree.addTopic("sub2", new Topic("a/b", QoS.AT_MOST_ONCE), SHARED_FLAGS, "group1");
+        topicTree.addTopic("sub3", new Topic("a/b", QoS.AT_MOST_ONCE), SHARED_FLAGS, "group2");
+        topicTree.addTopic("sub4", new Topic("a/b", QoS.AT_MOST_ONCE), (byte) 0, null);
+
+        final ImmutableSet<SubscriberWithQoS> group1 = topicTree.getSharedSubscriber("group1", "a/b");
+        assertEquals(2, group1.size());
+        assertTrue(group1.contains(new SubscriberWithQoS("sub1", 1, SHARED_FLAGS, "group1", null, null)));
+        assertTrue(group1.contains(new SubscriberWithQoS("sub2", 0, SHARED_FLAGS, "group1", null, null)));
+
+        final ImmutableSet<SubscriberWithQoS> group2 = topicTree.getSharedSubscriber("group2", "a/b");
+        assertEquals(1, group2.size());
+        assertEquals("sub3", group2.iterator().next().getSubscriber());
+
+        assertTrue(topicTree.getSharedSubscriber("group1", "a").isEmpty());
+    }
+
+    @Test
+    public void getSharedSubscriber_whenSubscriptionReplaced_thenOnlyNewSubscriptionIndexed() {
+        topicTree.addTopic("sub1", new Topic("a/b", QoS.AT_MOST_ONCE), SHARED_FLAGS, "group");
+        topicTree.addTopic("sub1", new Topic("a/b", QoS.EXACTLY_ONCE), SHARED_FLAGS, "group");
+
+        final ImmutableSet<SubscriberWithQoS> subscribers = topicTree.getSharedSubscriber("group", "a/b");
+        assertEquals(1, subscribers.size());
+        assertEquals(2, subscribers.iterator().next().getQos());
+
+        final ImmutableSet<Topic> subscriptions = topicTree.getSharedSubscriptions("sub1");
+        assertEquals(1, subscriptions.size());
+        assertEquals(QoS.EXACTLY_ONCE, subscriptions.iterator().next().getQoS());
+    }
+
+    @Test
+    public void getSharedSubscriptions_whenSubscriptionsAdded_thenTopicsWithSharePrefix() {
+        topicTree.addTopic("sub1",
+                new Topic("a/b", QoS.AT_LEAST_ONCE, false, true, Mqtt5RetainHandling.SEND, 5),
+                SubscriptionFlag.getDefaultFlags(true, true, false),
+                "group1");
+        topicTree.addTopic("sub1", new Topic("#", QoS.AT_MOST_ONCE), SHARED_FLAGS, "group2");
+        topicTree.addTopic("sub1", new Topic("c", QoS.AT_MOST_ONCE), (byte) 0, null);
+
+        final ImmutableSet<Topic> subscriptions = topicTree.getSharedSubscriptions("sub1");
+        assertEquals(2, subscriptions.size());
+        assertTrue(subscriptions.contains(new Topic("$share/group1/a/b", QoS.AT_LEAST_ONCE)));
+        assertTrue(subscriptions.contains(new Topic("$share/group2/#", QoS.AT_MOST_ONCE)));
+
+        for (final Topic subscription : subscriptions) {
+            if (subscription.getTopic().equals("$share/group1/a/b")) {
+                assertTrue(subscription.isRetainAsPublished());
+                assertEquals(5, (int) subscription.getSubscriptionIdentifier());
+            }
+        }
+        assertTrue(topicTree.getSharedSubscriptions("sub2").isEmpty());
+    }
+
+    @Test
+    public void removeSubscriber_whenSharedSubscriptionRemoved_thenRemovedFromIndex() {
+        topicTree.addTopic("sub1", new Topic("a/b", QoS.AT_MOST_ONCE), SHARED_FLAGS, "group");
+        topicTree.addTopic("sub2", new Topic("a/b", QoS.AT_MOST_ONCE), SHARED_FLAGS, "group");
+        topicTree.addTopic("sub1", new Topic("c", QoS.AT_MOST_ONCE), SHARED_FLAGS, "group");
+
+        topicTree.removeSubscriber("sub1", "a/b", "group");
+
+        final ImmutableSet<SubscriberWithQoS> subscribers = topicTree.getSharedSubscriber("group", "a/b");
+        assertEquals(1, subscribers.size());
+        assertEquals("sub2", subscribers.iterator().next().getSubscriber());
+        assertEquals(ImmutableSet.of(new Topic("$share/group/c", QoS.AT_MOST_ONCE)),
+                topicTree.getSharedSubscriptions("sub1"));
+
+        topicTree.removeSubscriber("sub2", "a/b", "group");
+        topicTree.removeSubscriber("sub1", "c", "group");
+
+        assertTrue(topicTree.getSharedSubscriber("group", "a/b").isEmpty());
+        assertTrue(topicTree.getSharedSubscriber("group", "c").isEmpty());
+        assertTrue(topicTree.getSharedSubscriptions("sub1").isEmpty());
+        assertTrue(topicTree.getSharedSubscriptions("sub2").isEmpty());
+    }
+
+    @Test
+    public void addTopic_removeSubscriber_whenConcurrent_thenIndexMatchesTree() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (final String topicFilter : new String[]{"a/b", "#"}) {
+                final CountDownLatch start = new CountDownLatch(1);
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int thread = 0; thread < 4; thread++) {
+                    final Random random = new Random(thread);
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < 10_000; i++) {
+                            final String client = "sub" + random.nextInt(10);
+                            if (random.nextBoolean()) {
+                                topicTree.addTopic(client,
+                                        new Topic(topicFilter, QoS.AT_MOST_ONCE),
+                                        SHARED_FLAGS,
+                                        "group");
+                            } else {
+                                topicTree.removeSubscriber(client, topicFilter, "group");
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (final Future<?> future : futures) {
+                    future.get();
+                }
+
+                final ImmutableSet.Builder<String> indexed = ImmutableSet.builder();
+                for (final SubscriberWithQoS subscriber : topicTree.getSharedSubscriber("group", topicFilter)) {
+                    indexed.add(subscriber.getSubscriber());
+                }
+                assertEquals(topicTree.getSubscribersWithFilter(topicFilter, SubscriberWithQoS::isSharedSubscription),
+                        indexed.build());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
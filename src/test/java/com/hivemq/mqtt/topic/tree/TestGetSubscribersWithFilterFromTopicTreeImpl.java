@@ -16,6 +16,7 @@
 package com.hivemq.mqtt.topic.tree;
 
 import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
 import com.hivemq.metrics.MetricsHolder;
@@ -449,6 +450,54 @@ public class TestGetSubscribersWithFilterFromTopicTreeImpl {
     }
 
 
+    @Test
+    public void findTopicSubscribers_whenClientHasOverlappingSubscriptions_thenMaxQosAndAllIdentifiers() {
+        topicTree.addTopic("client1",
+                new Topic("topic/a", QoS.EXACTLY_ONCE, false, false, Mqtt5RetainHandling.SEND, 1),
+                nonSharedFlag,
+                null);
+        topicTree.addTopic("client1",
+                new Topic("topic/+", QoS.AT_MOST_ONCE, false, false, Mqtt5RetainHandling.SEND, 2),
+                nonSharedFlag,
+                null);
+        topicTree.addTopic("client1",
+                new Topic("topic/#", QoS.AT_LEAST_ONCE, false, false, Mqtt5RetainHandling.SEND, 3),
+                nonSharedFlag,
+                null);
+        topicTree.addTopic("client2", new Topic("topic/+", QoS.AT_MOST_ONCE), nonSharedFlag, null);
+
+        final TopicSubscribers topicSubscribers = topicTree.findTopicSubscribers("topic/a");
+        assertEquals(2, topicSubscribers.getSubscribers().size());
+
+        final SubscriberWithIdentifiers client1 = topicSubscribers.getSubscribers()
+                .stream()
+                .filter(subscriber -> subscriber.getSubscriber().equals("client1"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(2, client1.getQos());
+        assertEquals(3, client1.getSubscriptionIdentifier().length());
+        assertTrue(client1.getSubscriptionIdentifier().contains(1));
+        assertTrue(client1.getSubscriptionIdentifier().contains(2));
+        assertTrue(client1.getSubscriptionIdentifier().contains(3));
+    }
+
+    @Test
+    public void createDistinctSubscribers_whenManySubscribersWithDuplicates_thenOneEntryPerClient() {
+        final ImmutableList.Builder<SubscriberWithQoS> subscribers = ImmutableList.builder();
+        for (int i = 0; i < 1000; i++) {
+            subscribers.add(new SubscriberWithQoS("client" + i % 100, i % 3, nonSharedFlag, null));
+        }
+
+        final ImmutableSet<SubscriberWithIdentifiers> distinctSubscribers =
+                LocalTopicTree.createDistinctSubscribers(subscribers.build());
+
+        assertEquals(100, distinctSubscribers.size());
+        for (final SubscriberWithIdentifiers subscriber : distinctSubscribers) {
+            assertEquals(2, subscriber.getQos());
+            assertEquals(0, subscriber.getSubscriptionIdentifier().length());
+        }
+    }
+
     @Test
     public void test_normal_and_shared_subscription() {
 
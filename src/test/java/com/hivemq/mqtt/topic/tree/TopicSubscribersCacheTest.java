@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.subscribe.Topic;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TopicSubscribersCacheTest {
+
+    private MetricsHolder metricsHolder;
+    private LocalTopicTree topicTree;
+
+    @Before
+    public void setUp() {
+        InternalConfigurations.TOPIC_TREE_MATCH_CACHE_ENABLED.set(true);
+        metricsHolder = new MetricsHolder(new MetricRegistry());
+        topicTree = new LocalTopicTree(metricsHolder);
+    }
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.TOPIC_TREE_MATCH_CACHE_ENABLED.set(false);
+    }
+
+    @Test
+    public void findTopicSubscribers_whenCalledTwice_thenSecondCallIsHit() {
+        topicTree.addTopic("sub1", new Topic("a/b", QoS.AT_MOST_ONCE), (byte) 0, null);
+
+        final TopicSubscribers first = topicTree.findTopicSubscribers("a/b");
+        final TopicSubscribers second = topicTree.findTopicSubscribers("a/b");
+
+        assertSame(first, second);
+        assertEquals(1, metricsHolder.getTopicTreeMatchCacheMissCounter().getCount());
+        assertEquals(1, metricsHolder.getTopicTreeMatchCacheHitCounter().getCount());
+    }
+
+    @Test
+    public void addTopic_whenFilterMatchesCachedTopic_thenOnlyMatchingTopicIsInvalidated() {
+        topicTree.addTopic("sub1", new Topic("a/b", QoS.AT_MOST_ONCE), (byte) 0, null);
+        final TopicSubscribers cachedAB = topicTree.findTopicSubscribers("a/b");
+        final TopicSubscribers cachedAC = topicTree.findTopicSubscribers("a/c");
+        final TopicSubscribers cachedXY = topicTree.findTopicSubscribers("x/y");
+
+        topicTree.addTopic("sub2", new Topic("a/+", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub3", new Topic("a/b/#", QoS.AT_MOST_ONCE), (byte) 0, null);
+
+        final TopicSubscribers newAB = topicTree.findTopicSubscribers("a/b");
+        final TopicSubscribers newAC = topicTree.findTopicSubscribers("a/c");
+        assertNotSame(cachedAB, newAB);
+        assertNotSame(cachedAC, newAC);
+        assertSame(cachedXY, topicTree.findTopicSubscribers("x/y"));
+
+        assertEquals(3, newAB.getSubscribers().size());
+        assertEquals(1, newAC.getSubscribers().size());
+    }
+
+    @Test
+    public void removeSubscriber_whenCachedTopicAffected_thenItIsInvalidated() {
+        topicTree.addTopic("sub1", new Topic("a/b", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub2", new Topic("+/b", QoS.AT_MOST_ONCE), (byte) 0, null);
+        assertEquals(2, topicTree.findTopicSubscribers("a/b").getSubscribers().size());
+
+        topicTree.removeSubscriber("sub2", "+/b", null);
+        assertEquals(1, topicTree.findTopicSubscribers("a/b").getSubscribers().size());
+
+        topicTree.removeSubscriber("sub1", "a/b", null);
+        assertTrue(topicTree.findTopicSubscribers("a/b").getSubscribers().isEmpty());
+    }
+
+    @Test
+    public void addTopic_whenRootWildcard_thenAllTopicsAreInvalidated() {
+        topicTree.findTopicSubscribers("a/b");
+        topicTree.findTopicSubscribers("c");
+        final TopicSubscribersCache cache = topicTree.topicSubscribersCache;
+        assertNotNull(cache);
+        assertEquals(2, cache.size());
+
+        topicTree.addTopic("sub1", new Topic("#", QoS.AT_MOST_ONCE), (byte) 0, null);
+
+        assertEquals(0, cache.size());
+        assertEquals(1, topicTree.findTopicSubscribers("c").getSubscribers().size());
+    }
+
+    @Test
+    public void get_whenMaxWeightExceeded_thenEntriesAreEvicted() {
+        final TopicSubscribersCache cache = new TopicSubscribersCache(10, metricsHolder);
+        for (int i = 0; i < 100; i++) {
+            cache.get("topic/" + i, topic -> topicTree.findTopicSubscribers(topic, true));
+        }
+        assertTrue(cache.size() <= 10);
+        assertTrue(metricsHolder.getTopicTreeMatchCacheEvictionCounter().getCount() >= 90);
+    }
+}
@@ -21,25 +21,31 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.metrics.HiveMQMetrics;
 import com.hivemq.metrics.MetricsHolder;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.mqtt5.Mqtt5RetainHandling;
 import com.hivemq.mqtt.message.subscribe.Topic;
 import com.hivemq.mqtt.topic.SubscriberWithIdentifiers;
+import com.hivemq.mqtt.topic.SubscriberWithQoS;
 import com.hivemq.mqtt.topic.SubscriptionFlag;
 import com.hivemq.persistence.clientsession.ClientSession;
 import com.hivemq.persistence.clientsession.ClientSessionPersistence;
 import com.hivemq.persistence.clientsession.ClientSessionSubscriptionPersistence;
 import com.hivemq.persistence.clientsession.SharedSubscriptionService;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.HashSet;
 import java.util.Set;
 
 import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRY_MAX;
 import static org.hamcrest.CoreMatchers.hasItems;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyBoolean;
@@ -61,18 +67,27 @@ public class TopicTreeStartupTest {
 
 
     private LocalTopicTree topicTree;
+    private MetricRegistry metricRegistry;
     private TopicTreeStartup topicTreeStartup;
 
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
 
-        topicTree = new LocalTopicTree(new MetricsHolder(new MetricRegistry()));
+        metricRegistry = new MetricRegistry();
+        topicTree = new LocalTopicTree(new MetricsHolder(metricRegistry));
 
         topicTreeStartup = new TopicTreeStartup(topicTree,
                 clientSessionPersistence,
                 clientSessionSubscriptionPersistence,
-                sharedSubscriptionService);
+                sharedSubscriptionService,
+                metricRegistry);
+    }
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.TOPIC_TREE_STARTUP_PARALLELISM.set(Runtime.getRuntime().availableProcessors());
+        InternalConfigurations.TOPIC_TREE_STARTUP_BATCH_SIZE.set(100_000);
     }
 
     @Test
@@ -127,6 +142,31 @@ public class TopicTreeStartupTest {
                         null)));
     }
 
+    @Test
+    public void test_populate_topic_tree_shared_subscription_keeps_options() throws Exception {
+        when(clientSessionPersistence.getAllClients()).thenReturn(Futures.immediateFuture(Sets.newHashSet("client1")));
+        when(clientSessionPersistence.getSession(anyString(), anyBoolean())).thenReturn(new ClientSession(false,
+                SESSION_EXPIRY_MAX));
+        when(clientSessionSubscriptionPersistence.getSubscriptions(eq("client1"))).thenReturn(ImmutableSet.of(new Topic(
+                "$share/group/topic1",
+                QoS.AT_LEAST_ONCE,
+                false,
+                true,
+                Mqtt5RetainHandling.DO_NOT_SEND,
+                5)));
+
+        topicTreeStartup.postConstruct();
+
+        final SubscriberWithQoS subscriber = topicTree.getSharedSubscriber("group", "topic1").iterator().next();
+        assertEquals("client1", subscriber.getSubscriber());
+        assertEquals(Integer.valueOf(5), subscriber.getSubscriptionIdentifier());
+
+        final Topic sharedTopic = topicTree.getSharedSubscriptions("client1").iterator().next();
+        assertEquals("$share/group/topic1", sharedTopic.getTopic());
+        assertEquals(Mqtt5RetainHandling.DO_NOT_SEND, sharedTopic.getRetainHandling());
+        assertEquals(Integer.valueOf(5), sharedTopic.getSubscriptionIdentifier());
+    }
+
     @Test
     public void test_remove_clean_session_subs() throws Exception {
 
@@ -149,4 +189,35 @@ public class TopicTreeStartupTest {
         assertTrue(subscribersForTopic2.isEmpty());
     }
 
+    @Test
+    public void test_populate_topic_tree_in_parallel_batches() throws Exception {
+        InternalConfigurations.TOPIC_TREE_STARTUP_PARALLELISM.set(4);
+        InternalConfigurations.TOPIC_TREE_STARTUP_BATCH_SIZE.set(7);
+
+        final Set<String> clients = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            final String client = "client" + i;
+            clients.add(client);
+            final ImmutableSet.Builder<Topic> subscriptions = ImmutableSet.builder();
+            subscriptions.add(new Topic("segment" + (i % 10) + "/" + i, QoS.AT_LEAST_ONCE));
+            subscriptions.add(new Topic("segment" + (i % 10) + "/#", QoS.AT_MOST_ONCE));
+            if (i % 20 == 0) {
+                subscriptions.add(new Topic("#", QoS.AT_MOST_ONCE));
+            }
+            when(clientSessionSubscriptionPersistence.getSubscriptions(eq(client))).thenReturn(subscriptions.build());
+        }
+        when(clientSessionPersistence.getAllClients()).thenReturn(Futures.immediateFuture(clients));
+        when(clientSessionPersistence.getSession(anyString(), anyBoolean())).thenReturn(new ClientSession(false,
+                SESSION_EXPIRY_MAX));
+
+        topicTreeStartup.postConstruct();
+
+        assertEquals(205, topicTree.counters.getSubscriptionCounter().getCount());
+        assertEquals(15, topicTree.findTopicSubscribers("segment3/3").getSubscribers().size());
+        assertEquals(5, topicTree.findTopicSubscribers("other").getSubscribers().size());
+        assertEquals(205L,
+                metricRegistry.getGauges().get(HiveMQMetrics.TOPIC_TREE_STARTUP_SUBSCRIPTIONS.name()).getValue());
+        assertTrue(metricRegistry.getGauges().containsKey(HiveMQMetrics.TOPIC_TREE_STARTUP_READ_TIME_MILLIS.name()));
+        assertTrue(metricRegistry.getGauges().containsKey(HiveMQMetrics.TOPIC_TREE_STARTUP_BUILD_TIME_MILLIS.name()));
+    }
 }
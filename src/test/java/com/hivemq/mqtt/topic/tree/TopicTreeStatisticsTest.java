@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.mqtt.topic.tree;
+
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.metrics.HiveMQMetrics;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.mqtt.message.QoS;
+import com.hivemq.mqtt.message.subscribe.Topic;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TopicTreeStatisticsTest {
+
+    private MetricRegistry metricRegistry;
+    private LocalTopicTree topicTree;
+
+    @Before
+    public void setUp() {
+        InternalConfigurations.TOPIC_TREE_MAP_CREATION_THRESHOLD.set(2);
+        metricRegistry = new MetricRegistry();
+        topicTree = new LocalTopicTree(new MetricsHolder(metricRegistry));
+    }
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.TOPIC_TREE_MAP_CREATION_THRESHOLD.set(16);
+    }
+
+    @Test
+    public void collectStatistics_whenTreeIsEmpty_thenNoNodes() {
+        final TopicTreeStatistics statistics = topicTree.collectStatistics();
+
+        assertEquals(0, statistics.getNodeCount());
+        assertEquals(0, statistics.getMaxDepth());
+        assertEquals(0, statistics.getMaxFanOut());
+        assertEquals(0, statistics.getRootWildcardSubscriptionCount());
+    }
+
+    @Test
+    public void collectStatistics_whenTreePopulated_thenShapeIsReported() {
+        topicTree.addTopic("sub1", new Topic("a/b/c", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub2", new Topic("a/d", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub3", new Topic("a/e", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub4", new Topic("a/+/f", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub5", new Topic("x", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub6", new Topic("x", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub7", new Topic("x", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub8", new Topic("x", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub9", new Topic("#", QoS.AT_MOST_ONCE), (byte) 0, null);
+
+        final TopicTreeStatistics statistics = topicTree.collectStatistics();
+
+        // a, b, c, d, e, +, f, x
+        assertEquals(8, statistics.getNodeCount());
+        assertEquals(3, statistics.getMaxDepth());
+        assertArrayEquals(new long[]{2, 4, 2}, statistics.getNodesPerDepth());
+        assertEquals(4, statistics.getMaxFanOut());
+        // fan-out 0: c, d, e, f, x; fan-out 1: b, +; fan-out 4-7: a
+        assertEquals(5, statistics.getFanOutHistogram()[0]);
+        assertEquals(2, statistics.getFanOutHistogram()[1]);
+        assertEquals(1, statistics.getFanOutHistogram()[3]);
+        assertEquals(1, statistics.getChildrenMapNodeCount());
+        assertEquals(1, statistics.getSubscriptionsMapNodeCount());
+        assertEquals(1, statistics.getRootWildcardSubscriptionCount());
+        assertEquals(9, statistics.getSubscriptionCount());
+    }
+
+    @Test
+    public void dump_whenTreePopulated_thenContainsShape() {
+        topicTree.addTopic("sub1", new Topic("devices/1/temperature", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub2", new Topic("#", QoS.AT_MOST_ONCE), (byte) 0, null);
+
+        final String dump = topicTree.collectStatistics().dump();
+
+        assertTrue(dump.contains("[Nodes] = [3]"));
+        assertTrue(dump.contains("[Root wildcard subscriptions] = [1]"));
+        assertTrue(dump.contains("[Nodes at depth 3] = [1]"));
+        assertTrue(dump.contains("[Nodes below first level 'devices'] = [3]"));
+    }
+
+    @Test
+    public void metrics_whenTreeCreated_thenShapeAndLockMetricsAreRegistered() {
+        topicTree.addTopic("sub1", new Topic("#", QoS.AT_MOST_ONCE), (byte) 0, null);
+        topicTree.addTopic("sub2", new Topic("a/b", QoS.AT_MOST_ONCE), (byte) 0, null);
+
+        assertEquals(2L, metricRegistry.getGauges().get(HiveMQMetrics.TOPIC_TREE_NODES_CURRENT.name()).getValue());
+        assertEquals(2, metricRegistry.getGauges().get(HiveMQMetrics.TOPIC_TREE_DEPTH_MAX.name()).getValue());
+        assertEquals(1,
+                metricRegistry.getGauges()
+                        .get(HiveMQMetrics.TOPIC_TREE_ROOT_WILDCARD_SUBSCRIPTIONS_CURRENT.name())
+                        .getValue());
+        assertEquals(0,
+                metricRegistry.getCounters()
+                        .get(HiveMQMetrics.TOPIC_TREE_SEGMENT_LOCK_CONTENDED_COUNT.name())
+                        .getCount());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence;
+
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class GroupCommitTest {
+
+    private final @NotNull List<String> events = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        final GroupCommit groupCommit = GroupCommit.current();
+        if (groupCommit != null) {
+            groupCommit.abort();
+        }
+    }
+
+    @Test
+    public void test_commit_participants_in_join_order() {
+        final GroupCommit groupCommit = GroupCommit.begin();
+        assertSame(groupCommit, GroupCommit.current());
+        final Participant first = new Participant("first", false);
+        groupCommit.join("a", first);
+        groupCommit.join("b", new Participant("second", false));
+        groupCommit.join("a", new Participant("ignored", false));
+
+        assertSame(first, groupCommit.participant("a"));
+        assertEquals(2, groupCommit.getParticipantCount());
+
+        groupCommit.commit();
+
+        assertEquals(List.of("commit first", "commit second"), events);
+        assertNull(GroupCommit.current());
+    }
+
+    @Test
+    public void test_failed_commit_aborts_remaining_participants() {
+        final GroupCommit groupCommit = GroupCommit.begin();
+        groupCommit.join("a", new Participant("first", false));
+        groupCommit.join("b", new Participant("second", true));
+        groupCommit.join("c", new Participant("third", false));
+
+        try {
+            groupCommit.commit();
+            fail();
+        } catch (final IllegalStateException e) {
+            assertEquals("second", e.getMessage());
+        }
+
+        assertEquals(List.of("commit first", "commit second", "abort second", "abort third"), events);
+        assertNull(GroupCommit.current());
+    }
+
+    @Test
+    public void test_abort() {
+        final GroupCommit groupCommit = GroupCommit.begin();
+        groupCommit.join("a", new Participant("first", false));
+        groupCommit.abort();
+
+        assertEquals(List.of("abort first"), events);
+        assertNull(GroupCommit.current());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_begin_twice() {
+        GroupCommit.begin();
+        GroupCommit.begin();
+    }
+
+    private class Participant implements GroupCommit.Participant {
+
+        private final @NotNull String name;
+        private final boolean failCommit;
+
+        private Participant(final @NotNull String name, final boolean failCommit) {
+            this.name = name;
+            this.failCommit = failCommit;
+        }
+
+        @Override
+        public void commit() {
+            events.add("commit " + name);
+            if (failCommit) {
+                throw new IllegalStateException(name);
+            }
+        }
+
+        @Override
+        public void abort() {
+            events.add("abort " + name);
+        }
+    }
+}
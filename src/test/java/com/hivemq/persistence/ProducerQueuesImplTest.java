@@ -15,18 +15,39 @@
  */
 package com.hivemq.persistence;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.MetricsHolder;
+import com.hivemq.metrics.SingleWriterMetrics;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -38,6 +59,12 @@ public class ProducerQueuesImplTest {
     @NotNull SingleWriterServiceImpl singleWriterServiceImpl;
 
     @NotNull ProducerQueuesImpl producerQueues;
+    private @NotNull SingleWriterMetrics metrics;
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.SINGLE_WRITER_LATENCY_SAMPLE_RATE.set(64);
+    }
 
     @Before
     public void setUp() throws Exception {
@@ -47,7 +74,9 @@ public class ProducerQueuesImplTest {
         when(singleWriterServiceImpl.getThreadPoolSize()).thenReturn(4);
         when(singleWriterServiceImpl.getGlobalTaskCount()).thenReturn(new AtomicLong());
 
-        producerQueues = new ProducerQueuesImpl(singleWriterServiceImpl, 4);
+        InternalConfigurations.SINGLE_WRITER_LATENCY_SAMPLE_RATE.set(1);
+        metrics = new MetricsHolder(new MetricRegistry()).getSingleWriterMetrics("test");
+        producerQueues = new ProducerQueuesImpl(singleWriterServiceImpl, 4, false, metrics);
     }
 
     @Test
@@ -84,4 +113,178 @@ public class ProducerQueuesImplTest {
             }
         }
     }
+
+    @Test
+    public void execute_group_commit_futures_completed_after_commit() throws Exception {
+        when(singleWriterServiceImpl.getCreditsPerExecution()).thenReturn(10);
+        final ProducerQueuesImpl groupQueues = new ProducerQueuesImpl(singleWriterServiceImpl, 1, true, metrics);
+        final List<ListenableFuture<String>> futures = new ArrayList<>();
+        final AtomicBoolean doneBeforeCommit = new AtomicBoolean();
+        final GroupCommit.Participant participant = new GroupCommit.Participant() {
+            @Override
+            public void commit() {
+                doneBeforeCommit.set(futures.stream().anyMatch(Future::isDone));
+            }
+
+            @Override
+            public void abort() {
+            }
+        };
+
+        futures.add(groupQueues.submit(0, bucketIndex -> {
+            Objects.requireNonNull(GroupCommit.current()).join("storage", participant);
+            return "first";
+        }));
+        futures.add(groupQueues.submit(1, bucketIndex -> {
+            throw new IllegalStateException();
+        }));
+        futures.add(groupQueues.submit(2, bucketIndex -> "third"));
+
+        groupQueues.execute(new SplittableRandom());
+
+        assertFalse(doneBeforeCommit.get());
+        assertNull(GroupCommit.current());
+        assertEquals("first", futures.get(0).get());
+        assertTrue(futures.get(1).isDone());
+        assertEquals("third", futures.get(2).get());
+        try {
+            futures.get(1).get();
+            fail();
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        verify(singleWriterServiceImpl).recordGroupCommit(eq(3), anyLong());
+    }
+
+    @Test
+    public void execute_group_commit_failed_commit_executes_tasks_alone() throws Exception {
+        when(singleWriterServiceImpl.getCreditsPerExecution()).thenReturn(10);
+        final ProducerQueuesImpl groupQueues = new ProducerQueuesImpl(singleWriterServiceImpl, 1, true, metrics);
+        final GroupCommit.Participant participant = new GroupCommit.Participant() {
+            @Override
+            public void commit() {
+                throw new IllegalStateException("commit failed");
+            }
+
+            @Override
+            public void abort() {
+            }
+        };
+
+        final ListenableFuture<String> first = groupQueues.submit(0, bucketIndex -> {
+            Objects.requireNonNull(GroupCommit.current()).join("storage", participant);
+            return "first";
+        });
+        final ListenableFuture<String> second = groupQueues.submit(0, bucketIndex -> "second");
+
+        groupQueues.execute(new SplittableRandom());
+
+        try {
+            first.get();
+            fail();
+        } catch (final ExecutionException e) {
+            assertEquals("commit failed", e.getCause().getMessage());
+        }
+        assertEquals("second", second.get());
+    }
+
+    @Test
+    public void execute_group_commit_failed_task_aborts_and_executes_tasks_alone() throws Exception {
+        when(singleWriterServiceImpl.getCreditsPerExecution()).thenReturn(10);
+        final ProducerQueuesImpl groupQueues = new ProducerQueuesImpl(singleWriterServiceImpl, 1, true, metrics);
+        final AtomicInteger commits = new AtomicInteger();
+        final AtomicInteger aborts = new AtomicInteger();
+        final AtomicInteger executions = new AtomicInteger();
+        final GroupCommit.Participant participant = new GroupCommit.Participant() {
+            @Override
+            public void commit() {
+                commits.incrementAndGet();
+            }
+
+            @Override
+            public void abort() {
+                aborts.incrementAndGet();
+            }
+        };
+
+        final ListenableFuture<String> first = groupQueues.submit(0, bucketIndex -> {
+            executions.incrementAndGet();
+            Objects.requireNonNull(GroupCommit.current()).join("storage", participant);
+            return "first";
+        });
+        final ListenableFuture<String> second = groupQueues.submit(0, bucketIndex -> {
+            Objects.requireNonNull(GroupCommit.current()).join("storage", participant);
+            throw new IllegalStateException("task failed");
+        });
+
+        groupQueues.execute(new SplittableRandom());
+
+        assertNull(GroupCommit.current());
+        assertEquals("first", first.get());
+        assertEquals(2, executions.get());
+        try {
+            second.get();
+            fail();
+        } catch (final ExecutionException e) {
+            assertEquals("task failed", e.getCause().getMessage());
+        }
+        // the aborted group commit and the failed second task, only the first task is committed
+        assertEquals(2, aborts.get());
+        assertEquals(1, commits.get());
+    }
+
+    @Test
+    public void execute_group_commit_single_task_not_grouped() throws Exception {
+        when(singleWriterServiceImpl.getCreditsPerExecution()).thenReturn(10);
+        final ProducerQueuesImpl groupQueues = new ProducerQueuesImpl(singleWriterServiceImpl, 1, true, metrics);
+
+        final ListenableFuture<Boolean> future = groupQueues.submit(0, bucketIndex -> GroupCommit.current() == null);
+        groupQueues.execute(new SplittableRandom());
+
+        assertTrue(future.get());
+        verify(singleWriterServiceImpl, never()).recordGroupCommit(anyInt(), anyLong());
+    }
+
+    @Test
+    public void execute_metrics_queue_depths_and_times() {
+        when(singleWriterServiceImpl.getCreditsPerExecution()).thenReturn(10);
+        final MetricRegistry registry = new MetricRegistry();
+        final SingleWriterMetrics singleQueueMetrics = new MetricsHolder(registry).getSingleWriterMetrics("test");
+        final ProducerQueuesImpl singleQueue =
+                new ProducerQueuesImpl(singleWriterServiceImpl, 1, false, singleQueueMetrics);
+        singleQueue.submit(0, bucketIndex -> null);
+        singleQueue.submit(0, bucketIndex -> null);
+        singleQueue.submit(1, bucketIndex -> null);
+
+        final String prefix = "com.hivemq.persistence.single-writer.test.";
+        assertEquals(3L, registry.getGauges().get(prefix + "queue-depth").getValue());
+        assertEquals(2, registry.getGauges().get(prefix + "bucket.0.queue-depth").getValue());
+        assertEquals(1, registry.getGauges().get(prefix + "bucket.1.queue-depth").getValue());
+        assertEquals(0, registry.getGauges().get(prefix + "bucket.2.queue-depth").getValue());
+
+        singleQueue.execute(new SplittableRandom());
+
+        assertEquals(0L, registry.getGauges().get(prefix + "queue-depth").getValue());
+        assertEquals(0, registry.getGauges().get(prefix + "bucket.0.queue-depth").getValue());
+        assertEquals(3, singleQueueMetrics.getWaitTimer().getTimer().getCount());
+        assertEquals(3, singleQueueMetrics.getExecutionTimer().getTimer().getCount());
+        assertEquals(0, singleQueueMetrics.getCreditsExhaustedCounter().getCount());
+    }
+
+    @Test
+    public void execute_metrics_credits_exhausted() {
+        when(singleWriterServiceImpl.getCreditsPerExecution()).thenReturn(2);
+        final MetricRegistry registry = new MetricRegistry();
+        final SingleWriterMetrics singleQueueMetrics = new MetricsHolder(registry).getSingleWriterMetrics("test");
+        final ProducerQueuesImpl singleQueue =
+                new ProducerQueuesImpl(singleWriterServiceImpl, 1, false, singleQueueMetrics);
+        singleQueue.submit(0, bucketIndex -> null);
+        singleQueue.submit(0, bucketIndex -> null);
+        singleQueue.submit(0, bucketIndex -> null);
+
+        singleQueue.execute(new SplittableRandom());
+
+        assertEquals(1, singleQueueMetrics.getCreditsExhaustedCounter().getCount());
+        assertEquals(1L, registry.getGauges().get("com.hivemq.persistence.single-writer.test.queue-depth").getValue());
+    }
 }
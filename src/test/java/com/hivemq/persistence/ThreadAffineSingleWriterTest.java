@@ -0,0 +1,239 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.extension.sdk.api.annotations.NotNull;
+import com.hivemq.metrics.MetricsHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ThreadAffineSingleWriterTest {
+
+    private @NotNull ThreadAffineSingleWriter singleWriter;
+
+    @Before
+    public void setUp() throws Exception {
+        InternalConfigurations.PERSISTENCE_SHUTDOWN_GRACE_PERIOD_MSEC.set(200);
+        InternalConfigurations.PERSISTENCE_BUCKET_COUNT.set(64);
+        InternalConfigurations.SINGLE_WRITER_THREAD_POOL_SIZE.set(4);
+        singleWriter = new ThreadAffineSingleWriter();
+    }
+
+    @After
+    public void tearDown() {
+        singleWriter.stop();
+    }
+
+    @Test
+    public void test_valid_amount_of_queues() {
+        assertEquals(4, singleWriter.writers.length);
+        assertEquals(1, singleWriter.validAmountOfQueues(1, 64));
+        assertEquals(8, singleWriter.validAmountOfQueues(5, 64));
+        assertEquals(64, singleWriter.validAmountOfQueues(64, 64));
+    }
+
+    @Test(timeout = 10_000)
+    public void test_submit_whenManyThreadsSubmitToSameBucket_thenTasksAreExecutedInOrderByOneThread()
+            throws Exception {
+        final ProducerQueues queues = singleWriter.getClientSessionQueue();
+        // not thread-safe on purpose
+        final List<Integer> executed = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        final List<ListenableFuture<Void>> futures = new ArrayList<>();
+
+        for (int j = 0; j < 4; j++) {
+            final int producer = j;
+            final Thread thread = new Thread(() -> {
+                final List<ListenableFuture<Void>> producerFutures = new ArrayList<>();
+                for (int i = 0; i < 10_000; i++) {
+                    final int value = producer * 10_000 + i;
+                    producerFutures.add(queues.submit("sameKey", bucketIndex -> {
+                        executed.add(value);
+                        return null;
+                    }));
+                }
+                synchronized (futures) {
+                    futures.addAll(producerFutures);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        Futures.allAsList(futures).get();
+
+        assertEquals(40_000, executed.size());
+        final int[] last = {-1, -1, -1, -1};
+        for (final int value : executed) {
+            final int producer = value / 10_000;
+            assertTrue(value > last[producer]);
+            last[producer] = value;
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void test_submit_withCallbacks_thenCallbacksAreExecutedInlineOnWriter() throws Exception {
+        final ProducerQueues queues = singleWriter.getRetainedMessageQueue();
+        final AtomicReference<Thread> taskThread = new AtomicReference<>();
+        final AtomicReference<Thread> successThread = new AtomicReference<>();
+        final AtomicReference<Thread> failedThread = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch(2);
+
+        queues.submit(3, bucketIndex -> {
+            taskThread.set(Thread.currentThread());
+            return null;
+        }, result -> {
+            successThread.set(Thread.currentThread());
+            latch.countDown();
+        }, null);
+        queues.submit(3, (SingleWriterService.Task<Void>) bucketIndex -> {
+            throw new IllegalStateException();
+        }, result -> {}, exception -> {
+            failedThread.set(Thread.currentThread());
+            latch.countDown();
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(taskThread.get().getName().startsWith("single-writer-"));
+        assertSame(taskThread.get(), successThread.get());
+        assertSame(taskThread.get(), failedThread.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void test_submit_differentProducersSameBucket_thenSameWriter() throws Exception {
+        final Thread retained =
+                singleWriter.getRetainedMessageQueue().submit(5, bucketIndex -> Thread.currentThread()).get();
+        final Thread subscription =
+                singleWriter.getSubscriptionQueue().submit(5, bucketIndex -> Thread.currentThread()).get();
+        final Thread otherGroup =
+                singleWriter.getSubscriptionQueue().submit(63, bucketIndex -> Thread.currentThread()).get();
+
+        assertSame(retained, subscription);
+        assertNotSame(retained, otherGroup);
+    }
+
+    @Test(timeout = 10_000)
+    public void test_submit_afterWriterParked_thenWriterIsWokenUp() throws Exception {
+        final ProducerQueues queues = singleWriter.getQueuedMessagesQueue();
+        for (int i = 0; i < 100; i++) {
+            final int value = i;
+            assertEquals(value, (int) queues.submit("key", bucketIndex -> value).get());
+            Thread.sleep(5); // the writer parks in between
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void test_callbackExecutor_whenManyThreadsSubmitConcurrently_thenOnlyOneThreadWorksConcurrently()
+            throws Exception {
+        final LinkedList<Integer> list = new LinkedList<>();
+        list.add(0);
+
+        final List<Thread> threads = new ArrayList<>();
+
+        // this is highly un-thread-safe, when this is concurrently executed
+        final Runnable runnable = () -> {
+            final Integer poll = list.pollFirst();
+            list.add(poll + 1);
+        };
+
+        for (int j = 0; j < 4; j++) {
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    singleWriter.callbackExecutor("sameKey").execute(runnable);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        // the callback executor of a key is a single thread, so this task runs after all callbacks
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Integer> result = new AtomicReference<>();
+        singleWriter.callbackExecutor("sameKey").execute(() -> {
+            result.set(list.peekFirst());
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(40_000, (int) result.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void test_callbackExecutor_whenCallbackWaitsForTask_thenNoDeadlock() throws Exception {
+        final ProducerQueues queues = singleWriter.getClientSessionQueue();
+        final AtomicReference<Thread> callbackThread = new AtomicReference<>();
+        final ListenableFuture<Integer> future = queues.submit("key", bucketIndex -> 1);
+        final ListenableFuture<Integer> chained = Futures.transform(future, value -> {
+            callbackThread.set(Thread.currentThread());
+            // a callback may wait for another task of the same bucket
+            return value + Futures.getUnchecked(queues.submit("key", bucketIndex -> 1));
+        }, singleWriter.callbackExecutor("key"));
+
+        assertEquals(2, (int) chained.get());
+        assertTrue(callbackThread.get().getName().startsWith("single-writer-callback-"));
+    }
+
+    @Test
+    public void test_metrics_queueDepthsRegistered() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final ThreadAffineSingleWriter singleWriter = new ThreadAffineSingleWriter(new MetricsHolder(metricRegistry));
+        try {
+            assertTrue(metricRegistry.getGauges()
+                    .containsKey("com.hivemq.persistence.single-writer.client-sessions.queue-depth"));
+            assertTrue(metricRegistry.getTimers()
+                    .containsKey("com.hivemq.persistence.single-writer.queued-messages.task.wait-time"));
+        } finally {
+            singleWriter.stop();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void test_stop_pendingTasksAreExecuted() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final ProducerQueues queues = singleWriter.getClientSessionQueue();
+        queues.submit(0, bucketIndex -> {
+            Uninterruptibles.awaitUninterruptibly(blocked);
+            return null;
+        });
+        final ListenableFuture<Integer> pending = queues.submit(0, bucketIndex -> bucketIndex + 1);
+        blocked.countDown();
+        singleWriter.stop();
+
+        assertEquals(1, (int) pending.get());
+    }
+}
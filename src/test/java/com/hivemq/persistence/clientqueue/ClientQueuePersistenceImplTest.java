@@ -15,12 +15,15 @@
  */
 package com.hivemq.persistence.clientqueue;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.primitives.ImmutableIntArray;
+import com.google.common.util.concurrent.SettableFuture;
 import com.hivemq.bootstrap.ClientConnection;
 import com.hivemq.bootstrap.ClientConnectionContext;
 import com.hivemq.configuration.service.MqttConfigurationService;
+import com.hivemq.metrics.MetricsHolder;
 import com.hivemq.mqtt.message.MessageWithID;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.publish.PUBLISH;
@@ -33,6 +36,7 @@ import com.hivemq.persistence.connection.ConnectionPersistence;
 import com.hivemq.persistence.local.ClientSessionLocalPersistence;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
+import com.hivemq.persistence.util.CompletionCounter;
 import io.netty.channel.Channel;
 import io.netty.channel.embedded.EmbeddedChannel;
 import org.junit.After;
@@ -43,17 +47,22 @@ import org.mockito.MockitoAnnotations;
 import util.DummyClientConnection;
 import util.TestSingleWriterFactory;
 
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.hivemq.configuration.service.MqttConfigurationService.QueuedMessagesStrategy;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
@@ -102,7 +111,9 @@ public class ClientQueuePersistenceImplTest {
                 clientSessionLocalPersistence,
                 topicTree,
                 connectionPersistence,
-                publishPollService);
+                publishPollService,
+                new MetricsHolder(new MetricRegistry()),
+                new ClientQueuePressure(new MetricRegistry()));
     }
 
     @After
@@ -137,6 +148,57 @@ public class ClientQueuePersistenceImplTest {
                 anyInt());
     }
 
+    @Test(timeout = 5000)
+    public void test_add_to_bucket_entry_failed() throws InterruptedException {
+        doThrow(new RuntimeException("test")).when(localPersistence)
+                .add(eq("client1"), eq(false), any(PUBLISH.class), anyLong(), any(), anyBoolean(), anyInt());
+
+        final SettableFuture<Void> future = SettableFuture.create();
+        final CompletionCounter completion = CompletionCounter.forFuture(future);
+        clientQueuePersistence.addToBucket(0,
+                List.of(new ClientQueueBatchEntry("client1", createPublish(1, QoS.AT_LEAST_ONCE, "topic"), 1000L),
+                        new ClientQueueBatchEntry("client2", createPublish(1, QoS.AT_LEAST_ONCE, "topic"), 500L)),
+                completion);
+        completion.seal();
+        try {
+            future.get();
+            fail();
+        } catch (final ExecutionException e) {
+            assertEquals("test", e.getCause().getMessage());
+        }
+
+        // A failed entry does not prevent the other entries from being added
+        verify(localPersistence).add(eq("client2"),
+                eq(false),
+                any(PUBLISH.class),
+                eq(500L),
+                eq(QueuedMessagesStrategy.DISCARD),
+                eq(false),
+                eq(0));
+    }
+
+    @Test(timeout = 5000)
+    public void test_add_with_completion() throws ExecutionException, InterruptedException {
+        final SettableFuture<Void> future = SettableFuture.create();
+        final CompletionCounter completion = CompletionCounter.forFuture(future);
+        clientQueuePersistence.add("client",
+                false,
+                createPublish(1, QoS.AT_LEAST_ONCE, "topic"),
+                false,
+                1000L,
+                completion);
+        completion.seal();
+        future.get();
+
+        verify(localPersistence).add(eq("client"),
+                eq(false),
+                any(PUBLISH.class),
+                eq(1000L),
+                eq(QueuedMessagesStrategy.DISCARD),
+                anyBoolean(),
+                anyInt());
+    }
+
     @Test(timeout = 5000)
     public void test_publish_avaliable() {
 
@@ -238,6 +300,24 @@ public class ClientQueuePersistenceImplTest {
 
     }
 
+    @Test(timeout = 5000)
+    public void test_queue_empty_after_read_until_added() throws ExecutionException, InterruptedException {
+        assertFalse(clientQueuePersistence.isQueueEmpty("client"));
+
+        when(localPersistence.readNew(anyString(),
+                anyBoolean(),
+                any(ImmutableIntArray.class),
+                anyLong(),
+                anyInt())).thenReturn(ImmutableList.of());
+        when(localPersistence.size(eq("client"), eq(false), anyInt())).thenReturn(0);
+        clientQueuePersistence.readNew("client", false, ImmutableIntArray.of(1), 1000).get();
+        assertTrue(clientQueuePersistence.isQueueEmpty("client"));
+
+        when(localPersistence.size(eq("client"), eq(false), anyInt())).thenReturn(1);
+        clientQueuePersistence.add("client", false, createPublish(1, QoS.AT_MOST_ONCE, "topic"), false, 1000L).get();
+        assertFalse(clientQueuePersistence.isQueueEmpty("client"));
+    }
+
     @Test(timeout = 5000)
     public void test_clear() throws ExecutionException, InterruptedException {
 
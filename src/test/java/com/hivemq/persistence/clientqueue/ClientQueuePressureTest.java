@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.clientqueue;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.hivemq.configuration.service.InternalConfigurations;
+import com.hivemq.metrics.HiveMQMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClientQueuePressureTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private ClientQueuePressure queuePressure;
+
+    @Before
+    public void setUp() {
+        InternalConfigurations.PUBLISH_BACK_PRESSURE_ENABLED.set(true);
+        InternalConfigurations.PUBLISH_BACK_PRESSURE_CONGESTED_QUEUES.set(4);
+        InternalConfigurations.PUBLISH_BACK_PRESSURE_QUEUED_BYTES.set(1000);
+        queuePressure = new ClientQueuePressure(metricRegistry);
+    }
+
+    @After
+    public void tearDown() {
+        InternalConfigurations.PUBLISH_BACK_PRESSURE_ENABLED.set(false);
+        InternalConfigurations.PUBLISH_BACK_PRESSURE_CONGESTED_QUEUES.set(1000);
+        InternalConfigurations.PUBLISH_BACK_PRESSURE_QUEUED_BYTES.set(256 * 1024 * 1024);
+    }
+
+    @Test
+    public void test_queue_congested_with_hysteresis() {
+        assertFalse(queuePressure.added("client", false, 79, 100));
+        assertFalse(queuePressure.isCongested("client", false));
+
+        assertTrue(queuePressure.added("client", false, 80, 100));
+        assertTrue(queuePressure.isCongested("client", false));
+        assertFalse(queuePressure.isCongested("client", true));
+
+        // congested until the queue dropped to half of the fill level
+        queuePressure.shrunk("client", false, 41);
+        assertTrue(queuePressure.isCongested("client", false));
+        assertTrue(queuePressure.added("client", false, 42, 100));
+        queuePressure.shrunk("client", false, 40);
+        assertFalse(queuePressure.isCongested("client", false));
+    }
+
+    @Test
+    public void test_under_pressure_by_congested_queues() {
+        queuePressure.added("client1", false, 100, 100);
+        queuePressure.added("client2", false, 100, 100);
+        queuePressure.added("client3", false, 100, 100);
+        assertFalse(queuePressure.isUnderPressure());
+
+        queuePressure.added("client4", true, 100, 100);
+        assertTrue(queuePressure.isUnderPressure());
+        assertEquals(4, metricRegistry.getGauges()
+                .get(HiveMQMetrics.QUEUED_MESSAGES_CONGESTED_QUEUES_CURRENT.name())
+                .getValue());
+
+        queuePressure.shrunk("client1", false, 0);
+        assertTrue(queuePressure.isUnderPressure());
+
+        queuePressure.shrunk("client4", true, 0);
+        assertFalse(queuePressure.isUnderPressure());
+    }
+
+    @Test
+    public void test_under_pressure_by_queued_bytes() {
+        final AtomicLong queuedBytes = new AtomicLong();
+        metricRegistry.register(HiveMQMetrics.QUEUED_MESSAGES_MEMORY_PERSISTENCE_TOTAL_SIZE.name(),
+                (Gauge<Long>) queuedBytes::get);
+
+        queuedBytes.set(999);
+        assertFalse(queuePressure.isUnderPressure());
+
+        queuedBytes.set(1000);
+        assertTrue(queuePressure.isUnderPressure());
+
+        queuedBytes.set(501);
+        assertTrue(queuePressure.isUnderPressure());
+
+        queuedBytes.set(500);
+        assertFalse(queuePressure.isUnderPressure());
+    }
+
+    @Test
+    public void test_disabled() {
+        InternalConfigurations.PUBLISH_BACK_PRESSURE_ENABLED.set(false);
+        queuePressure = new ClientQueuePressure(new MetricRegistry());
+
+        queuePressure.added("client1", false, 100, 100);
+        queuePressure.added("client2", false, 100, 100);
+
+        assertFalse(queuePressure.isCongested("client1", false));
+        assertFalse(queuePressure.isUnderPressure());
+    }
+}
@@ -25,6 +25,7 @@ import com.hivemq.mqtt.message.dropping.MessageDroppedService;
 import com.hivemq.mqtt.message.publish.PUBLISH;
 import com.hivemq.mqtt.message.publish.PUBLISHFactory;
 import com.hivemq.mqtt.message.pubrel.PUBREL;
+import com.hivemq.persistence.GroupCommit;
 import com.hivemq.persistence.PersistenceStartup;
 import com.hivemq.persistence.local.xodus.EnvironmentUtil;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
@@ -1395,6 +1396,49 @@ public class ClientQueueXodusLocalPersistenceTest {
         assertEquals(startIndex, currentIndex);
     }
 
+    @Test
+    public void test_add_in_aborted_group_commit() {
+        final GroupCommit groupCommit = GroupCommit.begin();
+        persistence.add("client", false, createPublish(1, QoS.AT_LEAST_ONCE), 100L, DISCARD, false, 0);
+        persistence.add("client", false, createPublish(2, QoS.AT_MOST_ONCE), 100L, DISCARD, false, 0);
+        assertEquals(2, persistence.size("client", false, 0));
+        groupCommit.abort();
+
+        assertEquals(0, persistence.size("client", false, 0));
+        assertEquals(0, persistence.qos0Size("client", false, 0));
+        assertTrue(persistence.readNew("client", false, ImmutableIntArray.of(1, 2), byteLimit, 0).isEmpty());
+    }
+
+    @Test
+    public void test_clear_in_aborted_group_commit() {
+        persistence.add("client", false, createPublish(1, QoS.AT_LEAST_ONCE), 100L, DISCARD, false, 0);
+        persistence.add("client", false, createPublish(2, QoS.AT_MOST_ONCE), 100L, DISCARD, false, 0);
+
+        final GroupCommit groupCommit = GroupCommit.begin();
+        persistence.clear("client", false, 0);
+        assertEquals(0, persistence.size("client", false, 0));
+        groupCommit.abort();
+
+        verify(payloadPersistence, never()).decrementReferenceCounter(anyLong());
+        assertEquals(2, persistence.size("client", false, 0));
+        assertEquals(1, persistence.qos0Size("client", false, 0));
+        assertEquals(2, persistence.readNew("client", false, ImmutableIntArray.of(1, 2), byteLimit, 0).size());
+    }
+
+    @Test
+    public void test_remove_in_group_commit_decrements_payload_reference_after_commit() {
+        persistence.add("client", false, createPublish(1, QoS.AT_LEAST_ONCE), 100L, DISCARD, false, 0);
+        persistence.readNew("client", false, ImmutableIntArray.of(1), byteLimit, 0);
+
+        final GroupCommit groupCommit = GroupCommit.begin();
+        persistence.remove("client", 1, 0);
+        verify(payloadPersistence, never()).decrementReferenceCounter(anyLong());
+        groupCommit.commit();
+
+        verify(payloadPersistence).decrementReferenceCounter(anyLong());
+        assertEquals(0, persistence.size("client", false, 0));
+    }
+
     private ImmutableIntArray createPacketIds(final int start, final int size) {
         final ImmutableIntArray.Builder builder = ImmutableIntArray.builder();
         for (int i = start; i < (size + start); i++) {
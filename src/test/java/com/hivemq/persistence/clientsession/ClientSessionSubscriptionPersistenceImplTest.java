@@ -68,9 +68,6 @@ public class ClientSessionSubscriptionPersistenceImplTest {
     @Mock
     private LocalTopicTree topicTree;
 
-    @Mock
-    private SharedSubscriptionService sharedSubscriptionService;
-
     @Mock
     private ConnectionPersistence connectionPersistence;
 
@@ -91,7 +88,6 @@ public class ClientSessionSubscriptionPersistenceImplTest {
         singleWriterService = TestSingleWriterFactory.defaultSingleWriter();
         persistence = new ClientSessionSubscriptionPersistenceImpl(localPersistence,
                 topicTree,
-                sharedSubscriptionService,
                 singleWriterService,
                 connectionPersistence,
                 clientSessionLocalPersistence,
@@ -143,10 +139,10 @@ public class ClientSessionSubscriptionPersistenceImplTest {
     }
 
     @Test
-    public void test_invalidate_caches_channel_null() {
+    public void test_poll_shared_subscriptions_channel_null() {
 
         when(connectionPersistence.get("client")).thenReturn(null);
-        persistence.invalidateSharedSubscriptionCacheAndPoll("client", ImmutableSet.of());
+        persistence.pollSharedSubscriptions("client", ImmutableSet.of());
 
         verify(publishPollService, never()).pollSharedPublishesForClient(anyString(),
                 anyString(),
@@ -158,14 +154,14 @@ public class ClientSessionSubscriptionPersistenceImplTest {
     }
 
     @Test
-    public void test_invalidate_caches_channel_closed() {
+    public void test_poll_shared_subscriptions_channel_closed() {
 
         final EmbeddedChannel channel = new EmbeddedChannel();
         channel.close();
         final ClientConnection clientConnection = new DummyClientConnection(channel, null);
 
         when(connectionPersistence.get("client")).thenReturn(clientConnection);
-        persistence.invalidateSharedSubscriptionCacheAndPoll("client", ImmutableSet.of());
+        persistence.pollSharedSubscriptions("client", ImmutableSet.of());
 
         verify(publishPollService, never()).pollSharedPublishesForClient(anyString(),
                 anyString(),
@@ -177,13 +173,13 @@ public class ClientSessionSubscriptionPersistenceImplTest {
     }
 
     @Test
-    public void test_invalidate_caches_empty_subs() {
+    public void test_poll_shared_subscriptions_empty_subs() {
 
         final EmbeddedChannel channel = new EmbeddedChannel();
         final ClientConnection clientConnection = new DummyClientConnection(channel, null);
 
         when(connectionPersistence.get("client")).thenReturn(clientConnection);
-        persistence.invalidateSharedSubscriptionCacheAndPoll("client", ImmutableSet.of());
+        persistence.pollSharedSubscriptions("client", ImmutableSet.of());
 
         verify(publishPollService, never()).pollSharedPublishesForClient(anyString(),
                 anyString(),
@@ -197,14 +193,14 @@ public class ClientSessionSubscriptionPersistenceImplTest {
     }
 
     @Test
-    public void test_invalidate_caches_success() {
+    public void test_poll_shared_subscriptions_success() {
 
         final EmbeddedChannel channel = new EmbeddedChannel();
         final ClientConnection clientConnection = new DummyClientConnection(channel, null);
         channel.attr(ClientConnectionContext.CHANNEL_ATTRIBUTE_NAME).set(clientConnection);
 
         when(connectionPersistence.get("client")).thenReturn(clientConnection);
-        persistence.invalidateSharedSubscriptionCacheAndPoll("client",
+        persistence.pollSharedSubscriptions("client",
                 ImmutableSet.of(new Subscription(new Topic("topic", QoS.AT_LEAST_ONCE), (byte) 2, "group")));
 
         verify(publishPollService).pollSharedPublishesForClient(anyString(),
@@ -213,8 +209,6 @@ public class ClientSessionSubscriptionPersistenceImplTest {
                 anyBoolean(),
                 any(),
                 any(Channel.class));
-        verify(sharedSubscriptionService).invalidateSharedSubscriberCache("group/topic");
-        verify(sharedSubscriptionService).invalidateSharedSubscriptionCache("client");
 
         channel.close();
 
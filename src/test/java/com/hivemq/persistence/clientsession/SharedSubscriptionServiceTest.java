@@ -16,7 +16,6 @@
 package com.hivemq.persistence.clientsession;
 
 import com.google.common.collect.ImmutableSet;
-import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.mqtt5.Mqtt5RetainHandling;
 import com.hivemq.mqtt.message.subscribe.Topic;
@@ -27,15 +26,12 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
-import java.util.concurrent.ExecutionException;
-
 import static com.hivemq.persistence.clientsession.SharedSubscriptionService.splitTopicAndGroup;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
-import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -49,18 +45,12 @@ public class SharedSubscriptionServiceTest {
     @Mock
     LocalTopicTree topicTree;
 
-    @Mock
-    ClientSessionSubscriptionPersistence subscriptionPersistence;
-
     private SharedSubscriptionService service;
 
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
 
-        InternalConfigurations.SHARED_SUBSCRIBER_CACHE_CONCURRENCY_LEVEL.set(1);
-        InternalConfigurations.SHARED_SUBSCRIPTION_CACHE_CONCURRENCY_LEVEL.set(1);
-
         service = new SharedSubscriptionService(topicTree);
     }
 
@@ -135,38 +125,23 @@ public class SharedSubscriptionServiceTest {
     }
 
     @Test
-    public void test_get_shared_subscriber() throws ExecutionException, InterruptedException {
-        service.postConstruct();
-        final ImmutableSet<SubscriberWithQoS> result1 = ImmutableSet.of();
-        when(topicTree.getSharedSubscriber("group", "topic")).thenReturn(ImmutableSet.of());
-        final ImmutableSet<SubscriberWithQoS> result2 = service.getSharedSubscriber("group/topic");
-        final ImmutableSet<SubscriberWithQoS> result3 = service.getSharedSubscriber("group/topic");
+    public void test_get_shared_subscriber() {
+        final ImmutableSet<SubscriberWithQoS> subscribers =
+                ImmutableSet.of(new SubscriberWithQoS("client", 1, (byte) 0, "group", null, null));
+        when(topicTree.getSharedSubscriber("group", "topic/a")).thenReturn(subscribers);
 
-        verify(topicTree, times(1)).getSharedSubscriber(anyString(), anyString());
+        assertSame(subscribers, service.getSharedSubscriber("group/topic/a"));
+        assertSame(subscribers, service.getSharedSubscriber("group/topic/a"));
 
-        assertSame(result1, result2);
-        assertSame(result1, result3);
-
-        assertTrue(result3.isEmpty());
+        verify(topicTree, times(2)).getSharedSubscriber("group", "topic/a");
     }
 
     @Test
-    public void test_get_shared_subscriptions() throws ExecutionException, InterruptedException {
-        service.postConstruct();
-
-        final ImmutableSet<Topic> topics1 = ImmutableSet.of();
-
-        when(subscriptionPersistence.getSharedSubscriptions("client")).thenReturn(topics1);
-        final ImmutableSet<Topic> topics2 = service.getSharedSubscriptions("client",
-                () -> subscriptionPersistence.getSharedSubscriptions("client"));
-        final ImmutableSet<Topic> topics3 = service.getSharedSubscriptions("client",
-                () -> subscriptionPersistence.getSharedSubscriptions("client"));
-
-        verify(subscriptionPersistence, times(1)).getSharedSubscriptions("client");
-        assertSame(topics1, topics2);
-        assertSame(topics1, topics3);
+    public void test_get_shared_subscriptions() {
+        final ImmutableSet<Topic> topics = ImmutableSet.of(new Topic("$share/group/topic", QoS.AT_LEAST_ONCE));
+        when(topicTree.getSharedSubscriptions("client")).thenReturn(topics);
 
-        assertTrue(topics3.isEmpty());
+        assertSame(topics, service.getSharedSubscriptions("client"));
     }
 
     @Test
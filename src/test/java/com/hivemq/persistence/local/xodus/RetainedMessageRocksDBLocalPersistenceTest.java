@@ -36,6 +36,7 @@ import org.junit.rules.TemporaryFolder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -216,6 +217,33 @@ public class RetainedMessageRocksDBLocalPersistenceTest {
         assertTrue(topics.contains("topic/1"));
     }
 
+    @Test
+    public void test_put_all() {
+        persistence.put(new RetainedMessage(new byte[0], QoS.AT_MOST_ONCE, 0L, MqttConfigurationDefaults.TTL_DISABLED),
+                "topic/0",
+                0);
+        persistence.put(new RetainedMessage(new byte[0], QoS.AT_MOST_ONCE, 1L, MqttConfigurationDefaults.TTL_DISABLED),
+                "topic/1",
+                0);
+
+        final Map<String, RetainedMessage> writes = new HashMap<>();
+        writes.put("topic/0",
+                new RetainedMessage(new byte[0], QoS.AT_MOST_ONCE, 2L, MqttConfigurationDefaults.TTL_DISABLED));
+        writes.put("topic/1", null);
+        writes.put("topic/2",
+                new RetainedMessage(new byte[0], QoS.AT_MOST_ONCE, 3L, MqttConfigurationDefaults.TTL_DISABLED));
+        persistence.putAll(writes, 0);
+
+        verify(payloadPersistence).decrementReferenceCounter(0);
+        verify(payloadPersistence).decrementReferenceCounter(1);
+        assertEquals(2, persistence.size());
+
+        final Set<String> topics = persistence.topicTrees[0].get("#");
+        assertEquals(2, topics.size());
+        assertTrue(topics.contains("topic/0"));
+        assertTrue(topics.contains("topic/2"));
+    }
+
     @Test
     public void test_clean_up_expiry() {
 
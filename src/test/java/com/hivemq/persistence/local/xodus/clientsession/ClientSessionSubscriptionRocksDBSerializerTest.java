@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.local.xodus.clientsession;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.hivemq.persistence.local.xodus.clientsession.ClientSessionSubscriptionRocksDBSerializer.PREFIX_LENGTH;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClientSessionSubscriptionRocksDBSerializerTest {
+
+    @Test
+    public void test_serialize_deserialize_client_id() {
+        final byte[] key = ClientSessionSubscriptionRocksDBSerializer.serializeKey("clientId", "topic/#");
+
+        assertEquals("clientId", ClientSessionSubscriptionRocksDBSerializer.deserializeClientId(key));
+    }
+
+    @Test
+    public void test_serialize_deserialize_utf8_client_id() {
+        final byte[] key = ClientSessionSubscriptionRocksDBSerializer.serializeKey("clientId/ä/€", "topic");
+
+        assertEquals("clientId/ä/€", ClientSessionSubscriptionRocksDBSerializer.deserializeClientId(key));
+    }
+
+    @Test
+    public void test_keys_of_client_share_prefix() {
+        final byte[] prefix = ClientSessionSubscriptionRocksDBSerializer.serializeClientPrefix("client");
+        final byte[] key1 = ClientSessionSubscriptionRocksDBSerializer.serializeKey("client", "topic1");
+        final byte[] key2 = ClientSessionSubscriptionRocksDBSerializer.serializeKey("client", "topic2");
+
+        assertTrue(ClientSessionSubscriptionRocksDBSerializer.hasClientPrefix(key1, prefix));
+        assertTrue(ClientSessionSubscriptionRocksDBSerializer.hasClientPrefix(key2, prefix));
+        assertArrayEquals(Arrays.copyOf(key1, PREFIX_LENGTH), Arrays.copyOf(key2, PREFIX_LENGTH));
+    }
+
+    @Test
+    public void test_keys_of_other_client_do_not_share_prefix() {
+        final byte[] prefix = ClientSessionSubscriptionRocksDBSerializer.serializeClientPrefix("client");
+
+        // the client id is a prefix of the other client id
+        final byte[] key = ClientSessionSubscriptionRocksDBSerializer.serializeKey("client1", "topic");
+        assertFalse(ClientSessionSubscriptionRocksDBSerializer.hasClientPrefix(key, prefix));
+
+        // the topic of the other client starts with the remaining client id
+        final byte[] otherKey = ClientSessionSubscriptionRocksDBSerializer.serializeKey("clie", "nttopic");
+        assertFalse(ClientSessionSubscriptionRocksDBSerializer.hasClientPrefix(otherKey, prefix));
+
+        assertFalse(ClientSessionSubscriptionRocksDBSerializer.hasClientPrefix(new byte[2], prefix));
+    }
+}
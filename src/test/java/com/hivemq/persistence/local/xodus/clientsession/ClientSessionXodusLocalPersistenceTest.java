@@ -25,6 +25,7 @@ import com.hivemq.metrics.MetricsHolder;
 import com.hivemq.mqtt.message.QoS;
 import com.hivemq.mqtt.message.connect.MqttWillPublish;
 import com.hivemq.mqtt.message.mqtt5.Mqtt5UserProperties;
+import com.hivemq.persistence.GroupCommit;
 import com.hivemq.persistence.NoSessionException;
 import com.hivemq.persistence.PersistenceEntry;
 import com.hivemq.persistence.PersistenceStartup;
@@ -50,6 +51,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRE_ON_DISCONNECT;
 import static com.hivemq.mqtt.message.connect.Mqtt5CONNECT.SESSION_EXPIRY_MAX;
@@ -135,6 +137,36 @@ public class ClientSessionXodusLocalPersistenceTest {
         assertEquals(123L, Objects.requireNonNull(persistence.getTimestamp("clientId")).longValue());
     }
 
+    @Test
+    public void test_put_in_group_commit_visible_after_commit() throws Exception {
+        final int bucketIndex = BucketUtils.getBucket("clientId", BUCKET_COUNT);
+        final GroupCommit groupCommit = GroupCommit.begin();
+        persistence.put("clientId", new ClientSession(true, SESSION_EXPIRY_MAX), 123L, bucketIndex);
+
+        // the following tasks of the group read from the shared transaction
+        assertNotNull(persistence.getSession("clientId", bucketIndex));
+        assertEquals(0, persistence.getSessionsCount());
+        final ClientSession otherThread =
+                CompletableFuture.supplyAsync(() -> persistence.getSession("clientId", bucketIndex)).get();
+        assertNull(otherThread);
+
+        groupCommit.commit();
+
+        assertEquals(1, persistence.getSessionsCount());
+        assertNotNull(persistence.getSession("clientId", bucketIndex));
+    }
+
+    @Test
+    public void test_put_in_aborted_group_commit() {
+        final int bucketIndex = BucketUtils.getBucket("clientId", BUCKET_COUNT);
+        final GroupCommit groupCommit = GroupCommit.begin();
+        persistence.put("clientId", new ClientSession(true, SESSION_EXPIRY_MAX), 123L, bucketIndex);
+        groupCommit.abort();
+
+        assertEquals(0, persistence.getSessionsCount());
+        assertNull(persistence.getSession("clientId", bucketIndex));
+    }
+
     @Test
     public void test_getDisconnected() {
         final String client1 = TestBucketUtil.getId(1, BUCKET_COUNT);
@@ -16,10 +16,15 @@
 package com.hivemq.persistence.retained;
 
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.hivemq.configuration.service.InternalConfigurations;
 import com.hivemq.extensions.iteration.Chunker;
 import com.hivemq.mqtt.topic.TopicMatcher;
 import com.hivemq.persistence.RetainedMessage;
 import com.hivemq.persistence.SingleWriterService;
+import com.hivemq.persistence.SingleWriterServiceImpl;
 import com.hivemq.persistence.local.xodus.bucket.BucketUtils;
 import com.hivemq.persistence.payload.PublishPayloadPersistence;
 import org.junit.After;
@@ -30,8 +35,14 @@ import org.mockito.MockitoAnnotations;
 import util.TestMessageUtil;
 import util.TestSingleWriterFactory;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
@@ -180,6 +191,22 @@ public class RetainedMessagePersistenceImplTest {
         } catch (final InterruptedException | ExecutionException e) {
             throw e.getCause();
         }
+        verify(localPersistence).putAll(eq(Collections.singletonMap("topic", null)), anyInt());
+    }
+
+    @Test
+    public void test_remove_without_batching() throws Throwable {
+        InternalConfigurations.RETAINED_MESSAGE_WRITE_BATCH_SIZE.set(1);
+        try {
+            retainedMessagePersistence = new RetainedMessagePersistenceImpl(localPersistence,
+                    topicMatcher,
+                    payloadPersistence,
+                    singleWriterService,
+                    new Chunker());
+            retainedMessagePersistence.remove("topic").get();
+        } finally {
+            InternalConfigurations.RETAINED_MESSAGE_WRITE_BATCH_SIZE.set(1000);
+        }
         verify(localPersistence).remove(eq("topic"), anyInt());
     }
 
@@ -210,10 +237,77 @@ public class RetainedMessagePersistenceImplTest {
         } catch (final InterruptedException | ExecutionException e) {
             throw e.getCause();
         }
+        verify(localPersistence).putAll(eq(Collections.singletonMap("topic", message)), anyInt());
+        verify(payloadPersistence).add(any(byte[].class), eq(1L), anyLong());
+    }
+
+    @Test
+    public void test_persist_without_batching() throws Throwable {
+        InternalConfigurations.RETAINED_MESSAGE_WRITE_BATCH_SIZE.set(1);
+        try {
+            retainedMessagePersistence = new RetainedMessagePersistenceImpl(localPersistence,
+                    topicMatcher,
+                    payloadPersistence,
+                    singleWriterService,
+                    new Chunker());
+            retainedMessagePersistence.persist("topic", message).get();
+        } finally {
+            InternalConfigurations.RETAINED_MESSAGE_WRITE_BATCH_SIZE.set(1000);
+        }
         verify(localPersistence).put(eq(message), eq("topic"), anyInt());
         verify(payloadPersistence).add(any(byte[].class), eq(1L), anyLong());
     }
 
+    @Test
+    public void test_persist_pending_writes_collapsed() throws Exception {
+        final int bucketIndex = BucketUtils.getBucket("topic", 64);
+        final CountDownLatch blockLatch = new CountDownLatch(1);
+        singleWriterService.getRetainedMessageQueue().submit(bucketIndex, (bucket) -> {
+            Uninterruptibles.awaitUninterruptibly(blockLatch);
+            return null;
+        });
+
+        final RetainedMessage message2 = new RetainedMessage(TestMessageUtil.createMqtt3Publish(), 1000);
+        final ListenableFuture<Void> future1 = retainedMessagePersistence.persist("topic", message);
+        final ListenableFuture<Void> future2 = retainedMessagePersistence.persist("topic", message2);
+        blockLatch.countDown();
+        future1.get();
+        future2.get();
+
+        verify(localPersistence).putAll(eq(Collections.singletonMap("topic", message2)), eq(bucketIndex));
+        verify(localPersistence, never()).put(any(RetainedMessage.class), anyString(), anyInt());
+        verify(payloadPersistence).decrementReferenceCounter(message.getPublishId());
+        verify(payloadPersistence, never()).decrementReferenceCounter(message2.getPublishId());
+    }
+
+    @Test
+    public void test_persist_pending_writes_completed_in_callback_executor() throws Exception {
+        final ExecutorService callbackExecutor =
+                Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "retained-callback"));
+        final ExecutorService[] callbackExecutors = ((SingleWriterServiceImpl) singleWriterService).callbackExecutors;
+        Arrays.fill(callbackExecutors, callbackExecutor);
+        try {
+            final int bucketIndex = BucketUtils.getBucket("topic", 64);
+            final CountDownLatch blockLatch = new CountDownLatch(1);
+            singleWriterService.getRetainedMessageQueue().submit(bucketIndex, (bucket) -> {
+                Uninterruptibles.awaitUninterruptibly(blockLatch);
+                return null;
+            });
+
+            final ListenableFuture<Void> future = retainedMessagePersistence.persist("topic", message);
+            final AtomicReference<String> listenerThread = new AtomicReference<>();
+            future.addListener(() -> listenerThread.set(Thread.currentThread().getName()),
+                    MoreExecutors.directExecutor());
+            blockLatch.countDown();
+            future.get();
+
+            callbackExecutor.submit(() -> null).get();
+            assertEquals("retained-callback", listenerThread.get());
+        } finally {
+            callbackExecutor.shutdown();
+        }
+    }
+
     @Test
     public void test_cleanup() throws ExecutionException, InterruptedException {
         retainedMessagePersistence.cleanUp(1).get();
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019-present HiveMQ GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.persistence.util;
+
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Test;
+import util.TestException;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompletionCounterTest {
+
+    @Test
+    public void test_completes_after_seal_and_all_operations() {
+        final AtomicInteger calls = new AtomicInteger();
+        final CompletionCounter completion = new CompletionCounter(failure -> calls.incrementAndGet());
+
+        completion.expect(2);
+        completion.complete();
+        completion.seal();
+        assertFalse(completion.isDone());
+        assertEquals(0, calls.get());
+
+        completion.complete();
+        assertTrue(completion.isDone());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void test_seal_without_operations() {
+        final AtomicInteger calls = new AtomicInteger();
+        final CompletionCounter completion = new CompletionCounter(failure -> calls.incrementAndGet());
+
+        completion.seal();
+        assertTrue(completion.isDone());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void test_first_failure_is_reported() {
+        final AtomicReference<Throwable> result = new AtomicReference<>();
+        final CompletionCounter completion = new CompletionCounter(result::set);
+        final RuntimeException second = new RuntimeException("second");
+
+        completion.expect(2);
+        completion.fail(TestException.INSTANCE);
+        completion.fail(second);
+        completion.seal();
+
+        assertSame(TestException.INSTANCE, result.get());
+    }
+
+    @Test
+    public void test_track_future() throws ExecutionException, InterruptedException {
+        final SettableFuture<Void> resultFuture = SettableFuture.create();
+        final CompletionCounter completion = CompletionCounter.forFuture(resultFuture);
+        final SettableFuture<String> operation = SettableFuture.create();
+
+        completion.track(operation);
+        completion.seal();
+        assertFalse(resultFuture.isDone());
+
+        operation.set("done");
+        assertTrue(resultFuture.isDone());
+        resultFuture.get();
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void test_track_failed_future() throws ExecutionException, InterruptedException {
+        final SettableFuture<Void> resultFuture = SettableFuture.create();
+        final CompletionCounter completion = CompletionCounter.forFuture(resultFuture);
+        final SettableFuture<String> operation = SettableFuture.create();
+
+        completion.track(operation);
+        completion.seal();
+        operation.setException(TestException.INSTANCE);
+        resultFuture.get();
+    }
+}